@@ -29,8 +29,12 @@ import org.slf4j.LoggerFactory;
 import es.us.dit.lti.entity.Settings;
 import es.us.dit.lti.persistence.DbUtilDataSource;
 import es.us.dit.lti.persistence.DbUtilSingleConnection;
+import es.us.dit.lti.persistence.DeferredAssessmentDao;
 import es.us.dit.lti.persistence.IDbUtil;
 import es.us.dit.lti.persistence.MgmtUserDao;
+import es.us.dit.lti.persistence.OutcomeDeliveryDao;
+import es.us.dit.lti.persistence.OutcomeResyncDao;
+import es.us.dit.lti.persistence.ReassessmentDao;
 import es.us.dit.lti.persistence.SettingsDao;
 import es.us.dit.lti.persistence.ToolAttemptDao;
 import es.us.dit.lti.persistence.ToolConsumerDao;
@@ -41,6 +45,12 @@ import es.us.dit.lti.persistence.ToolKeyDao;
 import es.us.dit.lti.persistence.ToolNonceDao;
 import es.us.dit.lti.persistence.ToolResourceLinkDao;
 import es.us.dit.lti.persistence.ToolResourceUserDao;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.HttpClientManager;
+import es.us.dit.lti.runner.LocalWorkerPool;
+import es.us.dit.lti.runner.SshServerPool;
+import es.us.dit.lti.runner.SshSession;
+import es.us.dit.lti.runner.TimeoutService;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
@@ -71,6 +81,17 @@ public class AppLoader implements ServletContextListener {
 	@Override
 	public void contextDestroyed(ServletContextEvent sce) {
 		logger.info("ServletContextListener destroyed");
+		ReassessmentService.shutdown();
+		OutcomeResyncService.shutdown();
+		DeferredAssessmentService.shutdown();
+		OutcomeDeliveryService.shutdown();
+		AssessmentQueue.shutdown();
+		LocalWorkerPool.closeAll();
+		HttpClientManager.shutdown();
+		OutcomeService.shutdown();
+		SshServerPool.shutdown();
+		SshSession.closeAll();
+		TimeoutService.shutdown();
 		if (appDbUtil != null) {
 			appDbUtil.destroy();
 		}
@@ -148,7 +169,48 @@ public class AppLoader implements ServletContextListener {
 		ToolConsumerUserDao.setDbUtil(appDbUtil);
 		ToolResourceUserDao.setDbUtil(appDbUtil);
 		ToolAttemptDao.setDbUtil(appDbUtil);
+		ReassessmentDao.setDbUtil(appDbUtil);
+		DeferredAssessmentDao.setDbUtil(appDbUtil);
+		OutcomeDeliveryDao.setDbUtil(appDbUtil);
+		OutcomeResyncDao.setDbUtil(appDbUtil);
+
+		// Limits of connections of HTTP tools
+		HttpClientManager.configure(getIntParameter(sce, "httpMaxConnections"),
+				getIntParameter(sce, "httpMaxConnectionsPerServer"));
+		// Timeouts of requests to tool consumers
+		OutcomeService.configure(getIntParameter(sce, "outcomeConnectTimeout"),
+				getIntParameter(sce, "outcomeSocketTimeout"), getIntParameter(sce, "outcomeRequestTimeout"));
+
+		// Accept deliveries
+		AssessmentQueue.start();
+		// Continue reassessments interrupted by a shutdown
+		ReassessmentService.resume();
+		// Assess pending deferred deliveries
+		DeferredAssessmentService.start();
+		// Write pending scores in tool consumers
+		OutcomeDeliveryService.start();
+		// Continue resynchronizations of scores interrupted by a shutdown
+		OutcomeResyncService.resume();
+	}
 
+	/**
+	 * Gets an integer context parameter.
+	 *
+	 * @param sce  the servlet context event
+	 * @param name name of parameter
+	 * @return the value, or 0 if it does not exist or is invalid
+	 */
+	private int getIntParameter(ServletContextEvent sce, String name) {
+		int value = 0;
+		final String param = sce.getServletContext().getInitParameter(name);
+		if (param != null) {
+			try {
+				value = Integer.parseInt(param.trim());
+			} catch (final NumberFormatException e) {
+				logger.error("Invalid context parameter {}: {}", name, param);
+			}
+		}
+		return value;
 	}
 
 }
\ No newline at end of file
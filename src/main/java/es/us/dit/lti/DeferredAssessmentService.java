@@ -0,0 +1,354 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.config.ToolUiConfig;
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.DeferredAssessment;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+import es.us.dit.lti.persistence.DeferredAssessmentDao;
+import es.us.dit.lti.persistence.ToolAttemptDao;
+import es.us.dit.lti.persistence.ToolDao;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.DeferredAssessmentConfig;
+import es.us.dit.lti.runner.ExecutionTimeouts;
+import es.us.dit.lti.runner.ToolRunner;
+import es.us.dit.lti.servlet.AssessServlet;
+
+/**
+ * Background assessment of deferred deliveries.
+ *
+ * <p>Deferred deliveries are saved in the database and drained periodically,
+ * in order of arrival, as jobs of {@link AssessmentQueue}. The number of
+ * assessments started per minute is limited for each tool (see
+ * {@link DeferredAssessmentConfig}). When a delivery is assessed, its attempt
+ * is updated and the score is queued to be written in the tool consumer (see
+ * {@link OutcomeDeliveryService}).
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class DeferredAssessmentService {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(DeferredAssessmentService.class);
+	/**
+	 * Error code if assessment was successful and no outcome must be written.
+	 */
+	private static final int OK_WITHOUT_OUTCOME = 0;
+	/**
+	 * Seconds between drains of pending assessments.
+	 */
+	private static final long DRAIN_PERIOD = 5;
+	/**
+	 * Maximum number of pending assessments read in each drain.
+	 */
+	private static final int DRAIN_BATCH = 100;
+	/**
+	 * Maximum number of tries of an assessment that fails because of the
+	 * corrector or the runner.
+	 */
+	private static final int MAX_TRIES = 3;
+	/**
+	 * Prefix of the owner of jobs, it can not be a valid user ID.
+	 */
+	private static final String OWNER_PREFIX = "#deferred-";
+
+	/**
+	 * Serial IDs of deferred assessments in the assessment queue.
+	 */
+	private static final Set<Integer> inQueue = ConcurrentHashMap.newKeySet();
+	/**
+	 * Time in milliseconds when the next assessment of each tool can start, by
+	 * tool serial ID. Only used by the drain thread.
+	 */
+	private static final Map<Integer, Long> nextStart = new HashMap<>();
+	/**
+	 * Scheduler of drains, a single thread.
+	 */
+	private static ScheduledExecutorService scheduler = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private DeferredAssessmentService() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Starts the periodic drain of pending assessments.
+	 */
+	public static synchronized void start() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread t = new Thread(r, "tpm-deferred");
+				t.setDaemon(true);
+				return t;
+			});
+			scheduler.scheduleWithFixedDelay(DeferredAssessmentService::drain, DRAIN_PERIOD, DRAIN_PERIOD,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stops the drain, pending assessments remain in the database.
+	 */
+	public static void shutdown() {
+		ScheduledExecutorService old;
+		synchronized (DeferredAssessmentService.class) {
+			old = scheduler;
+			scheduler = null;
+		}
+		if (old != null) {
+			old.shutdownNow();
+		}
+	}
+
+	/**
+	 * Defers the assessment of a saved attempt.
+	 *
+	 * @param attempt      the attempt, already saved with error code
+	 *                     {@link ToolRunner#ERROR_DEFERRED}
+	 * @param extraArgs    extra arguments of the corrector
+	 * @param writeOutcome if the score must be written in the tool consumer
+	 * @return true if successful
+	 */
+	public static boolean defer(Attempt attempt, List<String> extraArgs, boolean writeOutcome) {
+		final DeferredAssessment da = new DeferredAssessment();
+		da.setAttempt(attempt);
+		da.setExtraArgs(extraArgs);
+		da.setWriteOutcome(writeOutcome);
+		return DeferredAssessmentDao.create(da);
+	}
+
+	/**
+	 * Submits the oldest pending assessments allowed by the rate of their tools.
+	 */
+	private static void drain() {
+		try {
+			final long now = System.currentTimeMillis();
+			final Map<Integer, Tool> tools = new HashMap<>();
+			for (final DeferredAssessment da : DeferredAssessmentDao.getPending(DRAIN_BATCH)) {
+				final int toolSid = da.getTool().getSid();
+				if (!inQueue.contains(da.getSid())) {
+					final Tool tool = tools.computeIfAbsent(toolSid, ToolDao::getBySid);
+					if (tool != null && isStartAllowed(tool, now)) {
+						final int res = submit(da, tool);
+						if (res > 0) {
+							nextStart.put(toolSid, nextStart.get(toolSid) + getInterval(tool));
+						} else if (res < 0) {
+							// Queue full, try in next drain
+							nextStart.put(toolSid, Long.MAX_VALUE);
+						}
+					}
+				}
+			}
+			// Full queues are tried again
+			nextStart.values().removeIf(t -> t == Long.MAX_VALUE);
+		} catch (final RuntimeException e) {
+			logger.error("Deferred assessments drain", e);
+		}
+	}
+
+	/**
+	 * Checks if a new assessment of a tool can start now.
+	 *
+	 * <p>Unused time of previous drains is not accumulated, so the rate is
+	 * never exceeded by more than the assessments of a drain period.
+	 *
+	 * @param tool the tool
+	 * @param now  current time in milliseconds
+	 * @return true if it can start
+	 */
+	private static boolean isStartAllowed(Tool tool, long now) {
+		final long oldest = now - TimeUnit.SECONDS.toMillis(DRAIN_PERIOD);
+		long next = nextStart.getOrDefault(tool.getSid(), oldest);
+		if (next < oldest) {
+			next = oldest;
+		}
+		nextStart.put(tool.getSid(), next);
+		return next <= now;
+	}
+
+	/**
+	 * Gets the milliseconds between the start of two assessments of a tool.
+	 *
+	 * @param tool the tool
+	 * @return the interval in milliseconds
+	 */
+	private static long getInterval(Tool tool) {
+		final DeferredAssessmentConfig config = tool.getToolUiConfig().getDeferred();
+		int perMinute = DeferredAssessmentConfig.DEFAULT_PER_MINUTE;
+		if (config != null) {
+			perMinute = Math.max(1, config.getPerMinute());
+		}
+		return TimeUnit.MINUTES.toMillis(1) / perMinute;
+	}
+
+	/**
+	 * Submits a pending assessment to the assessment queue.
+	 *
+	 * @param da   the deferred assessment
+	 * @param tool the tool
+	 * @return 1 if submitted, -1 if the queue of the tool is full or stopped, 0
+	 *         otherwise
+	 */
+	private static int submit(DeferredAssessment da, Tool tool) {
+		int res = 0;
+		final String owner = OWNER_PREFIX + da.getSid();
+		final AssessmentQueue.Admission admission = AssessmentQueue.admit(owner, tool);
+		if (admission == AssessmentQueue.Admission.FULL || admission == AssessmentQueue.Admission.STOPPED) {
+			res = -1;
+		} else if (admission == AssessmentQueue.Admission.ACCEPTED) {
+			inQueue.add(da.getSid());
+			final String jobId = UUID.randomUUID().toString();
+			final AssessmentJob job = new AssessmentJob(jobId, owner, tool.getName(), out -> {
+				try {
+					assess(da, tool);
+				} finally {
+					AssessmentQueue.remove(jobId);
+					inQueue.remove(da.getSid());
+				}
+			});
+			if (AssessmentQueue.submit(job, tool)) {
+				res = 1;
+			} else {
+				AssessmentQueue.release(owner, tool);
+				inQueue.remove(da.getSid());
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Assesses a deferred delivery, updates its attempt and queues the outcome.
+	 *
+	 * <p>If the corrector or the runner fail, it is tried again later, up to
+	 * {@value #MAX_TRIES} times. If the corrector is unavailable (see
+	 * {@link ToolRunner#ERROR_UNAVAILABLE}), it remains pending without counting a
+	 * try.
+	 *
+	 * @param da   the deferred assessment
+	 * @param tool the tool
+	 */
+	private static void assess(DeferredAssessment da, Tool tool) {
+		// Current data, it may have been deleted
+		final Attempt attempt = ToolAttemptDao.getBySid(da.getAttempt().getSid());
+		final ToolRunner executer = AssessServlet.getToolRunner(tool);
+		if (attempt == null) {
+			DeferredAssessmentDao.delete(da);
+		} else if (executer != null) {
+			final ToolUiConfig tui = tool.getToolUiConfig();
+			final ResourceUser ru = attempt.getResourceUser();
+			ru.getResourceLink().setTool(tool);
+			final String userFilePath = attempt.getUserFilePath();
+			final String outputPath = attempt.getCorrectorResultPathFromFile(userFilePath);
+			final String userId = ru.getUser().getSourceId();
+			int scoreInt = ToolRunner.ERROR_RUNNER_EXCEPTION;
+			if (new File(userFilePath).isFile()) {
+				final int counter = ToolDao.incrementCounter(tool);
+				logger.info("{}:{} > {} > deferred assessment of {}", tool.getName(), counter, userId,
+						attempt.getSid());
+				final long start = System.currentTimeMillis();
+				scoreInt = executer.exec(userFilePath, outputPath, userId, attempt.getFileName(), counter, false,
+						da.getExtraArgs(), ExecutionTimeouts.getSeconds(tool));
+				ExecutionTimeouts.record(tool, System.currentTimeMillis() - start, scoreInt);
+				logger.info("{}:{} > {} > result={}", tool.getName(), counter, userId, scoreInt);
+			} else {
+				logger.error("Deferred assessment: file of attempt {} not found", attempt.getSid());
+				da.setTries(MAX_TRIES);
+			}
+			if (scoreInt == ToolRunner.ERROR_UNAVAILABLE) {
+				// Not started, the corrector is still unavailable; try again in a next drain
+				logger.info("{} > {} > corrector unavailable, attempt {} remains pending", tool.getName(), userId,
+						attempt.getSid());
+			} else if ((scoreInt == ToolRunner.ERROR_CORRECTOR_EXCEPTION
+					|| scoreInt == ToolRunner.ERROR_RUNNER_EXCEPTION) && da.getTries() + 1 < MAX_TRIES) {
+				// Try again in a next drain
+				da.setTries(da.getTries() + 1);
+				DeferredAssessmentDao.updateTries(da);
+			} else {
+				final File resultFile = new File(outputPath);
+				attempt.setOutputSaved(resultFile.exists() && resultFile.length() > 0);
+				if (scoreInt >= ToolRunner.ERROR_GENERIC) {
+					attempt.setErrorCode(scoreInt);
+				} else {
+					attempt.setScore(scoreInt);
+					attempt.setErrorCode(
+							da.isWriteOutcome() ? OutcomeDeliveryService.OUTCOME_PENDING : OK_WITHOUT_OUTCOME);
+				}
+				cleanFiles(tui, attempt, userFilePath, outputPath);
+				ToolAttemptDao.update(attempt);
+				DeferredAssessmentDao.delete(da);
+				if (attempt.getErrorCode() == OutcomeDeliveryService.OUTCOME_PENDING) {
+					OutcomeDeliveryService.enqueue(attempt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the files that the tool does not keep.
+	 *
+	 * @param tui          the tool extra configuration
+	 * @param attempt      the attempt, its flags are updated
+	 * @param userFilePath path of the delivered file
+	 * @param outputPath   path of the output file
+	 */
+	private static void cleanFiles(ToolUiConfig tui, Attempt attempt, String userFilePath, String outputPath) {
+		final File outputErr = new File(outputPath + Settings.OUTPUT_ERROR_EXT);
+		if (outputErr.exists() && !outputErr.delete()) {
+			logger.error("Error deleting output.error");
+		}
+		if (!tui.isKeepOutput() || attempt.getErrorCode() >= ToolRunner.ERROR_GENERIC
+				&& attempt.getErrorCode() != ToolRunner.ERROR_WRITE_OUTCOME) {
+			final File resultFile = new File(outputPath);
+			if (resultFile.exists() && !resultFile.delete()) {
+				logger.error("Error deleting output");
+			}
+			attempt.setOutputSaved(false);
+		}
+		if (!tui.isKeepFiles()) {
+			if (new File(userFilePath).exists() && !new File(userFilePath).delete()) {
+				logger.error("Error deleting delivery file");
+			} else {
+				attempt.setFileSaved(false);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,493 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.OutcomeDelivery;
+import es.us.dit.lti.entity.ResourceLink;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.entity.ToolKey;
+import es.us.dit.lti.persistence.OutcomeDeliveryDao;
+import es.us.dit.lti.persistence.ToolAttemptDao;
+import es.us.dit.lti.persistence.ToolKeyDao;
+import es.us.dit.lti.persistence.ToolResourceLinkDao;
+import es.us.dit.lti.persistence.ToolResourceUserDao;
+import es.us.dit.lti.runner.ToolRunner;
+
+/**
+ * Background delivery of scores to tool consumers.
+ *
+ * <p>Scores are saved in an outbox in the database, with their attempts, and
+ * written by a pool of workers. Failed deliveries are tried again with
+ * exponential backoff, and the number of simultaneous requests to the same tool
+ * consumer is limited. When no more retries are allowed, the delivery is kept as
+ * dead until a super user tries it again or discards it.
+ *
+ * <p>Only the latest score of each resource user is kept in the outbox, so a
+ * score that has not been sent yet is replaced by a newer one instead of
+ * sending both. Attempt instants are compared so an older score never replaces
+ * a newer one, scores of the same user are written one at a time, and a score
+ * is not written if a later one of the user was already written.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class OutcomeDeliveryService {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OutcomeDeliveryService.class);
+	/**
+	 * Error code of an attempt whose score is waiting to be written in the
+	 * consumer.
+	 */
+	public static final int OUTCOME_PENDING = 2;
+	/**
+	 * Error code if assessment was successful and no outcome must be written.
+	 */
+	private static final int OK_WITHOUT_OUTCOME = 0;
+	/**
+	 * Error code if assessment was successful and outcome was written in consumer.
+	 */
+	private static final int OK_WITH_OUTCOME = 1;
+	/**
+	 * Seconds between drains of pending deliveries.
+	 */
+	private static final long DRAIN_PERIOD = 5;
+	/**
+	 * Maximum number of pending deliveries read in each drain.
+	 */
+	private static final int DRAIN_BATCH = 100;
+	/**
+	 * Number of workers.
+	 */
+	private static final int WORKERS = 4;
+	/**
+	 * Maximum number of simultaneous deliveries to the same tool consumer.
+	 */
+	private static final int MAX_PER_CONSUMER = 2;
+	/**
+	 * Maximum number of tries before a delivery is dead.
+	 */
+	private static final int MAX_TRIES = 10;
+	/**
+	 * Seconds before the first retry.
+	 */
+	private static final long FIRST_DELAY = 30;
+	/**
+	 * Maximum seconds between retries.
+	 */
+	private static final long MAX_DELAY = 3600;
+	/**
+	 * Maximum number of tries to queue a score when other deliveries of the same
+	 * user change the outbox.
+	 */
+	private static final int MAX_ENQUEUE_TRIES = 3;
+	/**
+	 * Maximum number of dead deliveries returned.
+	 */
+	private static final int MAX_DEAD = 500;
+
+	/**
+	 * Serial IDs of deliveries in progress.
+	 */
+	private static final Set<Integer> inProgress = ConcurrentHashMap.newKeySet();
+	/**
+	 * Number of deliveries in progress by tool consumer host.
+	 */
+	private static final Map<String, AtomicInteger> inProgressByConsumer = new ConcurrentHashMap<>();
+	/**
+	 * Serial IDs of resource users with a delivery in progress, so scores of the
+	 * same user are written in order.
+	 */
+	private static final Set<Integer> inProgressUsers = ConcurrentHashMap.newKeySet();
+	/**
+	 * A drain has been requested and has not started yet.
+	 */
+	private static final AtomicBoolean drainQueued = new AtomicBoolean();
+	/**
+	 * Scheduler of drains, a single thread.
+	 */
+	private static ScheduledExecutorService scheduler = null;
+	/**
+	 * Workers that write the scores.
+	 */
+	private static ExecutorService workers = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private OutcomeDeliveryService() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Starts the periodic drain of pending deliveries.
+	 */
+	public static synchronized void start() {
+		if (scheduler == null) {
+			drainQueued.set(false);
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread t = new Thread(r, "tpm-outcome");
+				t.setDaemon(true);
+				return t;
+			});
+			final AtomicInteger count = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(WORKERS, r -> {
+				final Thread t = new Thread(r, "tpm-outcome-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			scheduler.scheduleWithFixedDelay(OutcomeDeliveryService::drain, DRAIN_PERIOD, DRAIN_PERIOD,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Stops the drain and the workers, pending deliveries remain in the database.
+	 */
+	public static void shutdown() {
+		ScheduledExecutorService oldScheduler;
+		ExecutorService oldWorkers;
+		synchronized (OutcomeDeliveryService.class) {
+			oldScheduler = scheduler;
+			oldWorkers = workers;
+			scheduler = null;
+			workers = null;
+		}
+		if (oldScheduler != null) {
+			oldScheduler.shutdownNow();
+		}
+		if (oldWorkers != null) {
+			oldWorkers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Drains pending deliveries now, without waiting for the next period.
+	 *
+	 * <p>Requests made before a queued drain starts are served by that drain.
+	 */
+	private static synchronized void wakeUp() {
+		if (scheduler != null && drainQueued.compareAndSet(false, true)) {
+			try {
+				scheduler.execute(OutcomeDeliveryService::drain);
+			} catch (final RejectedExecutionException e) {
+				// stopping
+				drainQueued.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Queues the score of a saved attempt to be written in the tool consumer.
+	 *
+	 * <p>Only the latest score of each resource user is kept: if the user has a
+	 * score waiting with an older attempt, it is replaced by this one, and if the
+	 * waiting attempt is newer, this score is not written. Replaced attempts get
+	 * error code 0 (not written).
+	 *
+	 * <p>If it can not be queued, the score is written now and the error code of
+	 * the attempt is updated.
+	 *
+	 * @param attempt the attempt, already saved with error code
+	 *                {@link #OUTCOME_PENDING}
+	 * @return true if queued, replaced or written, false otherwise
+	 */
+	public static boolean enqueue(Attempt attempt) {
+		boolean res = false;
+		// Other deliveries of the user may change it at the same time
+		for (int i = 0; i < MAX_ENQUEUE_TRIES && !res; i++) {
+			final OutcomeDelivery current = OutcomeDeliveryDao.getByResourceUser(attempt.getResourceUser());
+			if (current == null) {
+				final OutcomeDelivery od = new OutcomeDelivery();
+				od.setAttempt(attempt);
+				res = OutcomeDeliveryDao.create(od);
+			} else if (current.getAttempt().getSid() == attempt.getSid()) {
+				// Already queued
+				res = true;
+			} else if (!current.getAttempt().getInstant().isBefore(attempt.getInstant())) {
+				// A newer score is waiting
+				supersede(attempt.getSid());
+				attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+				res = true;
+			} else {
+				final int replacedSid = current.getAttempt().getSid();
+				if (OutcomeDeliveryDao.replace(current, attempt)) {
+					supersede(replacedSid);
+					res = true;
+				}
+			}
+		}
+		if (res) {
+			wakeUp();
+		} else {
+			logger.error("Outcome of attempt {} could not be queued, writing it now", attempt.getSid());
+			final Attempt current = ToolAttemptDao.getBySid(attempt.getSid());
+			if (current != null) {
+				res = write(current) == null;
+				if (!res) {
+					current.setErrorCode(ToolRunner.ERROR_WRITE_OUTCOME);
+				}
+				ToolAttemptDao.update(current);
+				attempt.setErrorCode(current.getErrorCode());
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Marks as not written an attempt whose score has been replaced by a newer
+	 * one, if it was waiting.
+	 *
+	 * @param sid serial ID of the attempt
+	 */
+	private static void supersede(int sid) {
+		final Attempt attempt = ToolAttemptDao.getBySid(sid);
+		if (attempt != null && attempt.getErrorCode() == OUTCOME_PENDING) {
+			attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+			ToolAttemptDao.update(attempt);
+		}
+	}
+
+	/**
+	 * Gets the dead deliveries.
+	 *
+	 * @return the list of deliveries
+	 */
+	public static List<OutcomeDelivery> getDead() {
+		return OutcomeDeliveryDao.getDead(MAX_DEAD);
+	}
+
+	/**
+	 * Tries again a dead delivery.
+	 *
+	 * @param sid serial ID of the delivery
+	 * @return true if successful
+	 */
+	public static boolean retry(int sid) {
+		final boolean res = OutcomeDeliveryDao.retry(sid);
+		if (res) {
+			wakeUp();
+		}
+		return res;
+	}
+
+	/**
+	 * Discards a dead delivery, its attempt keeps error code
+	 * {@link ToolRunner#ERROR_WRITE_OUTCOME}.
+	 *
+	 * @param sid serial ID of the delivery
+	 * @return true if successful
+	 */
+	public static boolean discard(int sid) {
+		return OutcomeDeliveryDao.deleteDead(sid);
+	}
+
+	/**
+	 * Submits the pending deliveries whose next try has arrived, if their tool
+	 * consumers are not busy.
+	 */
+	private static void drain() {
+		drainQueued.set(false);
+		try {
+			final Set<Integer> users = new HashSet<>();
+			for (final OutcomeDelivery od : OutcomeDeliveryDao.getDue(DRAIN_BATCH)) {
+				// One delivery of each user at a time, the first due
+				if (users.add(od.getAttempt().getResourceUser().getSid()) && !inProgress.contains(od.getSid())
+						&& !inProgressUsers.contains(od.getAttempt().getResourceUser().getSid())) {
+					final String consumer = OutcomeService.getConsumer(
+							od.getAttempt().getResourceUser().getResourceLink().getOutcomeServiceUrl());
+					final AtomicInteger count = inProgressByConsumer.computeIfAbsent(consumer,
+							k -> new AtomicInteger());
+					if (count.get() < MAX_PER_CONSUMER) {
+						submit(od, count);
+					}
+				}
+			}
+		} catch (final RuntimeException e) {
+			logger.error("Outcome deliveries drain", e);
+		}
+	}
+
+	/**
+	 * Submits a pending delivery to the workers.
+	 *
+	 * <p>When it finishes, the outbox is drained again, so a busy consumer gets
+	 * its next delivery as soon as it has a free slot.
+	 *
+	 * @param od    the delivery
+	 * @param count deliveries in progress of its tool consumer
+	 */
+	private static void submit(OutcomeDelivery od, AtomicInteger count) {
+		ExecutorService current;
+		synchronized (OutcomeDeliveryService.class) {
+			current = workers;
+		}
+		if (current != null) {
+			final int userSid = od.getAttempt().getResourceUser().getSid();
+			inProgress.add(od.getSid());
+			inProgressUsers.add(userSid);
+			count.incrementAndGet();
+			try {
+				current.execute(() -> {
+					try {
+						deliver(od);
+					} catch (final RuntimeException e) {
+						logger.error("Outcome delivery", e);
+					} finally {
+						count.decrementAndGet();
+						inProgressUsers.remove(userSid);
+						inProgress.remove(od.getSid());
+						// The consumer has a free slot, do not wait for the next period
+						wakeUp();
+					}
+				});
+			} catch (final RejectedExecutionException e) {
+				count.decrementAndGet();
+				inProgressUsers.remove(userSid);
+				inProgress.remove(od.getSid());
+			}
+		}
+	}
+
+	/**
+	 * Writes the score of a pending delivery and updates its attempt.
+	 *
+	 * <p>If it fails, it is tried again later, up to {@value #MAX_TRIES} times.
+	 *
+	 * @param od the delivery
+	 */
+	private static void deliver(OutcomeDelivery od) {
+		// Current data, it may have been deleted or reassessed
+		final Attempt attempt = ToolAttemptDao.getBySid(od.getAttempt().getSid());
+		if (attempt == null) {
+			OutcomeDeliveryDao.delete(od);
+			return;
+		}
+		final String error = write(attempt);
+		if (error == null) {
+			ToolAttemptDao.update(attempt);
+			if (!OutcomeDeliveryDao.delete(od)) {
+				// Replaced by a newer score while it was written
+				wakeUp();
+			}
+		} else {
+			od.setTries(od.getTries() + 1);
+			od.setLastError(error);
+			if (od.getTries() >= MAX_TRIES) {
+				logger.error("Outcome of attempt {} not written after {} tries: {}", attempt.getSid(),
+						od.getTries(), error);
+				od.setDead(true);
+				attempt.setErrorCode(ToolRunner.ERROR_WRITE_OUTCOME);
+				ToolAttemptDao.update(attempt);
+			} else {
+				logger.info("Outcome of attempt {} not written, try {}: {}", attempt.getSid(), od.getTries(),
+						error);
+				final Calendar next = Calendar.getInstance();
+				next.add(Calendar.MILLISECOND, (int) getDelay(od.getTries()));
+				od.setNextTry(next);
+			}
+			OutcomeDeliveryDao.update(od);
+		}
+	}
+
+	/**
+	 * Gets the delay before a retry.
+	 *
+	 * @param tries number of failed tries, starting at 1
+	 * @return the milliseconds, between half and all of the exponential delay
+	 */
+	private static long getDelay(int tries) {
+		final long delay = TimeUnit.SECONDS.toMillis(Math.min(MAX_DELAY, FIRST_DELAY << Math.min(tries - 1, 20)));
+		return delay / 2 + (long) (Math.random() * (delay / 2 + 1));
+	}
+
+	/**
+	 * Writes the score of an attempt in the tool consumer.
+	 *
+	 * <p>It is not written if the user has a later attempt whose score was
+	 * written, so a newer score is never overwritten.
+	 *
+	 * @param attempt the attempt, its error code is updated if successful
+	 * @return null if successful, the error otherwise
+	 */
+	private static String write(Attempt attempt) {
+		String error = null;
+		final ResourceUser ru = attempt.getResourceUser();
+		final ResourceLink rl = ToolResourceLinkDao.getBySid(ru.getResourceLink().getSid());
+		final ToolKey tk = ToolKeyDao.getBySid(ru.getResourceLink().getToolKey().getSid());
+		final ResourceUser fullRu = ToolResourceUserDao.getBySid(ru.getSid());
+		if (rl == null || tk == null || fullRu == null) {
+			error = "Resource link, tool key or user not found";
+		} else if (rl.getOutcomeServiceUrl() == null || rl.getOutcomeServiceUrl().isEmpty()
+				|| fullRu.getResultSourceId() == null || fullRu.getResultSourceId().isEmpty()) {
+			error = "Outcome service URL or result source ID not available";
+		} else if (hasLaterOutcome(attempt, tk)) {
+			attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+		} else {
+			fullRu.setResourceLink(rl);
+			if (OutcomeService.writeOutcome(fullRu, tk, String.valueOf(attempt.getScore() * 0.01))) {
+				attempt.setErrorCode(OK_WITH_OUTCOME);
+			} else {
+				error = "Outcome not accepted or tool consumer not reachable";
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * Checks if the user of an attempt has a later attempt whose score was
+	 * written in the tool consumer.
+	 *
+	 * @param attempt the attempt
+	 * @param tk      the tool key
+	 * @return true if there is a later written score
+	 */
+	private static boolean hasLaterOutcome(Attempt attempt, ToolKey tk) {
+		boolean res = false;
+		for (final Attempt other : ToolAttemptDao.getUserAttempts(attempt.getResourceUser().getUser(), tk)) {
+			if (other.getResourceUser().getSid() == attempt.getResourceUser().getSid()
+					&& other.getInstant().isAfter(attempt.getInstant())
+					&& other.getErrorCode() == OK_WITH_OUTCOME) {
+				res = true;
+				break;
+			}
+		}
+		return res;
+	}
+
+}
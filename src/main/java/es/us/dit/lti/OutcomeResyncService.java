@@ -0,0 +1,521 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.OutcomeResync;
+import es.us.dit.lti.entity.ResourceLink;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.entity.Tool;
+import es.us.dit.lti.entity.ToolKey;
+import es.us.dit.lti.persistence.OutcomeDeliveryDao;
+import es.us.dit.lti.persistence.OutcomeResyncDao;
+import es.us.dit.lti.persistence.ToolAttemptDao;
+import es.us.dit.lti.persistence.ToolDao;
+import es.us.dit.lti.persistence.ToolKeyDao;
+import es.us.dit.lti.persistence.ToolResourceLinkDao;
+import es.us.dit.lti.persistence.ToolResourceUserDao;
+import es.us.dit.lti.runner.ToolRunner;
+
+/**
+ * Resynchronization of the saved scores of a tool key with the tool consumer,
+ * for example after grades have been lost in the consumer.
+ *
+ * <p>The effective score of each resource user is sent through
+ * {@link OutcomeDeliveryService}, so the limits of simultaneous requests to the
+ * consumers, the retries and the dead deliveries are shared with learners
+ * scores. Users are processed in chunks and a new chunk is not queued while the
+ * outbox has too many pending deliveries. In diff mode, the scores of a chunk
+ * are read in parallel first and only the different ones are sent.
+ *
+ * <p>The progress is saved in the database and running resynchronizations are
+ * resumed after a restart from the last checkpoint.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class OutcomeResyncService {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OutcomeResyncService.class);
+	/**
+	 * Error code if assessment was successful and no outcome must be written.
+	 */
+	private static final int OK_WITHOUT_OUTCOME = 0;
+	/**
+	 * Error code if assessment was successful and outcome was written in consumer.
+	 */
+	private static final int OK_WITH_OUTCOME = 1;
+	/**
+	 * Number of users processed at a time.
+	 */
+	private static final int CHUNK = 50;
+	/**
+	 * Maximum number of pending deliveries in the outbox to queue a new chunk.
+	 */
+	private static final int MAX_QUEUED = 100;
+	/**
+	 * Milliseconds to wait before checking the outbox again.
+	 */
+	private static final long QUEUE_WAIT = 1000;
+	/**
+	 * Maximum difference between two scores (0-1) to be considered the same.
+	 */
+	private static final double SCORE_TOLERANCE = 0.005;
+	/**
+	 * Seconds to wait for resynchronizations to stop on shutdown.
+	 */
+	private static final int SHUTDOWN_WAIT = 10;
+	/**
+	 * Order of attempts of a user, the last one is the effective one.
+	 */
+	private static final Comparator<Attempt> ORDER = Comparator.comparing(Attempt::getInstant)
+			.thenComparingInt(Attempt::getSid);
+
+	/**
+	 * Progress of a running resynchronization.
+	 */
+	private static class Progress {
+		/**
+		 * Resynchronization data.
+		 */
+		private final OutcomeResync resync;
+		/**
+		 * If it has been cancelled by a user.
+		 */
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param resync resynchronization data
+		 */
+		Progress(OutcomeResync resync) {
+			this.resync = resync;
+		}
+	}
+
+	/**
+	 * Running resynchronizations by tool key serial ID.
+	 */
+	private static final Map<Integer, Progress> running = new HashMap<>();
+	/**
+	 * Executor of resynchronizations, created on first use.
+	 */
+	private static ExecutorService executor = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private OutcomeResyncService() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Starts a resynchronization of the scores of a tool key.
+	 *
+	 * @param tk       the tool key
+	 * @param tool     the tool
+	 * @param diffOnly if scores are only written when they differ from the ones
+	 *                 in the tool consumer
+	 * @return the resynchronization or null if there is another one running or
+	 *         the tool does not write outcomes
+	 */
+	public static synchronized OutcomeResync start(ToolKey tk, Tool tool, boolean diffOnly) {
+		OutcomeResync res = null;
+		if (!running.containsKey(tk.getSid()) && tool.isOutcome()) {
+			final OutcomeResync resync = new OutcomeResync();
+			resync.setToolKey(tk);
+			resync.setDiffOnly(diffOnly);
+			if (OutcomeResyncDao.create(resync) && launch(resync)) {
+				res = snapshot(running.get(tk.getSid()));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Cancels the running resynchronization of a tool key.
+	 *
+	 * <p>Scores already queued are sent.
+	 *
+	 * @param tk the tool key
+	 * @return true if there was a running resynchronization
+	 */
+	public static synchronized boolean cancel(ToolKey tk) {
+		final Progress progress = running.get(tk.getSid());
+		if (progress != null) {
+			progress.cancelled = true;
+		}
+		return progress != null;
+	}
+
+	/**
+	 * Gets the running or last resynchronization of a tool key.
+	 *
+	 * @param tk the tool key
+	 * @return a copy of the resynchronization data or null if there is none
+	 */
+	public static OutcomeResync getLast(ToolKey tk) {
+		Progress progress;
+		synchronized (OutcomeResyncService.class) {
+			progress = running.get(tk.getSid());
+		}
+		OutcomeResync res;
+		if (progress != null) {
+			res = snapshot(progress);
+		} else {
+			res = OutcomeResyncDao.getLast(tk);
+		}
+		return res;
+	}
+
+	/**
+	 * Resumes resynchronizations interrupted by a shutdown.
+	 */
+	public static synchronized void resume() {
+		for (final OutcomeResync resync : OutcomeResyncDao.getByStatus(OutcomeResync.Status.RUNNING)) {
+			if (!running.containsKey(resync.getToolKey().getSid())) {
+				logger.info("Resuming resynchronization {}", resync.getSid());
+				launch(resync);
+			}
+		}
+	}
+
+	/**
+	 * Stops running resynchronizations, they will be resumed in next start.
+	 */
+	public static void shutdown() {
+		ExecutorService old;
+		synchronized (OutcomeResyncService.class) {
+			old = executor;
+			executor = null;
+			running.clear();
+		}
+		if (old != null) {
+			old.shutdownNow();
+			try {
+				if (!old.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+					logger.warn("Resynchronizations not stopped");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Launches the execution of a resynchronization in background.
+	 *
+	 * @param resync resynchronization data
+	 * @return true if successful
+	 */
+	private static boolean launch(OutcomeResync resync) {
+		boolean res = true;
+		if (executor == null) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			final ThreadFactory factory = r -> {
+				final Thread t = new Thread(r, "tpm-resync-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			executor = Executors.newCachedThreadPool(factory);
+		}
+		final Progress progress = new Progress(resync);
+		running.put(resync.getToolKey().getSid(), progress);
+		try {
+			executor.execute(() -> process(progress));
+		} catch (final RejectedExecutionException e) {
+			logger.error("Resynchronization rejected: {}", resync.getSid());
+			running.remove(resync.getToolKey().getSid());
+			res = false;
+		}
+		return res;
+	}
+
+	/**
+	 * Sends the effective scores of all users after the checkpoint, chunk by
+	 * chunk.
+	 *
+	 * @param progress progress of the resynchronization
+	 */
+	private static void process(Progress progress) {
+		final OutcomeResync resync = progress.resync;
+		final ToolKey tk = ToolKeyDao.getBySid(resync.getToolKey().getSid());
+		Tool tool = null;
+		if (tk != null) {
+			tool = ToolDao.getBySid(tk.getTool().getSid());
+		}
+		boolean interrupted = false;
+		if (tool == null) {
+			logger.error("Resynchronization {}: tool not found", resync.getSid());
+		} else {
+			final List<Attempt> attempts = select(resync, ToolAttemptDao.getToolKeyAttempts(tk));
+			synchronized (progress) {
+				if (resync.getCheckpointSid() == 0 && resync.getDone() == 0) {
+					resync.setTotal(attempts.size());
+				} else {
+					// Resumed, users after checkpoint are counted again
+					resync.setDone(Math.max(0, resync.getTotal() - attempts.size()));
+				}
+				OutcomeResyncDao.update(resync);
+			}
+			logger.info("Resynchronization {} of {}: {} users", resync.getSid(), tool.getName(), attempts.size());
+			final Map<Integer, ResourceLink> links = new HashMap<>();
+			try {
+				for (int i = 0; i < attempts.size() && !progress.cancelled; i += CHUNK) {
+					waitForOutbox(progress);
+					if (!progress.cancelled) {
+						processChunk(progress, tk, attempts.subList(i, Math.min(i + CHUNK, attempts.size())),
+								links);
+					}
+				}
+			} catch (final InterruptedException e) {
+				interrupted = true;
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!interrupted) {
+			synchronized (progress) {
+				if (progress.cancelled || tool == null) {
+					resync.setStatus(OutcomeResync.Status.CANCELLED);
+				} else {
+					resync.setStatus(OutcomeResync.Status.FINISHED);
+				}
+				OutcomeResyncDao.update(resync);
+			}
+			logger.info("Resynchronization {}: {}", resync.getSid(), resync.getStatus());
+		}
+		synchronized (OutcomeResyncService.class) {
+			running.remove(resync.getToolKey().getSid(), progress);
+		}
+	}
+
+	/**
+	 * Selects the effective attempt of each resource user after the checkpoint.
+	 *
+	 * <p>It is the last original attempt whose score had to be written in the
+	 * tool consumer, written or not.
+	 *
+	 * @param resync resynchronization data
+	 * @param all    all attempts of the tool key
+	 * @return the attempts in order of resource user serial ID
+	 */
+	private static List<Attempt> select(OutcomeResync resync, List<Attempt> all) {
+		final Map<Integer, Attempt> last = new HashMap<>();
+		for (final Attempt attempt : all) {
+			final int ruSid = attempt.getResourceUser().getSid();
+			// Reassessments of instructors are copies that use the original file
+			if (ruSid == attempt.getOriginalResourceUser().getSid() && ruSid > resync.getCheckpointSid()
+					&& isEffective(attempt.getErrorCode())) {
+				final Attempt previous = last.get(ruSid);
+				if (previous == null || ORDER.compare(attempt, previous) > 0) {
+					last.put(ruSid, attempt);
+				}
+			}
+		}
+		final List<Attempt> selected = new ArrayList<>(last.values());
+		selected.sort(Comparator.comparingInt(a -> a.getResourceUser().getSid()));
+		return selected;
+	}
+
+	/**
+	 * Checks if an attempt with an error code had to write its score in the tool
+	 * consumer.
+	 *
+	 * @param errorCode error code of the attempt
+	 * @return true if its score had to be written
+	 */
+	private static boolean isEffective(int errorCode) {
+		return errorCode == OK_WITH_OUTCOME || errorCode == OutcomeDeliveryService.OUTCOME_PENDING
+				|| errorCode == ToolRunner.ERROR_WRITE_OUTCOME;
+	}
+
+	/**
+	 * Waits while the outbox has too many pending deliveries, so learners scores
+	 * are not delayed too much.
+	 *
+	 * @param progress progress of the resynchronization
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static void waitForOutbox(Progress progress) throws InterruptedException {
+		while (!progress.cancelled && OutcomeDeliveryDao.countPending() >= MAX_QUEUED) {
+			Thread.sleep(QUEUE_WAIT);
+		}
+	}
+
+	/**
+	 * Sends the scores of a chunk of users and advances the checkpoint.
+	 *
+	 * @param progress progress of the resynchronization
+	 * @param tk       the tool key
+	 * @param chunk    effective attempts of the users
+	 * @param links    resource links already read, by serial ID
+	 */
+	private static void processChunk(Progress progress, ToolKey tk, List<Attempt> chunk,
+			Map<Integer, ResourceLink> links) {
+		final OutcomeResync resync = progress.resync;
+		int sent = 0;
+		int unchanged = 0;
+		int failed = 0;
+		final List<Attempt> candidates = new ArrayList<>();
+		final List<ResourceUser> users = new ArrayList<>();
+		for (final Attempt attempt : chunk) {
+			final ResourceUser ru = ToolResourceUserDao.getBySid(attempt.getResourceUser().getSid());
+			ResourceLink rl = null;
+			if (ru != null) {
+				rl = links.computeIfAbsent(ru.getResourceLink().getSid(), ToolResourceLinkDao::getBySid);
+			}
+			if (rl != null && isOutcomeAllowed(rl, ru)) {
+				ru.setResourceLink(rl);
+				users.add(ru);
+				candidates.add(attempt);
+			} else {
+				failed++;
+			}
+		}
+		List<String> values = null;
+		if (resync.isDiffOnly() && !users.isEmpty()) {
+			values = OutcomeService.readOutcomes(users, tk);
+		}
+		for (int i = 0; i < candidates.size(); i++) {
+			final Attempt attempt = candidates.get(i);
+			if (values != null && isSameScore(values.get(i), attempt.getScore())) {
+				unchanged++;
+				if (attempt.getErrorCode() == ToolRunner.ERROR_WRITE_OUTCOME) {
+					markWritten(attempt.getSid());
+				}
+			} else {
+				// Current data, it may have changed or been deleted
+				final Attempt current = ToolAttemptDao.getBySid(attempt.getSid());
+				if (current != null && current.getErrorCode() == OK_WITHOUT_OUTCOME) {
+					// Replaced by a newer score, sent by its own delivery
+					unchanged++;
+				} else if (current != null && isEffective(current.getErrorCode())) {
+					current.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+					if (ToolAttemptDao.update(current) && OutcomeDeliveryService.enqueue(current)) {
+						sent++;
+					} else {
+						failed++;
+					}
+				} else {
+					failed++;
+				}
+			}
+		}
+		synchronized (progress) {
+			resync.setDone(resync.getDone() + chunk.size());
+			resync.setSent(resync.getSent() + sent);
+			resync.setUnchanged(resync.getUnchanged() + unchanged);
+			resync.setFailed(resync.getFailed() + failed);
+			resync.setCheckpointSid(chunk.get(chunk.size() - 1).getResourceUser().getSid());
+			OutcomeResyncDao.update(resync);
+		}
+	}
+
+	/**
+	 * Marks as written an attempt with a write error whose score is already in
+	 * the tool consumer.
+	 *
+	 * @param sid serial ID of the attempt
+	 */
+	private static void markWritten(int sid) {
+		final Attempt current = ToolAttemptDao.getBySid(sid);
+		if (current != null && current.getErrorCode() == ToolRunner.ERROR_WRITE_OUTCOME) {
+			current.setErrorCode(OK_WITH_OUTCOME);
+			ToolAttemptDao.update(current);
+		}
+	}
+
+	/**
+	 * Checks if the score of a user can be written in the tool consumer.
+	 *
+	 * @param rl the resource link of the user
+	 * @param ru the resource user
+	 * @return true if the score can be written
+	 */
+	private static boolean isOutcomeAllowed(ResourceLink rl, ResourceUser ru) {
+		return rl.getOutcomeServiceUrl() != null && !rl.getOutcomeServiceUrl().isEmpty()
+				&& !Boolean.parseBoolean(rl.getCustomProperty("custom_nocal")) && ru.getResultSourceId() != null
+				&& !ru.getResultSourceId().isEmpty();
+	}
+
+	/**
+	 * Checks if the score read from the tool consumer is the same as a saved
+	 * score.
+	 *
+	 * @param value the score read (0-1) or null if not read
+	 * @param score the saved score (0-100)
+	 * @return true if they are the same
+	 */
+	private static boolean isSameScore(String value, int score) {
+		boolean res = false;
+		if (value != null) {
+			try {
+				res = Math.abs(Double.parseDouble(value) - score * 0.01) < SCORE_TOLERANCE;
+			} catch (final NumberFormatException e) {
+				// Not a valid score, written again
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Gets a copy of the data of a running resynchronization.
+	 *
+	 * @param progress progress of the resynchronization
+	 * @return a copy of the resynchronization data
+	 */
+	private static OutcomeResync snapshot(Progress progress) {
+		final OutcomeResync res = new OutcomeResync();
+		synchronized (progress) {
+			final OutcomeResync resync = progress.resync;
+			res.setSid(resync.getSid());
+			res.setToolKey(resync.getToolKey());
+			res.setStatus(resync.getStatus());
+			res.setDiffOnly(resync.isDiffOnly());
+			res.setTotal(resync.getTotal());
+			res.setDone(resync.getDone());
+			res.setSent(resync.getSent());
+			res.setUnchanged(resync.getUnchanged());
+			res.setFailed(resync.getFailed());
+			res.setCheckpointSid(resync.getCheckpointSid());
+			res.setCreated(resync.getCreated());
+			res.setUpdated(resync.getUpdated());
+		}
+		return res;
+	}
+
+}
@@ -22,15 +22,29 @@ package es.us.dit.lti;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.XMLConstants;
 
@@ -44,9 +58,13 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpProcessorBuilder;
 import org.apache.http.protocol.RequestContent;
@@ -64,6 +82,7 @@ import org.slf4j.LoggerFactory;
 
 import es.us.dit.lti.entity.ResourceUser;
 import es.us.dit.lti.entity.ToolKey;
+import es.us.dit.lti.runner.TimeoutService;
 import net.oauth.OAuthAccessor;
 import net.oauth.OAuthConsumer;
 import net.oauth.OAuthException;
@@ -74,6 +93,10 @@ import net.oauth.OAuthMessage;
  * <a href= "https://www.imsglobal.org/spec/lti-bo/v1p1/">
  * https://www.imsglobal.org/spec/lti-bo/v1p1/</a>.
  *
+ * <p>Requests share a client whose connections are kept alive and reused, and
+ * the OAuth signing data of each tool key is cached. Read scores are cached for
+ * a short time, and several scores can be read in parallel.
+ *
  * @author Francisco José Fernández Jiménez
  *
  */
@@ -84,9 +107,100 @@ public final class OutcomeService {
 	private static final Logger logger = LoggerFactory.getLogger(OutcomeService.class);
 
 	/**
-	 * Timeout for receiving an HTTP response.
+	 * Default seconds to connect to a tool consumer.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30;
+	/**
+	 * Default maximum seconds without receiving data of a response.
+	 */
+	public static final int DEFAULT_SOCKET_TIMEOUT = 30;
+	/**
+	 * Default maximum seconds of a request, including the wait for a connection.
+	 */
+	public static final int DEFAULT_REQUEST_TIMEOUT = 60;
+	/**
+	 * Maximum number of connections to a tool consumer.
+	 */
+	private static final int MAX_PER_ROUTE = 10;
+	/**
+	 * Maximum number of connections to all tool consumers.
+	 */
+	private static final int MAX_TOTAL = 100;
+	/**
+	 * Seconds that an idle connection is kept alive, if the server does not say
+	 * less.
+	 */
+	private static final int KEEP_ALIVE = 30;
+	/**
+	 * Seconds that a read score is cached.
+	 */
+	private static final long CACHE_TTL = 30;
+	/**
+	 * Maximum number of cached scores.
+	 */
+	private static final int MAX_CACHED = 10000;
+	/**
+	 * Number of threads for batch reads.
+	 */
+	private static final int READ_THREADS = 16;
+	/**
+	 * Maximum number of simultaneous reads of a batch to the same tool consumer.
+	 */
+	private static final int MAX_READS_PER_CONSUMER = 4;
+
+	/**
+	 * Seconds to connect to a tool consumer.
+	 */
+	private static int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	/**
+	 * Maximum seconds without receiving data of a response.
+	 */
+	private static int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+	/**
+	 * Maximum seconds of a request.
+	 */
+	private static int requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+	/**
+	 * Client shared by all requests, with a pool of connections kept alive.
+	 */
+	private static CloseableHttpClient client = null;
+	/**
+	 * OAuth signing data, by consumer key.
+	 */
+	private static final Map<String, OAuthAccessor> accessors = new ConcurrentHashMap<>();
+	/**
+	 * Read scores, by outcome service URL and result source ID.
+	 */
+	private static final Map<String, CachedOutcome> readCache = new ConcurrentHashMap<>();
+	/**
+	 * Threads for batch reads.
+	 */
+	private static ExecutorService readExecutor = null;
+
+	/**
+	 * Score read from a tool consumer, or mark of a score that has changed.
 	 */
-	private static final int TIMEOUT = 30000;
+	private static final class CachedOutcome {
+		/**
+		 * The score, null if it has changed.
+		 */
+		private final String value;
+		/**
+		 * Time when it was read or changed, from {@link System#nanoTime()}.
+		 */
+		private final long time;
+
+		/**
+		 * Creates a cached score.
+		 *
+		 * @param value the score, null if it has changed
+		 * @param time  time when it was read or changed
+		 */
+		private CachedOutcome(String value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
 
 	/**
 	 * Can not create objects.
@@ -95,6 +209,186 @@ public final class OutcomeService {
 		throw new IllegalStateException("Utility class");
 	}
 
+	/**
+	 * Sets the timeouts of requests to tool consumers.
+	 *
+	 * @param connect seconds to connect, 0 or less for the default
+	 * @param socket  maximum seconds without receiving data, 0 or less for the
+	 *                default
+	 * @param request maximum seconds of a request, 0 or less for the default
+	 */
+	public static synchronized void configure(int connect, int socket, int request) {
+		connectTimeout = connect > 0 ? connect : DEFAULT_CONNECT_TIMEOUT;
+		socketTimeout = socket > 0 ? socket : DEFAULT_SOCKET_TIMEOUT;
+		requestTimeout = request > 0 ? request : DEFAULT_REQUEST_TIMEOUT;
+		// a new client with the new timeouts
+		shutdown();
+	}
+
+	/**
+	 * Closes all connections and stops batch reads. A new client is created if
+	 * needed.
+	 */
+	public static synchronized void shutdown() {
+		if (client != null) {
+			try {
+				client.close();
+			} catch (final IOException e) {
+				logger.error("Closing client: {}", e.getMessage());
+			}
+			client = null;
+		}
+		if (readExecutor != null) {
+			readExecutor.shutdownNow();
+			readExecutor = null;
+		}
+		accessors.clear();
+		readCache.clear();
+	}
+
+	/**
+	 * Gets the shared client, creating it if necessary.
+	 *
+	 * @return the client
+	 */
+	private static synchronized CloseableHttpClient getClient() {
+		if (client == null) {
+			final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+			manager.setMaxTotal(MAX_TOTAL);
+			manager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+			final RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeout))
+					.setSocketTimeout((int) TimeUnit.SECONDS.toMillis(socketTimeout))
+					.setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(requestTimeout))
+					.setRedirectsEnabled(false).setContentCompressionEnabled(false).build();
+			final long keepAlive = TimeUnit.SECONDS.toMillis(KEEP_ALIVE);
+			final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+				final long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+						context);
+				return server > 0 ? Math.min(server, keepAlive) : keepAlive;
+			};
+			client = HttpClientBuilder.create().setHttpProcessor(HttpProcessorBuilder.create()
+					.addAll(new RequestUserAgent(
+							VersionInfo.getUserAgent("Apache-HttpClient", "org.apache.http.client", OutcomeService.class)),
+							new RequestTargetHost(), new RequestContent())
+					.build()).setConnectionManager(manager).setKeepAliveStrategy(keepAliveStrategy)
+					.setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+					.evictIdleConnections(KEEP_ALIVE, TimeUnit.SECONDS).build();
+		}
+		return client;
+	}
+
+	/**
+	 * Gets the OAuth signing data of a tool key.
+	 *
+	 * @param key    tool key
+	 * @param secret tool secret
+	 * @return the signing data
+	 */
+	private static OAuthAccessor getAccessor(String key, String secret) {
+		OAuthAccessor accessor = accessors.get(key);
+		if (accessor == null || !Objects.equals(secret, accessor.consumer.consumerSecret)) {
+			// new or changed
+			accessor = new OAuthAccessor(new OAuthConsumer("about:blank", key, secret, null));
+			accessors.put(key, accessor);
+		}
+		return accessor;
+	}
+
+	/**
+	 * Gets the threads for batch reads, creating them if necessary.
+	 *
+	 * @return the executor
+	 */
+	private static synchronized ExecutorService getReadExecutor() {
+		if (readExecutor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			readExecutor = Executors.newFixedThreadPool(READ_THREADS, r -> {
+				final Thread t = new Thread(r, "tpm-outcome-read-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return readExecutor;
+	}
+
+	/**
+	 * Gets the tool consumer of an outcome service URL, used to limit
+	 * simultaneous requests.
+	 *
+	 * @param url the outcome service URL
+	 * @return the host of the URL, or the URL if it is not valid
+	 */
+	static String getConsumer(String url) {
+		String consumer = String.valueOf(url);
+		try {
+			final String host = URI.create(consumer).getHost();
+			if (host != null) {
+				consumer = host;
+			}
+		} catch (final IllegalArgumentException e) {
+			// use the URL
+		}
+		return consumer;
+	}
+
+	/**
+	 * Gets the key of a score in the cache.
+	 *
+	 * @param url       outcome service URL
+	 * @param sourcedId result source ID
+	 * @return the key
+	 */
+	private static String getCacheKey(String url, String sourcedId) {
+		return url + " " + sourcedId;
+	}
+
+	/**
+	 * Gets a cached score.
+	 *
+	 * @param key key of the score
+	 * @return the score, or null if it is not cached or has expired
+	 */
+	private static String getCached(String key) {
+		String value = null;
+		final CachedOutcome cached = readCache.get(key);
+		if (cached != null && System.nanoTime() - cached.time < TimeUnit.SECONDS.toNanos(CACHE_TTL)) {
+			value = cached.value;
+		}
+		return value;
+	}
+
+	/**
+	 * Caches a read score, unless it has changed since the read started.
+	 *
+	 * @param key   key of the score
+	 * @param value the score
+	 * @param start time when the read started, from {@link System#nanoTime()}
+	 */
+	private static void putCached(String key, String value, long start) {
+		final long now = System.nanoTime();
+		if (readCache.size() >= MAX_CACHED) {
+			// Changes are kept while a read may be in progress
+			final long maxAge = TimeUnit.SECONDS.toNanos(Math.max(CACHE_TTL, requestTimeout));
+			readCache.values().removeIf(c -> now - c.time > maxAge);
+			if (readCache.size() >= MAX_CACHED) {
+				readCache.clear();
+			}
+		}
+		readCache.compute(key,
+				(k, old) -> old != null && old.value == null && old.time - start > 0 ? old
+						: new CachedOutcome(value, now));
+	}
+
+	/**
+	 * Removes a cached score because it has been written or deleted.
+	 *
+	 * @param key key of the score
+	 */
+	private static void invalidateCached(String key) {
+		readCache.put(key, new CachedOutcome(null, System.nanoTime()));
+	}
+
 	/**
 	 * Writes outcome/score in tool consumer (external).
 	 *
@@ -132,6 +426,7 @@ public final class OutcomeService {
 			result = true;
 
 		}
+		invalidateCached(getCacheKey(url, sourcedId));
 
 		return result;
 	}
@@ -163,6 +458,7 @@ public final class OutcomeService {
 			result = true;
 
 		}
+		invalidateCached(getCacheKey(url, sourcedId));
 
 		return result;
 	}
@@ -170,6 +466,9 @@ public final class OutcomeService {
 	/**
 	 * Reads outcome/score from tool consumer (external).
 	 *
+	 * <p>Read scores are cached for {@value #CACHE_TTL} seconds, or until they
+	 * are written or deleted with this class.
+	 *
 	 * @param user    user data (<code>ResultSourceId)</code>
 	 * @param toolKey tool key to authenticate request
 	 * @return the score/outcome as a string
@@ -181,6 +480,12 @@ public final class OutcomeService {
 			return result;
 		}
 		final String sourcedId = user.getResultSourceId();
+		final String cacheKey = getCacheKey(url, sourcedId);
+		result = getCached(cacheKey);
+		if (result != null) {
+			return result;
+		}
+		final long start = System.nanoTime();
 		final StringBuilder xml = new StringBuilder();
 		xml.append("    <readResultRequest>\n");
 		xml.append("      <resultRecord>\n");
@@ -195,12 +500,65 @@ public final class OutcomeService {
 			final Element element = getXmlChild(xmlDoc.getRootElement(), "textString");
 			if (element != null) {
 				result = element.getText();
+				putCached(cacheKey, result, start);
 			}
 		}
 
 		return result;
 	}
 
+	/**
+	 * Reads outcomes/scores of several users from their tool consumers.
+	 *
+	 * <p>Scores are read in parallel, with at most
+	 * {@value #MAX_READS_PER_CONSUMER} simultaneous requests to the same tool
+	 * consumer, and cached as in {@link #readOutcome(ResourceUser, ToolKey)}.
+	 *
+	 * @param users   users data (<code>ResultSourceId)</code>
+	 * @param toolKey tool key to authenticate requests
+	 * @return the scores/outcomes as strings, in the same order as users, null if
+	 *         not read
+	 */
+	public static List<String> readOutcomes(List<ResourceUser> users, ToolKey toolKey) {
+		final String[] results = new String[users.size()];
+		// Indexes of users to read, by tool consumer
+		final Map<String, Queue<Integer>> pending = new HashMap<>();
+		for (int i = 0; i < results.length; i++) {
+			final ResourceUser user = users.get(i);
+			final String url = user.getResourceLink().getOutcomeServiceUrl();
+			if (url != null && url.length() > 0) {
+				results[i] = getCached(getCacheKey(url, user.getResultSourceId()));
+				if (results[i] == null) {
+					pending.computeIfAbsent(getConsumer(url), k -> new ConcurrentLinkedQueue<>()).add(i);
+				}
+			}
+		}
+		final List<Future<?>> reads = new ArrayList<>();
+		try {
+			final ExecutorService executor = getReadExecutor();
+			for (final Queue<Integer> queue : pending.values()) {
+				final int readers = Math.min(queue.size(), MAX_READS_PER_CONSUMER);
+				for (int i = 0; i < readers; i++) {
+					reads.add(executor.submit(() -> {
+						Integer index;
+						while ((index = queue.poll()) != null) {
+							results[index] = readOutcome(users.get(index), toolKey);
+						}
+					}));
+				}
+			}
+			for (final Future<?> read : reads) {
+				read.get();
+			}
+		} catch (final ExecutionException | RejectedExecutionException e) {
+			logger.error("Batch read: {}", e.getMessage());
+		} catch (final InterruptedException e) {
+			logger.error("Batch read interrupted");
+			Thread.currentThread().interrupt();
+		}
+		return Arrays.asList(results);
+	}
+
 	/**
 	 * Gest a child tag of a XML document.
 	 *
@@ -297,8 +655,7 @@ public final class OutcomeService {
 		// OAuth signature
 		final Map<String, String> header = new HashMap<>();
 		final OAuthMessage oAuthMessage = new OAuthMessage("POST", urlNoQuery, params.entrySet());
-		final OAuthConsumer oAuthConsumer = new OAuthConsumer("about:blank", key, secret, null);
-		final OAuthAccessor oAuthAccessor = new OAuthAccessor(oAuthConsumer);
+		final OAuthAccessor oAuthAccessor = getAccessor(key, secret);
 		try {
 			oAuthMessage.addRequiredParameters(oAuthAccessor);
 			header.put("Authorization", oAuthMessage.getAuthorizationHeader(null));
@@ -378,16 +735,7 @@ public final class OutcomeService {
 
 		String fileContent = null;
 
-		// set the connection timeout
-		final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(TIMEOUT).setRedirectsEnabled(false)
-				.setContentCompressionEnabled(false).build();
-
-		final HttpClient client = HttpClientBuilder.create().setHttpProcessor(HttpProcessorBuilder.create()
-				.addAll(new RequestUserAgent(
-						VersionInfo.getUserAgent("Apache-HttpClient", "org.apache.http.client", OutcomeService.class)),
-						new RequestTargetHost(), new RequestContent())
-				.build()).setDefaultRequestConfig(requestConfig).build();
-
+		final HttpClient client = getClient();
 		final HttpPost httpPost = new HttpPost();
 
 		try {
@@ -413,8 +761,20 @@ public final class OutcomeService {
 				}
 			}
 
-			final HttpResponse response = client.execute(httpPost);
-			fileContent = processHttpResponse(response);
+			// total time of the request
+			final ScheduledFuture<?> timeout = TimeoutService.schedule(httpPost::abort, requestTimeout,
+					TimeUnit.SECONDS);
+			try {
+				final HttpResponse response = client.execute(httpPost);
+				try {
+					fileContent = processHttpResponse(response);
+				} finally {
+					// the connection returns to the pool
+					EntityUtils.consumeQuietly(response.getEntity());
+				}
+			} finally {
+				timeout.cancel(false);
+			}
 
 		} catch (IOException | URISyntaxException e) {
 			fileContent = null;
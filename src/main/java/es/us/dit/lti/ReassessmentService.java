@@ -0,0 +1,629 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.config.ToolUiConfig;
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.Reassessment;
+import es.us.dit.lti.entity.ResourceLink;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+import es.us.dit.lti.entity.ToolKey;
+import es.us.dit.lti.persistence.ReassessmentDao;
+import es.us.dit.lti.persistence.ToolAttemptDao;
+import es.us.dit.lti.persistence.ToolDao;
+import es.us.dit.lti.persistence.ToolKeyDao;
+import es.us.dit.lti.persistence.ToolResourceLinkDao;
+import es.us.dit.lti.persistence.ToolResourceUserDao;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.ExecutionTimeouts;
+import es.us.dit.lti.runner.ToolRunner;
+import es.us.dit.lti.servlet.AssessServlet;
+
+/**
+ * Bulk reassessment of the saved attempts of a tool key.
+ *
+ * <p>Each attempt is assessed again with the current corrector as a job of
+ * {@link AssessmentQueue}, so the limits of concurrency of the tool and the
+ * fair sharing with learners deliveries are respected. The number of jobs
+ * in the queue at the same time is also limited.
+ *
+ * <p>The progress is saved in the database and running reassessments are
+ * resumed after a restart from the last checkpoint.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class ReassessmentService {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ReassessmentService.class);
+	/**
+	 * Error code if assessment was successful and no outcome must be written.
+	 */
+	private static final int OK_WITHOUT_OUTCOME = 0;
+	/**
+	 * Error code if assessment was successful and outcome was written in consumer.
+	 */
+	private static final int OK_WITH_OUTCOME = 1;
+	/**
+	 * Milliseconds to wait before retrying the admission of a job.
+	 */
+	private static final long ADMISSION_RETRY = 1000;
+	/**
+	 * Seconds to wait for reassessments to stop on shutdown.
+	 */
+	private static final int SHUTDOWN_WAIT = 10;
+	/**
+	 * Prefix of the owner of jobs, it can not be a valid user ID.
+	 */
+	private static final String OWNER_PREFIX = "#reassessment-";
+	/**
+	 * Order of reassessment, the same as the checkpoint.
+	 */
+	private static final Comparator<Attempt> ORDER = Comparator.comparing(Attempt::getInstant)
+			.thenComparingInt(Attempt::getSid);
+
+	/**
+	 * Progress of a running reassessment.
+	 */
+	private static class Progress {
+		/**
+		 * Reassessment data.
+		 */
+		private final Reassessment reassessment;
+		/**
+		 * Attempts to reassess in order.
+		 */
+		private List<Attempt> attempts = new ArrayList<>();
+		/**
+		 * If each attempt has been reassessed.
+		 */
+		private boolean[] completed = new boolean[0];
+		/**
+		 * Index of the first attempt not reassessed.
+		 */
+		private int next = 0;
+		/**
+		 * If it has been cancelled by a user.
+		 */
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param reassessment reassessment data
+		 */
+		Progress(Reassessment reassessment) {
+			this.reassessment = reassessment;
+		}
+	}
+
+	/**
+	 * Running reassessments by tool key serial ID.
+	 */
+	private static final Map<Integer, Progress> running = new HashMap<>();
+	/**
+	 * Executor of reassessments, created on first use.
+	 */
+	private static ExecutorService executor = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private ReassessmentService() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Starts a reassessment of the saved attempts of a tool key.
+	 *
+	 * @param tk          the tool key
+	 * @param tool        the tool
+	 * @param errorsOnly  if only attempts with errors are reassessed
+	 * @param pushOutcome if new scores are written in the tool consumer
+	 * @return the reassessment or null if there is another one running or the
+	 *         tool does not accept deliveries
+	 */
+	public static synchronized Reassessment start(ToolKey tk, Tool tool, boolean errorsOnly,
+			boolean pushOutcome) {
+		Reassessment res = null;
+		if (!running.containsKey(tk.getSid()) && tool.getToolUiConfig().getMaxConcurrentUsers() != 0) {
+			final Reassessment reassessment = new Reassessment();
+			reassessment.setToolKey(tk);
+			reassessment.setErrorsOnly(errorsOnly);
+			reassessment.setPushOutcome(pushOutcome && tool.isOutcome());
+			if (ReassessmentDao.create(reassessment) && launch(reassessment)) {
+				res = snapshot(running.get(tk.getSid()));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Cancels the running reassessment of a tool key.
+	 *
+	 * <p>Jobs already in the queue are finished.
+	 *
+	 * @param tk the tool key
+	 * @return true if there was a running reassessment
+	 */
+	public static synchronized boolean cancel(ToolKey tk) {
+		final Progress progress = running.get(tk.getSid());
+		if (progress != null) {
+			progress.cancelled = true;
+		}
+		return progress != null;
+	}
+
+	/**
+	 * Gets the running or last reassessment of a tool key.
+	 *
+	 * @param tk the tool key
+	 * @return a copy of the reassessment data or null if there is none
+	 */
+	public static Reassessment getLast(ToolKey tk) {
+		Progress progress;
+		synchronized (ReassessmentService.class) {
+			progress = running.get(tk.getSid());
+		}
+		Reassessment res;
+		if (progress != null) {
+			res = snapshot(progress);
+		} else {
+			res = ReassessmentDao.getLast(tk);
+		}
+		return res;
+	}
+
+	/**
+	 * Resumes reassessments interrupted by a shutdown.
+	 */
+	public static synchronized void resume() {
+		for (final Reassessment reassessment : ReassessmentDao.getByStatus(Reassessment.Status.RUNNING)) {
+			if (!running.containsKey(reassessment.getToolKey().getSid())) {
+				logger.info("Resuming reassessment {}", reassessment.getSid());
+				launch(reassessment);
+			}
+		}
+	}
+
+	/**
+	 * Stops running reassessments, they will be resumed in next start.
+	 */
+	public static void shutdown() {
+		ExecutorService old;
+		synchronized (ReassessmentService.class) {
+			old = executor;
+			executor = null;
+			running.clear();
+		}
+		if (old != null) {
+			old.shutdownNow();
+			try {
+				if (!old.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+					logger.warn("Reassessments not stopped");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Launches the execution of a reassessment in background.
+	 *
+	 * @param reassessment reassessment data
+	 * @return true if successful
+	 */
+	private static boolean launch(Reassessment reassessment) {
+		boolean res = true;
+		if (executor == null) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			final ThreadFactory factory = r -> {
+				final Thread t = new Thread(r, "tpm-reassess-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			executor = Executors.newCachedThreadPool(factory);
+		}
+		final Progress progress = new Progress(reassessment);
+		running.put(reassessment.getToolKey().getSid(), progress);
+		try {
+			executor.execute(() -> process(progress));
+		} catch (final RejectedExecutionException e) {
+			logger.error("Reassessment rejected: {}", reassessment.getSid());
+			running.remove(reassessment.getToolKey().getSid());
+			res = false;
+		}
+		return res;
+	}
+
+	/**
+	 * Reassesses all selected attempts, waiting for the jobs to finish.
+	 *
+	 * @param progress progress of the reassessment
+	 */
+	private static void process(Progress progress) {
+		final Reassessment reassessment = progress.reassessment;
+		final ToolKey tk = ToolKeyDao.getBySid(reassessment.getToolKey().getSid());
+		Tool tool = null;
+		if (tk != null) {
+			tool = ToolDao.getBySid(tk.getTool().getSid());
+		}
+		boolean interrupted = false;
+		if (tool == null) {
+			logger.error("Reassessment {}: tool not found", reassessment.getSid());
+		} else {
+			final Map<Integer, Integer> lastAttempts = new HashMap<>();
+			final List<Attempt> attempts = select(reassessment, tool, ToolAttemptDao.getToolKeyAttempts(tk),
+					lastAttempts);
+			synchronized (progress) {
+				progress.attempts = attempts;
+				progress.completed = new boolean[attempts.size()];
+				if (reassessment.getCheckpoint() == null && reassessment.getDone() == 0) {
+					reassessment.setTotal(attempts.size());
+				} else {
+					// Resumed, attempts after checkpoint are counted again
+					reassessment.setDone(Math.max(0, reassessment.getTotal() - attempts.size()));
+				}
+				ReassessmentDao.update(reassessment);
+			}
+			logger.info("Reassessment {} of {}: {} attempts", reassessment.getSid(), tool.getName(),
+					attempts.size());
+			final int parallelism = getParallelism(tool);
+			final Semaphore permits = new Semaphore(parallelism);
+			try {
+				for (int i = 0; i < attempts.size() && !progress.cancelled && !interrupted; i++) {
+					permits.acquire();
+					final Attempt attempt = attempts.get(i);
+					final boolean push = reassessment.isPushOutcome()
+							&& lastAttempts.get(attempt.getResourceUser().getSid()) == attempt.getSid();
+					if (!submit(progress, i, tool, push, permits)) {
+						// Assessment queue stopped
+						interrupted = true;
+					}
+				}
+				if (!interrupted) {
+					// Wait for all jobs
+					permits.acquire(parallelism);
+				}
+			} catch (final InterruptedException e) {
+				interrupted = true;
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!interrupted) {
+			synchronized (progress) {
+				if (progress.cancelled || tool == null) {
+					reassessment.setStatus(Reassessment.Status.CANCELLED);
+				} else {
+					reassessment.setStatus(Reassessment.Status.FINISHED);
+				}
+				ReassessmentDao.update(reassessment);
+			}
+			logger.info("Reassessment {}: {}", reassessment.getSid(), reassessment.getStatus());
+		}
+		synchronized (ReassessmentService.class) {
+			running.remove(reassessment.getToolKey().getSid(), progress);
+		}
+	}
+
+	/**
+	 * Selects the attempts to reassess and the last attempt of each resource user.
+	 *
+	 * <p>Only original attempts with saved files, created before the start of the
+	 * reassessment and after the checkpoint are selected.
+	 *
+	 * @param reassessment reassessment data
+	 * @param tool         the tool
+	 * @param all          all attempts of the tool key in order
+	 * @param lastAttempts map to fill with the last attempt of each resource user
+	 * @return the attempts to reassess in order
+	 */
+	private static List<Attempt> select(Reassessment reassessment, Tool tool, List<Attempt> all,
+			Map<Integer, Integer> lastAttempts) {
+		final ToolUiConfig tui = tool.getToolUiConfig();
+		final Instant limit = reassessment.getCreated().toInstant();
+		final Instant checkpoint = reassessment.getCheckpoint();
+		final List<Attempt> selected = new ArrayList<>();
+		for (final Attempt attempt : all) {
+			// Reassessments of instructors are copies that use the original file
+			if (attempt.getResourceUser().getSid() == attempt.getOriginalResourceUser().getSid()) {
+				lastAttempts.put(attempt.getResourceUser().getSid(), attempt.getSid());
+				if (attempt.isFileSaved() && !attempt.getInstant().isAfter(limit)
+						&& (!reassessment.isErrorsOnly() || attempt.getErrorCode() >= ToolRunner.ERROR_GENERIC)
+						&& !(tui.isEnableInstructorCommand()
+								&& attempt.getFileName().equals(tui.getCommandFilename()))
+						&& (checkpoint == null || attempt.getInstant().isAfter(checkpoint)
+								|| attempt.getInstant().equals(checkpoint)
+										&& attempt.getSid() > reassessment.getCheckpointSid())) {
+					selected.add(attempt);
+				}
+			}
+		}
+		selected.sort(ORDER);
+		return selected;
+	}
+
+	/**
+	 * Gets the maximum number of jobs of a reassessment in the queue.
+	 *
+	 * <p>Half of the global slots, so that deliveries of learners are not delayed
+	 * too much, and no more than the limit of the tool.
+	 *
+	 * @param tool the tool
+	 * @return the maximum number of jobs
+	 */
+	private static int getParallelism(Tool tool) {
+		int res = Math.max(1, Settings.getConcurrentUsers() / 2);
+		final int max = tool.getToolUiConfig().getMaxConcurrentUsers();
+		if (max > 0) {
+			res = Math.min(res, max);
+		}
+		return res;
+	}
+
+	/**
+	 * Submits the job of an attempt to the assessment queue.
+	 *
+	 * <p>The permit is released when the job finishes.
+	 *
+	 * @param progress progress of the reassessment
+	 * @param index    index of the attempt
+	 * @param tool     the tool
+	 * @param push     if the new score must be written in the tool consumer
+	 * @param permits  permits of jobs in the queue
+	 * @return false if the assessment queue is stopped
+	 * @throws InterruptedException if interrupted while waiting for admission
+	 */
+	private static boolean submit(Progress progress, int index, Tool tool, boolean push,
+			Semaphore permits) throws InterruptedException {
+		final Attempt attempt = progress.attempts.get(index);
+		final String owner = OWNER_PREFIX + progress.reassessment.getSid() + "-" + attempt.getSid();
+		AssessmentQueue.Admission admission;
+		while ((admission = AssessmentQueue.admit(owner, tool)) != AssessmentQueue.Admission.ACCEPTED) {
+			if (admission == AssessmentQueue.Admission.STOPPED) {
+				permits.release();
+				return false;
+			} else if (progress.cancelled) {
+				permits.release();
+				return true;
+			}
+			Thread.sleep(ADMISSION_RETRY);
+		}
+		final String jobId = UUID.randomUUID().toString();
+		final AssessmentJob job = new AssessmentJob(jobId, owner, tool.getName(), out -> {
+			boolean ok = false;
+			try {
+				ok = reassess(attempt.getSid(), tool, push);
+			} finally {
+				AssessmentQueue.remove(jobId);
+				complete(progress, index, ok);
+				permits.release();
+			}
+		});
+		final boolean res = AssessmentQueue.submit(job, tool);
+		if (!res) {
+			AssessmentQueue.release(owner, tool);
+			permits.release();
+		}
+		return res;
+	}
+
+	/**
+	 * Records the reassessment of an attempt and advances the checkpoint.
+	 *
+	 * @param progress progress of the reassessment
+	 * @param index    index of the attempt
+	 * @param ok       if the attempt was reassessed without errors
+	 */
+	private static void complete(Progress progress, int index, boolean ok) {
+		synchronized (progress) {
+			final Reassessment reassessment = progress.reassessment;
+			progress.completed[index] = true;
+			reassessment.setDone(reassessment.getDone() + 1);
+			if (!ok) {
+				reassessment.setFailed(reassessment.getFailed() + 1);
+			}
+			while (progress.next < progress.completed.length && progress.completed[progress.next]) {
+				progress.next++;
+			}
+			if (progress.next > 0) {
+				final Attempt last = progress.attempts.get(progress.next - 1);
+				reassessment.setCheckpoint(last.getInstant());
+				reassessment.setCheckpointSid(last.getSid());
+			}
+			ReassessmentDao.update(reassessment);
+		}
+	}
+
+	/**
+	 * Reassesses an attempt, overwriting its output and updating its score.
+	 *
+	 * @param attemptSid the attempt serial ID
+	 * @param tool       the tool
+	 * @param push       if the new score must be written in the tool consumer
+	 * @return true if successful
+	 */
+	private static boolean reassess(int attemptSid, Tool tool, boolean push) {
+		boolean res = false;
+		// Current data, it may have changed or been deleted
+		final Attempt attempt = ToolAttemptDao.getBySid(attemptSid);
+		final ToolRunner executer = AssessServlet.getToolRunner(tool);
+		if (attempt != null && executer != null) {
+			final ResourceUser ru = attempt.getResourceUser();
+			ru.getResourceLink().setTool(tool);
+			final String userFilePath = attempt.getUserFilePath();
+			final String outputPath = attempt.getCorrectorResultPathFromFile(userFilePath);
+			if (new File(userFilePath).isFile()) {
+				final ResourceLink rl = ToolResourceLinkDao.getBySid(ru.getResourceLink().getSid());
+				final String userId = ru.getUser().getSourceId();
+				final int counter = ToolDao.incrementCounter(tool);
+				logger.info("{}:{} > {} > reassessment of {}", tool.getName(), counter, userId, attemptSid);
+				final long start = System.currentTimeMillis();
+				final int scoreInt = executer.exec(userFilePath, outputPath, userId, attempt.getFileName(),
+						counter, false, getExtraArgs(tool, rl), ExecutionTimeouts.getSeconds(tool));
+				ExecutionTimeouts.record(tool, System.currentTimeMillis() - start, scoreInt);
+				logger.info("{}:{} > {} > result={}", tool.getName(), counter, userId, scoreInt);
+				final File resultFile = new File(outputPath);
+				attempt.setOutputSaved(resultFile.exists() && resultFile.length() > 0);
+				final File outputErr = new File(outputPath + Settings.OUTPUT_ERROR_EXT);
+				if (outputErr.exists() && !outputErr.delete()) {
+					logger.error("Error deleting output.error");
+				}
+				boolean queue = false;
+				if (scoreInt >= ToolRunner.ERROR_GENERIC) {
+					attempt.setErrorCode(scoreInt);
+					attempt.setOutputSaved(false);
+				} else {
+					res = true;
+					attempt.setScore(scoreInt);
+					if (push && rl != null && isOutcomeAllowed(tool, rl, attempt)) {
+						final ResourceUser fullRu = ToolResourceUserDao.getBySid(ru.getSid());
+						fullRu.setResourceLink(rl);
+						if (fullRu.getResultSourceId() != null && !fullRu.getResultSourceId().isEmpty()) {
+							// Written in background, it never replaces a newer score
+							attempt.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+							queue = true;
+						} else {
+							attempt.setErrorCode(ToolRunner.ERROR_WRITE_OUTCOME);
+						}
+					} else if (attempt.getErrorCode() > OK_WITH_OUTCOME) {
+						attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+					}
+				}
+				if (!tool.getToolUiConfig().isKeepOutput()) {
+					if (resultFile.exists() && !resultFile.delete()) {
+						logger.error("Error deleting output");
+					}
+					attempt.setOutputSaved(false);
+				}
+				if (ToolAttemptDao.update(attempt) && queue && !OutcomeDeliveryService.enqueue(attempt)) {
+					logger.error("Reassessment: outcome of attempt {} not written", attemptSid);
+				}
+			} else {
+				logger.error("Reassessment: file of attempt {} not found", attemptSid);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Checks if the score of an attempt can be written in the tool consumer.
+	 *
+	 * <p>The same conditions of a tool session are used. Attempts that did not
+	 * write outcome (instructors) are excluded.
+	 *
+	 * @param tool    the tool
+	 * @param rl      the resource link of the attempt
+	 * @param attempt the attempt, before updating its error code
+	 * @return true if the score can be written
+	 */
+	private static boolean isOutcomeAllowed(Tool tool, ResourceLink rl, Attempt attempt) {
+		return tool.isOutcome() && rl.getOutcomeServiceUrl() != null
+				&& !Boolean.parseBoolean(rl.getCustomProperty("custom_nocal"))
+				&& attempt.getErrorCode() != OK_WITHOUT_OUTCOME;
+	}
+
+	/**
+	 * Gets the extra arguments of the tool without a request.
+	 *
+	 * <p>Expressions that need the request or the tool session can not be
+	 * evaluated and are replaced by empty strings.
+	 *
+	 * @param tool the tool
+	 * @param rl   the resource link of the attempt or null
+	 * @return list of extra arguments
+	 */
+	private static List<String> getExtraArgs(Tool tool, ResourceLink rl) {
+		final List<String> extraArgs = new ArrayList<>();
+		if (tool.getExtraArgs() != null && !tool.getExtraArgs().isEmpty()
+				&& !tool.getExtraArgs().equals("debug")) {
+			for (String token : tool.getExtraArgs().split(",")) {
+				token = token.trim();
+				if (token.equals("${custom_args}")) {
+					String customArgs = null;
+					if (rl != null) {
+						customArgs = rl.getCustomProperty("custom_args");
+					}
+					if (customArgs != null && !customArgs.isEmpty()) {
+						for (final String token2 : customArgs.split(",")) {
+							extraArgs.add(token2.trim());
+						}
+					}
+				} else if (token.contains("${") || token.contains("#{")) {
+					extraArgs.add("");
+				} else {
+					extraArgs.add(token);
+				}
+			}
+		}
+		return extraArgs;
+	}
+
+	/**
+	 * Gets a copy of the data of a running reassessment.
+	 *
+	 * @param progress progress of the reassessment
+	 * @return a copy of the reassessment data
+	 */
+	private static Reassessment snapshot(Progress progress) {
+		final Reassessment res = new Reassessment();
+		synchronized (progress) {
+			final Reassessment reassessment = progress.reassessment;
+			res.setSid(reassessment.getSid());
+			res.setToolKey(reassessment.getToolKey());
+			res.setStatus(reassessment.getStatus());
+			res.setErrorsOnly(reassessment.isErrorsOnly());
+			res.setPushOutcome(reassessment.isPushOutcome());
+			res.setTotal(reassessment.getTotal());
+			res.setDone(reassessment.getDone());
+			res.setFailed(reassessment.getFailed());
+			res.setCheckpoint(reassessment.getCheckpoint());
+			res.setCheckpointSid(reassessment.getCheckpointSid());
+			res.setCreated(reassessment.getCreated());
+			res.setUpdated(reassessment.getUpdated());
+		}
+		return res;
+	}
+
+}
@@ -26,6 +26,10 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 
+import es.us.dit.lti.runner.DeferredAssessmentConfig;
+import es.us.dit.lti.runner.LocalWorkerConfig;
+import es.us.dit.lti.runner.TimeoutPolicyConfig;
+
 /**
  * Class that stores the properties of a tool that you do not want to
  * store separately in the database.
@@ -44,6 +48,11 @@ public class ToolUiConfig implements Serializable {
 	 */
 	private String commandFilename = null;
 
+	/**
+	 * Configuration of deferred assessments, null if disabled.
+	 */
+	private DeferredAssessmentConfig deferred = null;
+
 	/**
 	 * Enables sending text instead of a file.
 	 */
@@ -98,6 +107,11 @@ public class ToolUiConfig implements Serializable {
 	 */
 	private String legendForm = null;
 
+	/**
+	 * Persistent workers of local correctors. Disabled if null.
+	 */
+	private LocalWorkerConfig localWorker = null;
+
 	/**
 	 * Instructors can manage their own attempts and those of other users.
 	 *
@@ -118,6 +132,9 @@ public class ToolUiConfig implements Serializable {
 
 	/**
 	 * Maximum number of users that can use the tool simultaneously.
+	 *
+	 * <p>Other deliveries wait in the queue of the tool. If 0, no delivery is
+	 * accepted. If -1, only the global limit is applied.
 	 */
 	private int maxConcurrentUsers = -1;
 
@@ -143,6 +160,16 @@ public class ToolUiConfig implements Serializable {
 	 */
 	private boolean redirectMode = false;
 
+	/**
+	 * Reuses the result of previous assessments of identical deliveries.
+	 */
+	private boolean resultCache = false;
+
+	/**
+	 * Weight of the tool when sharing the assessment slots with other tools.
+	 */
+	private int schedulingWeight = 1;
+
 	/**
 	 * Submit button text.
 	 */
@@ -153,11 +180,21 @@ public class ToolUiConfig implements Serializable {
 	 */
 	private boolean showAttempts = false;
 
+	/**
+	 * Streams the output of the corrector to the browser while it is running.
+	 */
+	private boolean streamOutput = false;
+
 	/**
 	 * Name of the file that will contain the text written by the user.
 	 */
 	private String textFilename = null;
 
+	/**
+	 * Execution timeout policy.
+	 */
+	private TimeoutPolicyConfig timeout = null;
+
 
 	/**
 	 * Gets the name of the file that will contain the instructors' commands.
@@ -177,6 +214,24 @@ public class ToolUiConfig implements Serializable {
 		this.commandFilename = commandFilename;
 	}
 
+	/**
+	 * Gets the configuration of deferred assessments.
+	 *
+	 * @return the configuration or null if disabled
+	 */
+	public DeferredAssessmentConfig getDeferred() {
+		return deferred;
+	}
+
+	/**
+	 * Sets the configuration of deferred assessments.
+	 *
+	 * @param deferred new value or null to disable
+	 */
+	public void setDeferred(DeferredAssessmentConfig deferred) {
+		this.deferred = deferred;
+	}
+
 	/**
 	 * Gets if it is enabled sending text instead of a file.
 	 *
@@ -365,6 +420,24 @@ public class ToolUiConfig implements Serializable {
 		this.legendForm = legendForm;
 	}
 
+	/**
+	 * Gets the configuration of persistent workers of local correctors.
+	 *
+	 * @return the configuration or null if disabled
+	 */
+	public LocalWorkerConfig getLocalWorker() {
+		return localWorker;
+	}
+
+	/**
+	 * Sets the configuration of persistent workers of local correctors.
+	 *
+	 * @param localWorker new value or null to disable
+	 */
+	public void setLocalWorker(LocalWorkerConfig localWorker) {
+		this.localWorker = localWorker;
+	}
+
 	/**
 	 * Gets if instructors can manage their own attempts and those of other users.
 	 *
@@ -523,6 +596,74 @@ public class ToolUiConfig implements Serializable {
 		this.redirectMode = redirectMode;
 	}
 
+	/**
+	 * Gets if the result of previous assessments of identical deliveries is
+	 * reused.
+	 *
+	 * <p>Deliveries are identical if the file, the corrector, the user, the file
+	 * name, the type of user and the extra arguments are the same.
+	 *
+	 * @return true if enabled
+	 */
+	public boolean isResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Sets if the result of previous assessments of identical deliveries is
+	 * reused.
+	 *
+	 * @param resultCache new value
+	 */
+	public void setResultCache(boolean resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Gets the weight of the tool when sharing the assessment slots with
+	 * other tools.
+	 *
+	 * <p>A tool with weight 2 gets twice as many slots as a tool with weight 1
+	 * when both have queued deliveries.
+	 *
+	 * @return the scheduling weight
+	 */
+	public int getSchedulingWeight() {
+		return schedulingWeight;
+	}
+
+	/**
+	 * Sets the weight of the tool when sharing the assessment slots with
+	 * other tools.
+	 *
+	 * @param schedulingWeight new value, values lower than 1 are treated as 1
+	 */
+	public void setSchedulingWeight(int schedulingWeight) {
+		this.schedulingWeight = schedulingWeight;
+	}
+
+	/**
+	 * Gets if the output of the corrector is streamed to the browser while it
+	 * is running.
+	 *
+	 * <p>The final result is sent when the assessment finishes, as usual.
+	 *
+	 * @return true if enabled
+	 */
+	public boolean isStreamOutput() {
+		return streamOutput;
+	}
+
+	/**
+	 * Sets if the output of the corrector is streamed to the browser while it
+	 * is running.
+	 *
+	 * @param streamOutput new value
+	 */
+	public void setStreamOutput(boolean streamOutput) {
+		this.streamOutput = streamOutput;
+	}
+
 	/**
 	 * Gets the submit button text.
 	 *
@@ -578,6 +719,24 @@ public class ToolUiConfig implements Serializable {
 	}
 
 
+	/**
+	 * Gets the execution timeout policy.
+	 *
+	 * @return the policy or null to use the default limit
+	 */
+	public TimeoutPolicyConfig getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the execution timeout policy.
+	 *
+	 * @param timeout new value or null to use the default limit
+	 */
+	public void setTimeout(TimeoutPolicyConfig timeout) {
+		this.timeout = timeout;
+	}
+
 	/**
 	 * Convert this object to a JSON string.
 	 *
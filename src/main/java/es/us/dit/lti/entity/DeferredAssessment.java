@@ -0,0 +1,156 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.entity;
+
+import java.util.List;
+
+/**
+ * Assessment of a saved attempt that has been deferred.
+ *
+ * <p>The delivery is saved with error code
+ * {@link es.us.dit.lti.runner.ToolRunner#ERROR_DEFERRED} and assessed later in
+ * background.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class DeferredAssessment extends UpdateRecordEntity {
+
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = -2390441683577209146L;
+
+	@Override
+	public long getSerialVersionUid() {
+		return serialVersionUID;
+	}
+
+	/**
+	 * Attempt to assess (only serial ID is required).
+	 */
+	private Attempt attempt;
+	/**
+	 * Tool of the attempt (only serial ID is loaded).
+	 */
+	private Tool tool;
+	/**
+	 * Extra arguments of the corrector, generated when the attempt was delivered.
+	 */
+	private List<String> extraArgs;
+	/**
+	 * If the score must be written in the tool consumer.
+	 */
+	private boolean writeOutcome = false;
+	/**
+	 * Number of failed tries.
+	 */
+	private int tries = 0;
+
+	/**
+	 * Gets the attempt to assess.
+	 *
+	 * @return the attempt
+	 */
+	public Attempt getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * Sets the attempt to assess.
+	 *
+	 * @param attempt the attempt to set
+	 */
+	public void setAttempt(Attempt attempt) {
+		this.attempt = attempt;
+	}
+
+	/**
+	 * Gets the tool of the attempt.
+	 *
+	 * @return the tool
+	 */
+	public Tool getTool() {
+		return tool;
+	}
+
+	/**
+	 * Sets the tool of the attempt.
+	 *
+	 * @param tool the tool to set
+	 */
+	public void setTool(Tool tool) {
+		this.tool = tool;
+	}
+
+	/**
+	 * Gets the extra arguments of the corrector.
+	 *
+	 * @return the extra arguments
+	 */
+	public List<String> getExtraArgs() {
+		return extraArgs;
+	}
+
+	/**
+	 * Sets the extra arguments of the corrector.
+	 *
+	 * @param extraArgs the extra arguments to set
+	 */
+	public void setExtraArgs(List<String> extraArgs) {
+		this.extraArgs = extraArgs;
+	}
+
+	/**
+	 * Gets if the score must be written in the tool consumer.
+	 *
+	 * @return true if it must be written
+	 */
+	public boolean isWriteOutcome() {
+		return writeOutcome;
+	}
+
+	/**
+	 * Sets if the score must be written in the tool consumer.
+	 *
+	 * @param writeOutcome the value to set
+	 */
+	public void setWriteOutcome(boolean writeOutcome) {
+		this.writeOutcome = writeOutcome;
+	}
+
+	/**
+	 * Gets the number of failed tries.
+	 *
+	 * @return the number of tries
+	 */
+	public int getTries() {
+		return tries;
+	}
+
+	/**
+	 * Sets the number of failed tries.
+	 *
+	 * @param tries the number of tries to set
+	 */
+	public void setTries(int tries) {
+		this.tries = tries;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.entity;
+
+import java.util.Calendar;
+
+/**
+ * Score of a saved attempt waiting to be written in the tool consumer.
+ *
+ * <p>The attempt is saved with error code
+ * {@link es.us.dit.lti.OutcomeDeliveryService#OUTCOME_PENDING} and the score is
+ * written later in background, retrying if the tool consumer fails. When no
+ * more retries are allowed, it is kept as dead to be reviewed by super users.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class OutcomeDelivery extends UpdateRecordEntity {
+
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 4410632718190127853L;
+
+	@Override
+	public long getSerialVersionUid() {
+		return serialVersionUID;
+	}
+
+	/**
+	 * Attempt whose score must be written (only serial ID is required).
+	 */
+	private Attempt attempt;
+	/**
+	 * Number of failed tries.
+	 */
+	private int tries = 0;
+	/**
+	 * Time of the next try.
+	 */
+	private Calendar nextTry;
+	/**
+	 * Error of the last failed try.
+	 */
+	private String lastError;
+	/**
+	 * If no more retries are allowed.
+	 */
+	private boolean dead = false;
+
+	/**
+	 * Gets the attempt whose score must be written.
+	 *
+	 * @return the attempt
+	 */
+	public Attempt getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * Sets the attempt whose score must be written.
+	 *
+	 * @param attempt the attempt to set
+	 */
+	public void setAttempt(Attempt attempt) {
+		this.attempt = attempt;
+	}
+
+	/**
+	 * Gets the number of failed tries.
+	 *
+	 * @return the number of tries
+	 */
+	public int getTries() {
+		return tries;
+	}
+
+	/**
+	 * Sets the number of failed tries.
+	 *
+	 * @param tries the number of tries to set
+	 */
+	public void setTries(int tries) {
+		this.tries = tries;
+	}
+
+	/**
+	 * Gets the time of the next try.
+	 *
+	 * @return the time
+	 */
+	public Calendar getNextTry() {
+		return nextTry;
+	}
+
+	/**
+	 * Sets the time of the next try.
+	 *
+	 * @param nextTry the time to set
+	 */
+	public void setNextTry(Calendar nextTry) {
+		this.nextTry = nextTry;
+	}
+
+	/**
+	 * Gets the error of the last failed try.
+	 *
+	 * @return the error, or null
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Sets the error of the last failed try.
+	 *
+	 * @param lastError the error to set
+	 */
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	/**
+	 * Gets if no more retries are allowed.
+	 *
+	 * @return true if it is dead
+	 */
+	public boolean isDead() {
+		return dead;
+	}
+
+	/**
+	 * Sets if no more retries are allowed.
+	 *
+	 * @param dead the value to set
+	 */
+	public void setDead(boolean dead) {
+		this.dead = dead;
+	}
+
+}
@@ -0,0 +1,315 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.entity;
+
+/**
+ * Resynchronization of the scores of the users of a tool key with the tool
+ * consumer.
+ *
+ * <p>The effective score of each resource user is the score of its last
+ * attempt that had to be written in the tool consumer. Users are processed in
+ * order of serial ID and the checkpoint is the last resource user such that it
+ * and all previous ones have been processed, so that it can be resumed after a
+ * restart.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class OutcomeResync extends UpdateRecordEntity {
+
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 6034715982310475113L;
+
+	@Override
+	public long getSerialVersionUid() {
+		return serialVersionUID;
+	}
+
+	/**
+	 * Status of a resynchronization.
+	 */
+	public enum Status {
+		/**
+		 * Unknown, invalid status.
+		 */
+		UNKNOWN(0),
+		/**
+		 * Running or pending to be resumed.
+		 */
+		RUNNING(1),
+		/**
+		 * All users have been processed.
+		 */
+		FINISHED(2),
+		/**
+		 * Cancelled by a user.
+		 */
+		CANCELLED(3);
+
+		/**
+		 * Code associated to status, for saving in db.
+		 */
+		private final int code;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param code code associated to status
+		 */
+		Status(int code) {
+			this.code = code;
+		}
+
+		/**
+		 * Gets the status code.
+		 *
+		 * @return the code
+		 */
+		public int getCode() {
+			return code;
+		}
+
+		/**
+		 * Gets the status from a code.
+		 *
+		 * @param status status code
+		 * @return the status
+		 */
+		public static Status fromInt(int status) {
+			for (final Status s : Status.values()) {
+				if (status == s.getCode()) {
+					return s;
+				}
+			}
+			return Status.UNKNOWN;
+		}
+	}
+
+	/**
+	 * Tool key whose scores are resynchronized.
+	 */
+	private ToolKey toolKey;
+	/**
+	 * Current status.
+	 */
+	private Status status = Status.RUNNING;
+	/**
+	 * If scores are only written when they differ from the ones in the tool
+	 * consumer.
+	 */
+	private boolean diffOnly = false;
+	/**
+	 * Number of users to process.
+	 */
+	private int total = 0;
+	/**
+	 * Number of processed users.
+	 */
+	private int done = 0;
+	/**
+	 * Number of scores sent to the tool consumer.
+	 */
+	private int sent = 0;
+	/**
+	 * Number of scores not sent because they were already in the tool consumer.
+	 */
+	private int unchanged = 0;
+	/**
+	 * Number of scores that could not be sent.
+	 */
+	private int failed = 0;
+	/**
+	 * Serial ID of the checkpoint resource user, 0 if there is no checkpoint.
+	 */
+	private int checkpointSid = 0;
+
+	/**
+	 * Gets the tool key.
+	 *
+	 * @return the tool key
+	 */
+	public ToolKey getToolKey() {
+		return toolKey;
+	}
+
+	/**
+	 * Sets the tool key.
+	 *
+	 * @param toolKey the tool key to set
+	 */
+	public void setToolKey(ToolKey toolKey) {
+		this.toolKey = toolKey;
+	}
+
+	/**
+	 * Gets the status.
+	 *
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Sets the status.
+	 *
+	 * @param status the status to set
+	 */
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * Sets the status from a code.
+	 *
+	 * @param status the status code to set
+	 */
+	public void setStatus(int status) {
+		this.status = Status.fromInt(status);
+	}
+
+	/**
+	 * Gets if scores are only written when they differ.
+	 *
+	 * @return true if scores are only written when they differ
+	 */
+	public boolean isDiffOnly() {
+		return diffOnly;
+	}
+
+	/**
+	 * Sets if scores are only written when they differ.
+	 *
+	 * @param diffOnly the value to set
+	 */
+	public void setDiffOnly(boolean diffOnly) {
+		this.diffOnly = diffOnly;
+	}
+
+	/**
+	 * Gets the number of users to process.
+	 *
+	 * @return the number of users
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Sets the number of users to process.
+	 *
+	 * @param total the number of users to set
+	 */
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Gets the number of processed users.
+	 *
+	 * @return the number of processed users
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	/**
+	 * Sets the number of processed users.
+	 *
+	 * @param done the number of processed users to set
+	 */
+	public void setDone(int done) {
+		this.done = done;
+	}
+
+	/**
+	 * Gets the number of scores sent.
+	 *
+	 * @return the number of scores sent
+	 */
+	public int getSent() {
+		return sent;
+	}
+
+	/**
+	 * Sets the number of scores sent.
+	 *
+	 * @param sent the number of scores sent to set
+	 */
+	public void setSent(int sent) {
+		this.sent = sent;
+	}
+
+	/**
+	 * Gets the number of scores that were already in the tool consumer.
+	 *
+	 * @return the number of unchanged scores
+	 */
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * Sets the number of scores that were already in the tool consumer.
+	 *
+	 * @param unchanged the number of unchanged scores to set
+	 */
+	public void setUnchanged(int unchanged) {
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * Gets the number of scores that could not be sent.
+	 *
+	 * @return the number of failed scores
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Sets the number of scores that could not be sent.
+	 *
+	 * @param failed the number of failed scores to set
+	 */
+	public void setFailed(int failed) {
+		this.failed = failed;
+	}
+
+	/**
+	 * Gets the serial ID of the checkpoint resource user.
+	 *
+	 * @return the serial ID, 0 if there is no checkpoint
+	 */
+	public int getCheckpointSid() {
+		return checkpointSid;
+	}
+
+	/**
+	 * Sets the serial ID of the checkpoint resource user.
+	 *
+	 * @param checkpointSid the serial ID to set
+	 */
+	public void setCheckpointSid(int checkpointSid) {
+		this.checkpointSid = checkpointSid;
+	}
+
+}
@@ -0,0 +1,313 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.entity;
+
+import java.time.Instant;
+
+/**
+ * Bulk reassessment of the attempts of a tool key.
+ *
+ * <p>The progress is saved so that it can be resumed after a restart. The
+ * checkpoint is the last attempt (by instant and serial ID) such that it and
+ * all previous attempts have been reassessed.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class Reassessment extends UpdateRecordEntity {
+
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 4213785011629455607L;
+
+	@Override
+	public long getSerialVersionUid() {
+		return serialVersionUID;
+	}
+
+	/**
+	 * Status of a reassessment.
+	 */
+	public enum Status {
+		/**
+		 * Unknown, invalid status.
+		 */
+		UNKNOWN(0),
+		/**
+		 * Running or pending to be resumed.
+		 */
+		RUNNING(1),
+		/**
+		 * All attempts have been reassessed.
+		 */
+		FINISHED(2),
+		/**
+		 * Cancelled by a user.
+		 */
+		CANCELLED(3);
+
+		/**
+		 * Code associated to status, for saving in db.
+		 */
+		private final int code;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param code code associated to status
+		 */
+		Status(int code) {
+			this.code = code;
+		}
+
+		/**
+		 * Gets the status code.
+		 *
+		 * @return the code
+		 */
+		public int getCode() {
+			return code;
+		}
+
+		/**
+		 * Gets the status from a code.
+		 *
+		 * @param status status code
+		 * @return the status
+		 */
+		public static Status fromInt(int status) {
+			for (final Status s : Status.values()) {
+				if (status == s.getCode()) {
+					return s;
+				}
+			}
+			return Status.UNKNOWN;
+		}
+	}
+
+	/**
+	 * Tool key whose attempts are reassessed.
+	 */
+	private ToolKey toolKey;
+	/**
+	 * Current status.
+	 */
+	private Status status = Status.RUNNING;
+	/**
+	 * If only attempts with errors are reassessed.
+	 */
+	private boolean errorsOnly = false;
+	/**
+	 * If new scores are written in the tool consumer.
+	 */
+	private boolean pushOutcome = false;
+	/**
+	 * Number of attempts to reassess.
+	 */
+	private int total = 0;
+	/**
+	 * Number of reassessed attempts.
+	 */
+	private int done = 0;
+	/**
+	 * Number of reassessed attempts with errors.
+	 */
+	private int failed = 0;
+	/**
+	 * Instant of the checkpoint attempt, null if there is no checkpoint.
+	 */
+	private Instant checkpoint = null;
+	/**
+	 * Serial ID of the checkpoint attempt.
+	 */
+	private int checkpointSid = 0;
+
+	/**
+	 * Gets the tool key.
+	 *
+	 * @return the tool key
+	 */
+	public ToolKey getToolKey() {
+		return toolKey;
+	}
+
+	/**
+	 * Sets the tool key.
+	 *
+	 * @param toolKey the tool key to set
+	 */
+	public void setToolKey(ToolKey toolKey) {
+		this.toolKey = toolKey;
+	}
+
+	/**
+	 * Gets the status.
+	 *
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Sets the status.
+	 *
+	 * @param status the status to set
+	 */
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * Sets the status from a code.
+	 *
+	 * @param status the status code to set
+	 */
+	public void setStatus(int status) {
+		this.status = Status.fromInt(status);
+	}
+
+	/**
+	 * Gets if only attempts with errors are reassessed.
+	 *
+	 * @return true if only attempts with errors are reassessed
+	 */
+	public boolean isErrorsOnly() {
+		return errorsOnly;
+	}
+
+	/**
+	 * Sets if only attempts with errors are reassessed.
+	 *
+	 * @param errorsOnly the value to set
+	 */
+	public void setErrorsOnly(boolean errorsOnly) {
+		this.errorsOnly = errorsOnly;
+	}
+
+	/**
+	 * Gets if new scores are written in the tool consumer.
+	 *
+	 * @return true if new scores are written
+	 */
+	public boolean isPushOutcome() {
+		return pushOutcome;
+	}
+
+	/**
+	 * Sets if new scores are written in the tool consumer.
+	 *
+	 * @param pushOutcome the value to set
+	 */
+	public void setPushOutcome(boolean pushOutcome) {
+		this.pushOutcome = pushOutcome;
+	}
+
+	/**
+	 * Gets the number of attempts to reassess.
+	 *
+	 * @return the number of attempts
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Sets the number of attempts to reassess.
+	 *
+	 * @param total the number of attempts to set
+	 */
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Gets the number of reassessed attempts.
+	 *
+	 * @return the number of reassessed attempts
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	/**
+	 * Sets the number of reassessed attempts.
+	 *
+	 * @param done the number of reassessed attempts to set
+	 */
+	public void setDone(int done) {
+		this.done = done;
+	}
+
+	/**
+	 * Gets the number of reassessed attempts with errors.
+	 *
+	 * @return the number of reassessed attempts with errors
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Sets the number of reassessed attempts with errors.
+	 *
+	 * @param failed the number of reassessed attempts with errors to set
+	 */
+	public void setFailed(int failed) {
+		this.failed = failed;
+	}
+
+	/**
+	 * Gets the instant of the checkpoint attempt.
+	 *
+	 * @return the instant or null if there is no checkpoint
+	 */
+	public Instant getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Sets the instant of the checkpoint attempt.
+	 *
+	 * @param checkpoint the instant to set
+	 */
+	public void setCheckpoint(Instant checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Gets the serial ID of the checkpoint attempt.
+	 *
+	 * @return the serial ID
+	 */
+	public int getCheckpointSid() {
+		return checkpointSid;
+	}
+
+	/**
+	 * Sets the serial ID of the checkpoint attempt.
+	 *
+	 * @param checkpointSid the serial ID to set
+	 */
+	public void setCheckpointSid(int checkpointSid) {
+		this.checkpointSid = checkpointSid;
+	}
+
+}
@@ -37,10 +37,14 @@ import es.us.dit.lti.ToolSession;
 /**
  * Servlet Filter that filters learner pages.
  *
+ * <p>It supports asynchronous requests because the stream of assessments
+ * ({@link es.us.dit.lti.servlet.AssessStreamServlet}) is under its path.
+ *
  * @author Francisco José Fernández Jiménez
  * @version 1.0
  */
-@WebFilter(dispatcherTypes = { DispatcherType.REQUEST, DispatcherType.FORWARD }, urlPatterns = { "/learner/*" })
+@WebFilter(dispatcherTypes = { DispatcherType.REQUEST, DispatcherType.FORWARD }, urlPatterns = { "/learner/*" },
+		asyncSupported = true)
 public class LearnerFilter implements Filter {
 
 	/**
@@ -0,0 +1,266 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.persistence;
+
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.DeferredAssessment;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * The Deferred Assessment Data Access Object is the interface providing access
+ * to pending assessments of saved attempts.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class DeferredAssessmentDao {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(DeferredAssessmentDao.class);
+
+	/**
+	 * Table name of this DAO.
+	 */
+	public static final String DA_TABLE_NAME = "deferred_assessment";
+
+	/**
+	 * Type of the extra arguments, saved in JSON.
+	 */
+	private static final Type EXTRA_ARGS_TYPE = new TypeToken<List<String>>() {
+	}.getType();
+
+	/**
+	 * SQL statement to add a deferred assessment.
+	 */
+	private static final String SQL_NEW = "INSERT INTO " + DA_TABLE_NAME
+			+ " (attempt_sid, extra_args, write_outcome, tries, created, updated) VALUES (?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL statement to get the oldest deferred assessments with their tool.
+	 */
+	private static final String SQL_GET_PENDING = "SELECT " + DA_TABLE_NAME + ".sid, attempt_sid, "
+			+ ToolResourceLinkDao.RL_TABLE_NAME + ".tool_sid, extra_args, write_outcome, tries, " + DA_TABLE_NAME
+			+ ".created, " + DA_TABLE_NAME + ".updated FROM " + DA_TABLE_NAME + "," + ToolAttemptDao.AT_TABLE_NAME
+			+ "," + ToolResourceUserDao.RU_TABLE_NAME + "," + ToolResourceLinkDao.RL_TABLE_NAME + " WHERE attempt_sid="
+			+ ToolAttemptDao.AT_TABLE_NAME + ".sid AND resource_user_sid=" + ToolResourceUserDao.RU_TABLE_NAME
+			+ ".sid AND " + ToolResourceUserDao.RU_TABLE_NAME + ".resource_sid=" + ToolResourceLinkDao.RL_TABLE_NAME
+			+ ".sid ORDER BY " + DA_TABLE_NAME + ".sid LIMIT ?";
+
+	/**
+	 * SQL statement to update the number of tries.
+	 */
+	private static final String SQL_UPDATE_TRIES = "UPDATE " + DA_TABLE_NAME + " SET tries=?, updated=? WHERE sid=?";
+
+	/**
+	 * SQL statement to delete a deferred assessment.
+	 */
+	private static final String SQL_DELETE = "DELETE FROM " + DA_TABLE_NAME + " WHERE sid=?";
+
+	/**
+	 * SQL statement to delete the deferred assessment of an attempt.
+	 */
+	public static final String SQL_DELETE_ATTEMPT = "DELETE FROM " + DA_TABLE_NAME + " WHERE attempt_sid=?";
+
+	/**
+	 * Utility class that provides methods for managing connections to a database.
+	 */
+	private static IDbUtil dbUtil = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private DeferredAssessmentDao() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sets the db utility class.
+	 *
+	 * @param dbu the db utility class to set
+	 */
+	public static synchronized void setDbUtil(IDbUtil dbu) {
+		dbUtil = dbu;
+	}
+
+	/**
+	 * Gets the db utility class.
+	 *
+	 * @return the db utility class
+	 */
+	public static synchronized IDbUtil getDbUtil() {
+		return dbUtil;
+	}
+
+	/**
+	 * Create a record.
+	 *
+	 * @param da record data, the attempt must have a serial ID
+	 * @return true if successful
+	 */
+	public static boolean create(DeferredAssessment da) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_NEW);) {
+			int i = 1;
+			stmt.setInt(i++, da.getAttempt().getSid());
+			stmt.setString(i++, new Gson().toJson(da.getExtraArgs(), EXTRA_ARGS_TYPE));
+			stmt.setBoolean(i++, da.isWriteOutcome());
+			stmt.setInt(i++, da.getTries());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // created
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Create: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			da.setCreated(now);
+			da.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the oldest deferred assessments.
+	 *
+	 * @param max maximum number of records
+	 * @return the list of deferred assessments, with serial IDs of attempt and
+	 *         tool
+	 */
+	public static List<DeferredAssessment> getPending(int max) {
+		final List<DeferredAssessment> list = new ArrayList<>();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_PENDING);) {
+			stmt.setInt(1, max);
+			final ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				int i = 1;
+				final DeferredAssessment da = new DeferredAssessment();
+				da.setSid(rs.getInt(i++));
+				final Attempt attempt = new Attempt();
+				attempt.setSid(rs.getInt(i++));
+				da.setAttempt(attempt);
+				final Tool tool = new Tool();
+				tool.setSid(rs.getInt(i++));
+				da.setTool(tool);
+				da.setExtraArgs(parseExtraArgs(rs.getString(i++)));
+				da.setWriteOutcome(rs.getBoolean(i++));
+				da.setTries(rs.getInt(i++));
+				da.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				da.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				list.add(da);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return list;
+	}
+
+	/**
+	 * Update the number of tries of a record.
+	 *
+	 * @param da record data
+	 * @return true if successful
+	 */
+	public static boolean updateTries(DeferredAssessment da) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_UPDATE_TRIES);) {
+			stmt.setInt(1, da.getTries());
+			stmt.setTimestamp(2, DaoUtil.toTimestamp(now));
+			stmt.setInt(3, da.getSid());
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Update: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			da.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Delete a record.
+	 *
+	 * @param da record data
+	 * @return true if successful
+	 */
+	public static boolean delete(DeferredAssessment da) {
+		boolean deleted = false;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_DELETE);) {
+			stmt.setInt(1, da.getSid());
+			deleted = stmt.executeUpdate() > 0;
+		} catch (final SQLException e) {
+			logger.error("Delete: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Parses the extra arguments saved in JSON.
+	 *
+	 * @param json JSON string
+	 * @return the extra arguments, empty if not valid
+	 */
+	private static List<String> parseExtraArgs(String json) {
+		List<String> extraArgs = null;
+		if (json != null) {
+			try {
+				extraArgs = new Gson().fromJson(json, EXTRA_ARGS_TYPE);
+			} catch (final JsonSyntaxException e) {
+				logger.error("Invalid extra arguments: {}", json);
+			}
+		}
+		if (extraArgs == null) {
+			extraArgs = new ArrayList<>();
+		}
+		return extraArgs;
+	}
+
+}
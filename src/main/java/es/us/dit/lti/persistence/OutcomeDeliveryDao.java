@@ -0,0 +1,536 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.LtiUser;
+import es.us.dit.lti.entity.OutcomeDelivery;
+import es.us.dit.lti.entity.ResourceLink;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * The Outcome Delivery Data Access Object is the interface providing access to
+ * the outbox of scores waiting to be written in tool consumers.
+ *
+ * <p>There is one record by resource user, with its latest score.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class OutcomeDeliveryDao {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OutcomeDeliveryDao.class);
+
+	/**
+	 * Table name of this DAO.
+	 */
+	public static final String OD_TABLE_NAME = "outcome_outbox";
+
+	/**
+	 * Maximum length of the saved error.
+	 */
+	private static final int MAX_ERROR_LENGTH = 255;
+
+	/**
+	 * SQL statement to add a delivery.
+	 */
+	private static final String SQL_NEW = "INSERT INTO " + OD_TABLE_NAME
+			+ " (resource_user_sid, attempt_sid, tries, next_try, last_error, dead, created, updated)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL statement to add the delivery of an attempt, if its resource user has
+	 * none.
+	 */
+	public static final String SQL_NEW_FOR_ATTEMPT = "INSERT INTO " + OD_TABLE_NAME
+			+ " (resource_user_sid, attempt_sid, tries, next_try, last_error, dead, created, updated)"
+			+ " SELECT resource_user_sid, sid, 0, ?, NULL, ?, ?, ? FROM " + ToolAttemptDao.AT_TABLE_NAME
+			+ " WHERE sid=? AND NOT EXISTS (SELECT sid FROM " + OD_TABLE_NAME + " WHERE resource_user_sid="
+			+ ToolAttemptDao.AT_TABLE_NAME + ".resource_user_sid)";
+
+	/**
+	 * SQL statement to get the delivery of a resource user, with the instant of
+	 * its attempt.
+	 */
+	private static final String SQL_GET_BY_RESOURCE_USER = "SELECT " + OD_TABLE_NAME
+			+ ".sid, attempt_sid, epoch_seconds, nanoseconds, tries, next_try, last_error, dead, " + OD_TABLE_NAME
+			+ ".created, " + OD_TABLE_NAME + ".updated FROM " + OD_TABLE_NAME + "," + ToolAttemptDao.AT_TABLE_NAME
+			+ " WHERE " + OD_TABLE_NAME + ".resource_user_sid=? AND attempt_sid=" + ToolAttemptDao.AT_TABLE_NAME
+			+ ".sid";
+
+	/**
+	 * SQL statement to get the deliveries whose next try has arrived, with the
+	 * outcome service URL.
+	 */
+	private static final String SQL_GET_DUE = "SELECT " + OD_TABLE_NAME + ".sid, attempt_sid, " + OD_TABLE_NAME
+			+ ".resource_user_sid, outcome_service_url, tries, next_try, last_error, " + OD_TABLE_NAME
+			+ ".created, " + OD_TABLE_NAME + ".updated FROM " + OD_TABLE_NAME + ","
+			+ ToolResourceUserDao.RU_TABLE_NAME + "," + ToolResourceLinkDao.RL_TABLE_NAME + " WHERE "
+			+ OD_TABLE_NAME + ".resource_user_sid=" + ToolResourceUserDao.RU_TABLE_NAME + ".sid AND "
+			+ ToolResourceUserDao.RU_TABLE_NAME + ".resource_sid=" + ToolResourceLinkDao.RL_TABLE_NAME
+			+ ".sid AND dead=? AND next_try<=? ORDER BY next_try, " + OD_TABLE_NAME + ".sid LIMIT ?";
+
+	/**
+	 * SQL statement to get the dead deliveries, with data to identify them.
+	 */
+	private static final String SQL_GET_DEAD = "SELECT " + OD_TABLE_NAME + ".sid, attempt_sid, epoch_seconds, "
+			+ "nanoseconds, score, source_id, " + ToolDao.TOOL_TABLE_NAME + ".name, outcome_service_url, tries, "
+			+ "next_try, last_error, " + OD_TABLE_NAME + ".created, " + OD_TABLE_NAME + ".updated FROM "
+			+ OD_TABLE_NAME + "," + ToolAttemptDao.AT_TABLE_NAME + "," + ToolResourceUserDao.RU_TABLE_NAME + ","
+			+ ToolConsumerUserDao.LTI_USER_TABLE_NAME + "," + ToolResourceLinkDao.RL_TABLE_NAME + ","
+			+ ToolDao.TOOL_TABLE_NAME + " WHERE attempt_sid=" + ToolAttemptDao.AT_TABLE_NAME + ".sid AND "
+			+ OD_TABLE_NAME + ".resource_user_sid=" + ToolResourceUserDao.RU_TABLE_NAME + ".sid AND "
+			+ ToolResourceUserDao.RU_TABLE_NAME + ".lti_user_sid=" + ToolConsumerUserDao.LTI_USER_TABLE_NAME
+			+ ".sid AND " + ToolResourceUserDao.RU_TABLE_NAME + ".resource_sid=" + ToolResourceLinkDao.RL_TABLE_NAME
+			+ ".sid AND " + ToolResourceLinkDao.RL_TABLE_NAME + ".tool_sid=" + ToolDao.TOOL_TABLE_NAME
+			+ ".sid AND dead=? ORDER BY " + OD_TABLE_NAME + ".sid LIMIT ?";
+
+	/**
+	 * SQL statement to update the state of a delivery after a failed try, if its
+	 * attempt has not been replaced.
+	 */
+	private static final String SQL_UPDATE = "UPDATE " + OD_TABLE_NAME
+			+ " SET tries=?, next_try=?, last_error=?, dead=?, updated=? WHERE sid=? AND attempt_sid=?";
+
+	/**
+	 * SQL statement to replace the attempt of a delivery by a newer one, if it
+	 * has not been replaced or deleted.
+	 */
+	private static final String SQL_REPLACE = "UPDATE " + OD_TABLE_NAME
+			+ " SET attempt_sid=?, tries=0, next_try=?, last_error=NULL, dead=?, updated=? WHERE sid=?"
+			+ " AND attempt_sid=?";
+
+	/**
+	 * SQL statement to try again a dead delivery.
+	 */
+	private static final String SQL_RETRY = "UPDATE " + OD_TABLE_NAME
+			+ " SET tries=0, next_try=?, dead=?, updated=? WHERE sid=? AND dead=?";
+
+	/**
+	 * SQL statement to delete a delivery, if its attempt has not been replaced.
+	 */
+	private static final String SQL_DELETE = "DELETE FROM " + OD_TABLE_NAME + " WHERE sid=? AND attempt_sid=?";
+
+	/**
+	 * SQL statement to delete a dead delivery.
+	 */
+	private static final String SQL_DELETE_DEAD = "DELETE FROM " + OD_TABLE_NAME + " WHERE sid=? AND dead=?";
+
+	/**
+	 * SQL statement to count the pending deliveries.
+	 */
+	private static final String SQL_COUNT_PENDING = "SELECT count(sid) FROM " + OD_TABLE_NAME + " WHERE dead=?";
+
+	/**
+	 * SQL statement to delete the delivery of an attempt.
+	 */
+	public static final String SQL_DELETE_ATTEMPT = "DELETE FROM " + OD_TABLE_NAME + " WHERE attempt_sid=?";
+
+	/**
+	 * Utility class that provides methods for managing connections to a database.
+	 */
+	private static IDbUtil dbUtil = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private OutcomeDeliveryDao() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sets the db utility class.
+	 *
+	 * @param dbu the db utility class to set
+	 */
+	public static synchronized void setDbUtil(IDbUtil dbu) {
+		dbUtil = dbu;
+	}
+
+	/**
+	 * Gets the db utility class.
+	 *
+	 * @return the db utility class
+	 */
+	public static synchronized IDbUtil getDbUtil() {
+		return dbUtil;
+	}
+
+	/**
+	 * Create a record.
+	 *
+	 * @param od record data, the attempt must have a serial ID and a resource user
+	 *           with serial ID
+	 * @return true if successful, false if the resource user has already a record
+	 */
+	public static boolean create(OutcomeDelivery od) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		if (od.getNextTry() == null) {
+			od.setNextTry(now);
+		}
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_NEW);) {
+			int i = 1;
+			stmt.setInt(i++, od.getAttempt().getResourceUser().getSid());
+			stmt.setInt(i++, od.getAttempt().getSid());
+			stmt.setInt(i++, od.getTries());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(od.getNextTry()));
+			stmt.setString(i++, truncate(od.getLastError()));
+			stmt.setBoolean(i++, od.isDead());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // created
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Create: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			od.setCreated(now);
+			od.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the record of a resource user.
+	 *
+	 * @param ru the resource user
+	 * @return the record, with serial ID and instant of its attempt, or null if
+	 *         not found
+	 */
+	public static OutcomeDelivery getByResourceUser(ResourceUser ru) {
+		OutcomeDelivery od = null;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_BY_RESOURCE_USER);) {
+			stmt.setInt(1, ru.getSid());
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				int i = 1;
+				od = new OutcomeDelivery();
+				od.setSid(rs.getInt(i++));
+				final Attempt attempt = new Attempt();
+				attempt.setSid(rs.getInt(i++));
+				attempt.setInstant(Instant.ofEpochSecond(rs.getLong(i++), rs.getInt(i++)));
+				attempt.setResourceUser(ru);
+				od.setAttempt(attempt);
+				od.setTries(rs.getInt(i++));
+				od.setNextTry(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setLastError(rs.getString(i++));
+				od.setDead(rs.getBoolean(i++));
+				od.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return od;
+	}
+
+	/**
+	 * Replaces the attempt of a record, to be tried now with no failed tries.
+	 *
+	 * @param od      record data, with its current attempt
+	 * @param attempt the new attempt
+	 * @return true if successful, false if the current attempt has been replaced
+	 *         or the record deleted
+	 */
+	public static boolean replace(OutcomeDelivery od, Attempt attempt) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_REPLACE);) {
+			int i = 1;
+			stmt.setInt(i++, attempt.getSid());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now));
+			stmt.setBoolean(i++, false);
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now));
+			stmt.setInt(i++, od.getSid());
+			stmt.setInt(i++, od.getAttempt().getSid());
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Replace: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			od.setAttempt(attempt);
+			od.setTries(0);
+			od.setNextTry(now);
+			od.setLastError(null);
+			od.setDead(false);
+			od.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the deliveries whose next try has arrived, the oldest first.
+	 *
+	 * @param max maximum number of records
+	 * @return the list of deliveries, with serial IDs of attempt and resource user
+	 *         and outcome service URL of its resource link
+	 */
+	public static List<OutcomeDelivery> getDue(int max) {
+		final List<OutcomeDelivery> list = new ArrayList<>();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_DUE);) {
+			stmt.setBoolean(1, false);
+			stmt.setTimestamp(2, DaoUtil.toTimestamp(Calendar.getInstance()));
+			stmt.setInt(3, max);
+			final ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				int i = 1;
+				final OutcomeDelivery od = new OutcomeDelivery();
+				od.setSid(rs.getInt(i++));
+				final Attempt attempt = new Attempt();
+				attempt.setSid(rs.getInt(i++));
+				final ResourceUser ru = new ResourceUser();
+				ru.setSid(rs.getInt(i++));
+				final ResourceLink rl = new ResourceLink();
+				rl.setOutcomeServiceUrl(rs.getString(i++));
+				ru.setResourceLink(rl);
+				attempt.setResourceUser(ru);
+				od.setAttempt(attempt);
+				od.setTries(rs.getInt(i++));
+				od.setNextTry(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setLastError(rs.getString(i++));
+				od.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				list.add(od);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return list;
+	}
+
+	/**
+	 * Counts the pending deliveries, not dead.
+	 *
+	 * @return the number of deliveries or -1 if error
+	 */
+	public static int countPending() {
+		int count = -1;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_COUNT_PENDING);) {
+			stmt.setBoolean(1, false);
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				count = rs.getInt(1);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Count: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the dead deliveries, the oldest first.
+	 *
+	 * @param max maximum number of records
+	 * @return the list of deliveries, with instant and score of the attempt,
+	 *         source ID of the user, name of the tool and outcome service URL
+	 */
+	public static List<OutcomeDelivery> getDead(int max) {
+		final List<OutcomeDelivery> list = new ArrayList<>();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_DEAD);) {
+			stmt.setBoolean(1, true);
+			stmt.setInt(2, max);
+			final ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				int i = 1;
+				final OutcomeDelivery od = new OutcomeDelivery();
+				od.setSid(rs.getInt(i++));
+				final Attempt attempt = new Attempt();
+				attempt.setSid(rs.getInt(i++));
+				attempt.setInstant(Instant.ofEpochSecond(rs.getLong(i++), rs.getInt(i++)));
+				attempt.setScore(rs.getInt(i++));
+				final LtiUser user = new LtiUser();
+				user.setSourceId(rs.getString(i++));
+				final Tool tool = new Tool();
+				tool.setName(rs.getString(i++));
+				final ResourceLink rl = new ResourceLink();
+				rl.setTool(tool);
+				rl.setOutcomeServiceUrl(rs.getString(i++));
+				final ResourceUser ru = new ResourceUser();
+				ru.setUser(user);
+				ru.setResourceLink(rl);
+				attempt.setResourceUser(ru);
+				od.setAttempt(attempt);
+				od.setTries(rs.getInt(i++));
+				od.setNextTry(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setLastError(rs.getString(i++));
+				od.setDead(true);
+				od.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				od.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+				list.add(od);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return list;
+	}
+
+	/**
+	 * Update the number of tries, next try, last error and dead flag of a record.
+	 *
+	 * @param od record data
+	 * @return true if successful, false if its attempt has been replaced
+	 */
+	public static boolean update(OutcomeDelivery od) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_UPDATE);) {
+			int i = 1;
+			stmt.setInt(i++, od.getTries());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(od.getNextTry()));
+			stmt.setString(i++, truncate(od.getLastError()));
+			stmt.setBoolean(i++, od.isDead());
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now));
+			stmt.setInt(i++, od.getSid());
+			stmt.setInt(i++, od.getAttempt().getSid());
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Update: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			od.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Tries again a dead record now, with no failed tries.
+	 *
+	 * @param sid serial ID of the record
+	 * @return true if successful, false if it does not exist or is not dead
+	 */
+	public static boolean retry(int sid) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_RETRY);) {
+			stmt.setTimestamp(1, DaoUtil.toTimestamp(now));
+			stmt.setBoolean(2, false);
+			stmt.setTimestamp(3, DaoUtil.toTimestamp(now));
+			stmt.setInt(4, sid);
+			stmt.setBoolean(5, true);
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Retry: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return res;
+	}
+
+	/**
+	 * Delete a record.
+	 *
+	 * @param od record data
+	 * @return true if successful, false if its attempt has been replaced
+	 */
+	public static boolean delete(OutcomeDelivery od) {
+		boolean deleted = false;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_DELETE);) {
+			stmt.setInt(1, od.getSid());
+			stmt.setInt(2, od.getAttempt().getSid());
+			deleted = stmt.executeUpdate() > 0;
+		} catch (final SQLException e) {
+			logger.error("Delete: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete a dead record.
+	 *
+	 * @param sid serial ID of the record
+	 * @return true if successful, false if it does not exist or is not dead
+	 */
+	public static boolean deleteDead(int sid) {
+		boolean deleted = false;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_DELETE_DEAD);) {
+			stmt.setInt(1, sid);
+			stmt.setBoolean(2, true);
+			deleted = stmt.executeUpdate() > 0;
+		} catch (final SQLException e) {
+			logger.error("Delete: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Truncates an error to the length of its column.
+	 *
+	 * @param error the error, may be null
+	 * @return the truncated error
+	 */
+	private static String truncate(String error) {
+		String res = error;
+		if (res != null && res.length() > MAX_ERROR_LENGTH) {
+			res = res.substring(0, MAX_ERROR_LENGTH);
+		}
+		return res;
+	}
+
+}
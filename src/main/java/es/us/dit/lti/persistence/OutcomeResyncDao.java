@@ -0,0 +1,311 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.OutcomeResync;
+import es.us.dit.lti.entity.ToolKey;
+
+/**
+ * The Outcome Resync Data Access Object is the interface providing access to
+ * resynchronizations of scores related data.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class OutcomeResyncDao {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OutcomeResyncDao.class);
+
+	/**
+	 * Table name of this DAO.
+	 */
+	public static final String RS_TABLE_NAME = "outcome_resync";
+
+	/**
+	 * Common fields of queries.
+	 */
+	private static final String SQL_FIELDS = "sid, tool_key_sid, status, diff_only, total_count, done_count,"
+			+ " sent_count, unchanged_count, failed_count, checkpoint_sid, created, updated";
+
+	/**
+	 * SQL statement to get the serial ID of a resynchronization.
+	 */
+	private static final String SQL_GET_SID = "SELECT sid FROM " + RS_TABLE_NAME
+			+ " WHERE tool_key_sid=? AND created=?";
+
+	/**
+	 * SQL statement to add a resynchronization.
+	 */
+	private static final String SQL_NEW = "INSERT INTO " + RS_TABLE_NAME
+			+ " (tool_key_sid, status, diff_only, total_count, done_count, sent_count, unchanged_count,"
+			+ " failed_count, checkpoint_sid, created, updated) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL statement to update the progress of a resynchronization.
+	 */
+	private static final String SQL_UPDATE = "UPDATE " + RS_TABLE_NAME
+			+ " SET status=?, total_count=?, done_count=?, sent_count=?, unchanged_count=?, failed_count=?,"
+			+ " checkpoint_sid=?, updated=? WHERE sid=?";
+
+	/**
+	 * SQL statement to get the last resynchronization of a tool key.
+	 */
+	private static final String SQL_GET_LAST = "SELECT " + SQL_FIELDS + " FROM " + RS_TABLE_NAME
+			+ " WHERE tool_key_sid=? ORDER BY sid DESC LIMIT 1";
+
+	/**
+	 * SQL statement to get resynchronizations by status.
+	 */
+	private static final String SQL_GET_BY_STATUS = "SELECT " + SQL_FIELDS + " FROM " + RS_TABLE_NAME
+			+ " WHERE status=? ORDER BY sid";
+
+	/**
+	 * SQL statement to delete the resynchronizations of a tool key.
+	 */
+	public static final String SQL_DELETE_TK = "DELETE FROM " + RS_TABLE_NAME + " WHERE tool_key_sid=?";
+
+	/**
+	 * Utility class that provides methods for managing connections to a database.
+	 */
+	private static IDbUtil dbUtil = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private OutcomeResyncDao() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sets the db utility class.
+	 *
+	 * @param dbu the db utility class to set
+	 */
+	public static synchronized void setDbUtil(IDbUtil dbu) {
+		dbUtil = dbu;
+	}
+
+	/**
+	 * Gets the db utility class.
+	 *
+	 * @return the db utility class
+	 */
+	public static synchronized IDbUtil getDbUtil() {
+		return dbUtil;
+	}
+
+	/**
+	 * Create a record.
+	 *
+	 * @param resync record data
+	 * @return true if successful
+	 */
+	public static boolean create(OutcomeResync resync) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		// Some databases do not save milliseconds and created is used to get the sid
+		now.set(Calendar.MILLISECOND, 0);
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_NEW);) {
+			int i = 1;
+			stmt.setInt(i++, resync.getToolKey().getSid());
+			stmt.setInt(i++, resync.getStatus().getCode());
+			stmt.setBoolean(i++, resync.isDiffOnly());
+			i = setProgress(stmt, i, resync);
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // created
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Create: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			resync.setCreated(now);
+			resync.setUpdated(now);
+			res = getSidByIds(resync);
+		}
+		return res;
+	}
+
+	/**
+	 * Get the serial ID of a object.
+	 *
+	 * @param resync object data
+	 * @return true if successful
+	 */
+	public static boolean getSidByIds(OutcomeResync resync) {
+		boolean res = false;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_SID);) {
+			stmt.setInt(1, resync.getToolKey().getSid());
+			stmt.setTimestamp(2, DaoUtil.toTimestamp(resync.getCreated()));
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				res = true;
+				resync.setSid(rs.getInt(1));
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return res;
+	}
+
+	/**
+	 * Update the status and progress of a record.
+	 *
+	 * @param resync record data
+	 * @return true if successful
+	 */
+	public static boolean update(OutcomeResync resync) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_UPDATE);) {
+			int i = 1;
+			stmt.setInt(i++, resync.getStatus().getCode());
+			i = setProgress(stmt, i, resync);
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			stmt.setInt(i++, resync.getSid());
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Update: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			resync.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the last resynchronization of a tool key.
+	 *
+	 * @param tk the tool key
+	 * @return the resynchronization or null if not found
+	 */
+	public static OutcomeResync getLast(ToolKey tk) {
+		OutcomeResync resync = null;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_LAST);) {
+			stmt.setInt(1, tk.getSid());
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				resync = fromResultSet(rs);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return resync;
+	}
+
+	/**
+	 * Gets all resynchronizations with a status.
+	 *
+	 * @param status the status
+	 * @return the list of resynchronizations
+	 */
+	public static List<OutcomeResync> getByStatus(OutcomeResync.Status status) {
+		final List<OutcomeResync> list = new ArrayList<>();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_BY_STATUS);) {
+			stmt.setInt(1, status.getCode());
+			final ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				list.add(fromResultSet(rs));
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return list;
+	}
+
+	/**
+	 * Sets the progress parameters of a statement.
+	 *
+	 * @param stmt   the statement
+	 * @param first  index of the first parameter
+	 * @param resync record data
+	 * @return index of the next parameter
+	 * @throws SQLException if a parameter can not be set
+	 */
+	private static int setProgress(PreparedStatement stmt, int first, OutcomeResync resync) throws SQLException {
+		int i = first;
+		stmt.setInt(i++, resync.getTotal());
+		stmt.setInt(i++, resync.getDone());
+		stmt.setInt(i++, resync.getSent());
+		stmt.setInt(i++, resync.getUnchanged());
+		stmt.setInt(i++, resync.getFailed());
+		stmt.setInt(i++, resync.getCheckpointSid());
+		return i;
+	}
+
+	/**
+	 * Creates an object from the current row of a result set.
+	 *
+	 * @param rs the result set
+	 * @return the object
+	 * @throws SQLException if a column can not be read
+	 */
+	private static OutcomeResync fromResultSet(ResultSet rs) throws SQLException {
+		int i = 1;
+		final OutcomeResync resync = new OutcomeResync();
+		resync.setSid(rs.getInt(i++));
+		final ToolKey tk = new ToolKey();
+		tk.setSid(rs.getInt(i++));
+		resync.setToolKey(tk);
+		resync.setStatus(rs.getInt(i++));
+		resync.setDiffOnly(rs.getBoolean(i++));
+		resync.setTotal(rs.getInt(i++));
+		resync.setDone(rs.getInt(i++));
+		resync.setSent(rs.getInt(i++));
+		resync.setUnchanged(rs.getInt(i++));
+		resync.setFailed(rs.getInt(i++));
+		resync.setCheckpointSid(rs.getInt(i++));
+		resync.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+		resync.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+		return resync;
+	}
+
+}
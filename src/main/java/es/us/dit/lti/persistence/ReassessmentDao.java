@@ -0,0 +1,327 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.Reassessment;
+import es.us.dit.lti.entity.ToolKey;
+
+/**
+ * The Reassessment Data Access Object is the interface providing access to
+ * bulk reassessments related data.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class ReassessmentDao {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ReassessmentDao.class);
+
+	/**
+	 * Table name of this DAO.
+	 */
+	public static final String RE_TABLE_NAME = "reassessment";
+
+	/**
+	 * Common fields of queries.
+	 */
+	private static final String SQL_FIELDS = "sid, tool_key_sid, status, errors_only, push_outcome, total_count,"
+			+ " done_count, failed_count, checkpoint_seconds, checkpoint_nanos, checkpoint_sid, created, updated";
+
+	/**
+	 * SQL statement to get the serial ID of a reassessment.
+	 */
+	private static final String SQL_GET_SID = "SELECT sid FROM " + RE_TABLE_NAME
+			+ " WHERE tool_key_sid=? AND created=?";
+
+	/**
+	 * SQL statement to add a reassessment.
+	 */
+	private static final String SQL_NEW = "INSERT INTO " + RE_TABLE_NAME
+			+ " (tool_key_sid, status, errors_only, push_outcome, total_count, done_count, failed_count,"
+			+ " checkpoint_seconds, checkpoint_nanos, checkpoint_sid, created, updated)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL statement to update the progress of a reassessment.
+	 */
+	private static final String SQL_UPDATE = "UPDATE " + RE_TABLE_NAME
+			+ " SET status=?, total_count=?, done_count=?, failed_count=?, checkpoint_seconds=?,"
+			+ " checkpoint_nanos=?, checkpoint_sid=?, updated=? WHERE sid=?";
+
+	/**
+	 * SQL statement to get the last reassessment of a tool key.
+	 */
+	private static final String SQL_GET_LAST = "SELECT " + SQL_FIELDS + " FROM " + RE_TABLE_NAME
+			+ " WHERE tool_key_sid=? ORDER BY sid DESC LIMIT 1";
+
+	/**
+	 * SQL statement to get reassessments by status.
+	 */
+	private static final String SQL_GET_BY_STATUS = "SELECT " + SQL_FIELDS + " FROM " + RE_TABLE_NAME
+			+ " WHERE status=? ORDER BY sid";
+
+	/**
+	 * SQL statement to delete the reassessments of a tool key.
+	 */
+	public static final String SQL_DELETE_TK = "DELETE FROM " + RE_TABLE_NAME + " WHERE tool_key_sid=?";
+
+	/**
+	 * Utility class that provides methods for managing connections to a database.
+	 */
+	private static IDbUtil dbUtil = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private ReassessmentDao() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sets the db utility class.
+	 *
+	 * @param dbu the db utility class to set
+	 */
+	public static synchronized void setDbUtil(IDbUtil dbu) {
+		dbUtil = dbu;
+	}
+
+	/**
+	 * Gets the db utility class.
+	 *
+	 * @return the db utility class
+	 */
+	public static synchronized IDbUtil getDbUtil() {
+		return dbUtil;
+	}
+
+	/**
+	 * Create a record.
+	 *
+	 * @param reassessment record data
+	 * @return true if successful
+	 */
+	public static boolean create(Reassessment reassessment) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		// Some databases do not save milliseconds and created is used to get the sid
+		now.set(Calendar.MILLISECOND, 0);
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_NEW);) {
+			int i = 1;
+			stmt.setInt(i++, reassessment.getToolKey().getSid());
+			stmt.setInt(i++, reassessment.getStatus().getCode());
+			stmt.setBoolean(i++, reassessment.isErrorsOnly());
+			stmt.setBoolean(i++, reassessment.isPushOutcome());
+			i = setProgress(stmt, i, reassessment);
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // created
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Create: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			reassessment.setCreated(now);
+			reassessment.setUpdated(now);
+			res = getSidByIds(reassessment);
+		}
+		return res;
+	}
+
+	/**
+	 * Get the serial ID of a object.
+	 *
+	 * @param reassessment object data
+	 * @return true if successful
+	 */
+	public static boolean getSidByIds(Reassessment reassessment) {
+		boolean res = false;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_SID);) {
+			stmt.setInt(1, reassessment.getToolKey().getSid());
+			stmt.setTimestamp(2, DaoUtil.toTimestamp(reassessment.getCreated()));
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				res = true;
+				reassessment.setSid(rs.getInt(1));
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return res;
+	}
+
+	/**
+	 * Update the status and progress of a record.
+	 *
+	 * @param reassessment record data
+	 * @return true if successful
+	 */
+	public static boolean update(Reassessment reassessment) {
+		boolean res;
+		final Calendar now = Calendar.getInstance();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_UPDATE);) {
+			int i = 1;
+			stmt.setInt(i++, reassessment.getStatus().getCode());
+			i = setProgress(stmt, i, reassessment);
+			stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+			stmt.setInt(i++, reassessment.getSid());
+			res = stmt.executeUpdate() == 1;
+		} catch (final SQLException e) {
+			logger.error("Update: ", e);
+			res = false;
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		if (res) {
+			reassessment.setUpdated(now);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the last reassessment of a tool key.
+	 *
+	 * @param tk the tool key
+	 * @return the reassessment or null if not found
+	 */
+	public static Reassessment getLast(ToolKey tk) {
+		Reassessment reassessment = null;
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_LAST);) {
+			stmt.setInt(1, tk.getSid());
+			final ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				reassessment = fromResultSet(rs);
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return reassessment;
+	}
+
+	/**
+	 * Gets all reassessments with a status.
+	 *
+	 * @param status the status
+	 * @return the list of reassessments
+	 */
+	public static List<Reassessment> getByStatus(Reassessment.Status status) {
+		final List<Reassessment> list = new ArrayList<>();
+		final Connection connection = dbUtil.getConnection();
+		try (PreparedStatement stmt = connection.prepareStatement(SQL_GET_BY_STATUS);) {
+			stmt.setInt(1, status.getCode());
+			final ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				list.add(fromResultSet(rs));
+			}
+			rs.close();
+		} catch (final SQLException e) {
+			logger.error("Get: ", e);
+		} finally {
+			dbUtil.closeConnection(connection);
+		}
+		return list;
+	}
+
+	/**
+	 * Sets the progress parameters of a statement.
+	 *
+	 * @param stmt         the statement
+	 * @param first        index of the first parameter
+	 * @param reassessment record data
+	 * @return index of the next parameter
+	 * @throws SQLException if a parameter can not be set
+	 */
+	private static int setProgress(PreparedStatement stmt, int first, Reassessment reassessment)
+			throws SQLException {
+		int i = first;
+		stmt.setInt(i++, reassessment.getTotal());
+		stmt.setInt(i++, reassessment.getDone());
+		stmt.setInt(i++, reassessment.getFailed());
+		final Instant checkpoint = reassessment.getCheckpoint();
+		if (checkpoint != null) {
+			stmt.setLong(i++, checkpoint.getEpochSecond());
+			stmt.setInt(i++, checkpoint.getNano());
+		} else {
+			stmt.setNull(i++, Types.INTEGER);
+			stmt.setNull(i++, Types.INTEGER);
+		}
+		stmt.setInt(i++, reassessment.getCheckpointSid());
+		return i;
+	}
+
+	/**
+	 * Creates an object from the current row of a result set.
+	 *
+	 * @param rs the result set
+	 * @return the object
+	 * @throws SQLException if a column can not be read
+	 */
+	private static Reassessment fromResultSet(ResultSet rs) throws SQLException {
+		int i = 1;
+		final Reassessment reassessment = new Reassessment();
+		reassessment.setSid(rs.getInt(i++));
+		final ToolKey tk = new ToolKey();
+		tk.setSid(rs.getInt(i++));
+		reassessment.setToolKey(tk);
+		reassessment.setStatus(rs.getInt(i++));
+		reassessment.setErrorsOnly(rs.getBoolean(i++));
+		reassessment.setPushOutcome(rs.getBoolean(i++));
+		reassessment.setTotal(rs.getInt(i++));
+		reassessment.setDone(rs.getInt(i++));
+		reassessment.setFailed(rs.getInt(i++));
+		final long seconds = rs.getLong(i++);
+		if (rs.wasNull()) {
+			i++;
+		} else {
+			reassessment.setCheckpoint(Instant.ofEpochSecond(seconds, rs.getInt(i++)));
+		}
+		reassessment.setCheckpointSid(rs.getInt(i++));
+		reassessment.setCreated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+		reassessment.setUpdated(DaoUtil.toCalendar(rs.getTimestamp(i++)));
+		return reassessment;
+	}
+
+}
@@ -231,7 +231,7 @@ public final class SettingsDao {
 		boolean res = false;
 		String[] sqls = { "VACUUM FULL",
 				"VACUUM",
-				"OPTIMIZE TABLE attempt, consumer, context, lti_user, mgmt_user, nonce, resource_link, resource_user, settings, tool, tool_counter,\n"
+				"OPTIMIZE TABLE attempt, consumer, context, deferred_assessment, lti_user, mgmt_user, nonce, outcome_outbox, outcome_resync, reassessment, resource_link, resource_user, settings, tool, tool_counter,\n"
 						+ "tool_key, tool_user" };
 		for (String sql: sqls) {
 			final Connection connection = dbUtil.getConnection();
@@ -25,6 +25,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -94,9 +95,10 @@ public final class ToolAttemptDao {
 			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
 	/**
-	 * SQL statement to update the score and error code of an attempt.
+	 * SQL statement to update the score, error code and saved files of an attempt.
 	 */
-	private static final String SQL_UPDATE = "UPDATE " + AT_TABLE_NAME + " SET score=?, errorCode=? WHERE sid=?";
+	private static final String SQL_UPDATE = "UPDATE " + AT_TABLE_NAME
+			+ " SET fileSaved=?, outputSaved=?, score=?, errorCode=? WHERE sid=?";
 
 	/**
 	 * SQL statement to delete an attempt.
@@ -329,6 +331,8 @@ public final class ToolAttemptDao {
 		final Connection connection = dbUtil.getConnection();
 		try (PreparedStatement stmt = connection.prepareStatement(SQL_UPDATE);) {
 			int i = 1;
+			stmt.setBoolean(i++, attempt.isFileSaved());
+			stmt.setBoolean(i++, attempt.isOutputSaved());
 			stmt.setInt(i++, attempt.getScore());
 			stmt.setInt(i++, attempt.getErrorCode());
 			stmt.setInt(i++, attempt.getSid());
@@ -354,17 +358,7 @@ public final class ToolAttemptDao {
 		boolean res;
 		final Connection connection = dbUtil.getConnection();
 		try (PreparedStatement stmt = connection.prepareStatement(SQL_NEW);) {
-			int i = 1;
-			stmt.setInt(i++, attempt.getResourceUser().getSid());
-			stmt.setInt(i++, attempt.getOriginalResourceUser().getSid());
-			stmt.setLong(i++, attempt.getInstant().getEpochSecond());
-			stmt.setInt(i++, attempt.getInstant().getNano());
-			stmt.setBoolean(i++, attempt.isFileSaved());
-			stmt.setBoolean(i++, attempt.isOutputSaved());
-			stmt.setString(i++, attempt.getFileName());
-			stmt.setInt(i++, attempt.getStorageType().getCode());
-			stmt.setInt(i++, attempt.getScore());
-			stmt.setInt(i++, attempt.getErrorCode());
+			setNewParameters(stmt, attempt);
 			res = stmt.executeUpdate() == 1;
 
 		} catch (final SQLException e) {
@@ -380,6 +374,106 @@ public final class ToolAttemptDao {
 		return res;
 	}
 
+	/**
+	 * Sets the parameters of the statement to add an attempt.
+	 *
+	 * @param stmt    the statement
+	 * @param attempt record data
+	 * @throws SQLException if a parameter can not be set
+	 */
+	private static void setNewParameters(PreparedStatement stmt, Attempt attempt) throws SQLException {
+		int i = 1;
+		stmt.setInt(i++, attempt.getResourceUser().getSid());
+		stmt.setInt(i++, attempt.getOriginalResourceUser().getSid());
+		stmt.setLong(i++, attempt.getInstant().getEpochSecond());
+		stmt.setInt(i++, attempt.getInstant().getNano());
+		stmt.setBoolean(i++, attempt.isFileSaved());
+		stmt.setBoolean(i++, attempt.isOutputSaved());
+		stmt.setString(i++, attempt.getFileName());
+		stmt.setInt(i++, attempt.getStorageType().getCode());
+		stmt.setInt(i++, attempt.getScore());
+		stmt.setInt(i++, attempt.getErrorCode());
+	}
+
+	/**
+	 * Create a record and, in the same transaction, the delivery of its score in
+	 * the outbox, if its resource user has no delivery waiting.
+	 *
+	 * <p>So a saved attempt waiting for its score is never left out of the
+	 * outbox. If the resource user has a delivery waiting,
+	 * {@link es.us.dit.lti.OutcomeDeliveryService#enqueue(Attempt)} must decide
+	 * which score is kept.
+	 *
+	 * @param attempt record data
+	 * @return true if successful
+	 */
+	public static boolean createWithOutcome(Attempt attempt) {
+		boolean res = false;
+		final Calendar now = Calendar.getInstance();
+		final Connection conn = dbUtil.getConnection();
+		boolean transactional = false;
+		try {
+			conn.setAutoCommit(false);
+			transactional = true;
+		} catch (final SQLException e1) {
+			// do not use this functionality
+			logger.error("Failed to set AutoCommit to false");
+		}
+		try {
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_NEW);) {
+				setNewParameters(stmt, attempt);
+				res = stmt.executeUpdate() == 1;
+			}
+			if (res) {
+				res = false;
+				try (PreparedStatement stmt = conn.prepareStatement(SQL_GET_SID);) {
+					stmt.setInt(1, attempt.getResourceUser().getSid());
+					stmt.setLong(2, attempt.getInstant().getEpochSecond());
+					stmt.setInt(3, attempt.getInstant().getNano());
+					final ResultSet rs = stmt.executeQuery();
+					if (rs.next()) {
+						res = true;
+						attempt.setSid(rs.getInt(1));
+					}
+					rs.close();
+				}
+			}
+			if (res) {
+				try (PreparedStatement stmt = conn.prepareStatement(OutcomeDeliveryDao.SQL_NEW_FOR_ATTEMPT);) {
+					int i = 1;
+					stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // next try
+					stmt.setBoolean(i++, false);
+					stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // created
+					stmt.setTimestamp(i++, DaoUtil.toTimestamp(now)); // updated
+					stmt.setInt(i++, attempt.getSid());
+					stmt.executeUpdate();
+				}
+			}
+		} catch (final SQLException e) {
+			logger.error("Create: ", e);
+			res = false;
+		}
+		// Check final results
+		if (transactional) {
+			try {
+				if (!res) {
+					// Undo changes
+					conn.rollback();
+				} else {
+					conn.commit();
+				}
+				// Reset to default no matter what
+				conn.setAutoCommit(true);
+			} catch (final SQLException e) {
+				// do not use this functionality
+				logger.error("Failed to commit transaction", e);
+				res = false;
+			}
+		}
+		dbUtil.closeConnection(conn);
+		return res;
+	}
+
 	/**
 	 * Delete a record.
 	 *
@@ -390,6 +484,16 @@ public final class ToolAttemptDao {
 		boolean deleted = false;
 		final Connection conn = dbUtil.getConnection();
 		try {
+			// Delete pending assessment
+			try (PreparedStatement stmt = conn.prepareStatement(DeferredAssessmentDao.SQL_DELETE_ATTEMPT);) {
+				stmt.setInt(1, attempt.getSid());
+				stmt.executeUpdate();
+			}
+			// Delete pending outcome
+			try (PreparedStatement stmt = conn.prepareStatement(OutcomeDeliveryDao.SQL_DELETE_ATTEMPT);) {
+				stmt.setInt(1, attempt.getSid());
+				stmt.executeUpdate();
+			}
 			// Delete
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE);) {
 				stmt.setInt(1, attempt.getSid());
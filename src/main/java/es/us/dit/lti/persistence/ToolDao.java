@@ -44,6 +44,8 @@ import es.us.dit.lti.entity.MgmtUserType;
 import es.us.dit.lti.entity.ResourceLink;
 import es.us.dit.lti.entity.Tool;
 import es.us.dit.lti.entity.ToolKey;
+import es.us.dit.lti.runner.ExecutionTimeouts;
+import es.us.dit.lti.runner.ResultCache;
 import es.us.dit.lti.runner.ToolRunnerType;
 import es.us.dit.lti.servlet.UploadedFile;
 
@@ -133,6 +135,18 @@ public final class ToolDao {
 	private static final String SQL_DELETE_NONCES = "DELETE FROM " + ToolNonceDao.NONCE_TABLE_NAME
 			+ " WHERE key_sid in (SELECT sid FROM " + ToolKeyDao.TK_TABLE_NAME + " WHERE tool_sid=?)";
 
+	/**
+	 * SQL statement to delete all reassessments of tool keys of this tool.
+	 */
+	private static final String SQL_DELETE_REASSESSMENTS = "DELETE FROM " + ReassessmentDao.RE_TABLE_NAME
+			+ " WHERE tool_key_sid in (SELECT sid FROM " + ToolKeyDao.TK_TABLE_NAME + " WHERE tool_sid=?)";
+
+	/**
+	 * SQL statement to delete all resynchronizations of tool keys of this tool.
+	 */
+	private static final String SQL_DELETE_RESYNCS = "DELETE FROM " + OutcomeResyncDao.RS_TABLE_NAME
+			+ " WHERE tool_key_sid in (SELECT sid FROM " + ToolKeyDao.TK_TABLE_NAME + " WHERE tool_sid=?)";
+
 	/**
 	 * SQL statement to delete all tool keys of this tool.
 	 */
@@ -144,6 +158,24 @@ public final class ToolDao {
 	private static final String SQL_DELETE_RESOURCE_USERS = "DELETE FROM " + ToolResourceUserDao.RU_TABLE_NAME
 			+ " WHERE resource_sid in (SELECT sid FROM " + ToolResourceLinkDao.RL_TABLE_NAME + " WHERE tool_sid=?)";
 
+	/**
+	 * SQL statement to delete all deferred assessments of this tool.
+	 */
+	private static final String SQL_DELETE_DEFERRED = "DELETE FROM " + DeferredAssessmentDao.DA_TABLE_NAME
+			+ " WHERE attempt_sid in (SELECT sid FROM " + ToolAttemptDao.AT_TABLE_NAME
+			+ " WHERE resource_user_sid in (SELECT sid FROM " + ToolResourceUserDao.RU_TABLE_NAME
+			+ " WHERE resource_sid in (SELECT sid FROM " + ToolResourceLinkDao.RL_TABLE_NAME
+			+ " WHERE tool_sid=?)))";
+
+	/**
+	 * SQL statement to delete all pending outcomes of this tool.
+	 */
+	private static final String SQL_DELETE_OUTCOMES = "DELETE FROM " + OutcomeDeliveryDao.OD_TABLE_NAME
+			+ " WHERE attempt_sid in (SELECT sid FROM " + ToolAttemptDao.AT_TABLE_NAME
+			+ " WHERE resource_user_sid in (SELECT sid FROM " + ToolResourceUserDao.RU_TABLE_NAME
+			+ " WHERE resource_sid in (SELECT sid FROM " + ToolResourceLinkDao.RL_TABLE_NAME
+			+ " WHERE tool_sid=?)))";
+
 	/**
 	 * SQL statement to delete all attempts of this tool.
 	 */
@@ -634,6 +666,11 @@ public final class ToolDao {
 			if (tool.createToolFiles(correctorFile, descriptionFile, extraZipFile)) {
 				// something may have been created
 				filesCopied = true;
+				if (correctorFile != null) {
+					// Cached results and times of the old corrector are not valid
+					ResultCache.clear(tool);
+					ExecutionTimeouts.reset(tool);
+				}
 			} else {
 				throw new FileSystemException(null);
 			}
@@ -814,6 +851,14 @@ public final class ToolDao {
 		final Connection conn = dbUtil.getConnection();
 		try {
 			// Delete
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DEFERRED);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_OUTCOMES);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_ATTEMPTS);) {
 				stmt.setInt(1, tool.getSid());
 				deleted = stmt.executeUpdate() > 0;
@@ -859,7 +904,8 @@ public final class ToolDao {
 		try {
 			/*
 			 * Dependencies in the database with respect to the tool: tool_counter,
-			 * tool_user, tool_key, nonce, resource_link, resource_user
+			 * tool_user, tool_key, nonce, resource_link, resource_user, reassessment,
+			 * outcome_resync
 			 */
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_COUNTER);) {
 				stmt.setInt(1, tool.getSid());
@@ -873,6 +919,14 @@ public final class ToolDao {
 				stmt.setInt(1, tool.getSid());
 				stmt.executeUpdate();
 			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DEFERRED);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_OUTCOMES);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_ATTEMPTS);) {
 				stmt.setInt(1, tool.getSid());
 				stmt.executeUpdate();
@@ -885,6 +939,14 @@ public final class ToolDao {
 				stmt.setInt(1, tool.getSid());
 				stmt.executeUpdate();
 			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_REASSESSMENTS);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_RESYNCS);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_TOOL_KEYS);) {
 				stmt.setInt(1, tool.getSid());
 				stmt.executeUpdate();
@@ -1482,6 +1544,14 @@ public final class ToolDao {
 			logger.error(ERROR_AUTOCOMMIT);
 		}
 		try {
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DEFERRED);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_OUTCOMES);) {
+				stmt.setInt(1, tool.getSid());
+				stmt.executeUpdate();
+			}
 			try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_ATTEMPTS);) {
 				stmt.setInt(1, tool.getSid());
 				stmt.executeUpdate();
@@ -269,6 +269,18 @@ public final class ToolKeyDao {
 		boolean delKey = true;
 		final Connection conn = dbUtil.getConnection();
 
+		try (PreparedStatement stmt = conn.prepareStatement(ReassessmentDao.SQL_DELETE_TK);) {
+			stmt.setLong(1, tk.getSid());
+			stmt.executeUpdate();
+		} catch (final SQLException e) {
+			logger.error("Error deleting reassessments", e);
+		}
+		try (PreparedStatement stmt = conn.prepareStatement(OutcomeResyncDao.SQL_DELETE_TK);) {
+			stmt.setLong(1, tk.getSid());
+			stmt.executeUpdate();
+		} catch (final SQLException e) {
+			logger.error("Error deleting resynchronizations", e);
+		}
 		try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE);) {
 			stmt.setLong(1, tk.getSid());
 			stmt.executeUpdate();
@@ -0,0 +1,294 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assessment job executed by the workers of {@link AssessmentQueue}.
+ *
+ * <p>The job writes its HTML result to a buffer that is served later by the
+ * polling endpoint.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class AssessmentJob implements Runnable {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(AssessmentJob.class);
+
+	/**
+	 * States of a job.
+	 */
+	public enum Status {
+		/**
+		 * Waiting for a free worker.
+		 */
+		QUEUED,
+		/**
+		 * Being assessed.
+		 */
+		RUNNING,
+		/**
+		 * Result available.
+		 */
+		FINISHED
+	}
+
+	/**
+	 * Unique and unguessable job ID.
+	 */
+	private final String id;
+	/**
+	 * User ID of the owner of the job.
+	 */
+	private final String owner;
+	/**
+	 * Name of the tool.
+	 */
+	private final String toolName;
+	/**
+	 * Work to do, it writes the result in the writer and completes the stage
+	 * when finished.
+	 */
+	private final Function<PrintWriter, CompletionStage<?>> task;
+	/**
+	 * Current status.
+	 */
+	private volatile Status status = Status.QUEUED;
+	/**
+	 * HTML result, available when finished.
+	 */
+	private volatile String result = null;
+	/**
+	 * Creation time in milliseconds.
+	 */
+	private final long created;
+	/**
+	 * Start time in milliseconds, 0 if not started.
+	 */
+	private volatile long started = 0;
+	/**
+	 * Finish time in milliseconds, 0 if not finished.
+	 */
+	private volatile long finished = 0;
+	/**
+	 * Path of the output file of the corrector if it can be streamed, or null.
+	 */
+	private volatile String outputPath = null;
+
+	/**
+	 * Creates a job.
+	 *
+	 * @param id       unique and unguessable job ID
+	 * @param owner    user ID of the owner
+	 * @param toolName name of the tool
+	 * @param task     work to do, it writes the result in the writer
+	 */
+	public AssessmentJob(String id, String owner, String toolName, Consumer<PrintWriter> task) {
+		this(id, owner, toolName, (Function<PrintWriter, CompletionStage<?>>) pw -> {
+			task.accept(pw);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * Creates a job.
+	 *
+	 * @param id       unique and unguessable job ID
+	 * @param owner    user ID of the owner
+	 * @param toolName name of the tool
+	 * @param task     work to do, it writes the result in the writer and
+	 *                 completes the stage when finished
+	 */
+	private AssessmentJob(String id, String owner, String toolName, Function<PrintWriter, CompletionStage<?>> task) {
+		this.id = id;
+		this.owner = owner;
+		this.toolName = toolName;
+		this.task = task;
+		this.created = System.currentTimeMillis();
+	}
+
+	/**
+	 * Creates an asynchronous job.
+	 *
+	 * <p>The task returns when the work has been started and completes the
+	 * stage when it finishes, so no thread waits for it.
+	 *
+	 * @param id       unique and unguessable job ID
+	 * @param owner    user ID of the owner
+	 * @param toolName name of the tool
+	 * @param task     work to do, it writes the result in the writer and
+	 *                 completes the stage when finished
+	 * @return the job
+	 */
+	public static AssessmentJob async(String id, String owner, String toolName,
+			Function<PrintWriter, CompletionStage<?>> task) {
+		return new AssessmentJob(id, owner, toolName, task);
+	}
+
+	/**
+	 * Runs the job and stores its result.
+	 */
+	@Override
+	public void run() {
+		start().join();
+	}
+
+	/**
+	 * Starts the job.
+	 *
+	 * @return a future completed when the result is stored
+	 */
+	public CompletableFuture<Void> start() {
+		started = System.currentTimeMillis();
+		status = Status.RUNNING;
+		final StringWriter sw = new StringWriter();
+		final PrintWriter pw = new PrintWriter(sw);
+		CompletableFuture<?> stage;
+		try {
+			stage = task.apply(pw).toCompletableFuture();
+		} catch (final RuntimeException e) {
+			stage = CompletableFuture.failedFuture(e);
+		}
+		return stage.handle((v, e) -> {
+			if (e != null) {
+				logger.error("Assessment job {} of {}", id, toolName, e);
+			}
+			pw.close();
+			result = sw.toString();
+			finished = System.currentTimeMillis();
+			status = Status.FINISHED;
+			return null;
+		});
+	}
+
+	/**
+	 * Checks if the job belongs to a user and tool.
+	 *
+	 * @param userId   user ID
+	 * @param toolName name of the tool
+	 * @return true if the job belongs to them
+	 */
+	public boolean isOwnedBy(String userId, String toolName) {
+		return owner.equals(userId) && this.toolName.equals(toolName);
+	}
+
+	/**
+	 * Gets the job ID.
+	 *
+	 * @return the job ID
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the user ID of the owner.
+	 *
+	 * @return the owner
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets the name of the tool.
+	 *
+	 * @return the tool name
+	 */
+	public String getToolName() {
+		return toolName;
+	}
+
+	/**
+	 * Gets the current status.
+	 *
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the HTML result.
+	 *
+	 * @return the result or null if not finished
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Gets the creation time in milliseconds.
+	 *
+	 * @return the creation time
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the start time in milliseconds.
+	 *
+	 * @return the start time or 0 if not started
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 * Gets the finish time in milliseconds.
+	 *
+	 * @return the finish time or 0 if not finished
+	 */
+	public long getFinished() {
+		return finished;
+	}
+
+	/**
+	 * Gets the path of the output file of the corrector if it can be streamed.
+	 *
+	 * @return the output path or null if it must not be streamed
+	 */
+	public String getOutputPath() {
+		return outputPath;
+	}
+
+	/**
+	 * Sets the path of the output file of the corrector if it can be streamed.
+	 *
+	 * @param outputPath new value, null if it must not be streamed
+	 */
+	public void setOutputPath(String outputPath) {
+		this.outputPath = outputPath;
+	}
+
+}
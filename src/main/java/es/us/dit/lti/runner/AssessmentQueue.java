@@ -0,0 +1,536 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.config.ToolUiConfig;
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * Fair scheduler of assessment jobs with a pool of workers.
+ *
+ * <p>It decouples the number of HTTP requests from the number of running
+ * correctors. Deliveries are admitted into a FIFO queue per tool and are
+ * dispatched when there is a free global slot (setting of maximum number of
+ * concurrent users) and a free slot of the tool
+ * ({@link ToolUiConfig#getMaxConcurrentUsers()}). Free slots are shared among
+ * tools with queued deliveries according to their weights
+ * ({@link ToolUiConfig#getSchedulingWeight()}).
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class AssessmentQueue {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(AssessmentQueue.class);
+	/**
+	 * Maximum number of deliveries waiting for a slot.
+	 */
+	private static final int QUEUE_CAPACITY = 1000;
+	/**
+	 * Seconds of a job assumed until some jobs have finished.
+	 */
+	private static final double DEFAULT_JOB_SECONDS = 10;
+	/**
+	 * Weight of the last job in the average duration of jobs.
+	 */
+	private static final double AVERAGE_WEIGHT = 0.1;
+	/**
+	 * Maximum estimated wait in seconds.
+	 */
+	private static final int MAX_ESTIMATED_WAIT = 300;
+	/**
+	 * Time in milliseconds that a finished job and its result are kept.
+	 */
+	private static final long FINISHED_JOB_TTL = 15 * 60 * 1000L;
+	/**
+	 * Seconds to wait for running jobs on shutdown.
+	 */
+	private static final int SHUTDOWN_WAIT = 30;
+
+	/**
+	 * Results of admission.
+	 */
+	public enum Admission {
+		/**
+		 * The delivery can be submitted.
+		 */
+		ACCEPTED,
+		/**
+		 * The user has another delivery of the same tool in progress.
+		 */
+		DUPLICATED,
+		/**
+		 * The queue is full or the tool does not accept deliveries.
+		 */
+		FULL,
+		/**
+		 * The scheduler has been stopped.
+		 */
+		STOPPED
+	}
+
+	/**
+	 * Queue and counters of a tool.
+	 */
+	private static class ToolQueue {
+		/**
+		 * Jobs waiting for a slot in arrival order.
+		 */
+		private final Deque<AssessmentJob> waiting = new ArrayDeque<>();
+		/**
+		 * Number of running jobs.
+		 */
+		private int running = 0;
+		/**
+		 * Maximum number of running jobs, negative if unlimited.
+		 */
+		private int maxRunning = -1;
+		/**
+		 * Weight for sharing the slots.
+		 */
+		private int weight = 1;
+	}
+
+	/**
+	 * Jobs by ID, including finished jobs until they expire.
+	 */
+	private static final Map<String, AssessmentJob> jobs = new ConcurrentHashMap<>();
+	/**
+	 * Queues by tool name.
+	 */
+	private static final Map<String, ToolQueue> queues = new HashMap<>();
+	/**
+	 * Admitted deliveries (tool name and user ID) not finished yet.
+	 */
+	private static final Set<String> admitted = new HashSet<>();
+	/**
+	 * Number of jobs being executed.
+	 */
+	private static int running = 0;
+	/**
+	 * Number of jobs waiting for a slot.
+	 */
+	private static int waiting = 0;
+	/**
+	 * Executor of jobs, created on first use.
+	 */
+	private static ThreadPoolExecutor executor = null;
+	/**
+	 * If the scheduler has been stopped, new deliveries are not accepted.
+	 */
+	private static boolean stopped = false;
+	/**
+	 * Moving average of the duration of jobs in seconds, 0 if unknown.
+	 */
+	private static double averageJobSeconds = 0;
+
+	/**
+	 * Can not create objects.
+	 */
+	private AssessmentQueue() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Gets the number of global slots.
+	 *
+	 * @return the number of global slots
+	 */
+	private static int getGlobalSlots() {
+		return Math.max(1, Settings.getConcurrentUsers());
+	}
+
+	/**
+	 * Gets the key of an admitted delivery.
+	 *
+	 * @param userId   user ID
+	 * @param toolName tool name
+	 * @return the key
+	 */
+	private static String getKey(String userId, String toolName) {
+		return toolName + ":" + userId;
+	}
+
+	/**
+	 * Gets the executor, creating it if necessary and adjusting the number of
+	 * workers to current settings.
+	 *
+	 * <p>Jobs are only passed to the executor when there is a free slot, so its
+	 * internal queue does not grow.
+	 *
+	 * @return the executor or null if the scheduler is stopped
+	 */
+	private static ThreadPoolExecutor getExecutor() {
+		final int workers = getGlobalSlots();
+		if (stopped) {
+			return null;
+		} else if (executor == null) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			final ThreadFactory factory = r -> {
+				final Thread t = new Thread(r, "tpm-assess-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), factory);
+			executor.allowCoreThreadTimeOut(true);
+		} else if (executor.getMaximumPoolSize() != workers) {
+			// Order matters to keep core <= max
+			if (workers > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(workers);
+				executor.setCorePoolSize(workers);
+			} else {
+				executor.setCorePoolSize(workers);
+				executor.setMaximumPoolSize(workers);
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Admits a delivery of a user before receiving the file.
+	 *
+	 * <p>If accepted, the caller must either submit a job or call
+	 * {@link #release(String, Tool)}.
+	 *
+	 * @param userId user ID
+	 * @param tool   the tool
+	 * @return the result of admission
+	 */
+	public static synchronized Admission admit(String userId, Tool tool) {
+		Admission res;
+		final String key = getKey(userId, tool.getName());
+		if (stopped) {
+			res = Admission.STOPPED;
+		} else if (admitted.contains(key)) {
+			res = Admission.DUPLICATED;
+		} else if (tool.getToolUiConfig().getMaxConcurrentUsers() == 0
+				|| admitted.size() >= getGlobalSlots() + QUEUE_CAPACITY) {
+			res = Admission.FULL;
+		} else {
+			admitted.add(key);
+			res = Admission.ACCEPTED;
+		}
+		return res;
+	}
+
+	/**
+	 * Releases an admitted delivery that has not been submitted.
+	 *
+	 * @param userId user ID
+	 * @param tool   the tool
+	 */
+	public static synchronized void release(String userId, Tool tool) {
+		admitted.remove(getKey(userId, tool.getName()));
+	}
+
+	/**
+	 * Enqueues a job of an admitted delivery in the queue of its tool.
+	 *
+	 * <p>The delivery is released when the job finishes.
+	 *
+	 * @param job  the job
+	 * @param tool the tool
+	 * @return true if successful, false if the scheduler is stopped
+	 */
+	public static synchronized boolean submit(AssessmentJob job, Tool tool) {
+		if (stopped) {
+			return false;
+		}
+		purge();
+		final ToolQueue queue = queues.computeIfAbsent(tool.getName(), k -> new ToolQueue());
+		// Configuration may have changed
+		queue.maxRunning = tool.getToolUiConfig().getMaxConcurrentUsers();
+		queue.weight = Math.max(1, tool.getToolUiConfig().getSchedulingWeight());
+		jobs.put(job.getId(), job);
+		queue.waiting.add(job);
+		waiting++;
+		boolean res = dispatch();
+		if (!res) {
+			// Undo
+			queue.waiting.remove(job);
+			waiting--;
+			jobs.remove(job.getId());
+		}
+		return res;
+	}
+
+	/**
+	 * Starts queued jobs while there are free slots.
+	 *
+	 * <p>The tool with the lowest number of running jobs relative to its weight
+	 * is selected. In case of a tie, the one with the oldest waiting job.
+	 *
+	 * @return false if the executor rejected a job
+	 */
+	private static boolean dispatch() {
+		boolean res = true;
+		while (res && running < getGlobalSlots()) {
+			ToolQueue best = null;
+			for (final ToolQueue queue : queues.values()) {
+				if (!queue.waiting.isEmpty() && (queue.maxRunning < 0 || queue.running < queue.maxRunning)
+						&& (best == null || isBetter(queue, best))) {
+					best = queue;
+				}
+			}
+			if (best == null) {
+				break;
+			}
+			final ToolQueue queue = best;
+			final AssessmentJob job = queue.waiting.poll();
+			waiting--;
+			queue.running++;
+			running++;
+			final ThreadPoolExecutor pool = getExecutor();
+			try {
+				if (pool == null) {
+					throw new RejectedExecutionException("Scheduler stopped");
+				}
+				// Asynchronous jobs release the worker before they finish
+				pool.execute(() -> job.start().whenComplete((v, e) -> finish(queue, job)));
+			} catch (final RejectedExecutionException e) {
+				logger.error("Assessment job rejected: {}", job.getToolName());
+				queue.waiting.addFirst(job);
+				waiting++;
+				queue.running--;
+				running--;
+				res = false;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Compares two tool queues to select the next one to dispatch.
+	 *
+	 * @param a a tool queue
+	 * @param b another tool queue
+	 * @return true if a must be dispatched before b
+	 */
+	private static boolean isBetter(ToolQueue a, ToolQueue b) {
+		// a.running / a.weight < b.running / b.weight
+		final long shareA = (long) a.running * b.weight;
+		final long shareB = (long) b.running * a.weight;
+		return shareA < shareB || shareA == shareB
+				&& a.waiting.peek().getCreated() < b.waiting.peek().getCreated();
+	}
+
+	/**
+	 * Releases the slots of a finished job and dispatches more jobs.
+	 *
+	 * @param queue the queue of the tool
+	 * @param job   the finished job
+	 */
+	private static synchronized void finish(ToolQueue queue, AssessmentJob job) {
+		// Ignore jobs started before a shutdown
+		if (queues.get(job.getToolName()) == queue) {
+			queue.running--;
+			running--;
+			if (job.getStarted() > 0) {
+				final double seconds = (System.currentTimeMillis() - job.getStarted()) / 1000.0;
+				if (averageJobSeconds == 0) {
+					averageJobSeconds = seconds;
+				} else {
+					averageJobSeconds += AVERAGE_WEIGHT * (seconds - averageJobSeconds);
+				}
+			}
+			admitted.remove(getKey(job.getOwner(), job.getToolName()));
+			dispatch();
+		}
+	}
+
+	/**
+	 * Gets a job.
+	 *
+	 * @param id job ID
+	 * @return the job or null if not exists
+	 */
+	public static AssessmentJob get(String id) {
+		AssessmentJob job = null;
+		if (id != null) {
+			job = jobs.get(id);
+		}
+		return job;
+	}
+
+	/**
+	 * Removes a job whose result will not be requested.
+	 *
+	 * @param id job ID
+	 */
+	public static void remove(String id) {
+		jobs.remove(id);
+	}
+
+	/**
+	 * Gets the position of a job in the queue of its tool.
+	 *
+	 * @param job the job
+	 * @return the position (starting at 1) or 0 if it is not waiting
+	 */
+	public static synchronized int getPosition(AssessmentJob job) {
+		int res = 0;
+		final ToolQueue queue = queues.get(job.getToolName());
+		if (queue != null && job.getStatus() == AssessmentJob.Status.QUEUED) {
+			int i = 1;
+			for (final AssessmentJob other : queue.waiting) {
+				if (other == job) {
+					res = i;
+					break;
+				}
+				i++;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Estimates the seconds until a job starts, from the observed throughput.
+	 *
+	 * @param position number of jobs before it (a new job would be after all
+	 *                 waiting jobs)
+	 * @return the estimated seconds, between 1 and {@value #MAX_ESTIMATED_WAIT}
+	 */
+	public static synchronized int getEstimatedWait(int position) {
+		final double jobSeconds = averageJobSeconds > 0 ? averageJobSeconds : DEFAULT_JOB_SECONDS;
+		// Jobs are started in rounds of global slots
+		final double rounds = Math.ceil((double) Math.max(1, position) / getGlobalSlots());
+		return (int) Math.max(1, Math.min(MAX_ESTIMATED_WAIT, Math.ceil(rounds * jobSeconds)));
+	}
+
+	/**
+	 * Estimates the seconds until a new delivery could be admitted.
+	 *
+	 * @return the estimated seconds, between 1 and {@value #MAX_ESTIMATED_WAIT}
+	 */
+	public static synchronized int getRetryAfter() {
+		// Admitted deliveries beyond capacity must finish first
+		return getEstimatedWait(admitted.size() - (getGlobalSlots() + QUEUE_CAPACITY) + 1);
+	}
+
+	/**
+	 * Gets the number of jobs waiting for a slot.
+	 *
+	 * @return the number of waiting jobs
+	 */
+	public static synchronized int getWaitingJobs() {
+		return waiting;
+	}
+
+	/**
+	 * Gets the number of jobs being executed.
+	 *
+	 * @return the number of running jobs
+	 */
+	public static synchronized int getRunningJobs() {
+		return running;
+	}
+
+	/**
+	 * Removes finished jobs that have expired.
+	 */
+	private static void purge() {
+		final long limit = System.currentTimeMillis() - FINISHED_JOB_TTL;
+		final Iterator<AssessmentJob> it = jobs.values().iterator();
+		while (it.hasNext()) {
+			final AssessmentJob job = it.next();
+			if (job.getStatus() == AssessmentJob.Status.FINISHED && job.getFinished() < limit) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Starts accepting deliveries again after a {@link #shutdown()}.
+	 *
+	 * <p>The scheduler is started when the class is loaded, so it is only
+	 * needed to reuse it in the same class loader.
+	 */
+	public static synchronized void start() {
+		stopped = false;
+	}
+
+	/**
+	 * Checks if the scheduler has been stopped.
+	 *
+	 * @return true if stopped
+	 */
+	public static synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Stops the workers waiting for running jobs to finish.
+	 *
+	 * <p>Queued jobs are discarded and new deliveries are not accepted (see
+	 * {@link Admission#STOPPED}) until {@link #start()} is called.
+	 */
+	public static void shutdown() {
+		ThreadPoolExecutor old;
+		synchronized (AssessmentQueue.class) {
+			stopped = true;
+			old = executor;
+			executor = null;
+			for (final ToolQueue queue : queues.values()) {
+				if (!queue.waiting.isEmpty()) {
+					logger.warn("Discarding {} queued assessments", queue.waiting.size());
+				}
+			}
+			queues.clear();
+			admitted.clear();
+			waiting = 0;
+			running = 0;
+		}
+		if (old != null) {
+			old.shutdown();
+			try {
+				if (!old.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+					old.shutdownNow();
+				}
+			} catch (final InterruptedException e) {
+				old.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		jobs.clear();
+	}
+
+}
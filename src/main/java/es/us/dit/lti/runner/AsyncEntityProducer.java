@@ -0,0 +1,140 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.util.SharedOutputBuffer;
+
+/**
+ * Entity of a request of an asynchronous client that is streamed as it is
+ * sent.
+ *
+ * <p>The entity is written by a thread of an executor to a small buffer, that
+ * waits while the I/O thread of the client sends it. So the body is never
+ * copied in memory.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class AsyncEntityProducer extends HttpEntityWrapper implements HttpAsyncContentProducer {
+	/**
+	 * Size of the buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Buffer between the writer and the I/O thread.
+	 */
+	private final SharedOutputBuffer buffer = new SharedOutputBuffer(BUFFER_SIZE);
+	/**
+	 * Executor of the writer.
+	 */
+	private final Executor executor;
+	/**
+	 * If the writer has been started, only used by the I/O thread.
+	 */
+	private boolean started = false;
+	/**
+	 * Error of the writer.
+	 */
+	private volatile IOException failure = null;
+	/**
+	 * Control of the I/O of the connection.
+	 */
+	private volatile IOControl ioControl = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param entity   the entity to send
+	 * @param executor executor of the writer
+	 */
+	AsyncEntityProducer(HttpEntity entity, Executor executor) {
+		super(entity);
+		this.executor = executor;
+	}
+
+	/**
+	 * Sends the written content, starting the writer the first time.
+	 */
+	@Override
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+		ioControl = ioctrl;
+		if (!started) {
+			started = true;
+			executor.execute(this::write);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		buffer.produceContent(encoder, ioctrl);
+	}
+
+	/**
+	 * Writes the entity to the buffer.
+	 */
+	private void write() {
+		final OutputStream os = new ContentOutputStream(buffer);
+		try {
+			wrappedEntity.writeTo(os);
+			// end of content only if there is no error
+			os.close();
+		} catch (final IOException e) {
+			failure = e;
+			final IOControl ioctrl = ioControl;
+			if (ioctrl != null) {
+				// the I/O thread gets the error
+				ioctrl.requestOutput();
+			}
+		}
+	}
+
+	/**
+	 * It can be sent only once.
+	 */
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	/**
+	 * It is streamed.
+	 */
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+
+	/**
+	 * Releases the buffer, the writer stops if it is waiting.
+	 */
+	@Override
+	public void close() {
+		buffer.shutdown();
+	}
+}
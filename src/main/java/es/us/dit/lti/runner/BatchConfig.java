@@ -0,0 +1,85 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Micro-batching policy of a tool with SSH servers.
+ *
+ * <p>Executions arriving to the same server within a short window are sent
+ * in one transfer and run by one remote invocation. Only
+ * {@link PooledSshToolRunner} batches executions.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class BatchConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Milliseconds to wait for more executions after the first one.
+	 */
+	private long windowMillis = 50;
+
+	/**
+	 * Maximum number of executions of a batch.
+	 */
+	private int maxSize = 10;
+
+	/**
+	 * Gets the milliseconds to wait for more executions after the first one.
+	 *
+	 * @return the milliseconds
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * Sets the milliseconds to wait for more executions after the first one.
+	 *
+	 * @param windowMillis new value
+	 */
+	public void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * Gets the maximum number of executions of a batch.
+	 *
+	 * @return the maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the maximum number of executions of a batch.
+	 *
+	 * @param maxSize new value
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+}
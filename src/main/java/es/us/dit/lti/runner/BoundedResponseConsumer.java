@@ -0,0 +1,129 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Consumer of responses of an asynchronous client that keeps their bodies in
+ * memory up to a maximum size.
+ *
+ * <p>The rest of a bigger body is discarded as it is received, and the
+ * entity of the response has its length and no content, so it is rejected as
+ * too big.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class BoundedResponseConsumer extends AsyncByteConsumer<HttpResponse> {
+	/**
+	 * Maximum size of the body.
+	 */
+	private final int max;
+	/**
+	 * The response.
+	 */
+	private HttpResponse response = null;
+	/**
+	 * Received body, while it does not exceed the maximum.
+	 */
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+	/**
+	 * Length of the received body.
+	 */
+	private long length = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param max maximum size of the body
+	 */
+	BoundedResponseConsumer(int max) {
+		this.max = max;
+	}
+
+	/**
+	 * Keeps the response.
+	 */
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+	}
+
+	/**
+	 * Keeps received bytes while the maximum is not exceeded.
+	 */
+	@Override
+	protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) {
+		final int n = buf.remaining();
+		if (length + n <= max) {
+			final byte[] bytes = new byte[n];
+			buf.get(bytes);
+			body.write(bytes, 0, n);
+		} else {
+			// too big, discard
+			if (length <= max) {
+				body.reset();
+			}
+			buf.position(buf.limit());
+		}
+		length += n;
+	}
+
+	/**
+	 * Gets the response with the received body.
+	 */
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		if (response.getEntity() != null) {
+			final AbstractHttpEntity entity;
+			if (length <= max) {
+				entity = new ByteArrayEntity(body.toByteArray());
+			} else {
+				final BasicHttpEntity tooBig = new BasicHttpEntity();
+				tooBig.setContent(new ByteArrayInputStream(new byte[0]));
+				tooBig.setContentLength(length);
+				entity = tooBig;
+			}
+			entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+			entity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+			response.setEntity(entity);
+		}
+		return response;
+	}
+
+	/**
+	 * Releases the body.
+	 */
+	@Override
+	protected void releaseResources() {
+		body.reset();
+	}
+}
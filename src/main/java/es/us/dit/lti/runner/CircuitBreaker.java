@@ -0,0 +1,207 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+/**
+ * Circuit breaker of a remote corrector.
+ *
+ * <p>The outcome of the latest requests is kept in a ring. When enough of them
+ * failed or were slow (see {@link CircuitBreakerConfig}), the breaker opens and
+ * no request is allowed until the open time expires. Then it is half open: a
+ * single probe is allowed, and its outcome closes or opens it again.
+ *
+ * <p>Each change of state starts a new generation. An allowed request gets the
+ * current generation as its token, and its outcome is ignored if the breaker
+ * has changed since, so late outcomes of requests allowed before opening are
+ * never taken as the outcome of the probe.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class CircuitBreaker {
+	/**
+	 * States of the breaker.
+	 */
+	enum State {
+		/**
+		 * Requests allowed.
+		 */
+		CLOSED,
+		/**
+		 * Requests not allowed.
+		 */
+		OPEN,
+		/**
+		 * Only a probe is allowed.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Policy.
+	 */
+	private final CircuitBreakerConfig config;
+	/**
+	 * Whether each of the latest requests failed.
+	 */
+	private final boolean[] failed;
+	/**
+	 * Whether each of the latest requests was slow.
+	 */
+	private final boolean[] slow;
+	/**
+	 * Next position in the ring.
+	 */
+	private int next = 0;
+	/**
+	 * Number of requests in the ring.
+	 */
+	private int count = 0;
+	/**
+	 * Number of failed requests in the ring.
+	 */
+	private int failures = 0;
+	/**
+	 * Number of slow requests in the ring.
+	 */
+	private int slows = 0;
+	/**
+	 * Current state.
+	 */
+	private State state = State.CLOSED;
+	/**
+	 * Time in milliseconds when an open breaker lets a probe through.
+	 */
+	private long openUntil = 0;
+	/**
+	 * Whether the probe of a half open breaker is in progress.
+	 */
+	private boolean probing = false;
+	/**
+	 * Generation of the current state.
+	 */
+	private long generation = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config policy
+	 */
+	CircuitBreaker(CircuitBreakerConfig config) {
+		this.config = config;
+		final int size = Math.max(1, config.getWindow());
+		failed = new boolean[size];
+		slow = new boolean[size];
+	}
+
+	/**
+	 * Gets the current state.
+	 *
+	 * @return the state
+	 */
+	synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Checks whether a request is allowed. If allowed, its outcome must be
+	 * recorded with the returned token, even if the request ends with an
+	 * unexpected exception.
+	 *
+	 * @return the token of the request, or -1 if not allowed
+	 */
+	synchronized long allow() {
+		long token = generation;
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() >= openUntil) {
+				state = State.HALF_OPEN;
+				probing = true;
+				token = ++generation;
+			} else {
+				token = -1;
+			}
+		} else if (state == State.HALF_OPEN && probing) {
+			token = -1;
+		}
+		return token;
+	}
+
+	/**
+	 * Records the outcome of an allowed request.
+	 *
+	 * <p>It is ignored if the state has changed since the request was allowed.
+	 *
+	 * @param token   token returned by {@link #allow()}
+	 * @param failure if the request failed
+	 * @param millis  duration of the request
+	 * @return true if the breaker has just opened
+	 */
+	synchronized boolean record(long token, boolean failure, long millis) {
+		final boolean isSlow = millis >= config.getSlowMillis();
+		boolean opened = false;
+		if (token != generation) {
+			// allowed before the last change of state, ignored
+			opened = false;
+		} else if (state == State.HALF_OPEN) {
+			probing = false;
+			if (failure || isSlow) {
+				opened = open();
+			} else {
+				state = State.CLOSED;
+				generation++;
+			}
+		} else if (state == State.CLOSED) {
+			// replace oldest
+			if (count == failed.length) {
+				failures -= failed[next] ? 1 : 0;
+				slows -= slow[next] ? 1 : 0;
+			} else {
+				count++;
+			}
+			failed[next] = failure;
+			slow[next] = isSlow;
+			failures += failure ? 1 : 0;
+			slows += isSlow ? 1 : 0;
+			next = (next + 1) % failed.length;
+			if (count >= config.getMinRequests()
+					&& (config.getFailureRate() > 0 && failures >= config.getFailureRate() * count
+							|| config.getSlowRate() > 0 && slows >= config.getSlowRate() * count)) {
+				opened = open();
+			}
+		}
+		return opened;
+	}
+
+	/**
+	 * Opens the breaker and forgets the latest requests.
+	 *
+	 * @return true
+	 */
+	private boolean open() {
+		state = State.OPEN;
+		generation++;
+		openUntil = System.currentTimeMillis() + config.getOpenSeconds() * 1000L;
+		next = 0;
+		count = 0;
+		failures = 0;
+		slows = 0;
+		return true;
+	}
+
+}
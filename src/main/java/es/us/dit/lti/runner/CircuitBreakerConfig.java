@@ -0,0 +1,179 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Circuit breaker policy of an HTTP tool.
+ *
+ * <p>The breaker opens when, among the latest requests, the fraction of
+ * failed or slow ones reaches a limit. While it is open, requests are not sent
+ * and the assessment fails fast (or is deferred, if the tool allows it). After
+ * a while, a single probe request is let through to decide whether to close
+ * it again.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class CircuitBreakerConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of latest requests considered.
+	 */
+	private int window = 20;
+
+	/**
+	 * Number of requests needed before opening.
+	 */
+	private int minRequests = 10;
+
+	/**
+	 * Fraction of failed requests that opens the breaker.
+	 */
+	private double failureRate = 0.5;
+
+	/**
+	 * Fraction of slow requests that opens the breaker.
+	 */
+	private double slowRate = 0.8;
+
+	/**
+	 * Milliseconds after which a request is slow.
+	 */
+	private long slowMillis = 20000;
+
+	/**
+	 * Seconds the breaker stays open before a probe.
+	 */
+	private int openSeconds = 30;
+
+	/**
+	 * Gets the number of latest requests considered.
+	 *
+	 * @return the number of requests
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the number of latest requests considered.
+	 *
+	 * @param window new value
+	 */
+	public void setWindow(int window) {
+		this.window = window;
+	}
+
+	/**
+	 * Gets the number of requests needed before opening.
+	 *
+	 * @return the number of requests
+	 */
+	public int getMinRequests() {
+		return minRequests;
+	}
+
+	/**
+	 * Sets the number of requests needed before opening.
+	 *
+	 * @param minRequests new value
+	 */
+	public void setMinRequests(int minRequests) {
+		this.minRequests = minRequests;
+	}
+
+	/**
+	 * Gets the fraction of failed requests that opens the breaker.
+	 *
+	 * @return the fraction (0-1)
+	 */
+	public double getFailureRate() {
+		return failureRate;
+	}
+
+	/**
+	 * Sets the fraction of failed requests that opens the breaker.
+	 *
+	 * @param failureRate new value (0-1)
+	 */
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	/**
+	 * Gets the fraction of slow requests that opens the breaker.
+	 *
+	 * @return the fraction (0-1)
+	 */
+	public double getSlowRate() {
+		return slowRate;
+	}
+
+	/**
+	 * Sets the fraction of slow requests that opens the breaker.
+	 *
+	 * @param slowRate new value (0-1)
+	 */
+	public void setSlowRate(double slowRate) {
+		this.slowRate = slowRate;
+	}
+
+	/**
+	 * Gets the milliseconds after which a request is slow.
+	 *
+	 * @return the milliseconds
+	 */
+	public long getSlowMillis() {
+		return slowMillis;
+	}
+
+	/**
+	 * Sets the milliseconds after which a request is slow.
+	 *
+	 * @param slowMillis new value
+	 */
+	public void setSlowMillis(long slowMillis) {
+		this.slowMillis = slowMillis;
+	}
+
+	/**
+	 * Gets the seconds the breaker stays open before a probe.
+	 *
+	 * @return the seconds
+	 */
+	public int getOpenSeconds() {
+		return openSeconds;
+	}
+
+	/**
+	 * Sets the seconds the breaker stays open before a probe.
+	 *
+	 * @param openSeconds new value
+	 */
+	public void setOpenSeconds(int openSeconds) {
+		this.openSeconds = openSeconds;
+	}
+
+}
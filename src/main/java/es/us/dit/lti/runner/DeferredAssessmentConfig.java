@@ -0,0 +1,91 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Configuration of deferred assessments of a tool.
+ *
+ * <p>Deferred deliveries are saved at once and assessed later in background,
+ * so that peaks of deliveries are not rejected. If this configuration is
+ * present, a delivery is deferred when the assessment queue of the tool is
+ * full, or always if {@link #isAlways()} is true.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class DeferredAssessmentConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default number of deferred assessments started per minute.
+	 */
+	public static final int DEFAULT_PER_MINUTE = 30;
+
+	/**
+	 * If deliveries of learners are always deferred.
+	 */
+	private boolean always = false;
+
+	/**
+	 * Maximum number of deferred assessments started per minute.
+	 */
+	private int perMinute = DEFAULT_PER_MINUTE;
+
+	/**
+	 * Gets if deliveries of learners are always deferred.
+	 *
+	 * @return true if they are always deferred
+	 */
+	public boolean isAlways() {
+		return always;
+	}
+
+	/**
+	 * Sets if deliveries of learners are always deferred.
+	 *
+	 * @param always new value
+	 */
+	public void setAlways(boolean always) {
+		this.always = always;
+	}
+
+	/**
+	 * Gets the maximum number of deferred assessments started per minute.
+	 *
+	 * @return the number of assessments
+	 */
+	public int getPerMinute() {
+		return perMinute;
+	}
+
+	/**
+	 * Sets the maximum number of deferred assessments started per minute.
+	 *
+	 * @param perMinute new value, values lower than 1 are treated as 1
+	 */
+	public void setPerMinute(int perMinute) {
+		this.perMinute = perMinute;
+	}
+
+}
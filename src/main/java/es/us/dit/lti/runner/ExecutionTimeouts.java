@@ -0,0 +1,105 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * Execution deadlines of the tools.
+ *
+ * <p>The deadline of a tool follows its {@link TimeoutPolicyConfig}. The
+ * execution times of successful assessments are kept in a
+ * {@link LatencyHistogram} per tool for the adaptive mode.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class ExecutionTimeouts {
+	/**
+	 * Default maximum seconds of an execution.
+	 */
+	public static final int DEFAULT_SECONDS = 60;
+
+	/**
+	 * Execution times by tool name.
+	 */
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * Utility class.
+	 */
+	private ExecutionTimeouts() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Gets the maximum seconds of the next execution of a tool.
+	 *
+	 * @param tool the tool
+	 * @return the seconds, 0 or less for no limit
+	 */
+	public static long getSeconds(Tool tool) {
+		final TimeoutPolicyConfig policy = tool.getToolUiConfig().getTimeout();
+		long seconds = DEFAULT_SECONDS;
+		if (policy != null) {
+			seconds = policy.getSeconds();
+			final LatencyHistogram histogram = histograms.get(tool.getName());
+			if (policy.isAdaptive() && histogram != null
+					&& histogram.size() >= Math.max(1, policy.getMinSamples())) {
+				final double millis = histogram.getPercentile(policy.getPercentile()) * policy.getFactor();
+				long adaptive = Math.max(policy.getMinSeconds(), (long) Math.ceil(millis / 1000));
+				adaptive = Math.max(1, adaptive);
+				if (seconds <= 0 || adaptive < seconds) {
+					seconds = adaptive;
+				}
+			}
+		}
+		return seconds;
+	}
+
+	/**
+	 * Records the time of an execution of a tool.
+	 *
+	 * <p>Only successful executions are recorded, errors and timeouts do not
+	 * represent the usual time of the corrector.
+	 *
+	 * @param tool   the tool
+	 * @param millis the execution time in milliseconds
+	 * @param result the result of the execution
+	 */
+	public static void record(Tool tool, long millis, int result) {
+		if (result < ToolRunner.ERROR_GENERIC) {
+			histograms.computeIfAbsent(tool.getName(), k -> new LatencyHistogram()).add(millis);
+		}
+	}
+
+	/**
+	 * Forgets the execution times of a tool, for example, when the corrector
+	 * changes.
+	 *
+	 * @param tool the tool
+	 */
+	public static void reset(Tool tool) {
+		histograms.remove(tool.getName());
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Hedging policy of a tool with several SSH servers.
+ *
+ * <p>If an execution has not finished after the configured percentile of the
+ * latest execution times, a duplicate is started on another healthy server and
+ * the first result is used. The number of duplicates is limited to a fraction
+ * of the executions. Only {@link PooledSshToolRunner} hedges executions.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class HedgingConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Percentile of the execution times after which a duplicate is started.
+	 */
+	private double percentile = 95;
+
+	/**
+	 * Minimum milliseconds to wait before starting a duplicate.
+	 */
+	private long minMillis = 1000;
+
+	/**
+	 * Maximum fraction of executions that can be duplicated.
+	 */
+	private double maxExtraLoad = 0.1;
+
+	/**
+	 * Number of executions needed before hedging.
+	 */
+	private int minSamples = 20;
+
+	/**
+	 * Gets the percentile of the execution times after which a duplicate is
+	 * started.
+	 *
+	 * @return the percentile (0-100)
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Sets the percentile of the execution times after which a duplicate is
+	 * started.
+	 *
+	 * @param percentile new value (0-100)
+	 */
+	public void setPercentile(double percentile) {
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Gets the minimum milliseconds to wait before starting a duplicate.
+	 *
+	 * @return the milliseconds
+	 */
+	public long getMinMillis() {
+		return minMillis;
+	}
+
+	/**
+	 * Sets the minimum milliseconds to wait before starting a duplicate.
+	 *
+	 * @param minMillis new value
+	 */
+	public void setMinMillis(long minMillis) {
+		this.minMillis = minMillis;
+	}
+
+	/**
+	 * Gets the maximum fraction of executions that can be duplicated.
+	 *
+	 * @return the fraction (0-1)
+	 */
+	public double getMaxExtraLoad() {
+		return maxExtraLoad;
+	}
+
+	/**
+	 * Sets the maximum fraction of executions that can be duplicated.
+	 *
+	 * @param maxExtraLoad new value (0-1)
+	 */
+	public void setMaxExtraLoad(double maxExtraLoad) {
+		this.maxExtraLoad = maxExtraLoad;
+	}
+
+	/**
+	 * Gets the number of executions needed before hedging.
+	 *
+	 * @return the number of executions
+	 */
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	/**
+	 * Sets the number of executions needed before hedging.
+	 *
+	 * @param minSamples new value
+	 */
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+}
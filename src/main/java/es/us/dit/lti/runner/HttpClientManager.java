@@ -0,0 +1,510 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustAllStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pools of HTTP connections shared by all HTTP tools.
+ *
+ * <p>There is a pool for connections that verify certificates and another
+ * one for tools with {@link HttpToolConfig#isNoVerifyCertificate()}. Clients
+ * are cheap and created per tool, but connections are kept alive and reused by
+ * all of them. Expired and idle connections are closed periodically.
+ *
+ * <p>Executions that do not block a thread while waiting for the response use
+ * an asynchronous client ({@link #getAsyncClient}) with its own pools, with
+ * the same limits and keep-alive. The processing of their responses must be
+ * run by {@link #getAsyncExecutor()}, not by the threads of the client.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class HttpClientManager {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientManager.class);
+	/**
+	 * Default maximum number of connections of each pool.
+	 */
+	public static final int DEFAULT_MAX_TOTAL = 200;
+	/**
+	 * Default maximum number of connections to a server.
+	 */
+	public static final int DEFAULT_MAX_PER_ROUTE = 20;
+	/**
+	 * Default seconds that an idle connection is kept alive, if the server
+	 * does not say less.
+	 */
+	public static final int DEFAULT_KEEP_ALIVE = 30;
+	/**
+	 * Seconds between evictions of idle connections.
+	 */
+	private static final int EVICTION_PERIOD = 10;
+	/**
+	 * Number of I/O threads of each asynchronous client.
+	 */
+	private static final int ASYNC_THREADS = 2;
+	/**
+	 * Maximum number of threads of {@link #getAsyncExecutor()}.
+	 */
+	private static final int ASYNC_WORKERS = 16;
+	/**
+	 * Seconds that an idle thread of {@link #getAsyncExecutor()} is kept.
+	 */
+	private static final int ASYNC_WORKERS_IDLE = 60;
+	/**
+	 * Attribute of the context of asynchronous requests with the keep-alive
+	 * of the tool, in milliseconds.
+	 */
+	private static final String KEEP_ALIVE_ATTRIBUTE = "tpm.keepAlive";
+
+	/**
+	 * Maximum number of connections of each pool.
+	 */
+	private static int maxTotal = DEFAULT_MAX_TOTAL;
+	/**
+	 * Maximum number of connections to a server.
+	 */
+	private static int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	/**
+	 * Longest keep-alive of any client, in seconds.
+	 */
+	private static int maxKeepAlive = DEFAULT_KEEP_ALIVE;
+	/**
+	 * Pool of connections verifying certificates.
+	 */
+	private static PoolingHttpClientConnectionManager manager = null;
+	/**
+	 * Pool of connections without certificate verification.
+	 */
+	private static PoolingHttpClientConnectionManager trustAllManager = null;
+	/**
+	 * Periodic eviction of idle connections.
+	 */
+	private static ScheduledFuture<?> eviction = null;
+	/**
+	 * Asynchronous client verifying certificates.
+	 */
+	private static CloseableHttpAsyncClient asyncClient = null;
+	/**
+	 * Pool of connections of {@link #asyncClient}.
+	 */
+	private static PoolingNHttpClientConnectionManager asyncManager = null;
+	/**
+	 * Asynchronous client without certificate verification.
+	 */
+	private static CloseableHttpAsyncClient trustAllAsyncClient = null;
+	/**
+	 * Pool of connections of {@link #trustAllAsyncClient}.
+	 */
+	private static PoolingNHttpClientConnectionManager trustAllAsyncManager = null;
+	/**
+	 * Executor of the processing of asynchronous requests and responses.
+	 */
+	private static ExecutorService asyncExecutor = null;
+	/**
+	 * Counter of threads, for their names.
+	 */
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	/**
+	 * Can not create objects.
+	 */
+	private HttpClientManager() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Sets the limits of the pools.
+	 *
+	 * @param total    maximum number of connections of each pool
+	 * @param perRoute maximum number of connections to a server
+	 */
+	public static synchronized void configure(int total, int perRoute) {
+		maxTotal = total > 0 ? total : DEFAULT_MAX_TOTAL;
+		maxPerRoute = perRoute > 0 ? perRoute : DEFAULT_MAX_PER_ROUTE;
+		for (final PoolingHttpClientConnectionManager m : new PoolingHttpClientConnectionManager[] { manager,
+				trustAllManager }) {
+			if (m != null) {
+				m.setMaxTotal(maxTotal);
+				m.setDefaultMaxPerRoute(maxPerRoute);
+			}
+		}
+		for (final PoolingNHttpClientConnectionManager m : new PoolingNHttpClientConnectionManager[] {
+				asyncManager, trustAllAsyncManager }) {
+			if (m != null) {
+				m.setMaxTotal(maxTotal);
+				m.setDefaultMaxPerRoute(maxPerRoute);
+			}
+		}
+	}
+
+	/**
+	 * Creates an SSL context that trusts all certificates.
+	 *
+	 * @return the SSL context, or null if it can not be created
+	 */
+	private static SSLContext createTrustAllContext() {
+		try {
+			return new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build();
+		} catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
+			logger.error("Error creating SSL context: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Schedules the eviction of idle connections, if not scheduled yet.
+	 */
+	private static synchronized void scheduleEviction() {
+		if (eviction == null) {
+			eviction = TimeoutService.scheduleWithFixedDelay(HttpClientManager::evict, EVICTION_PERIOD,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Gets a pool, creating it if necessary.
+	 *
+	 * @param trustAll if certificates are not verified
+	 * @return the pool, or null if it can not be created
+	 */
+	private static synchronized PoolingHttpClientConnectionManager getManager(boolean trustAll) {
+		PoolingHttpClientConnectionManager m = trustAll ? trustAllManager : manager;
+		if (m == null) {
+			if (trustAll) {
+				final SSLContext sslContext = createTrustAllContext();
+				if (sslContext == null) {
+					return null;
+				}
+				m = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+						.register("http", PlainConnectionSocketFactory.getSocketFactory())
+						.register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+						.build());
+				trustAllManager = m;
+			} else {
+				m = new PoolingHttpClientConnectionManager();
+				manager = m;
+			}
+			m.setMaxTotal(maxTotal);
+			m.setDefaultMaxPerRoute(maxPerRoute);
+			scheduleEviction();
+		}
+		return m;
+	}
+
+	/**
+	 * Closes expired and idle connections.
+	 *
+	 * <p>Each connection expires after the keep-alive of the client that
+	 * released it. Idle connections are only closed after the longest
+	 * keep-alive, so that the keep-alive of each tool is honoured.
+	 */
+	private static synchronized void evict() {
+		for (final PoolingHttpClientConnectionManager m : new PoolingHttpClientConnectionManager[] { manager,
+				trustAllManager }) {
+			if (m != null) {
+				m.closeExpiredConnections();
+				m.closeIdleConnections(maxKeepAlive, TimeUnit.SECONDS);
+			}
+		}
+		for (final PoolingNHttpClientConnectionManager m : new PoolingNHttpClientConnectionManager[] {
+				asyncManager, trustAllAsyncManager }) {
+			if (m != null) {
+				m.closeExpiredConnections();
+				m.closeIdleConnections(maxKeepAlive, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Sets the maximum number of connections to the server of a tool.
+	 *
+	 * @param pool           the pool
+	 * @param url            URL of the tool
+	 * @param maxConnections maximum number of connections, 0 or less for the
+	 *                       default
+	 */
+	private static void setMaxConnections(ConnPoolControl<HttpRoute> pool, String url, int maxConnections) {
+		if (maxConnections > 0) {
+			try {
+				final URI uri = new URI(url);
+				if (uri.getHost() != null) {
+					final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+					final int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+					pool.setMaxPerRoute(
+							new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure),
+							maxConnections);
+				}
+			} catch (final URISyntaxException e) {
+				// URL with replacements, use default limit
+				logger.debug("Connection limit not applied: {}", url);
+			}
+		}
+	}
+
+	/**
+	 * Gets the keep-alive of a connection.
+	 *
+	 * @param response  the last response of the connection
+	 * @param context   the context of the request
+	 * @param keepAlive keep-alive of the tool in milliseconds
+	 * @return the keep-alive, the one of the server if it is less
+	 */
+	private static long getKeepAlive(HttpResponse response, HttpContext context, long keepAlive) {
+		final long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+		return server > 0 ? Math.min(server, keepAlive) : keepAlive;
+	}
+
+	/**
+	 * Records the keep-alive of a client.
+	 *
+	 * @param seconds keep-alive in seconds
+	 */
+	private static synchronized void addKeepAlive(int seconds) {
+		maxKeepAlive = Math.max(maxKeepAlive, seconds);
+	}
+
+	/**
+	 * Creates a client that uses the shared pools.
+	 *
+	 * @param requestConfig    default configuration of requests
+	 * @param trustAll         if certificates are not verified
+	 * @param url              URL of the tool, to apply the connection limit
+	 * @param maxConnections   maximum number of connections to the server of
+	 *                         the tool, 0 or less for the default
+	 * @param keepAliveSeconds maximum seconds to keep an idle connection, 0 or
+	 *                         less for the default
+	 * @return the client, or null if there is an error
+	 */
+	public static CloseableHttpClient createClient(RequestConfig requestConfig, boolean trustAll, String url,
+			int maxConnections, int keepAliveSeconds) {
+		final PoolingHttpClientConnectionManager m = getManager(trustAll);
+		if (m == null) {
+			return null;
+		}
+		setMaxConnections(m, url, maxConnections);
+		final int keepAliveValue = keepAliveSeconds > 0 ? keepAliveSeconds : DEFAULT_KEEP_ALIVE;
+		addKeepAlive(keepAliveValue);
+		final long keepAlive = TimeUnit.SECONDS.toMillis(keepAliveValue);
+		final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> getKeepAlive(response,
+				context, keepAlive);
+		return HttpClientBuilder.create().setConnectionManager(m).setConnectionManagerShared(true)
+				.setKeepAliveStrategy(keepAliveStrategy).setDefaultRequestConfig(requestConfig).build();
+	}
+
+	/**
+	 * Creates a daemon thread for the asynchronous clients.
+	 *
+	 * @param r the task of the thread
+	 * @return the thread
+	 */
+	private static Thread newThread(Runnable r) {
+		final Thread t = new Thread(r, "tpm-http-" + threadCounter.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * Gets an asynchronous client, creating it if necessary.
+	 *
+	 * <p>Its I/O threads must not wait: the processing of responses must be run
+	 * by {@link #getAsyncExecutor()}. The limit of connections to the server of
+	 * the tool is applied to its pool.
+	 *
+	 * @param trustAll       if certificates are not verified
+	 * @param url            URL of the tool, to apply the connection limit
+	 * @param maxConnections maximum number of connections to the server of the
+	 *                       tool, 0 or less for the default
+	 * @return the client, or null if there is an error
+	 */
+	public static synchronized HttpAsyncClient getAsyncClient(boolean trustAll, String url, int maxConnections) {
+		CloseableHttpAsyncClient c = trustAll ? trustAllAsyncClient : asyncClient;
+		if (c == null) {
+			final ThreadFactory factory = HttpClientManager::newThread;
+			final PoolingNHttpClientConnectionManager m;
+			try {
+				final DefaultConnectingIOReactor reactor = new DefaultConnectingIOReactor(
+						IOReactorConfig.custom().setIoThreadCount(ASYNC_THREADS).build(), factory);
+				if (trustAll) {
+					final SSLContext sslContext = createTrustAllContext();
+					if (sslContext == null) {
+						return null;
+					}
+					m = new PoolingNHttpClientConnectionManager(reactor,
+							RegistryBuilder.<SchemeIOSessionStrategy>create()
+									.register("http", NoopIOSessionStrategy.INSTANCE)
+									.register("https",
+											new SSLIOSessionStrategy(sslContext, NoopHostnameVerifier.INSTANCE))
+									.build());
+				} else {
+					m = new PoolingNHttpClientConnectionManager(reactor);
+				}
+			} catch (final IOReactorException e) {
+				logger.error("Error creating I/O reactor: {}", e.getMessage());
+				return null;
+			}
+			m.setMaxTotal(maxTotal);
+			m.setDefaultMaxPerRoute(maxPerRoute);
+			// keep-alive of the tool of each request
+			c = HttpAsyncClients.custom().setConnectionManager(m).setThreadFactory(factory)
+					.setKeepAliveStrategy((response, context) -> {
+						final Object keepAlive = context.getAttribute(KEEP_ALIVE_ATTRIBUTE);
+						return getKeepAlive(response, context, keepAlive instanceof Long ? (Long) keepAlive
+								: TimeUnit.SECONDS.toMillis(DEFAULT_KEEP_ALIVE));
+					}).build();
+			c.start();
+			if (trustAll) {
+				trustAllAsyncClient = c;
+				trustAllAsyncManager = m;
+			} else {
+				asyncClient = c;
+				asyncManager = m;
+			}
+			scheduleEviction();
+		}
+		setMaxConnections(trustAll ? trustAllAsyncManager : asyncManager, url, maxConnections);
+		return c;
+	}
+
+	/**
+	 * Creates the context of a request of an asynchronous client.
+	 *
+	 * @param requestConfig    configuration of the request
+	 * @param keepAliveSeconds maximum seconds to keep an idle connection, 0 or
+	 *                         less for the default
+	 * @return the context
+	 */
+	public static HttpClientContext createAsyncContext(RequestConfig requestConfig, int keepAliveSeconds) {
+		final int keepAlive = keepAliveSeconds > 0 ? keepAliveSeconds : DEFAULT_KEEP_ALIVE;
+		addKeepAlive(keepAlive);
+		final HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(requestConfig);
+		context.setAttribute(KEEP_ALIVE_ATTRIBUTE, TimeUnit.SECONDS.toMillis(keepAlive));
+		return context;
+	}
+
+	/**
+	 * Gets the executor of the processing of asynchronous requests and
+	 * responses, creating it if necessary.
+	 *
+	 * <p>Its threads also write the bodies of requests that are not files,
+	 * waiting while they are sent. There are {@value #ASYNC_WORKERS} threads
+	 * at most and other tasks wait in the queue. A waiting writer only needs
+	 * the I/O threads of the client, and it stops when its request is
+	 * cancelled, so queued tasks always run.
+	 *
+	 * @return the executor
+	 */
+	public static synchronized Executor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(ASYNC_WORKERS, ASYNC_WORKERS,
+					ASYNC_WORKERS_IDLE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), HttpClientManager::newThread);
+			executor.allowCoreThreadTimeOut(true);
+			asyncExecutor = executor;
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * Closes all connections.
+	 */
+	public static synchronized void shutdown() {
+		if (eviction != null) {
+			eviction.cancel(false);
+			eviction = null;
+		}
+		if (manager != null) {
+			manager.shutdown();
+			manager = null;
+		}
+		if (trustAllManager != null) {
+			trustAllManager.shutdown();
+			trustAllManager = null;
+		}
+		for (final CloseableHttpAsyncClient c : new CloseableHttpAsyncClient[] { asyncClient,
+				trustAllAsyncClient }) {
+			if (c != null) {
+				try {
+					c.close();
+				} catch (final IOException e) {
+					logger.error("Error closing asynchronous client: {}", e.getMessage());
+				}
+			}
+		}
+		asyncClient = null;
+		asyncManager = null;
+		trustAllAsyncClient = null;
+		trustAllAsyncManager = null;
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+			asyncExecutor = null;
+		}
+		maxKeepAlive = DEFAULT_KEEP_ALIVE;
+	}
+}
@@ -174,6 +174,26 @@ public class HttpToolConfig {
 	 */
 	private int defaultScoreOnError = ToolRunner.ERROR_CORRECTOR_EXCEPTION;
 
+	/**
+	 * Maximum number of connections to the server, 0 for the default.
+	 */
+	private int maxConnections = 0;
+
+	/**
+	 * Maximum seconds to keep an idle connection, 0 for the default.
+	 */
+	private int keepAliveSeconds = 0;
+
+	/**
+	 * Circuit breaker policy, null to disable it.
+	 */
+	private CircuitBreakerConfig circuitBreaker;
+
+	/**
+	 * Retry policy, null to disable it.
+	 */
+	private RetryConfig retry;
+
 	/**
 	 * Deserialize from JSON string.
 	 *
@@ -509,4 +529,79 @@ public class HttpToolConfig {
 		this.defaultScoreOnError = defaultScoreOnError;
 	}
 
+	/**
+	 * Gets the maximum number of connections to the server.
+	 *
+	 * @return the maximum, 0 for the default of {@link HttpClientManager}
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections to the server.
+	 *
+	 * <p>It is applied to the host of the URL, if it has no replacements, and
+	 * shared by all tools using that host.
+	 *
+	 * @param maxConnections the maximum, 0 for the default
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Gets the maximum seconds to keep an idle connection.
+	 *
+	 * @return the seconds, 0 for the default of {@link HttpClientManager}
+	 */
+	public int getKeepAliveSeconds() {
+		return keepAliveSeconds;
+	}
+
+	/**
+	 * Sets the maximum seconds to keep an idle connection.
+	 *
+	 * @param keepAliveSeconds the seconds, 0 for the default
+	 */
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		this.keepAliveSeconds = keepAliveSeconds;
+	}
+
+	/**
+	 * Gets the circuit breaker policy.
+	 *
+	 * @return the circuit breaker policy, null if disabled
+	 */
+	public CircuitBreakerConfig getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Sets the circuit breaker policy.
+	 *
+	 * @param circuitBreaker the circuit breaker policy, null to disable it
+	 */
+	public void setCircuitBreaker(CircuitBreakerConfig circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Gets the retry policy.
+	 *
+	 * @return the retry policy, null if disabled
+	 */
+	public RetryConfig getRetry() {
+		return retry;
+	}
+
+	/**
+	 * Sets the retry policy.
+	 *
+	 * @param retry the retry policy, null to disable it
+	 */
+	public void setRetry(RetryConfig retry) {
+		this.retry = retry;
+	}
+
 }
@@ -27,28 +27,35 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.ConnectException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.ParseException;
@@ -64,26 +71,30 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.TrustAllStrategy;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.entity.NFileEntity;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import org.apache.http.protocol.HTTP;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
 
 import es.us.dit.lti.config.ExecutionRestrictionsConfig;
 import es.us.dit.lti.entity.Settings;
@@ -99,14 +110,18 @@ public class HttpToolRunner implements ToolRunner {
 	 * Logger.
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(HttpToolRunner.class);
-	/**
-	 * Regular expression to detect elements to replace.
-	 */
-	private static final Pattern pattern = Pattern.compile("\\$\\{(.+?)\\}");
 	/**
 	 * Maximum response time.
 	 */
 	private static final int DEFAULT_TIMEOUT = 30000;
+	/**
+	 * Idempotent request methods, they can be retried after being sent.
+	 */
+	private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+	/**
+	 * Response status codes that can be retried.
+	 */
+	private static final Set<Integer> RETRY_STATUS = Set.of(502, 503, 504);
 	/**
 	 * Configuration of tool.
 	 */
@@ -119,10 +134,34 @@ public class HttpToolRunner implements ToolRunner {
 	 * Indicates whether to make substitutions in the response.
 	 */
 	private boolean replaceResponse = false;
+	/**
+	 * Texts of the configuration compiled at init, by text.
+	 */
+	private Map<String, TokenTemplate> templates = Map.of();
+	/**
+	 * Replacement keys used in the response templates.
+	 */
+	private Set<String> responseKeys = Set.of();
+	/**
+	 * JSON properties used in the response templates.
+	 */
+	private Set<String> jsonKeys = Set.of();
+	/**
+	 * Indicates whether the body is copied to the output while it is received.
+	 */
+	private boolean streamBody = false;
 	/**
 	 * Client who will make the requests.
 	 */
 	private HttpClient client = null;
+	/**
+	 * Default configuration of requests.
+	 */
+	private RequestConfig requestConfig = null;
+	/**
+	 * Circuit breaker of the corrector, null if disabled.
+	 */
+	private CircuitBreaker breaker = null;
 
 	/**
 	 * Initializes tool runner.
@@ -164,11 +203,35 @@ public class HttpToolRunner implements ToolRunner {
 				if (tc.getParameters() == null) {
 					tc.setParameters(new ArrayList<>());
 				}
+				// compile templates once
+				final Map<String, TokenTemplate> compiled = new HashMap<>();
+				compile(compiled, tc.getUrl());
+				compile(compiled, tc.getFileParameter());
+				compile(compiled, tc.getRequestBody());
+				for (final Entry e : tc.getHeaders()) {
+					if (!e.literal) {
+						compile(compiled, e.key);
+						compile(compiled, e.value);
+					}
+				}
+				for (final Entry e : tc.getParameters()) {
+					if (!e.literal) {
+						compile(compiled, e.key);
+						compile(compiled, e.value);
+					}
+				}
+				compile(compiled, tc.getScoreTemplate());
+				if (tc.getResponseTemplate() != null) {
+					for (final String line : tc.getResponseTemplate()) {
+						compile(compiled, line);
+					}
+				}
+				templates = compiled;
 				// precalculate whether to make replacements in response or request and save the
 				// value
-				if (pattern.matcher(tc.getUrl()).find()
-						|| tc.getFileParameter() != null && pattern.matcher(tc.getFileParameter()).find()
-						|| tc.getRequestBody() != null && pattern.matcher(tc.getRequestBody()).find()) {
+				if (template(tc.getUrl()).hasTokens()
+						|| tc.getFileParameter() != null && template(tc.getFileParameter()).hasTokens()
+						|| tc.getRequestBody() != null && template(tc.getRequestBody()).hasTokens()) {
 					replaceRequest = true;
 				} else {
 					for (final Entry e : tc.getHeaders()) {
@@ -184,34 +247,38 @@ public class HttpToolRunner implements ToolRunner {
 						}
 					}
 				}
-				// response
-				if (tc.getScoreTemplate() != null && pattern.matcher(tc.getScoreTemplate()).find()) {
-					replaceResponse = true;
-				} else if (tc.getResponseTemplate() != null) {
+				// response, only keys used in templates are extracted
+				final Set<String> keys = new HashSet<>();
+				if (tc.getScoreTemplate() != null) {
+					template(tc.getScoreTemplate()).addKeys(keys);
+				}
+				if (tc.getResponseTemplate() != null) {
 					for (final String line : tc.getResponseTemplate()) {
-						if (pattern.matcher(line).find()) {
-							replaceResponse = true;
-							break;
-						}
+						template(line).addKeys(keys);
+					}
+				}
+				replaceResponse = !keys.isEmpty();
+				responseKeys = keys;
+				jsonKeys = new HashSet<>();
+				for (final String key : keys) {
+					if (key.startsWith("j.")) {
+						jsonKeys.add(key.substring(2));
 					}
 				}
+				// without response template the body is the output
+				streamBody = replaceResponse && tc.getResponseTemplate() == null && !keys.contains("body");
 				// 30 seconds by default
-				final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(DEFAULT_TIMEOUT)
+				requestConfig = RequestConfig.custom().setConnectTimeout(DEFAULT_TIMEOUT)
 						.setRedirectsEnabled(false).setContentCompressionEnabled(false).build();
 
-				if (tc.isNoVerifyCertificate()) {
-					try {
-						client = HttpClientBuilder.create().setDefaultRequestConfig(requestConfig)
-								.setSSLContext(new SSLContextBuilder()
-										.loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build())
-								.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE).build();
-					} catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
-						// ignore
-						client = null;
-					}
-				}
+				// connections are shared by all HTTP tools
+				client = HttpClientManager.createClient(requestConfig, tc.isNoVerifyCertificate(), tc.getUrl(),
+						tc.getMaxConnections(), tc.getKeepAliveSeconds());
 				if (client == null) {
-					client = HttpClientBuilder.create().setDefaultRequestConfig(requestConfig).build();
+					logger.error("HttpToolRunner: Error creating client: {}", exeData);
+					tc = null;
+				} else if (tc.getCircuitBreaker() != null) {
+					breaker = new CircuitBreaker(tc.getCircuitBreaker());
 				}
 			}
 
@@ -246,32 +313,299 @@ public class HttpToolRunner implements ToolRunner {
 			args.addAll(extraArgs);
 
 			try (PrintWriter errorLog = new PrintWriter(outputErr, StandardCharsets.UTF_8)) {
-				// request
-				final HttpUriRequest request = createRequest(filePath, originalFilename, args, errorLog);
-				// request timer
-				final TimerTask task = new TimerTask() {
-					@Override
-					public void run() {
-						if (request != null) {
-							request.abort();
+				final long deadline = maxSecondsWait > 0 ? System.currentTimeMillis() + maxSecondsWait * 1000
+						: Long.MAX_VALUE;
+				int retry = 0;
+				long delay = -1;
+				do {
+					if (delay > 0) {
+						Thread.sleep(delay);
+					}
+					// request
+					final HttpUriRequest request = createRequest(filePath, originalFilename, args, errorLog);
+					final long token = allow(errorLog);
+					if (token < 0) {
+						result = ERROR_UNAVAILABLE;
+						break;
+					}
+					// request timeout
+					ScheduledFuture<?> timeout = null;
+					if (maxSecondsWait > 0) {
+						timeout = TimeoutService.schedule(request::abort,
+								Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					}
+					final long start = System.currentTimeMillis();
+					boolean recorded = false;
+					// send HTTP request
+					try (CloseableHttpResponse response = (CloseableHttpResponse) client.execute(request);) {
+						final int status = response.getStatusLine().getStatusCode();
+						record(token, status >= 500, start);
+						recorded = true;
+						delay = RETRY_STATUS.contains(status) ? getRetryDelay(request.getMethod(), false, ++retry,
+								deadline) : -1;
+						if (delay < 0) {
+							// process response
+							result = processResponse(output, errorLog, response);
+						} else {
+							errorLog.println("Response status " + status + ", retrying.");
+						}
+					} catch (final IOException e) {
+						errorLog.println("Request error: " + e);
+						if (timeout != null && timeout.isDone() && !timeout.isCancelled()) {
+							delay = -1;
+							result = ERROR_TIMEOUT;
+						} else {
+							delay = getRetryDelay(request.getMethod(),
+									e instanceof ConnectException || e instanceof ConnectTimeoutException, ++retry,
+									deadline);
+							result = ERROR_CORRECTOR_EXCEPTION;
+						}
+					} finally {
+						if (!recorded) {
+							// also unexpected exceptions, the breaker must not wait for them
+							record(token, true, start);
+						}
+						if (timeout != null) {
+							timeout.cancel(false);
 						}
 					}
-				};
-				final Timer t = new Timer(true);
-				t.schedule(task, maxSecondsWait * 1000);
-				// send HTTP request
-				try (CloseableHttpResponse response = (CloseableHttpResponse) client.execute(request);) {
-					// process response
-					result = processResponse(output, errorLog, response);
-				}
-				t.cancel();
+				} while (delay >= 0);
 			} catch (final IOException ioe) {
 				ioe.printStackTrace();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Execute the tool without blocking a thread while waiting for the
+	 * response.
+	 *
+	 * <p>The request is sent by an asynchronous client of
+	 * {@link HttpClientManager}, with the same connection limits and
+	 * keep-alive as {@link #exec}. The body of the request is streamed, by the
+	 * I/O threads of the client if it is a file, the body of the response is
+	 * limited by the upload size as it is received, and the response is
+	 * processed by the executor of {@link HttpClientManager#getAsyncExecutor()}.
+	 * If the request can not be created, the error is returned without
+	 * sending it.
+	 */
+	@Override
+	public CompletableFuture<Integer> execAsync(String filePath, String outputPath, String userId,
+			String originalFilename, int counter, boolean isInstructor, List<String> extraArgs,
+			long maxSecondsWait) {
+		final HttpAsyncClient asyncClient = tc != null && tc.getUrl() != null
+				? HttpClientManager.getAsyncClient(tc.isNoVerifyCertificate(), tc.getUrl(), tc.getMaxConnections())
+				: null;
+		if (asyncClient == null) {
+			return ToolRunner.super.execAsync(filePath, outputPath, userId, originalFilename, counter, isInstructor,
+					extraArgs, maxSecondsWait);
+		}
+		final File output = new File(outputPath);
+		final File outputErr = new File(outputPath + Settings.OUTPUT_ERROR_EXT);
+		final ArrayList<String> args = new ArrayList<>();
+		// do not use preArgs
+		args.add(userId);
+		args.add(originalFilename);
+		args.add(String.valueOf(counter));
+		args.add(String.valueOf(isInstructor));
+		args.addAll(extraArgs);
+
+		final PrintWriter errorLog;
+		try {
+			errorLog = new PrintWriter(outputErr, StandardCharsets.UTF_8);
+		} catch (final IOException e) {
+			logger.error("HttpToolRunner: Error creating error output: {}", e.getMessage());
+			return CompletableFuture.completedFuture(ERROR_RUNNER_EXCEPTION);
+		}
+		final long deadline = maxSecondsWait > 0 ? System.currentTimeMillis() + maxSecondsWait * 1000
+				: Long.MAX_VALUE;
+		final HttpUriRequest request;
+		try {
+			request = createRequest(filePath, originalFilename, args, errorLog);
+		} catch (final RuntimeException e) {
+			// e.g. invalid URL after replacing the arguments
+			logger.error("HttpToolRunner: Error creating request: {}", e.getMessage());
+			errorLog.println("Error creating request: " + e);
+			errorLog.close();
+			return CompletableFuture.completedFuture(ERROR_RUNNER_EXCEPTION);
+		}
+		return sendAsync(asyncClient, request, output, errorLog, 0, deadline)
+				.whenComplete((r, e) -> errorLog.close());
+	}
+
+	/**
+	 * Sends a request by the asynchronous client and processes the response,
+	 * retrying it if allowed.
+	 *
+	 * @param asyncClient the asynchronous client
+	 * @param request     the request
+	 * @param output      output file
+	 * @param errorLog    output to write errors
+	 * @param retry       number of previous retries
+	 * @param deadline    time in milliseconds when the assessment times out
+	 * @return the score or error code
+	 */
+	private CompletableFuture<Integer> sendAsync(HttpAsyncClient asyncClient, HttpUriRequest request,
+			File output, PrintWriter errorLog, int retry, long deadline) {
+		final HttpHost target = URIUtils.extractHost(request.getURI());
+		if (target == null) {
+			errorLog.println("Invalid request: " + request.getURI());
+			return CompletableFuture.completedFuture(ERROR_CORRECTOR_EXCEPTION);
+		}
+		final long token = allow(errorLog);
+		if (token < 0) {
+			return CompletableFuture.completedFuture(ERROR_UNAVAILABLE);
+		}
+		final Executor executor = HttpClientManager.getAsyncExecutor();
+		// the body is streamed, a new producer for each retry
+		HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(target, request);
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			if (entity instanceof HttpAsyncContentProducer) {
+				// sent by the I/O thread, e.g. files
+				producer = new BasicAsyncRequestProducer(target, request, (HttpAsyncContentProducer) entity) {
+				};
+			} else if (entity != null) {
+				producer = new BasicAsyncRequestProducer(target, request,
+						new AsyncEntityProducer(entity, executor)) {
+				};
+			}
+		}
+		final CompletableFuture<HttpResponse> sent = new CompletableFuture<>();
+		final long start = System.currentTimeMillis();
+		Future<HttpResponse> future = null;
+		try {
+			future = asyncClient.execute(producer, new BoundedResponseConsumer(Settings.getMaxUploadSize() * 1024),
+					HttpClientManager.createAsyncContext(requestConfig, tc.getKeepAliveSeconds()),
+					new FutureCallback<HttpResponse>() {
+						@Override
+						public void completed(HttpResponse response) {
+							sent.complete(response);
+						}
+
+						@Override
+						public void failed(Exception e) {
+							sent.completeExceptionally(e);
+						}
+
+						@Override
+						public void cancelled() {
+							sent.cancel(false);
+						}
+					});
+		} catch (final RuntimeException e) {
+			// e.g. client shut down, handled as a failed request
+			sent.completeExceptionally(e);
+		}
+		// request timeout
+		final Future<HttpResponse> sending = future;
+		final ScheduledFuture<?> timeout = sending != null && deadline != Long.MAX_VALUE
+				? TimeoutService.schedule(() -> sending.cancel(true),
+						Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+				: null;
+		// not in the threads of the client
+		return sent.handleAsync((response, e) -> {
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			int result;
+			long delay;
+			if (e == null) {
+				final int status = response.getStatusLine().getStatusCode();
+				record(token, status >= 500, start);
+				delay = RETRY_STATUS.contains(status)
+						? getRetryDelay(request.getMethod(), false, retry + 1, deadline)
+						: -1;
+				if (delay < 0) {
+					result = processResponse(output, errorLog, response);
+				} else {
+					errorLog.println("Response status " + status + ", retrying.");
+					result = ERROR_CORRECTOR_EXCEPTION;
+				}
+			} else {
+				record(token, true, start);
+				final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause()
+						: e;
+				errorLog.println("Request error: " + cause);
+				if (timeout != null && timeout.isDone() && !timeout.isCancelled()) {
+					delay = -1;
+					result = ERROR_TIMEOUT;
+				} else {
+					delay = getRetryDelay(request.getMethod(),
+							cause instanceof ConnectException || cause instanceof ConnectTimeoutException,
+							retry + 1, deadline);
+					result = ERROR_CORRECTOR_EXCEPTION;
+				}
+			}
+			if (delay < 0) {
+				return CompletableFuture.completedFuture(result);
+			}
+			// try again later
+			final CompletableFuture<Integer> res = new CompletableFuture<>();
+			TimeoutService.schedule(() -> {
+				try {
+					sendAsync(asyncClient, request, output, errorLog, retry + 1, deadline)
+							.whenComplete((r, x) -> res.complete(x == null ? r : ERROR_RUNNER_EXCEPTION));
+				} catch (final RuntimeException x) {
+					res.complete(ERROR_RUNNER_EXCEPTION);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+			return res;
+		}, executor).thenCompose(r -> r);
+	}
+
+	/**
+	 * Checks whether the circuit breaker allows a request. If it is allowed, its
+	 * outcome must be recorded with the returned token.
+	 *
+	 * @param errorLog output to write errors
+	 * @return the token of the request, or -1 if not allowed
+	 */
+	private long allow(PrintWriter errorLog) {
+		final long token = breaker == null ? 0 : breaker.allow();
+		if (token < 0) {
+			errorLog.println("Corrector unavailable (circuit breaker open).");
+		}
+		return token;
+	}
+
+	/**
+	 * Records the outcome of a request in the circuit breaker.
+	 *
+	 * @param token   token of the request
+	 * @param failure if the request failed
+	 * @param start   time in milliseconds when the request was sent
+	 */
+	private void record(long token, boolean failure, long start) {
+		if (breaker != null && breaker.record(token, failure, System.currentTimeMillis() - start)) {
+			logger.warn("HttpToolRunner: circuit breaker opened: {}", tc.getUrl());
+		}
+	}
+
+	/**
+	 * Gets the delay before retrying a failed request.
+	 *
+	 * @param method   request method
+	 * @param notSent  if the request could not be sent (connection failed)
+	 * @param retry    number of the retry, starting at 1
+	 * @param deadline time in milliseconds when the assessment times out
+	 * @return the delay in milliseconds or -1 if it must not be retried
+	 */
+	private long getRetryDelay(String method, boolean notSent, int retry, long deadline) {
+		final RetryConfig rc = tc.getRetry();
+		long delay = -1;
+		if (rc != null && retry <= rc.getMaxRetries() && (notSent || IDEMPOTENT_METHODS.contains(method))) {
+			delay = rc.getDelay(retry);
+			if (System.currentTimeMillis() + delay >= deadline) {
+				delay = -1;
+			}
+		}
+		return delay;
+	}
+
 	/**
 	 * Process an HTTP response.
 	 * 
@@ -280,12 +614,12 @@ public class HttpToolRunner implements ToolRunner {
 	 * @param response the HTTP response
 	 * @return score/outcome of the attempt
 	 */
-	private int processResponse(File output, PrintWriter errorLog, CloseableHttpResponse response) {
+	private int processResponse(File output, PrintWriter errorLog, HttpResponse response) {
 		int result;
 		Map<String, String> replacements = null;
 		if (replaceResponse) {
 			// replace what can be replaced
-			replacements = createResponseReplacements(response);
+			replacements = createResponseReplacements(response, output, errorLog);
 		}
 
 		if (tc.getScoreTemplate() == null) {
@@ -299,7 +633,7 @@ public class HttpToolRunner implements ToolRunner {
 			// fixed score.
 			try {
 				if (replaceResponse) {
-					result = Integer.parseInt(replaceResponseTokens(tc.getScoreTemplate(), replacements));
+					result = Integer.parseInt(template(tc.getScoreTemplate()).render(replacements));
 				} else {
 					result = Integer.parseInt(tc.getScoreTemplate());
 				}
@@ -308,12 +642,14 @@ public class HttpToolRunner implements ToolRunner {
 			}
 		}
 
-		if (replaceResponse || tc.getResponseTemplate() != null) {
+		if (streamBody) {
+			// body already copied while extracting replacements
+		} else if (replaceResponse || tc.getResponseTemplate() != null) {
 			// copy body
 			try (FileWriter fw = new FileWriter(output, StandardCharsets.UTF_8)) {
 				if (tc.getResponseTemplate() != null) {
 					for (final String l : tc.getResponseTemplate()) {
-						fw.write(replaceResponse ? replaceResponseTokens(l, replacements) : l);
+						fw.write(replaceResponse ? template(l).render(replacements) : l);
 						fw.append('\n');
 					}
 				} else if (replaceResponse) {
@@ -366,19 +702,19 @@ public class HttpToolRunner implements ToolRunner {
 		String fileParameter = tc.getFileParameter();
 		// request method, content type do not need replace
 		if (replaceRequest) {
-			url = replaceRequestTokens(url, args);
+			url = template(url).render(args);
 			if (fileParameter != null) {
-				fileParameter = replaceRequestTokens(fileParameter, args);
+				fileParameter = template(fileParameter).render(args);
 			}
 			if (requestBody != null) {
-				requestBody = replaceRequestTokens(requestBody, args);
+				requestBody = template(requestBody).render(args);
 			}
 			parameters = new ArrayList<Entry>(); //clone 
 			for (final Entry e : tc.getParameters()) {
 				if (!e.literal) {
 					Entry m = new Entry();
-					m.key = replaceRequestTokens(e.key, args);
-					m.value = replaceRequestTokens(e.value, args);
+					m.key = template(e.key).render(args);
+					m.value = template(e.value).render(args);
 					parameters.add(m);
 				} else {
 					parameters.add(e);
@@ -388,8 +724,8 @@ public class HttpToolRunner implements ToolRunner {
 			for (final Entry e : tc.getHeaders()) {
 				if (!e.literal) {
 					Entry m = new Entry();
-					m.key = replaceRequestTokens(e.key, args);
-					m.value = replaceRequestTokens(e.value, args);
+					m.key = template(e.key).render(args);
+					m.value = template(e.value).render(args);
 					parameters.add(m);
 				} else {
 					headers.add(e);
@@ -456,8 +792,8 @@ public class HttpToolRunner implements ToolRunner {
 				}
 				entity = builder.build();
 			} else {
-				// copy file as is
-				entity = EntityBuilder.create().setFile(new File(filePath)).setContentType(ct).build();
+				// copy file as is, without a writer thread if sent asynchronously
+				entity = new NFileEntity(new File(filePath), ct);
 			}
 
 			rp.setEntity(entity);
@@ -517,6 +853,29 @@ public class HttpToolRunner implements ToolRunner {
 		return request;
 	}
 
+	/**
+	 * Compiles a text of the configuration and adds it to a map.
+	 *
+	 * @param compiled map of compiled templates by text
+	 * @param text     text to compile, may be null
+	 */
+	private static void compile(Map<String, TokenTemplate> compiled, String text) {
+		if (text != null) {
+			compiled.computeIfAbsent(text, TokenTemplate::compile);
+		}
+	}
+
+	/**
+	 * Gets the compiled template of a text of the configuration.
+	 *
+	 * @param text text of the configuration
+	 * @return compiled template
+	 */
+	private TokenTemplate template(String text) {
+		final TokenTemplate t = templates.get(text);
+		return t != null ? t : TokenTemplate.compile(text);
+	}
+
 	/**
 	 * Replaces a text with a map of replacements.
 	 * 
@@ -531,26 +890,7 @@ public class HttpToolRunner implements ToolRunner {
 	 * @return text with replacements made
 	 */
 	public static String replaceResponseTokens(String text, Map<String, String> replacements) {
-		final Matcher matcher = pattern.matcher(text);
-		final StringBuilder buffer = new StringBuilder();
-		while (matcher.find()) {
-			// it would also be worth appendReplacement(buffer, replacement), but
-			// has problems with certain characters.
-			matcher.appendReplacement(buffer, "");
-			final String expression = matcher.group(1).trim();
-			if (expression.charAt(0) == '%') {
-				try {
-					buffer.append(URLDecoder.decode(replacements.getOrDefault(expression.substring(1), ""),
-							StandardCharsets.UTF_8));
-				} catch (final Exception e) {
-					buffer.append("[ERROR: ").append(e.getMessage()).append("]");
-				}
-			} else {
-				buffer.append(replacements.getOrDefault(expression, ""));
-			}
-		}
-		matcher.appendTail(buffer);
-		return buffer.toString();
+		return TokenTemplate.compile(text).render(replacements);
 	}
 
 	/**
@@ -567,40 +907,7 @@ public class HttpToolRunner implements ToolRunner {
 	 * @return text with replacements made
 	 */
 	public static String replaceRequestTokens(String text, List<String> replacements) {
-		final Matcher matcher = pattern.matcher(text);
-		final StringBuilder buffer = new StringBuilder();
-		while (matcher.find()) {
-			// it would also be worth appendReplacement(buffer, replacement), but
-			// has problems with certain characters.
-			matcher.appendReplacement(buffer, "");
-			String expression = matcher.group(1).trim();
-			int index = -1;
-			boolean encode = false;
-			if (expression.charAt(0) == '%') {
-				encode = true;
-				expression = expression.substring(1);
-			}
-			try {
-				index = Integer.parseInt(expression);
-			} catch (final NumberFormatException e1) {
-				index = -1;
-			}
-
-			if (index >= 0 && index < replacements.size()) {
-				String r = replacements.get(index);
-				if (encode) {
-					try {
-						r = URLEncoder.encode(replacements.get(index), StandardCharsets.UTF_8);
-					} catch (final Exception e) {
-						// ignore
-						logger.error("Encode.", e);
-					}
-				}
-				buffer.append(r);
-			}
-		}
-		matcher.appendTail(buffer);
-		return buffer.toString();
+		return TokenTemplate.compile(text).render(replacements);
 	}
 
 	/**
@@ -614,108 +921,238 @@ public class HttpToolRunner implements ToolRunner {
 	 * jsonResponse is true).
 	 * </ul>
 	 *
+	 * <p>Only the keys used in the templates are extracted. JSON properties are
+	 * read as a stream and the body is only kept in memory when
+	 * <code>${body}</code> is used; otherwise, if it is the output, it is copied
+	 * to the output file as it is received.
+	 *
 	 * @param response HTTP response
+	 * @param output   output file
+	 * @param errorLog output to write errors
 	 * @return map of replacements
 	 */
-	private Map<String, String> createResponseReplacements(HttpResponse response) {
+	private Map<String, String> createResponseReplacements(HttpResponse response, File output,
+			PrintWriter errorLog) {
 		final Map<String, String> replacements = new HashMap<>();
 		final Header[] respHeaders = response.getAllHeaders();
 		for (final Header h : respHeaders) {
 			// If exists, add comma separated to previous value
 			final String key = "h." + h.getName();
-			final String value = replacements.get(key);
-			if (value == null) {
-				replacements.put(key, h.getValue());
-			} else {
-				replacements.replace(key, value + "," + h.getValue());
+			if (responseKeys.contains(key)) {
+				final String value = replacements.get(key);
+				if (value == null) {
+					replacements.put(key, h.getValue());
+				} else {
+					replacements.replace(key, value + "," + h.getValue());
+				}
 			}
 		}
-		String body = "";
+		String body = null;
+		boolean bodyInOutput = false;
+		final int max = Settings.getMaxUploadSize() * 1024;
 		// copy body
 		HttpEntity entity = response.getEntity();
 		if (entity != null) {
-			if (entity.isChunked()) {
-				try {
-					int max = Settings.getMaxUploadSize() * 1024;
-					InputStream instream = entity.getContent();
-					ByteArrayOutputStream outstream = new ByteArrayOutputStream();
-					byte[] buffer = new byte[1024];
-					int len;
-					int total = 0;
-					while ((len = instream.read(buffer)) > 0 && total < max + 1) {
-						outstream.write(buffer, 0, len);
-						total += len;
-					}
-					if (entity.getContentEncoding() == null) {
-						body = new String(outstream.toByteArray(), StandardCharsets.UTF_8);
-					} else {
-						body = new String(outstream.toByteArray(),
-								Charset.forName(entity.getContentEncoding().getValue()));
-					}
-					outstream.close();
-					instream.close();
-					if (body.length() > Settings.getMaxUploadSize() * 1024) {
-						body = "Excessive length";
-					}
-				} catch (ParseException | IOException e1) {
-					// ignore
-					logger.error("Body.", e1);
-				}
-			} else {
-				final long len = entity.getContentLength();
-				if (len != -1 && len < Settings.getMaxUploadSize() * 1024) {
-					try {
-						body = EntityUtils.toString(entity);
-					} catch (ParseException | IOException e1) {
-						// ignore
-						logger.error("Body.", e1);
-					}
-				} else {
-					body = "Excessive length";
-					EntityUtils.consumeQuietly(entity);
+			if (!entity.isChunked() && (entity.getContentLength() == -1 || entity.getContentLength() >= max)) {
+				body = "Excessive length";
+				EntityUtils.consumeQuietly(entity);
+				entity = null;
+			} else if (responseKeys.contains("body")) {
+				body = readBody(entity, max);
+			} else if (streamBody) {
+				final long copied = copyBody(entity, output, max, errorLog);
+				bodyInOutput = copied >= 0 && copied <= max;
+				if (!bodyInOutput) {
+					body = copied > max ? "Excessive length" : "";
 					entity = null;
 				}
 			}
 		}
-		replacements.put("body", body);
-		if (tc.isJsonResponse() && entity != null
+		if (streamBody && !bodyInOutput) {
+			// body not received or too big
+			try (FileWriter fw = new FileWriter(output, StandardCharsets.UTF_8)) {
+				fw.write(body == null ? "" : body);
+			} catch (final IOException e) {
+				errorLog.println("The output file does not exist.");
+			}
+		}
+		replacements.put("body", body == null ? "" : body);
+		if (!jsonKeys.isEmpty() && tc.isJsonResponse() && entity != null && entity.getContentType() != null
 				&& entity.getContentType().getValue().startsWith(ContentType.APPLICATION_JSON.getMimeType())) {
 			// extract JSON properties
-			createJsonReplacements(replacements, body);
+			final Charset charset = getCharset(entity);
+			try (Reader reader = body != null ? new StringReader(body)
+					: bodyInOutput ? new FileReader(output, charset)
+							: new InputStreamReader(BoundedInputStream.builder()
+									.setInputStream(entity.getContent()).setMaxCount(max).get(), charset)) {
+				createJsonReplacements(replacements, reader);
+			} catch (final IOException e) {
+				logger.error("Body.", e);
+			}
+		}
+		if (entity != null) {
+			EntityUtils.consumeQuietly(entity);
 		}
 		return replacements;
 	}
 
+	/**
+	 * Reads the body of a response.
+	 *
+	 * @param entity entity of the response
+	 * @param max    maximum length
+	 * @return body or "Excessive length"
+	 */
+	private String readBody(HttpEntity entity, int max) {
+		String body = "";
+		if (entity.isChunked()) {
+			try {
+				InputStream instream = entity.getContent();
+				ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1024];
+				int len;
+				int total = 0;
+				while ((len = instream.read(buffer)) > 0 && total < max + 1) {
+					outstream.write(buffer, 0, len);
+					total += len;
+				}
+				if (entity.getContentEncoding() == null) {
+					body = new String(outstream.toByteArray(), StandardCharsets.UTF_8);
+				} else {
+					body = new String(outstream.toByteArray(),
+							Charset.forName(entity.getContentEncoding().getValue()));
+				}
+				outstream.close();
+				instream.close();
+				if (body.length() > max) {
+					body = "Excessive length";
+				}
+			} catch (ParseException | IOException e1) {
+				// ignore
+				logger.error("Body.", e1);
+			}
+		} else {
+			try {
+				body = EntityUtils.toString(entity);
+			} catch (ParseException | IOException e1) {
+				// ignore
+				logger.error("Body.", e1);
+			}
+		}
+		return body;
+	}
+
+	/**
+	 * Copies the body of a response to the output file.
+	 *
+	 * @param entity   entity of the response
+	 * @param output   output file
+	 * @param max      maximum length
+	 * @param errorLog output to write errors
+	 * @return bytes copied (more than max if the body is too big) or -1 on error
+	 */
+	private long copyBody(HttpEntity entity, File output, int max, PrintWriter errorLog) {
+		long total = -1;
+		try (InputStream instream = entity.getContent(); FileOutputStream fos = new FileOutputStream(output)) {
+			final byte[] buffer = new byte[8192];
+			int len;
+			total = 0;
+			while ((len = instream.read(buffer)) > 0 && total <= max) {
+				fos.write(buffer, 0, len);
+				total += len;
+			}
+		} catch (final FileNotFoundException e) {
+			errorLog.println("The output file does not exist.");
+		} catch (final IOException e1) {
+			logger.error("Body.", e1);
+			total = -1;
+		}
+		if (total < 0 || total > max) {
+			EntityUtils.consumeQuietly(entity);
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the charset of a response entity.
+	 *
+	 * @param entity entity of the response
+	 * @return charset declared or the default of the content type
+	 */
+	private static Charset getCharset(HttpEntity entity) {
+		Charset charset = null;
+		try {
+			final ContentType contentType = ContentType.get(entity);
+			if (contentType != null) {
+				charset = contentType.getCharset();
+				if (charset == null) {
+					final ContentType defaultType = ContentType.getByMimeType(contentType.getMimeType());
+					charset = defaultType != null ? defaultType.getCharset() : null;
+				}
+			}
+		} catch (ParseException | UnsupportedCharsetException e) {
+			// use default
+		}
+		return charset != null ? charset : HTTP.DEF_CONTENT_CHARSET;
+	}
+
 	/**
 	 * Generates the replacement texts with data from the JSON response.
 	 *
+	 * <p>The response is read as a stream and only the properties used in the
+	 * templates are parsed; the rest are skipped.
+	 *
 	 * @param replacements map to which new replacements are added
-	 * @param body         body of HTTP response
+	 * @param in           body of HTTP response
 	 */
-	private void createJsonReplacements(Map<String, String> replacements, String body) {
+	private void createJsonReplacements(Map<String, String> replacements, Reader in) {
 		final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+		final JsonReader reader = new JsonReader(in);
+		reader.setStrictness(Strictness.LENIENT);
+		int pending = jsonKeys.size();
 		try {
-			final JsonElement json = JsonParser.parseString(body);
-			if (json.isJsonObject()) {
-				final JsonObject jsonObject = json.getAsJsonObject();
-				for (final Map.Entry<String, JsonElement> e : jsonObject.entrySet()) {
-					if (e.getValue().isJsonPrimitive()) {
-						replacements.put("j." + e.getKey(), e.getValue().getAsString());
+			switch (reader.peek()) {
+			case BEGIN_OBJECT:
+				reader.beginObject();
+				while (pending > 0 && reader.hasNext()) {
+					final String name = reader.nextName();
+					if (jsonKeys.contains(name)) {
+						final JsonElement value = JsonParser.parseReader(reader);
+						if (value.isJsonPrimitive()) {
+							replacements.put("j." + name, value.getAsString());
+						} else {
+							replacements.put("j." + name, gson.toJson(value));
+						}
+						pending--;
+					} else {
+						reader.skipValue();
+					}
+				}
+				break;
+			case BEGIN_ARRAY:
+				reader.beginArray();
+				for (int i = 0; pending > 0 && reader.hasNext(); i++) {
+					final String name = String.valueOf(i);
+					if (jsonKeys.contains(name)) {
+						replacements.put("j." + name, gson.toJson(JsonParser.parseReader(reader)));
+						pending--;
 					} else {
-						replacements.put("j." + e.getKey(), gson.toJson(e.getValue()));
+						reader.skipValue();
 					}
 				}
-			} else if (json.isJsonArray()) {
-				final JsonArray jsonArray = json.getAsJsonArray();
-				final int size = jsonArray.size();
-				for (int i = 0; i < size; i++) {
-					replacements.put("j." + i, gson.toJson(jsonArray.get(i)));
+				break;
+			case STRING:
+			case NUMBER:
+			case BOOLEAN:
+				if (jsonKeys.contains("0")) {
+					replacements.put("j.0", gson.toJson(JsonParser.parseReader(reader)));
 				}
-			} else if (json.isJsonPrimitive()) {
-				replacements.put("j.0", gson.toJson(json));
+				break;
+			default:
+				break;
 			}
-		} catch (JsonSyntaxException e) {
-			logger.error("JsonSyntaxException: {}\nBody:\n|{}|", e.getMessage(), body);
+		} catch (IOException | JsonParseException | IllegalStateException e) {
+			logger.error("JSON error: {}", e.getMessage());
 		}
 	}
 }
\ No newline at end of file
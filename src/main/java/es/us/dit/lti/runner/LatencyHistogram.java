@@ -0,0 +1,129 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+/**
+ * Rolling histogram of execution times.
+ *
+ * <p>Times are counted in logarithmic buckets (25% wide) and only the latest
+ * {@value #WINDOW} executions are kept, so memory and cost are constant.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class LatencyHistogram {
+	/**
+	 * Number of executions kept.
+	 */
+	static final int WINDOW = 500;
+	/**
+	 * Upper limit of the first bucket in milliseconds.
+	 */
+	private static final double FIRST_BUCKET = 10;
+	/**
+	 * Ratio between upper limits of consecutive buckets.
+	 */
+	private static final double GROWTH = 1.25;
+	/**
+	 * Number of buckets, the last one reaches several hours.
+	 */
+	private static final int BUCKETS = 70;
+
+	/**
+	 * Number of executions in each bucket.
+	 */
+	private final int[] counts = new int[BUCKETS];
+	/**
+	 * Bucket of the latest executions, to remove the oldest one.
+	 */
+	private final byte[] ring = new byte[WINDOW];
+	/**
+	 * Next position in the ring.
+	 */
+	private int next = 0;
+	/**
+	 * Number of executions kept.
+	 */
+	private int size = 0;
+
+	/**
+	 * Adds an execution time.
+	 *
+	 * @param millis the execution time in milliseconds
+	 */
+	synchronized void add(long millis) {
+		final int bucket = getBucket(millis);
+		if (size == WINDOW) {
+			counts[ring[next]]--;
+		} else {
+			size++;
+		}
+		ring[next] = (byte) bucket;
+		counts[bucket]++;
+		next = (next + 1) % WINDOW;
+	}
+
+	/**
+	 * Gets the number of executions kept.
+	 *
+	 * @return the number of executions
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a percentile of the execution times.
+	 *
+	 * <p>The upper limit of the bucket is returned, so the result is never lower
+	 * than the real value.
+	 *
+	 * @param percentile the percentile (0-100)
+	 * @return the percentile in milliseconds, 0 if empty
+	 */
+	synchronized long getPercentile(double percentile) {
+		long result = 0;
+		if (size > 0) {
+			final long target = Math.max(1, (long) Math.ceil(size * Math.min(100, percentile) / 100));
+			long accumulated = 0;
+			int bucket = 0;
+			while (bucket < BUCKETS - 1 && accumulated + counts[bucket] < target) {
+				accumulated += counts[bucket];
+				bucket++;
+			}
+			result = (long) Math.ceil(FIRST_BUCKET * Math.pow(GROWTH, bucket));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the bucket of an execution time.
+	 *
+	 * @param millis the execution time in milliseconds
+	 * @return the bucket
+	 */
+	private static int getBucket(long millis) {
+		int bucket = 0;
+		if (millis > FIRST_BUCKET) {
+			bucket = (int) Math.ceil(Math.log(millis / FIRST_BUCKET) / Math.log(GROWTH));
+		}
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+}
@@ -24,12 +24,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import es.us.dit.lti.config.ExecutionRestrictionsConfig;
+import es.us.dit.lti.config.ToolUiConfig;
 import es.us.dit.lti.entity.Settings;
 
 /**
@@ -50,6 +50,10 @@ public class LocalToolRunner implements ToolRunner {
 	 * Prefixed arguments.
 	 */
 	private String[] preArgs;
+	/**
+	 * Pool of persistent workers, null if disabled.
+	 */
+	private LocalWorkerPool workerPool = null;
 
 	/**
 	 * Initializes tool runner.
@@ -69,44 +73,75 @@ public class LocalToolRunner implements ToolRunner {
 		}
 	}
 
+	/**
+	 * Enables persistent workers if configured.
+	 *
+	 * @see LocalWorkerPool
+	 */
+	@Override
+	public void configure(ToolUiConfig tui) {
+		workerPool = LocalWorkerPool.get(exe, preArgs, tui.getLocalWorker());
+	}
+
 	/**
 	 * Execute the tool.
+	 *
+	 * <p>If persistent workers are enabled, the delivery is sent to a worker.
+	 * If all workers are busy, or the worker fails before replying, a new process
+	 * is executed instead. The time limit covers both, the process only gets the
+	 * remaining time.
 	 */
 	@Override
 	public int exec(String filePath, String outputPath, String userId, String originalFilename, int counter,
 			boolean isInstructor, List<String> extraArgs, long maxSecondsWait) {
 
+		final List<String> fields = new ArrayList<>();
+		fields.add(filePath);
+		fields.add(userId);
+		fields.add(originalFilename);
+		fields.add(String.valueOf(counter));
+		fields.add(String.valueOf(isInstructor));
+		fields.addAll(extraArgs);
+
+		final long deadline = maxSecondsWait > 0 ? System.currentTimeMillis() + maxSecondsWait * 1000 : 0;
+		Integer workerResult = null;
+		if (workerPool != null) {
+			workerResult = workerPool.exec(fields, new File(outputPath), deadline);
+		}
+		int result;
+		if (workerResult != null) {
+			result = workerResult;
+		} else {
+			final long maxSeconds = TimeoutService.getRemainingSeconds(deadline);
+			result = maxSeconds < 0 ? ERROR_TIMEOUT : execProcess(fields, outputPath, maxSeconds);
+		}
+		return result;
+	}
+
+	/**
+	 * Executes the corrector in a new process.
+	 *
+	 * @param fields         arguments after the executable
+	 * @param outputPath     path of file to write results/output
+	 * @param maxSecondsWait maximum number of seconds it should take to finish
+	 * @return score/outcome, ok if [0-100], error if &gt; 100
+	 */
+	private int execProcess(List<String> fields, String outputPath, long maxSecondsWait) {
 		int result = 0;
 		Process program;
 		final File output = new File(outputPath);
 		final File outputErr = new File(outputPath + Settings.OUTPUT_ERROR_EXT);
 		final ArrayList<String> args = new ArrayList<>(Arrays.asList(preArgs));
 		args.add(exe);
-		args.add(filePath);
-		args.add(userId);
-		args.add(originalFilename);
-		args.add(String.valueOf(counter));
-		args.add(String.valueOf(isInstructor));
-		args.addAll(extraArgs);
+		args.addAll(fields);
 
 		try {
 			final ProcessBuilder pb = new ProcessBuilder(args);
 			pb.redirectOutput(output);
 			pb.redirectError(outputErr);
 			program = pb.start();
-			if (maxSecondsWait > 0) {
-				final boolean terminado = program.waitFor(maxSecondsWait, TimeUnit.SECONDS);
-				if (!terminado) {
-					program.destroyForcibly().waitFor(1, TimeUnit.MINUTES);
-					// wait 1 minute after kill for security
-				}
-
-			} else {
-				// infinite wait
-				program.waitFor();
-			}
-
-			result = program.exitValue();
+			// killed if it exceeds its time (0 or less, infinite wait)
+			result = TimeoutService.waitFor(program, maxSecondsWait);
 
 		} catch (final InterruptedException e) {
 			// error
@@ -0,0 +1,283 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent corrector process of a {@link LocalWorkerPool}.
+ *
+ * <p>It is used by one thread at a time.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class LocalWorker {
+	/**
+	 * Environment variable set to 1 in worker processes.
+	 */
+	static final String VAR_WORKER = "TPMworker";
+	/**
+	 * Health check request.
+	 */
+	private static final String CMD_PING = "PING";
+	/**
+	 * Health check reply.
+	 */
+	private static final String REPLY_PONG = "PONG";
+	/**
+	 * Assessment request.
+	 */
+	private static final String CMD_JOB = "JOB";
+	/**
+	 * Assessment reply.
+	 */
+	private static final String REPLY_RESULT = "RESULT";
+	/**
+	 * Maximum length of a header line.
+	 */
+	private static final int MAX_LINE = 1024;
+
+	/**
+	 * Corrector process.
+	 */
+	private final Process process;
+	/**
+	 * Standard output of the process.
+	 */
+	private final InputStream in;
+	/**
+	 * Standard input of the process.
+	 */
+	private final OutputStream out;
+	/**
+	 * Last modification time of the corrector when started.
+	 */
+	private final long correctorModified;
+	/**
+	 * Number of assessed deliveries.
+	 */
+	private int jobs = 0;
+	/**
+	 * If the last operation exceeded its time.
+	 */
+	private volatile boolean timedOut = false;
+
+	/**
+	 * Starts a worker process.
+	 *
+	 * @param command           command and arguments
+	 * @param log               file where standard error is appended
+	 * @param correctorModified last modification time of the corrector
+	 * @throws IOException if the process can not be started
+	 */
+	LocalWorker(List<String> command, File log, long correctorModified) throws IOException {
+		final ProcessBuilder pb = new ProcessBuilder(command);
+		pb.environment().put(VAR_WORKER, "1");
+		pb.redirectError(ProcessBuilder.Redirect.appendTo(log));
+		process = pb.start();
+		in = new BufferedInputStream(process.getInputStream());
+		out = new BufferedOutputStream(process.getOutputStream());
+		this.correctorModified = correctorModified;
+	}
+
+	/**
+	 * Checks if the worker answers.
+	 *
+	 * @param maxSeconds maximum seconds to wait
+	 * @return true if the worker is healthy
+	 */
+	boolean ping(long maxSeconds) {
+		boolean res = false;
+		final ScheduledFuture<?> watchdog = startWatchdog(maxSeconds);
+		try {
+			out.write((CMD_PING + "\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			res = REPLY_PONG.equals(readLine());
+		} catch (final IOException e) {
+			res = false;
+		} finally {
+			watchdog.cancel(false);
+		}
+		return res;
+	}
+
+	/**
+	 * Assesses a delivery.
+	 *
+	 * <p>The output sent by the worker is written in the output file.
+	 *
+	 * @param fields     request fields
+	 * @param output     output file
+	 * @param maxSeconds maximum seconds to wait, 0 or less to wait forever
+	 * @return the score or {@link ToolRunner#ERROR_TIMEOUT}
+	 * @throws IOException if there is an error in the protocol (the worker must
+	 *                     be discarded)
+	 */
+	int run(List<String> fields, File output, long maxSeconds) throws IOException {
+		int res;
+		jobs++;
+		final ScheduledFuture<?> watchdog = maxSeconds > 0 ? startWatchdog(maxSeconds) : null;
+		try {
+			out.write((CMD_JOB + " " + fields.size() + "\n").getBytes(StandardCharsets.US_ASCII));
+			for (final String field : fields) {
+				final byte[] data = field.getBytes(StandardCharsets.UTF_8);
+				out.write((data.length + "\n").getBytes(StandardCharsets.US_ASCII));
+				out.write(data);
+				out.write('\n');
+			}
+			out.flush();
+			final String line = readLine();
+			final String[] header = line == null ? new String[0] : line.split(" ");
+			if (header.length != 3 || !REPLY_RESULT.equals(header[0])) {
+				throw new IOException("Invalid reply: " + line);
+			}
+			res = Integer.parseInt(header[1]);
+			final long length = Long.parseLong(header[2]);
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(output))) {
+				copy(length, os);
+			}
+		} catch (final IOException | NumberFormatException e) {
+			if (!timedOut) {
+				throw new IOException(e);
+			}
+			res = ToolRunner.ERROR_TIMEOUT;
+		} finally {
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Schedules the destruction of the process if an operation exceeds its time.
+	 *
+	 * @param maxSeconds maximum seconds
+	 * @return the scheduled task
+	 */
+	private ScheduledFuture<?> startWatchdog(long maxSeconds) {
+		return TimeoutService.schedule(() -> {
+			timedOut = true;
+			TimeoutService.kill(process);
+		}, maxSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Reads a header line in ASCII.
+	 *
+	 * @return the line without end of line or null if end of stream
+	 * @throws IOException if line is too long or I/O error
+	 */
+	private String readLine() throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		int c = in.read();
+		while (c != -1 && c != '\n') {
+			if (baos.size() >= MAX_LINE) {
+				throw new IOException("Line too long");
+			}
+			baos.write(c);
+			c = in.read();
+		}
+		String res = null;
+		if (c != -1 || baos.size() > 0) {
+			res = baos.toString(StandardCharsets.US_ASCII).trim();
+		}
+		return res;
+	}
+
+	/**
+	 * Copies bytes from the worker.
+	 *
+	 * @param length number of bytes
+	 * @param os     destination
+	 * @throws IOException if stream ends before or I/O error
+	 */
+	private void copy(long length, OutputStream os) throws IOException {
+		final byte[] buffer = new byte[8192];
+		long remaining = length;
+		while (remaining > 0) {
+			final int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (n < 0) {
+				throw new IOException("Unexpected end of output");
+			}
+			os.write(buffer, 0, n);
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Gets if the process is alive.
+	 *
+	 * @return true if alive
+	 */
+	boolean isAlive() {
+		return process.isAlive();
+	}
+
+	/**
+	 * Gets the number of assessed deliveries.
+	 *
+	 * @return the number of jobs
+	 */
+	int getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * Gets the last modification time of the corrector when started.
+	 *
+	 * @return the modification time
+	 */
+	long getCorrectorModified() {
+		return correctorModified;
+	}
+
+	/**
+	 * Stops the worker.
+	 *
+	 * <p>Standard input is closed so the worker can exit. If it does not exit in
+	 * some seconds, it is killed.
+	 *
+	 * @param graceSeconds seconds to wait before killing
+	 */
+	void stop(long graceSeconds) {
+		try {
+			out.close();
+		} catch (final IOException e) {
+			// ignore, it is killed later
+		}
+		if (process.isAlive()) {
+			TimeoutService.schedule(() -> TimeoutService.kill(process), graceSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Configuration of persistent workers of a {@link ToolRunnerType#TR_LOCAL} type
+ * tool.
+ *
+ * <p>If enabled, the corrector is started once and it assesses several
+ * deliveries using the protocol described in {@link LocalWorkerPool}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class LocalWorkerConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum number of worker processes. If 0, persistent workers are disabled.
+	 */
+	private int workers = 0;
+
+	/**
+	 * Number of deliveries assessed by a worker before being replaced.
+	 */
+	private int maxJobsPerWorker = 100;
+
+	/**
+	 * Seconds between health checks of idle workers.
+	 */
+	private int healthCheckSeconds = 30;
+
+	/**
+	 * Maximum seconds for a worker to start or answer a health check.
+	 */
+	private int startSeconds = 10;
+
+	/**
+	 * Gets the maximum number of worker processes.
+	 *
+	 * @return the maximum number of workers, 0 if disabled
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Sets the maximum number of worker processes.
+	 *
+	 * @param workers new value, 0 to disable
+	 */
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * Gets the number of deliveries assessed by a worker before being replaced.
+	 *
+	 * @return the maximum number of jobs per worker
+	 */
+	public int getMaxJobsPerWorker() {
+		return maxJobsPerWorker;
+	}
+
+	/**
+	 * Sets the number of deliveries assessed by a worker before being replaced.
+	 *
+	 * @param maxJobsPerWorker new value
+	 */
+	public void setMaxJobsPerWorker(int maxJobsPerWorker) {
+		this.maxJobsPerWorker = maxJobsPerWorker;
+	}
+
+	/**
+	 * Gets the seconds between health checks of idle workers.
+	 *
+	 * @return the seconds between health checks
+	 */
+	public int getHealthCheckSeconds() {
+		return healthCheckSeconds;
+	}
+
+	/**
+	 * Sets the seconds between health checks of idle workers.
+	 *
+	 * @param healthCheckSeconds new value
+	 */
+	public void setHealthCheckSeconds(int healthCheckSeconds) {
+		this.healthCheckSeconds = healthCheckSeconds;
+	}
+
+	/**
+	 * Gets the maximum seconds for a worker to start or answer a health check.
+	 *
+	 * @return the maximum seconds
+	 */
+	public int getStartSeconds() {
+		return startSeconds;
+	}
+
+	/**
+	 * Sets the maximum seconds for a worker to start or answer a health check.
+	 *
+	 * @param startSeconds new value
+	 */
+	public void setStartSeconds(int startSeconds) {
+		this.startSeconds = startSeconds;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(healthCheckSeconds, maxJobsPerWorker, startSeconds, workers);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		final LocalWorkerConfig other = (LocalWorkerConfig) obj;
+		return healthCheckSeconds == other.healthCheckSeconds && maxJobsPerWorker == other.maxJobsPerWorker
+				&& startSeconds == other.startSeconds && workers == other.workers;
+	}
+
+}
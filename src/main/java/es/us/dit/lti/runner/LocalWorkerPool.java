@@ -0,0 +1,379 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of persistent processes of a local corrector.
+ *
+ * <p>Workers are started with the usual command (prefixed arguments and
+ * corrector) without more arguments and with the environment variable
+ * <code>TPMworker=1</code>. Standard error is appended to the file
+ * <code>corrector.log</code>. The protocol uses standard input and output:
+ *
+ * <ul>
+ * <li>Health check: TPM sends <code>PING\n</code>, the worker replies
+ * <code>PONG\n</code>.</li>
+ * <li>Assessment: TPM sends <code>JOB n\n</code> followed by <i>n</i> fields
+ * (the same arguments received by a normal corrector: file path, user ID,
+ * original file name, counter, instructor flag and extra arguments), each
+ * one as <code>length\n</code>, the UTF-8 bytes and <code>\n</code>. The
+ * worker replies <code>RESULT score length\n</code> followed by the bytes of
+ * the output.</li>
+ * <li>End: TPM closes standard input, the worker must exit.</li>
+ * </ul>
+ *
+ * <p>Idle workers are checked periodically in a dedicated executor, since
+ * checks block while waiting for replies. A worker is replaced after a maximum
+ * number of deliveries, after a protocol error or timeout and when the
+ * corrector file is modified.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class LocalWorkerPool {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(LocalWorkerPool.class);
+	/**
+	 * Seconds to wait for a worker to exit after closing its input.
+	 */
+	private static final long STOP_GRACE_SECONDS = 5;
+	/**
+	 * Extension of the log file of workers.
+	 */
+	private static final String LOG_EXT = ".log";
+	/**
+	 * Number of threads to check idle workers.
+	 */
+	private static final int CHECK_THREADS = 2;
+
+	/**
+	 * Pools by corrector path.
+	 */
+	private static final Map<String, LocalWorkerPool> pools = new HashMap<>();
+	/**
+	 * Executor of health checks, which may block.
+	 */
+	private static ExecutorService checkExecutor = null;
+
+	/**
+	 * Corrector path.
+	 */
+	private final String exe;
+	/**
+	 * Command to start workers.
+	 */
+	private final List<String> command;
+	/**
+	 * Configuration.
+	 */
+	private final LocalWorkerConfig config;
+	/**
+	 * Idle workers.
+	 */
+	private final BlockingDeque<LocalWorker> idle = new LinkedBlockingDeque<>();
+	/**
+	 * Number of started workers (idle or busy).
+	 */
+	private int size = 0;
+	/**
+	 * If the pool has been closed.
+	 */
+	private volatile boolean closed = false;
+	/**
+	 * Periodic health check.
+	 */
+	private ScheduledFuture<?> healthCheck;
+	/**
+	 * Whether a health check is running.
+	 */
+	private final AtomicBoolean checking = new AtomicBoolean();
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param exe     corrector path
+	 * @param preArgs prefixed arguments
+	 * @param config  configuration
+	 */
+	private LocalWorkerPool(String exe, String[] preArgs, LocalWorkerConfig config) {
+		this.exe = exe;
+		this.config = config;
+		command = new ArrayList<>(List.of(preArgs));
+		command.add(exe);
+	}
+
+	/**
+	 * Gets the pool of a corrector, creating or replacing it if the command or
+	 * configuration changed.
+	 *
+	 * @param exe     corrector path
+	 * @param preArgs prefixed arguments
+	 * @param config  configuration
+	 * @return the pool or null if disabled
+	 */
+	public static synchronized LocalWorkerPool get(String exe, String[] preArgs, LocalWorkerConfig config) {
+		LocalWorkerPool pool = pools.get(exe);
+		final List<String> command = new ArrayList<>(List.of(preArgs));
+		command.add(exe);
+		if (pool != null && (!pool.config.equals(config) || !pool.command.equals(command))) {
+			pools.remove(exe);
+			pool.close();
+			pool = null;
+		}
+		if (pool == null && config != null && config.getWorkers() > 0) {
+			pool = new LocalWorkerPool(exe, preArgs, config);
+			pools.put(exe, pool);
+			if (checkExecutor == null) {
+				final AtomicInteger threadCounter = new AtomicInteger();
+				checkExecutor = Executors.newFixedThreadPool(CHECK_THREADS, r -> {
+					final Thread t = new Thread(r, "tpm-worker-check-" + threadCounter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			final long period = Math.max(1, config.getHealthCheckSeconds());
+			pool.healthCheck = TimeoutService.scheduleWithFixedDelay(pool::submitCheck, period, TimeUnit.SECONDS);
+		}
+		return pool;
+	}
+
+	/**
+	 * Closes all pools.
+	 */
+	public static synchronized void closeAll() {
+		for (final LocalWorkerPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+		if (checkExecutor != null) {
+			checkExecutor.shutdownNow();
+			checkExecutor = null;
+		}
+	}
+
+	/**
+	 * Assesses a delivery in a worker.
+	 *
+	 * <p>It does not wait for a busy worker: if all of them are busy, it returns
+	 * null at once.
+	 *
+	 * @param fields   request fields
+	 * @param output   output file
+	 * @param deadline time limit in milliseconds (including the start of a new
+	 *                 worker), or 0 if there is no limit
+	 * @return the score, {@link ToolRunner#ERROR_TIMEOUT} or null if no worker
+	 *         is available or it failed before replying
+	 */
+	public Integer exec(List<String> fields, File output, long deadline) {
+		Integer res = null;
+		final LocalWorker worker = acquire();
+		if (worker != null) {
+			final long maxSeconds = TimeoutService.getRemainingSeconds(deadline);
+			if (maxSeconds < 0) {
+				res = ToolRunner.ERROR_TIMEOUT;
+			} else {
+				try {
+					res = worker.run(fields, output, maxSeconds);
+				} catch (final IOException e) {
+					logger.error("Worker error {}: {}", exe, e.getMessage());
+				}
+			}
+			if (res != null && res == ToolRunner.ERROR_TIMEOUT) {
+				logger.error("Worker timeout: {}", exe);
+			}
+			release(worker);
+		}
+		return res;
+	}
+
+	/**
+	 * Gets an idle worker or starts a new one, without waiting for busy workers.
+	 *
+	 * @return the worker or null if all workers are busy or it is not possible
+	 */
+	private LocalWorker acquire() {
+		LocalWorker worker = null;
+		boolean create = false;
+		synchronized (this) {
+			if (!closed) {
+				worker = pollValid();
+				if (worker == null && size < config.getWorkers()) {
+					size++;
+					create = true;
+				}
+			}
+		}
+		if (create) {
+			worker = start();
+		}
+		return worker;
+	}
+
+	/**
+	 * Gets a valid idle worker, discarding invalid ones.
+	 *
+	 * @return the worker or null if there are no idle workers
+	 */
+	private LocalWorker pollValid() {
+		LocalWorker worker = idle.poll();
+		while (worker != null && !isValid(worker)) {
+			discard(worker);
+			worker = idle.poll();
+		}
+		return worker;
+	}
+
+	/**
+	 * Checks if a worker can assess more deliveries.
+	 *
+	 * @param worker the worker
+	 * @return true if valid
+	 */
+	private boolean isValid(LocalWorker worker) {
+		return worker.isAlive() && worker.getJobs() < config.getMaxJobsPerWorker()
+				&& worker.getCorrectorModified() == new File(exe).lastModified();
+	}
+
+	/**
+	 * Starts a worker. The counter of workers must have been incremented.
+	 *
+	 * @return the worker or null if it could not start
+	 */
+	private LocalWorker start() {
+		LocalWorker worker = null;
+		try {
+			worker = new LocalWorker(command, new File(exe + LOG_EXT), new File(exe).lastModified());
+			if (!worker.ping(config.getStartSeconds())) {
+				logger.error("Worker does not answer: {}", exe);
+				discard(worker);
+				worker = null;
+			}
+		} catch (final IOException e) {
+			logger.error("Worker can not start {}: {}", exe, e.getMessage());
+			synchronized (this) {
+				size--;
+			}
+		}
+		return worker;
+	}
+
+	/**
+	 * Returns a worker to the pool after an assessment.
+	 *
+	 * @param worker the worker
+	 */
+	private void release(LocalWorker worker) {
+		if (closed || !isValid(worker)) {
+			discard(worker);
+		} else {
+			idle.offerFirst(worker);
+		}
+	}
+
+	/**
+	 * Stops a worker and decrements the counter.
+	 *
+	 * @param worker the worker
+	 */
+	private void discard(LocalWorker worker) {
+		worker.stop(STOP_GRACE_SECONDS);
+		synchronized (this) {
+			size--;
+		}
+	}
+
+	/**
+	 * Submits a check of idle workers if the previous one has finished.
+	 */
+	private void submitCheck() {
+		final ExecutorService executor;
+		synchronized (LocalWorkerPool.class) {
+			executor = checkExecutor;
+		}
+		if (executor != null && !closed && checking.compareAndSet(false, true)) {
+			try {
+				executor.execute(() -> {
+					try {
+						checkIdleWorkers();
+					} finally {
+						checking.set(false);
+					}
+				});
+			} catch (final RejectedExecutionException e) {
+				// closing
+				checking.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Checks idle workers, discarding those that do not answer.
+	 */
+	private void checkIdleWorkers() {
+		final List<LocalWorker> toCheck = new ArrayList<>();
+		idle.drainTo(toCheck);
+		for (final LocalWorker worker : toCheck) {
+			if (isValid(worker) && worker.ping(config.getStartSeconds())) {
+				idle.offerLast(worker);
+			} else {
+				logger.warn("Discarding worker: {}", exe);
+				discard(worker);
+			}
+		}
+	}
+
+	/**
+	 * Closes the pool, stopping idle workers. Busy workers are stopped when they
+	 * finish.
+	 */
+	private void close() {
+		closed = true;
+		if (healthCheck != null) {
+			healthCheck.cancel(false);
+		}
+		final List<LocalWorker> toStop = new ArrayList<>();
+		idle.drainTo(toStop);
+		for (final LocalWorker worker : toStop) {
+			discard(worker);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups items arriving within a short window.
+ *
+ * <p>The first caller of a window is the leader: it waits for the window to
+ * end, or for the batch to be full, and gets the batch to process it. The
+ * other callers get null and must wait for the leader to process their items.
+ *
+ * @param <T> type of items
+ * @author Francisco José Fernández Jiménez
+ */
+class MicroBatcher<T> {
+	/**
+	 * Duration of the window in milliseconds.
+	 */
+	private final long windowMillis;
+	/**
+	 * Maximum size of a batch.
+	 */
+	private final int maxSize;
+	/**
+	 * Batch being filled, null if there is no leader waiting.
+	 */
+	private List<T> pending = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param windowMillis duration of the window in milliseconds
+	 * @param maxSize      maximum size of a batch
+	 */
+	MicroBatcher(long windowMillis, int maxSize) {
+		this.windowMillis = windowMillis;
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+	/**
+	 * Adds an item.
+	 *
+	 * <p>If the leader is interrupted while waiting, the batch is returned
+	 * anyway, with the interrupted state of the thread set.
+	 *
+	 * @param item the item
+	 * @return the batch if the caller is the leader, null otherwise
+	 */
+	synchronized List<T> add(T item) {
+		if (pending != null) {
+			pending.add(item);
+			if (pending.size() >= maxSize) {
+				notifyAll();
+			}
+			return null;
+		}
+		final List<T> batch = new ArrayList<>();
+		batch.add(item);
+		pending = batch;
+		final long end = System.currentTimeMillis() + windowMillis;
+		long wait = windowMillis;
+		try {
+			while (batch.size() < maxSize && wait > 0) {
+				wait(wait);
+				wait = end - System.currentTimeMillis();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pending = null;
+		return batch;
+	}
+}
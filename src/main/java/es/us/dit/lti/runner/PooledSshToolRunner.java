@@ -0,0 +1,874 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.config.ExecutionRestrictionsConfig;
+import es.us.dit.lti.entity.Settings;
+
+/**
+ * Tool Runner with remote corrector via pooled SSH sessions.
+ *
+ * <p>It does the same as {@link SshToolRunner} with the same
+ * {@link SshToolConfig}, but without the auxiliary script: the server test,
+ * the upload of the file and the execution of the corrector are channels of an
+ * {@link SshSession} shared by all executions, so there is no new connection
+ * nor authentication per delivery.
+ *
+ * <p>If the tool has a {@link HedgingConfig}, slow executions are duplicated
+ * on another healthy server and the first result is used. If it has a
+ * {@link BatchConfig}, executions arriving together are run in batches.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class PooledSshToolRunner implements ToolRunner {
+	/**
+	 * Logger.
+	 */
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Log file of executions, relative to working directory.
+	 */
+	public static final String LOG_PATH = "data/corrector.log";
+	/**
+	 * Exit value of ssh client on connection errors.
+	 */
+	public static final int SSH_ERROR = 255;
+	/**
+	 * Extension of output files of hedged executions.
+	 */
+	public static final String HEDGE_EXT = ".hedge";
+	/**
+	 * Extension of remote files with the PID of hedged executions, to kill
+	 * the loser.
+	 */
+	public static final String PID_EXT = ".pid";
+	/**
+	 * Mark of result lines in the output of batches.
+	 */
+	private static final String BATCH_MARK = "TPMBATCH";
+
+	/**
+	 * Prefixed arguments.
+	 */
+	private String[] preArgs;
+	/**
+	 * Working directory.
+	 */
+	private File workingDirectory;
+	/**
+	 * Private key file name, or null.
+	 */
+	private String keyFile = null;
+	/**
+	 * Known hosts file name, or null.
+	 */
+	private String knownHostsFile = null;
+	/**
+	 * Configuration of tool.
+	 */
+	private SshToolConfig tc = null;
+	/**
+	 * Latest execution times, for hedging.
+	 */
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	/**
+	 * Duplicates that can be started now.
+	 */
+	private double hedgeBudget = 0;
+	/**
+	 * Batchers of executions by server.
+	 */
+	private final Map<SshSession, MicroBatcher<BatchEntry>> batchers = new ConcurrentHashMap<>();
+
+	/**
+	 * Initializes tool runner.
+	 *
+	 * <p>Gets arguments to add before the commands. <code>executionRestrictions</code>
+	 * must be an object containing a <code>preArgs</code> property with a table of
+	 * strings (arguments). <code>exeData</code> is the file name of JSON serialized
+	 * {@link SshToolConfig}.
+	 */
+	@Override
+	public void init(String exeData, String executionRestrictions) {
+		final File ed = new File(exeData);
+		workingDirectory = ed.getParentFile();
+
+		if (ed.exists() && ed.isFile() && ed.canRead()) {
+			try {
+				tc = SshToolConfig.fromString(new FileReader(ed, StandardCharsets.UTF_8));
+			} catch (final IOException e) {
+				// Ignore
+				tc = null;
+			}
+		}
+		if (tc != null) {
+			final String keyName = exeData + ".key";
+			if (tc.getPrivateKeyLines() != null && !tc.getPrivateKeyLines().isEmpty()) {
+				if (SshToolRunner.createKeyFile(tc.getPrivateKeyLines(), keyName)) {
+					keyFile = keyName;
+				} else {
+					logger.error("Error creating key file.");
+				}
+			} else {
+				final File kf = new File(keyName);
+				if (kf.exists() && !kf.delete()) {
+					logger.error("Error deleting old key file.");
+				}
+			}
+			final String knownHostsName = exeData + ".known_hosts";
+			if (tc.getKnownHostsLines() != null && !tc.getKnownHostsLines().isEmpty()) {
+				if (SshToolRunner.createKeyFile(tc.getKnownHostsLines(), knownHostsName)) {
+					knownHostsFile = knownHostsName;
+				} else {
+					logger.error("Error creating known hosts file.");
+				}
+			} else {
+				final File kf = new File(knownHostsName);
+				if (kf.exists() && !kf.delete()) {
+					logger.error("Error deleting old known hosts file.");
+				}
+			}
+		} else {
+			logger.error("Error reading configuration: {}", exeData);
+		}
+
+		final ExecutionRestrictionsConfig er = ExecutionRestrictionsConfig.fromString(executionRestrictions);
+		if (er != null && er.getPreArgs() != null) {
+			preArgs = er.getPreArgs();
+		} else {
+			preArgs = new String[0];
+		}
+	}
+
+	/**
+	 * Quotes an argument for the remote shell.
+	 *
+	 * @param arg the argument
+	 * @return quoted argument
+	 */
+	private static String quote(String arg) {
+		return "'" + arg.replace("'", "'\\''") + "'";
+	}
+
+	/**
+	 * Appends text to a file.
+	 *
+	 * @param file the file
+	 * @param text the text
+	 */
+	private void append(File file, String text) {
+		try {
+			Files.writeString(file.toPath(), text, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		} catch (final IOException e) {
+			logger.error("Error writing {}: {}", file, e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends a line to the log file of executions.
+	 *
+	 * @param fields fields of the line, separated by tabs
+	 */
+	private void log(String... fields) {
+		append(new File(workingDirectory, LOG_PATH),
+				OffsetDateTime.now() + "\t" + String.join("\t", fields) + "\n");
+	}
+
+	/**
+	 * Runs a client in a session.
+	 *
+	 * @param session  the session
+	 * @param command  the remote command
+	 * @param input    file to send as standard input, or null
+	 * @param output   file to append standard output
+	 * @param error    file to append standard error
+	 * @param deadline time limit in milliseconds, or 0 if there is no limit
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private int run(SshSession session, String command, File input, File output, File error, long deadline)
+			throws InterruptedException {
+		final long maxSeconds = TimeoutService.getRemainingSeconds(deadline);
+		if (maxSeconds < 0) {
+			return ERROR_TIMEOUT;
+		}
+		int result;
+		try {
+			result = TimeoutService.waitFor(start(session, command, input, output, error), maxSeconds);
+		} catch (final IOException e) {
+			logger.error("{}", e.getMessage());
+			result = ERROR_RUNNER_EXCEPTION;
+		}
+		return result;
+	}
+
+	/**
+	 * Starts a client in a session.
+	 *
+	 * @param session the session
+	 * @param command the remote command
+	 * @param input   file to send as standard input, or null
+	 * @param output  file to append standard output
+	 * @param error   file to append standard error
+	 * @return the process
+	 * @throws IOException if it can not be started
+	 */
+	private Process start(SshSession session, String command, File input, File output, File error)
+			throws IOException {
+		final List<String> args = new ArrayList<>(Arrays.asList(preArgs));
+		args.addAll(session.command(command));
+		final ProcessBuilder pb = new ProcessBuilder(args);
+		pb.directory(workingDirectory);
+		pb.redirectInput(input != null ? Redirect.from(input) : Redirect.from(new File("/dev/null")));
+		pb.redirectOutput(Redirect.appendTo(output));
+		pb.redirectError(Redirect.appendTo(error));
+		return pb.start();
+	}
+
+	/**
+	 * Wraps a remote command so that it can be killed with
+	 * {@link #killRemote}.
+	 *
+	 * <p>The remote shell writes its PID in a file and removes it on exit.
+	 * OpenSSH runs each channel in a new session, so the PID is also the
+	 * process group of the corrector and its children.
+	 *
+	 * @param command the remote command
+	 * @param pidFile remote path of the PID file
+	 * @return the wrapped command
+	 */
+	private static String killable(String command, String pidFile) {
+		return "f=" + quote(pidFile) + "; echo $$ >\"$f\"; trap 'rm -f \"$f\"' EXIT; " + command;
+	}
+
+	/**
+	 * Kills a remote command started with {@link #killable}, with its
+	 * children.
+	 *
+	 * <p>Killing the local client does not stop the remote command, which
+	 * would keep loading the server.
+	 *
+	 * @param server  the server
+	 * @param pidFile remote path of the PID file
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void killRemote(SshServerPool.Server server, String pidFile) throws InterruptedException {
+		final String kill = "f=" + quote(pidFile) + "; p=$(cat \"$f\" 2>/dev/null) && "
+				+ "{ kill -TERM -- -$p 2>/dev/null || { pkill -TERM -P $p; kill -TERM $p; }; }; rm -f \"$f\"";
+		if (server.getSession().run(SshSession.CONNECT_SECONDS, kill) != 0) {
+			logger.warn("Error killing remote execution on {}", server.getName());
+		}
+	}
+
+	/**
+	 * Gets the delay before hedging an execution.
+	 *
+	 * @return milliseconds, or -1 if it must not be hedged
+	 */
+	private long getHedgeDelay() {
+		final HedgingConfig hc = tc.getHedging();
+		if (hc == null || tc.getServers().size() < 2 || latencies.size() < hc.getMinSamples()) {
+			return -1;
+		}
+		synchronized (this) {
+			// each execution earns a fraction of a duplicate
+			hedgeBudget = Math.min(hedgeBudget + hc.getMaxExtraLoad(), Math.max(1, hc.getMaxExtraLoad()
+					* hc.getMinSamples()));
+			if (hedgeBudget < 1) {
+				return -1;
+			}
+		}
+		return Math.max(hc.getMinMillis(), latencies.getPercentile(hc.getPercentile()));
+	}
+
+	/**
+	 * Takes a duplicate from the hedging budget.
+	 *
+	 * @return true if available
+	 */
+	private synchronized boolean takeHedge() {
+		if (hedgeBudget >= 1) {
+			hedgeBudget--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the corrector, hedging it on another server if it is slow.
+	 *
+	 * @param server     the selected server, the file is already there
+	 * @param command    the corrector command
+	 * @param file       the delivered file
+	 * @param fileRemote remote path of the file
+	 * @param output     output file
+	 * @param outputErr  error output file
+	 * @param counter    the counter value
+	 * @param deadline   time limit in milliseconds, or 0 if there is no limit
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IOException          if a client can not be started
+	 */
+	private int runCorrector(SshServerPool.Server server, String command, File file, String fileRemote,
+			File output, File outputErr, int counter, long deadline) throws InterruptedException, IOException {
+		final long startTime = System.currentTimeMillis();
+		final long hedgeDelay = getHedgeDelay();
+		if (hedgeDelay < 0) {
+			final int result = run(server.getSession(), command, null, output, outputErr, deadline);
+			record(result, startTime);
+			return result;
+		}
+		final long maxSeconds = TimeoutService.getRemainingSeconds(deadline);
+		if (maxSeconds < 0) {
+			return ERROR_TIMEOUT;
+		}
+		final Process primary = start(server.getSession(), killable(command, fileRemote + PID_EXT), null, output,
+				outputErr);
+		final CompletableFuture<Integer> first = TimeoutService.watch(primary, maxSeconds);
+		try {
+			first.get(hedgeDelay, TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			// slow, look for another healthy server
+			SshServerPool.Server other = null;
+			for (final SshServerPool.Server s : SshServerPool.select(tc.getServers(), keyFile, knownHostsFile,
+					tc.getCorrector() + " test", counter, tc.isRoundRobin())) {
+				if (s != server && s.isHealthy()) {
+					other = s;
+					break;
+				}
+			}
+			if (other != null && takeHedge()) {
+				return runHedge(server, other, command, file, fileRemote, output, outputErr, primary, first,
+						deadline);
+			}
+		} catch (final ExecutionException e) {
+			logger.error("Error waiting for process: {}", e.getMessage());
+		} catch (final InterruptedException e) {
+			TimeoutService.kill(primary);
+			throw e;
+		}
+		final int result = getResult(first, primary);
+		record(result, startTime);
+		return result;
+	}
+
+	/**
+	 * Runs a duplicate of a slow execution and uses the first result.
+	 *
+	 * <p>The loser is killed locally and on its server.
+	 *
+	 * @param primaryServer the server of the slow execution
+	 * @param server        the server of the duplicate
+	 * @param command       the corrector command
+	 * @param file          the delivered file
+	 * @param fileRemote    remote path of the file
+	 * @param output        output file
+	 * @param outputErr     error output file
+	 * @param primary       process of the slow execution
+	 * @param first         exit value of the slow execution
+	 * @param deadline      time limit in milliseconds, or 0 if there is no limit
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IOException          if the client can not be started
+	 */
+	private int runHedge(SshServerPool.Server primaryServer, SshServerPool.Server server, String command, File file,
+			String fileRemote, File output, File outputErr, Process primary, CompletableFuture<Integer> first,
+			long deadline) throws InterruptedException, IOException {
+		final String hedgePid = fileRemote + HEDGE_EXT + PID_EXT;
+		final File hedgeOutput = new File(output.getPath() + HEDGE_EXT);
+		final File hedgeError = new File(hedgeOutput.getPath() + Settings.OUTPUT_ERROR_EXT);
+		Process hedge = null;
+		int result;
+		server.begin();
+		try {
+			logger.info("Hedging on {}", server.getName());
+			final long startTime = System.currentTimeMillis();
+			CompletableFuture<Integer> second = null;
+			if (run(server.getSession(), "cat > " + quote(fileRemote), file, hedgeOutput, hedgeError,
+					deadline) == 0 && TimeoutService.getRemainingSeconds(deadline) >= 0) {
+				hedge = start(server.getSession(), killable(command, hedgePid), null, hedgeOutput, hedgeError);
+				second = TimeoutService.watch(hedge, TimeoutService.getRemainingSeconds(deadline));
+			}
+			boolean hedgeWins = false;
+			if (second != null) {
+				CompletableFuture.anyOf(first, second).get();
+				// first valid result, a lost connection is not a result
+				hedgeWins = !first.isDone() || first.get() == SSH_ERROR && second.get() != SSH_ERROR;
+			}
+			if (hedgeWins) {
+				TimeoutService.kill(primary);
+				killRemote(primaryServer, fileRemote + PID_EXT);
+				result = second.get();
+				record(result, startTime);
+				Files.move(hedgeOutput.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				if (hedgeError.exists()) {
+					Files.move(hedgeError.toPath(), outputErr.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} else {
+				if (hedge != null) {
+					TimeoutService.kill(hedge);
+					killRemote(server, hedgePid);
+				}
+				result = getResult(first, primary);
+			}
+		} catch (final ExecutionException e) {
+			logger.error("Error waiting for process: {}", e.getMessage());
+			result = ERROR_CORRECTOR_EXCEPTION;
+		} catch (final InterruptedException e) {
+			TimeoutService.kill(primary);
+			if (hedge != null) {
+				TimeoutService.kill(hedge);
+			}
+			throw e;
+		} finally {
+			server.end();
+			Files.deleteIfExists(hedgeOutput.toPath());
+			Files.deleteIfExists(hedgeError.toPath());
+		}
+		return result;
+	}
+
+	/**
+	 * Waits for the exit value of an execution.
+	 *
+	 * @param future  exit value of the execution
+	 * @param process process of the execution, killed if interrupted
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private int getResult(CompletableFuture<Integer> future, Process process) throws InterruptedException {
+		int result;
+		try {
+			result = future.get();
+		} catch (final ExecutionException e) {
+			logger.error("Error waiting for process: {}", e.getMessage());
+			result = ERROR_CORRECTOR_EXCEPTION;
+		} catch (final InterruptedException e) {
+			TimeoutService.kill(process);
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Records the time of a successful execution.
+	 *
+	 * @param result    exit value
+	 * @param startTime start time in milliseconds
+	 */
+	private void record(int result, long startTime) {
+		if (result < ERROR_GENERIC) {
+			latencies.add(System.currentTimeMillis() - startTime);
+		}
+	}
+
+	/**
+	 * Execute the tool.
+	 */
+	@Override
+	public int exec(String filePath, String outputPath, String userId, String originalFilename, int counter,
+			boolean isInstructor, List<String> extraArgs, long maxSecondsWait) {
+		if (tc == null || tc.getServers() == null) {
+			return ERROR_RUNNER_EXCEPTION;
+		}
+		final long deadline = maxSecondsWait > 0 ? System.currentTimeMillis() + maxSecondsWait * 1000 : 0;
+		final File output = new File(outputPath);
+		final File outputErr = new File(outputPath + Settings.OUTPUT_ERROR_EXT);
+		final File file = new File(filePath);
+		final String remoteFolder = tc.getRemoteFolder() != null ? tc.getRemoteFolder()
+				: SshToolRunner.DEFAULT_REMOTE_FOLDER;
+		int result;
+		try {
+			Files.deleteIfExists(output.toPath());
+			Files.deleteIfExists(outputErr.toPath());
+			log(filePath, userId, originalFilename, "START");
+			if (userId.equals(tc.getSpecialUser()) && tc.getSpecialFile() != null
+					&& tc.getSpecialFile().contains(originalFilename)) {
+				result = execSpecial(file, remoteFolder + "/" + originalFilename, output, deadline);
+			} else {
+				// Select best active server, known healthy ones are not tested again
+				SshServerPool.Server server = null;
+				for (final SshServerPool.Server s : SshServerPool.select(tc.getServers(), keyFile, knownHostsFile,
+						tc.getCorrector() + " test", counter, tc.isRoundRobin())) {
+					if (s.isHealthy() && s.getSession().open(maxSecondsWait)) {
+						server = s;
+						break;
+					}
+					append(outputErr, "<p>Testing server " + s.getName() + "...");
+					final long start = System.currentTimeMillis();
+					final boolean ok = s.getSession().open(maxSecondsWait) && run(s.getSession(),
+							tc.getCorrector() + " test", null, output, outputErr, deadline) == 0;
+					s.update(ok, System.currentTimeMillis() - start);
+					append(outputErr, ok ? "OK\n" : "KO\n");
+					if (ok) {
+						server = s;
+						break;
+					}
+				}
+				if (server != null) {
+					final SshSession session = server.getSession();
+					append(outputErr, "<p>Using server " + server.getName() + ".</p>\n");
+					log(filePath, userId, originalFilename, "USING", server.getName());
+					final String fileRemote = remoteFolder + "/" + file.getName();
+					final String arguments = String.join(" ", quote(userId), quote(originalFilename),
+							String.valueOf(counter), quote(String.valueOf(isInstructor)), String.join(" ", extraArgs));
+					server.begin();
+					try {
+						if (tc.getBatch() != null) {
+							result = execBatched(server, new BatchEntry(file, arguments, output, outputErr, deadline));
+						} else {
+							result = run(session, "cat > " + quote(fileRemote), file, output, output, deadline);
+							if (result == 0) {
+								final String command = String.join(" ", tc.getCorrector(), quote(fileRemote),
+										arguments);
+								result = runCorrector(server, command, file, fileRemote, output, outputErr,
+										counter, deadline);
+							}
+						}
+					} finally {
+						server.end();
+					}
+					if (result == SSH_ERROR) {
+						// connection lost
+						server.update(false, 0);
+					}
+				} else {
+					append(output, "<p>El servidor de corrección no está disponible. Inténtelo más tarde.</p>\n"
+							+ "<p>The correction server is not available. Please try again later.</p>\n");
+					// should not count as attempt
+					result = ERROR_CORRECTOR_EXCEPTION;
+				}
+			}
+			log(filePath, userId, originalFilename, "END", String.valueOf(result));
+		} catch (final InterruptedException e) {
+			result = ERROR_CORRECTOR_EXCEPTION;
+			logger.error("{}", e.getMessage());
+			// Restore interrupted state...
+			Thread.currentThread().interrupt();
+		} catch (final IOException e) {
+			result = ERROR_CORRECTOR_EXCEPTION;
+			logger.error("{}", e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Execution waiting in a batch.
+	 */
+	private static final class BatchEntry {
+		/**
+		 * Delivered file.
+		 */
+		private final File file;
+		/**
+		 * Arguments of the corrector after the file path, quoted.
+		 */
+		private final String arguments;
+		/**
+		 * Output file.
+		 */
+		private final File output;
+		/**
+		 * Error output file.
+		 */
+		private final File outputErr;
+		/**
+		 * Time limit in milliseconds, or 0 if there is no limit.
+		 */
+		private final long deadline;
+		/**
+		 * Exit value, completed by the leader of the batch.
+		 */
+		private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file      delivered file
+		 * @param arguments arguments of the corrector after the file path
+		 * @param output    output file
+		 * @param outputErr error output file
+		 * @param deadline  time limit in milliseconds, or 0 if there is no limit
+		 */
+		private BatchEntry(File file, String arguments, File output, File outputErr, long deadline) {
+			this.file = file;
+			this.arguments = arguments;
+			this.output = output;
+			this.outputErr = outputErr;
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * Runs the corrector in a batch with other executions on the same server.
+	 *
+	 * <p>The first execution of a window runs the whole batch, the others wait
+	 * for their result.
+	 *
+	 * @param server the selected server
+	 * @param entry  the execution
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private int execBatched(SshServerPool.Server server, BatchEntry entry) throws InterruptedException {
+		final MicroBatcher<BatchEntry> batcher = batchers.computeIfAbsent(server.getSession(),
+				k -> new MicroBatcher<>(tc.getBatch().getWindowMillis(), tc.getBatch().getMaxSize()));
+		final List<BatchEntry> batch = batcher.add(entry);
+		if (batch != null) {
+			runBatch(server, batch);
+		}
+		int result;
+		try {
+			if (entry.deadline > 0) {
+				result = entry.result.get(Math.max(0, entry.deadline - System.currentTimeMillis()),
+						TimeUnit.MILLISECONDS);
+			} else {
+				result = entry.result.get();
+			}
+		} catch (final TimeoutException e) {
+			result = ERROR_TIMEOUT;
+		} catch (final ExecutionException e) {
+			logger.error("Error waiting for batch: {}", e.getMessage());
+			result = ERROR_CORRECTOR_EXCEPTION;
+		}
+		return result;
+	}
+
+	/**
+	 * Runs a batch of executions.
+	 *
+	 * <p>The files are sent as a tar stream through one channel, which extracts
+	 * them in a temporary remote folder, runs the corrector for every file in
+	 * parallel and returns, for each one, a line
+	 * <code>TPMBATCH index exitValue outputBytes errorBytes</code> followed by
+	 * its output and error output. Every execution of the batch gets a result,
+	 * even on errors.
+	 *
+	 * @param server the server
+	 * @param batch  the executions
+	 */
+	private void runBatch(SshServerPool.Server server, List<BatchEntry> batch) {
+		long deadline = 0;
+		for (final BatchEntry e : batch) {
+			if (e.deadline == 0) {
+				deadline = 0;
+				break;
+			}
+			deadline = Math.max(deadline, e.deadline);
+		}
+		final String remoteFolder = tc.getRemoteFolder() != null ? tc.getRemoteFolder()
+				: SshToolRunner.DEFAULT_REMOTE_FOLDER;
+		final StringBuilder script = new StringBuilder();
+		script.append("d=$(mktemp -d ").append(quote(remoteFolder + "/tpm.XXXXXX")).append(") || exit ")
+				.append(ERROR_CORRECTOR_EXCEPTION).append('\n');
+		script.append("trap 'rm -rf \"$d\"' EXIT\n");
+		script.append("tar -xf - -C \"$d\" || exit ").append(ERROR_CORRECTOR_EXCEPTION).append('\n');
+		final String[] names = new String[batch.size()];
+		final StringBuilder indexes = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			final BatchEntry e = batch.get(i);
+			names[i] = i + "-" + e.file.getName();
+			if (names[i].getBytes(StandardCharsets.UTF_8).length > TarWriter.MAX_NAME) {
+				names[i] = String.valueOf(i);
+			}
+			script.append('(').append(tc.getCorrector()).append(" \"$d\"/").append(quote(names[i])).append(' ')
+					.append(e.arguments).append(" >\"$d/").append(i).append(".out\" 2>\"$d/").append(i)
+					.append(".err\"; echo $? >\"$d/").append(i).append(".rc\") &\n");
+			indexes.append(' ').append(i);
+		}
+		script.append("wait\n");
+		script.append("for i in").append(indexes).append("; do\n");
+		script.append("printf '").append(BATCH_MARK).append(
+				" %s %s %s %s\\n' $i \"$(cat \"$d/$i.rc\")\" $(wc -c <\"$d/$i.out\") $(wc -c <\"$d/$i.err\")\n");
+		script.append("cat \"$d/$i.out\" \"$d/$i.err\"\ndone\n");
+
+		final long maxSeconds = TimeoutService.getRemainingSeconds(deadline);
+		final List<String> args = new ArrayList<>(Arrays.asList(preArgs));
+		args.addAll(server.getSession().command(script.toString()));
+		Process process = null;
+		try {
+			if (maxSeconds < 0) {
+				return;
+			}
+			final ProcessBuilder pb = new ProcessBuilder(args);
+			pb.directory(workingDirectory);
+			pb.redirectError(Redirect.DISCARD);
+			process = pb.start();
+			final CompletableFuture<Integer> exit = TimeoutService.watch(process, maxSeconds);
+			try (OutputStream os = new BufferedOutputStream(process.getOutputStream())) {
+				final TarWriter tar = new TarWriter(os);
+				for (int i = 0; i < names.length; i++) {
+					tar.add(names[i], batch.get(i).file);
+				}
+				tar.finish();
+			}
+			try (InputStream is = new BufferedInputStream(process.getInputStream())) {
+				readBatchResults(is, batch);
+			}
+			final int exitValue = exit.get();
+			logger.info("Batch of {} on {}: {}", batch.size(), server.getName(), exitValue);
+			if (exitValue == SSH_ERROR) {
+				server.update(false, 0);
+			}
+			for (final BatchEntry e : batch) {
+				e.result.complete(exitValue == 0 ? ERROR_CORRECTOR_EXCEPTION : exitValue);
+			}
+		} catch (final IOException | ExecutionException e) {
+			logger.error("Error running batch: {}", e.getMessage());
+		} catch (final InterruptedException e) {
+			logger.error("Batch interrupted");
+			Thread.currentThread().interrupt();
+		} finally {
+			if (process != null && process.isAlive()) {
+				TimeoutService.kill(process);
+			}
+			for (final BatchEntry e : batch) {
+				e.result.complete(ERROR_CORRECTOR_EXCEPTION);
+			}
+		}
+	}
+
+	/**
+	 * Reads the results of a batch and completes its executions.
+	 *
+	 * @param is    output of the batch
+	 * @param batch the executions
+	 * @throws IOException if there is an error
+	 */
+	private void readBatchResults(InputStream is, List<BatchEntry> batch) throws IOException {
+		String line;
+		while ((line = readLine(is)) != null) {
+			final String[] fields = line.split(" ");
+			if (fields.length != 5 || !BATCH_MARK.equals(fields[0])) {
+				logger.error("Invalid batch output: {}", line);
+				break;
+			}
+			try {
+				final BatchEntry e = batch.get(Integer.parseInt(fields[1]));
+				copy(is, e.output, Long.parseLong(fields[3]));
+				copy(is, e.outputErr, Long.parseLong(fields[4]));
+				e.result.complete(fields[2].isEmpty() ? ERROR_CORRECTOR_EXCEPTION : Integer.parseInt(fields[2]));
+			} catch (final NumberFormatException | IndexOutOfBoundsException ex) {
+				logger.error("Invalid batch output: {}", line);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads a line of text.
+	 *
+	 * @param is input stream
+	 * @return the line without terminator, or null at the end of the stream
+	 * @throws IOException if there is an error
+	 */
+	private static String readLine(InputStream is) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+		while ((c = is.read()) != -1 && c != '\n') {
+			line.write(c);
+		}
+		if (c == -1 && line.size() == 0) {
+			return null;
+		}
+		return line.toString(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends bytes of a stream to a file.
+	 *
+	 * @param is   input stream
+	 * @param file the file
+	 * @param size number of bytes
+	 * @throws IOException if there is an error or the stream ends
+	 */
+	private static void copy(InputStream is, File file, long size) throws IOException {
+		try (OutputStream os = new FileOutputStream(file, true)) {
+			final byte[] buffer = new byte[8192];
+			long remaining = size;
+			while (remaining > 0) {
+				final int n = is.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (n < 0) {
+					throw new IOException("Unexpected end of batch output");
+				}
+				os.write(buffer, 0, n);
+				remaining -= n;
+			}
+		}
+	}
+
+	/**
+	 * Sends the special file to all servers and runs the special corrector.
+	 *
+	 * @param file       the special file
+	 * @param fileRemote remote path
+	 * @param output     output file
+	 * @param deadline   time limit in milliseconds, or 0 if there is no limit
+	 * @return exit value, always 0
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private int execSpecial(File file, String fileRemote, File output, long deadline) throws InterruptedException {
+		for (final String s : tc.getServers()) {
+			final SshSession session = SshSession.get(s, keyFile, knownHostsFile);
+			append(output, "<div style='text-align: left'><h3>Sending special file to " + s + "</h3>\n");
+			if (session.open(0) && run(session, "cat > " + quote(fileRemote), file, output, output, deadline) == 0) {
+				if (run(session, tc.getSpecialCorrector(), null, output, output, deadline) == 0) {
+					append(output, "<p>OK</p>\n");
+				} else {
+					append(output, "<p>Error</p>\n");
+				}
+			} else {
+				append(output, "<p>KO</p>\n");
+			}
+			append(output, "</div>\n");
+		}
+		return 0;
+	}
+}
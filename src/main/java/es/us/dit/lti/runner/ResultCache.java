@@ -0,0 +1,256 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * Cache of assessment results of identical deliveries.
+ *
+ * <p>The key is the SHA-256 hash of the delivered file, the corrector file,
+ * the user ID, the original file name, the instructor flag and the extra
+ * arguments. The user ID is part of the key because the corrector receives it
+ * and may use it in its output or score, so a result is never served to
+ * another user. The score and the output are stored in the cache folder of the
+ * tool.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class ResultCache {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+	/**
+	 * Hash algorithm.
+	 */
+	private static final String ALGORITHM = "SHA-256";
+	/**
+	 * Extension of the file with the score.
+	 */
+	private static final String SCORE_EXT = ".score";
+
+	/**
+	 * Hashes of corrector files by path. The value is the hash and the
+	 * modification time separated by a colon.
+	 */
+	private static final Map<String, String> correctorHashes = new ConcurrentHashMap<>();
+
+	/**
+	 * Can not create objects.
+	 */
+	private ResultCache() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Creates a digest to hash a delivered file.
+	 *
+	 * @return the digest or null if not available
+	 */
+	public static MessageDigest createDigest() {
+		MessageDigest md = null;
+		try {
+			md = MessageDigest.getInstance(ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			logger.error("Digest not available: {}", ALGORITHM);
+		}
+		return md;
+	}
+
+	/**
+	 * Calculates the hash of a file.
+	 *
+	 * @param path the file path
+	 * @return the hash in hexadecimal or null if error
+	 */
+	public static String hashFile(String path) {
+		String res = null;
+		final MessageDigest md = createDigest();
+		if (md != null) {
+			try (InputStream is = Files.newInputStream(new File(path).toPath())) {
+				final byte[] buffer = new byte[8192];
+				int n = is.read(buffer);
+				while (n >= 0) {
+					md.update(buffer, 0, n);
+					n = is.read(buffer);
+				}
+				res = Hex.encodeHexString(md.digest());
+			} catch (final IOException e) {
+				logger.error("Error hashing {}", path);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the hash of the corrector of a tool, recalculating it if the file
+	 * was modified.
+	 *
+	 * @param tool the tool
+	 * @return the hash or null if error
+	 */
+	private static String getCorrectorHash(Tool tool) {
+		final String path = tool.getCorrectorPath();
+		final String modified = String.valueOf(new File(path).lastModified());
+		String res = null;
+		final String cached = correctorHashes.get(path);
+		if (cached != null && cached.endsWith(":" + modified)) {
+			res = cached.substring(0, cached.indexOf(':'));
+		} else {
+			res = hashFile(path);
+			if (res != null) {
+				correctorHashes.put(path, res + ":" + modified);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Generates the key of a delivery.
+	 *
+	 * @param fileHash     hash of the delivered file in hexadecimal
+	 * @param tool         the tool
+	 * @param userId       the user ID passed to the corrector
+	 * @param filename     the original file name
+	 * @param isInstructor if the user is an instructor
+	 * @param extraArgs    the extra arguments
+	 * @return the key or null if error
+	 */
+	public static String getKey(String fileHash, Tool tool, String userId, String filename, boolean isInstructor,
+			List<String> extraArgs) {
+		String res = null;
+		final String correctorHash = getCorrectorHash(tool);
+		final MessageDigest md = createDigest();
+		if (fileHash != null && correctorHash != null && md != null) {
+			md.update(fileHash.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(correctorHash.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(userId.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(filename.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(String.valueOf(isInstructor).getBytes(StandardCharsets.UTF_8));
+			if (extraArgs != null) {
+				for (final String arg : extraArgs) {
+					md.update((byte) 0);
+					md.update(arg.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			res = Hex.encodeHexString(md.digest());
+		}
+		return res;
+	}
+
+	/**
+	 * Gets a cached result, copying the cached output to the output file.
+	 *
+	 * @param tool       the tool
+	 * @param key        the key of the delivery
+	 * @param outputPath path of the output file
+	 * @return the score or null if not cached
+	 */
+	public static Integer get(Tool tool, String key, String outputPath) {
+		Integer res = null;
+		final File scoreFile = new File(tool.getResultCachePath(), key + SCORE_EXT);
+		final File outputFile = new File(tool.getResultCachePath(), key + Settings.RESULT_EXT);
+		if (scoreFile.exists()) {
+			try {
+				final int score = Integer.parseInt(Files.readString(scoreFile.toPath()).trim());
+				if (outputFile.exists()) {
+					Files.copy(outputFile.toPath(), new File(outputPath).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+				res = score;
+			} catch (final IOException | NumberFormatException e) {
+				logger.error("Error reading cached result {}", key);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Stores a result.
+	 *
+	 * <p>Only valid scores are stored.
+	 *
+	 * @param tool       the tool
+	 * @param key        the key of the delivery
+	 * @param score      the score
+	 * @param outputPath path of the output file
+	 */
+	public static void put(Tool tool, String key, int score, String outputPath) {
+		if (score >= 0 && score <= 100) {
+			final File folder = new File(tool.getResultCachePath());
+			final File output = new File(outputPath);
+			final File outputFile = new File(folder, key + Settings.RESULT_EXT);
+			final File scoreFile = new File(folder, key + SCORE_EXT);
+			try {
+				if (!folder.exists() && !folder.mkdirs()) {
+					throw new IOException("mkdir");
+				}
+				if (output.exists()) {
+					Files.copy(output.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				// Score last, it marks a complete entry
+				Files.writeString(scoreFile.toPath(), String.valueOf(score));
+			} catch (final IOException e) {
+				logger.error("Error caching result {}", key);
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached results of a tool.
+	 *
+	 * @param tool the tool
+	 */
+	public static void clear(Tool tool) {
+		final File folder = new File(tool.getResultCachePath());
+		if (folder.exists()) {
+			try {
+				FileUtils.deleteDirectory(folder);
+			} catch (final IOException e) {
+				logger.error("Error deleting result cache {}", folder.getPath());
+			}
+		}
+	}
+
+}
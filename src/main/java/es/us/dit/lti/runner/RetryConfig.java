@@ -0,0 +1,121 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Retry policy of an HTTP tool.
+ *
+ * <p>Requests that could not connect are always retried. Requests that failed
+ * after being sent, or were answered with 502, 503 or 504, are only retried if
+ * the method is idempotent (GET, HEAD, PUT, DELETE or OPTIONS). The delay
+ * doubles after each retry, with some random jitter, and retries never exceed
+ * the maximum time of the assessment.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class RetryConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum number of retries of a request.
+	 */
+	private int maxRetries = 2;
+
+	/**
+	 * Milliseconds before the first retry.
+	 */
+	private long delayMillis = 500;
+
+	/**
+	 * Maximum milliseconds between retries.
+	 */
+	private long maxDelayMillis = 5000;
+
+	/**
+	 * Gets the maximum number of retries of a request.
+	 *
+	 * @return the number of retries
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the maximum number of retries of a request.
+	 *
+	 * @param maxRetries new value
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Gets the milliseconds before the first retry.
+	 *
+	 * @return the milliseconds
+	 */
+	public long getDelayMillis() {
+		return delayMillis;
+	}
+
+	/**
+	 * Sets the milliseconds before the first retry.
+	 *
+	 * @param delayMillis new value
+	 */
+	public void setDelayMillis(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	/**
+	 * Gets the maximum milliseconds between retries.
+	 *
+	 * @return the milliseconds
+	 */
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	/**
+	 * Sets the maximum milliseconds between retries.
+	 *
+	 * @param maxDelayMillis new value
+	 */
+	public void setMaxDelayMillis(long maxDelayMillis) {
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Gets the delay before a retry.
+	 *
+	 * @param retry number of the retry, starting at 1
+	 * @return the milliseconds, between half and all of the exponential delay
+	 */
+	public long getDelay(int retry) {
+		final long delay = Math.min(maxDelayMillis, delayMillis << Math.min(retry - 1, 20));
+		return delay / 2 + (long) (Math.random() * (delay / 2 + 1));
+	}
+
+}
@@ -0,0 +1,351 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of SSH corrector servers with background health tracking.
+ *
+ * <p>Servers used by pooled SSH tools are probed periodically with the
+ * <code>test</code> command of the corrector, out of the request path. The
+ * health and the EWMA of the probe latency are kept per server and test
+ * command, so a broken corrector only marks the server down for the tools that
+ * use it. The number of executions in flight is shared by all the tools of a
+ * server. {@link #select} returns the servers ordered from best to worst:
+ * healthy ones first, then the least loaded and the fastest.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class SshServerPool {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(SshServerPool.class);
+	/**
+	 * Seconds between probes of a server.
+	 */
+	public static final int PROBE_SECONDS = 15;
+	/**
+	 * Maximum seconds of a probe.
+	 */
+	public static final int PROBE_TIMEOUT = 10;
+	/**
+	 * Seconds without use after which a server is no longer probed.
+	 */
+	public static final int IDLE_SECONDS = 1800;
+	/**
+	 * Weight of new samples in the latency average.
+	 */
+	private static final double LATENCY_WEIGHT = 0.2;
+	/**
+	 * Number of threads to probe servers.
+	 */
+	private static final int PROBE_THREADS = 2;
+
+	/**
+	 * Known servers by session and test command.
+	 */
+	private static final Map<SshSession, Map<String, Server>> servers = new ConcurrentHashMap<>();
+	/**
+	 * Executions in flight by session, shared by all test commands.
+	 */
+	private static final Map<SshSession, AtomicInteger> loads = new ConcurrentHashMap<>();
+	/**
+	 * Periodic probe task.
+	 */
+	private static ScheduledFuture<?> probeTask = null;
+	/**
+	 * Executor of probes, which may block.
+	 */
+	private static ExecutorService probeExecutor = null;
+
+	/**
+	 * State of a corrector server.
+	 */
+	public static final class Server {
+		/**
+		 * Session to the server.
+		 */
+		private final SshSession session;
+		/**
+		 * Command to test the corrector.
+		 */
+		private final String testCommand;
+		/**
+		 * Whether it has been checked at least once.
+		 */
+		private volatile boolean checked = false;
+		/**
+		 * Whether the last check was successful.
+		 */
+		private volatile boolean healthy = true;
+		/**
+		 * Executions in flight on the server, shared with other test commands.
+		 */
+		private final AtomicInteger inFlight;
+		/**
+		 * EWMA of the probe latency, in milliseconds.
+		 */
+		private volatile double latency = 0;
+		/**
+		 * Time of last use, in milliseconds.
+		 */
+		private volatile long lastUsed;
+		/**
+		 * Whether a probe is running.
+		 */
+		private final AtomicBoolean probing = new AtomicBoolean();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param session     session to the server
+		 * @param testCommand command to test the corrector
+		 */
+		private Server(SshSession session, String testCommand) {
+			this.session = session;
+			this.testCommand = testCommand;
+			inFlight = loads.computeIfAbsent(session, k -> new AtomicInteger());
+			lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Gets the session to the server.
+		 *
+		 * @return the session
+		 */
+		public SshSession getSession() {
+			return session;
+		}
+
+		/**
+		 * Gets the server name.
+		 *
+		 * @return the server
+		 */
+		public String getName() {
+			return session.getServer();
+		}
+
+		/**
+		 * Gets whether the server is known to be healthy, that is, it has been
+		 * checked and the last check was successful.
+		 *
+		 * @return true if healthy
+		 */
+		public boolean isHealthy() {
+			return checked && healthy;
+		}
+
+		/**
+		 * Gets the number of executions in flight.
+		 *
+		 * @return executions in flight
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Gets the average probe latency.
+		 *
+		 * @return latency in milliseconds
+		 */
+		public double getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Marks the start of an execution.
+		 */
+		public void begin() {
+			inFlight.incrementAndGet();
+			lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Marks the end of an execution.
+		 */
+		public void end() {
+			inFlight.decrementAndGet();
+		}
+
+		/**
+		 * Updates the health of the server.
+		 *
+		 * @param ok     result of the check
+		 * @param millis duration of the check, or 0 if unknown
+		 */
+		public void update(boolean ok, long millis) {
+			if (ok != healthy || !checked) {
+				logger.info("SSH server {}: {}", getName(), ok ? "up" : "down");
+			}
+			if (!ok) {
+				// the master may be lost
+				session.invalidate();
+			}
+			healthy = ok;
+			checked = true;
+			if (ok && millis > 0) {
+				latency = latency == 0 ? millis : latency + LATENCY_WEIGHT * (millis - latency);
+			}
+		}
+
+		/**
+		 * Probes the server if it is not being probed.
+		 */
+		private void probe() {
+			if (!probing.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				final long start = System.currentTimeMillis();
+				final boolean ok = session.open(PROBE_TIMEOUT) && session.run(PROBE_TIMEOUT, testCommand) == 0;
+				update(ok, System.currentTimeMillis() - start);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				probing.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Can not create objects.
+	 */
+	private SshServerPool() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Gets servers ordered from best to worst.
+	 *
+	 * <p>Servers are registered for background probing. Healthy servers go
+	 * first, then the ones not yet checked and then the unhealthy ones. Among
+	 * them, the least loaded go first; ties are broken by latency or, in round
+	 * robin mode, by rotating the list with the counter.
+	 *
+	 * @param names          server names
+	 * @param keyFile        private key file name or null
+	 * @param knownHostsFile known hosts file name or null
+	 * @param testCommand    command to test the corrector
+	 * @param counter        the counter value
+	 * @param roundRobin     whether to rotate servers with the counter
+	 * @return ordered servers
+	 */
+	public static List<Server> select(List<String> names, String keyFile, String knownHostsFile,
+			String testCommand, int counter, boolean roundRobin) {
+		final List<Server> list = new ArrayList<>();
+		if (names == null || names.isEmpty()) {
+			return list;
+		}
+		final int total = names.size();
+		final int first = roundRobin ? counter % total : 0;
+		for (int i = 0; i < total; i++) {
+			final SshSession session = SshSession.get(names.get((first + i) % total), keyFile, knownHostsFile);
+			final Server s = servers.computeIfAbsent(session, k -> new ConcurrentHashMap<>())
+					.computeIfAbsent(testCommand, c -> new Server(session, c));
+			s.lastUsed = System.currentTimeMillis();
+			list.add(s);
+		}
+		startProbes();
+		Comparator<Server> order = Comparator.comparingInt(SshServerPool::rank)
+				.thenComparingInt(Server::getInFlight);
+		if (!roundRobin) {
+			order = order.thenComparingDouble(Server::getLatency);
+		}
+		// stable, keeps rotation of ties
+		list.sort(order);
+		return list;
+	}
+
+	/**
+	 * Gets the rank of health of a server.
+	 *
+	 * @param s the server
+	 * @return 0 if healthy, 1 if not checked, 2 if unhealthy
+	 */
+	private static int rank(Server s) {
+		if (!s.checked) {
+			return 1;
+		}
+		return s.healthy ? 0 : 2;
+	}
+
+	/**
+	 * Starts periodic probes if they are not running.
+	 */
+	private static synchronized void startProbes() {
+		if (probeTask == null) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			probeExecutor = Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+				final Thread t = new Thread(r, "tpm-ssh-probe-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			probeTask = TimeoutService.scheduleWithFixedDelay(SshServerPool::probeAll, PROBE_SECONDS,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Submits probes of servers used recently and forgets the idle ones.
+	 */
+	private static synchronized void probeAll() {
+		final long idleLimit = System.currentTimeMillis() - IDLE_SECONDS * 1000L;
+		for (final Map<String, Server> byCommand : servers.values()) {
+			byCommand.values().removeIf(s -> s.lastUsed < idleLimit && s.getInFlight() == 0);
+			for (final Server s : byCommand.values()) {
+				if (!s.probing.get()) {
+					probeExecutor.execute(s::probe);
+				}
+			}
+		}
+		servers.values().removeIf(Map::isEmpty);
+	}
+
+	/**
+	 * Stops probes and forgets all servers.
+	 */
+	public static synchronized void shutdown() {
+		if (probeTask != null) {
+			probeTask.cancel(false);
+			probeTask = null;
+			probeExecutor.shutdownNow();
+			probeExecutor = null;
+		}
+		servers.clear();
+		loads.clear();
+	}
+}
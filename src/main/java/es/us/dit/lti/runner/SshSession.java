@@ -0,0 +1,326 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authenticated SSH session, reused by all executions on a server.
+ *
+ * <p>Sessions are pooled, one per server and key.
+ *
+ * <p>Each session is an OpenSSH master connection (<code>ControlMaster</code>)
+ * listening on a local control socket. Clients started with
+ * {@link #command(String...)} open a new channel in the existing session, so
+ * the TCP connection, key exchange and authentication are made only once.
+ * Idle masters exit by themselves after {@link #IDLE_SECONDS}.
+ *
+ * <p>A master known to be alive is not checked again for
+ * {@link #ALIVE_SECONDS}, so most executions do not start any extra process.
+ * Callers report lost connections with {@link #invalidate()}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class SshSession {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(SshSession.class);
+	/**
+	 * SSH client binary.
+	 */
+	public static final String SSH_BIN = "ssh";
+	/**
+	 * Seconds that an idle master connection is kept open.
+	 */
+	public static final int IDLE_SECONDS = 600;
+	/**
+	 * Seconds to wait for connection and authentication.
+	 */
+	public static final int CONNECT_SECONDS = 5;
+	/**
+	 * Seconds that a master is assumed alive after a successful check. It must
+	 * be much lower than {@link #IDLE_SECONDS}.
+	 */
+	public static final int ALIVE_SECONDS = 30;
+	/**
+	 * Folder of control sockets. Its path must be short (limit of UNIX sockets).
+	 */
+	private static final File SOCKET_FOLDER = new File(System.getProperty("java.io.tmpdir"), "tpm-ssh");
+	/**
+	 * Open sessions by control socket path.
+	 */
+	private static final Map<String, SshSession> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Server, as <code>[user@]host</code> or <code>ssh://[user@]host[:port]</code>.
+	 */
+	private final String server;
+	/**
+	 * Private key file name, or null to use the default ones.
+	 */
+	private final String keyFile;
+	/**
+	 * Known hosts file name, or null to use the default ones.
+	 */
+	private final String knownHostsFile;
+	/**
+	 * Control socket path.
+	 */
+	private final String controlPath;
+	/**
+	 * Time in milliseconds until the master is assumed alive, 0 if unknown.
+	 */
+	private volatile long aliveUntil = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param server         the server
+	 * @param keyFile        private key file name or null
+	 * @param knownHostsFile known hosts file name or null
+	 * @param controlPath    control socket path
+	 */
+	private SshSession(String server, String keyFile, String knownHostsFile, String controlPath) {
+		this.server = server;
+		this.keyFile = keyFile;
+		this.knownHostsFile = knownHostsFile;
+		this.controlPath = controlPath;
+	}
+
+	/**
+	 * Gets the session of a server, creating the object if necessary.
+	 *
+	 * <p>The master connection is not opened until {@link #open(long)}.
+	 *
+	 * @param server         the server
+	 * @param keyFile        private key file name or null
+	 * @param knownHostsFile known hosts file name or null to use the default
+	 *                       ones of the user
+	 * @return the session
+	 */
+	public static SshSession get(String server, String keyFile, String knownHostsFile) {
+		final String target = server.indexOf(':') >= 0 && !server.startsWith("ssh://") ? "ssh://" + server : server;
+		final String id = DigestUtils.sha1Hex((keyFile == null ? "" : keyFile) + " "
+				+ (knownHostsFile == null ? "" : knownHostsFile) + " " + target);
+		final String path = new File(SOCKET_FOLDER, id.substring(0, 16)).getPath();
+		return sessions.computeIfAbsent(path, p -> new SshSession(target, keyFile, knownHostsFile, p));
+	}
+
+	/**
+	 * Gets the server of this session.
+	 *
+	 * @return the server
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * Adds common options to an ssh command line.
+	 *
+	 * @param args the command line
+	 */
+	private void addOptions(List<String> args) {
+		args.add(SSH_BIN);
+		if (keyFile != null) {
+			args.add("-i");
+			args.add(keyFile);
+		}
+		if (knownHostsFile != null) {
+			args.add("-oUserKnownHostsFile=" + knownHostsFile);
+			args.add("-oStrictHostKeyChecking=yes");
+		}
+		args.add("-oBatchMode=yes");
+		args.add("-oConnectTimeout=" + CONNECT_SECONDS);
+		args.add("-oControlPath=" + controlPath);
+	}
+
+	/**
+	 * Checks if the master connection is alive.
+	 *
+	 * @return true if alive
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private boolean check() throws InterruptedException {
+		if (!new File(controlPath).exists()) {
+			return false;
+		}
+		final List<String> args = new ArrayList<>();
+		addOptions(args);
+		args.add("-Ocheck");
+		args.add(server);
+		return run(args, CONNECT_SECONDS) == 0;
+	}
+
+	/**
+	 * Opens the master connection if it is not alive.
+	 *
+	 * <p>Concurrent callers wait for the same connection. The master is only
+	 * checked if it has not been checked in the last {@link #ALIVE_SECONDS} or
+	 * it has been invalidated.
+	 *
+	 * @param maxSeconds maximum seconds to wait
+	 * @return true if the session is ready
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean open(long maxSeconds) throws InterruptedException {
+		if (System.currentTimeMillis() < aliveUntil && new File(controlPath).exists()) {
+			return true;
+		}
+		if (check()) {
+			setAlive();
+			return true;
+		}
+		if (!SOCKET_FOLDER.isDirectory() && !(SOCKET_FOLDER.mkdirs() && SOCKET_FOLDER.setReadable(false, false)
+				&& SOCKET_FOLDER.setExecutable(false, false) && SOCKET_FOLDER.setReadable(true, true)
+				&& SOCKET_FOLDER.setExecutable(true, true))) {
+			logger.error("Error creating SSH socket folder: {}", SOCKET_FOLDER);
+			return false;
+		}
+		final List<String> args = new ArrayList<>();
+		addOptions(args);
+		// Background master, it ends when idle
+		args.add("-oControlMaster=yes");
+		args.add("-oControlPersist=" + IDLE_SECONDS);
+		args.add("-oServerAliveInterval=" + IDLE_SECONDS / 10);
+		args.add("-fN");
+		args.add(server);
+		final long wait = maxSeconds > 0 ? Math.min(maxSeconds, CONNECT_SECONDS * 2L) : CONNECT_SECONDS * 2L;
+		final boolean res = run(args, wait) == 0;
+		if (res) {
+			setAlive();
+			logger.info("SSH session opened: {}", server);
+		} else {
+			logger.error("Error opening SSH session: {}", server);
+		}
+		return res;
+	}
+
+	/**
+	 * Marks the master as alive for {@link #ALIVE_SECONDS}.
+	 */
+	private void setAlive() {
+		aliveUntil = System.currentTimeMillis() + ALIVE_SECONDS * 1000L;
+	}
+
+	/**
+	 * Forgets that the master is alive, usually after a lost connection, so
+	 * the next {@link #open(long)} checks it.
+	 */
+	public void invalidate() {
+		aliveUntil = 0;
+	}
+
+	/**
+	 * Builds the command line of a client that runs a remote command in this
+	 * session.
+	 *
+	 * @param remoteCommand remote command and arguments, interpreted by the
+	 *                      remote shell
+	 * @return the command line
+	 */
+	public List<String> command(String... remoteCommand) {
+		final List<String> args = new ArrayList<>();
+		addOptions(args);
+		// Never fall back to a new connection
+		args.add("-oControlMaster=no");
+		args.add("-T");
+		args.add(server);
+		for (final String c : remoteCommand) {
+			args.add(c);
+		}
+		return args;
+	}
+
+	/**
+	 * Runs a remote command in this session, without input or output.
+	 *
+	 * @param maxSeconds    maximum seconds to wait
+	 * @param remoteCommand remote command and arguments
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public int run(long maxSeconds, String... remoteCommand) throws InterruptedException {
+		return run(command(remoteCommand), maxSeconds);
+	}
+
+	/**
+	 * Closes the master connection.
+	 */
+	public void close() {
+		invalidate();
+		final List<String> args = new ArrayList<>();
+		addOptions(args);
+		args.add("-Oexit");
+		args.add(server);
+		try {
+			run(args, CONNECT_SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Closes all master connections.
+	 */
+	public static void closeAll() {
+		for (final SshSession s : sessions.values()) {
+			if (new File(s.controlPath).exists()) {
+				s.close();
+			}
+		}
+		sessions.clear();
+	}
+
+	/**
+	 * Runs a local ssh command without input or output.
+	 *
+	 * @param args       the command line
+	 * @param maxSeconds maximum seconds to wait
+	 * @return exit value
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static int run(List<String> args, long maxSeconds) throws InterruptedException {
+		int res;
+		try {
+			final ProcessBuilder pb = new ProcessBuilder(args);
+			pb.redirectInput(Redirect.from(new File("/dev/null")));
+			// The background master inherits the output, do not use pipes
+			pb.redirectOutput(Redirect.DISCARD);
+			pb.redirectError(Redirect.DISCARD);
+			res = TimeoutService.waitFor(pb.start(), maxSeconds);
+		} catch (final IOException e) {
+			logger.error("Error running ssh: {}", e.getMessage());
+			res = ToolRunner.ERROR_RUNNER_EXCEPTION;
+		}
+		return res;
+	}
+}
@@ -27,7 +27,8 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 /**
- * Configuration of the {@link ToolRunnerType#TR_SSH} type tool.
+ * Configuration of the {@link ToolRunnerType#TR_SSH} and
+ * {@link ToolRunnerType#TR_SSH_POOLED} type tools.
  *
  * @author Francisco José Fernández Jiménez
  */
@@ -48,7 +49,8 @@ public class SshToolConfig {
 	private List<String> servers;
 
 	/**
-	 * Counter-based server selection, otherwise always selected in the same order.
+	 * Counter-based server selection (among equally loaded servers in pooled
+	 * tools), otherwise fixed order (the fastest one in pooled tools).
 	 */
 	private boolean roundRobin;
 
@@ -59,6 +61,11 @@ public class SshToolConfig {
 	 */
 	private List<String> privateKeyLines;
 
+	/**
+	 * Known host keys of the servers, in <code>known_hosts</code> format.
+	 */
+	private List<String> knownHostsLines;
+
 	/**
 	 * Username of authorized user for special deliveries.
 	 */
@@ -74,6 +81,16 @@ public class SshToolConfig {
 	 */
 	private String specialCorrector;
 
+	/**
+	 * Hedging policy, null if disabled.
+	 */
+	private HedgingConfig hedging;
+
+	/**
+	 * Micro-batching policy, null if disabled.
+	 */
+	private BatchConfig batch;
+
 	/**
 	 * Gets the name of the remote corrector executable.
 	 * 
@@ -143,6 +160,28 @@ public class SshToolConfig {
 		this.privateKeyLines = privateKeyLines;
 	}
 
+	/**
+	 * Gets the known host keys of the servers.
+	 *
+	 * @return the lines of <code>known_hosts</code> or null
+	 */
+	public List<String> getKnownHostsLines() {
+		return knownHostsLines;
+	}
+
+	/**
+	 * Sets the known host keys of the servers.
+	 *
+	 * <p>Only used by {@link ToolRunnerType#TR_SSH_POOLED} tools. If set, only
+	 * these keys are accepted; if null, the <code>known_hosts</code> files of
+	 * the system user are used.
+	 *
+	 * @param knownHostsLines lines of <code>known_hosts</code>
+	 */
+	public void setKnownHostsLines(List<String> knownHostsLines) {
+		this.knownHostsLines = knownHostsLines;
+	}
+
 	/**
 	 * Gets the correction server list.
 	 * 
@@ -155,7 +194,9 @@ public class SshToolConfig {
 	/**
 	 * Sets the correction server list.
 	 *
-	 * <p>An attempt is sent to the first available server.
+	 * <p>An attempt is sent to the first available server. In
+	 * {@link ToolRunnerType#TR_SSH_POOLED} tools, servers are sorted by health
+	 * and load (see {@link SshServerPool}).
 	 *
 	 * <p>If the port is 22, the servers can be written as
 	 * <code>user@server</code>,
@@ -256,6 +297,49 @@ public class SshToolConfig {
 		this.specialCorrector = specialCorrector;
 	}
 
+	/**
+	 * Gets the hedging policy.
+	 *
+	 * @return the hedging policy, null if disabled
+	 */
+	public HedgingConfig getHedging() {
+		return hedging;
+	}
+
+	/**
+	 * Sets the hedging policy.
+	 *
+	 * <p>Only used by {@link ToolRunnerType#TR_SSH_POOLED} tools with more
+	 * than one server.
+	 *
+	 * @param hedging the hedging policy, null to disable it
+	 */
+	public void setHedging(HedgingConfig hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * Gets the micro-batching policy.
+	 *
+	 * @return the micro-batching policy, null if disabled
+	 */
+	public BatchConfig getBatch() {
+		return batch;
+	}
+
+	/**
+	 * Sets the micro-batching policy.
+	 *
+	 * <p>Only used by {@link ToolRunnerType#TR_SSH_POOLED} tools. Batched
+	 * executions are not hedged and their output is not available until the
+	 * whole batch ends.
+	 *
+	 * @param batch the micro-batching policy, null to disable it
+	 */
+	public void setBatch(BatchConfig batch) {
+		this.batch = batch;
+	}
+
 	/**
 	 * Deserialize from JSON string.
 	 *
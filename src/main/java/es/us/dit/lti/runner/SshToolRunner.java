@@ -32,7 +32,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -175,7 +174,7 @@ public class SshToolRunner implements ToolRunner {
 	 * @param name name of file
 	 * @return true if successful
 	 */
-	private boolean createKeyFile(List<String> lines, String name) {
+	static boolean createKeyFile(List<String> lines, String name) {
 		boolean res = false;
 		try (FileWriter fw = new FileWriter(name, StandardCharsets.UTF_8)) {
 			for (final String l : lines) {
@@ -328,18 +327,8 @@ public class SshToolRunner implements ToolRunner {
 			final PrintStream ps = new PrintStream(program.getOutputStream(), true, StandardCharsets.UTF_8);
 			ps.println(script);
 			ps.close();
-			if (maxSecondsWait > 0) {
-				final boolean terminado = program.waitFor(maxSecondsWait, TimeUnit.SECONDS);
-				if (!terminado) {
-					program.destroyForcibly().waitFor(1, TimeUnit.MINUTES);
-					// wait 1 minute after kill for security
-				}
-			} else {
-				// infinite wait
-				program.waitFor();
-			}
-
-			result = program.exitValue();
+			// killed if it exceeds its time (0 or less, infinite wait)
+			result = TimeoutService.waitFor(program, maxSecondsWait);
 
 		} catch (final InterruptedException e) {
 			// error
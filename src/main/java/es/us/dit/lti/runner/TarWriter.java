@@ -0,0 +1,116 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Minimal writer of tar (ustar) streams with regular files.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class TarWriter {
+	/**
+	 * Size of tar blocks.
+	 */
+	private static final int BLOCK = 512;
+	/**
+	 * Maximum length of names.
+	 */
+	static final int MAX_NAME = 99;
+
+	/**
+	 * Output stream.
+	 */
+	private final OutputStream os;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param os output stream
+	 */
+	TarWriter(OutputStream os) {
+		this.os = os;
+	}
+
+	/**
+	 * Writes an octal field.
+	 *
+	 * @param header the header
+	 * @param offset field offset
+	 * @param length field length, including terminator
+	 * @param value  the value
+	 */
+	private static void putOctal(byte[] header, int offset, int length, long value) {
+		final String s = String.format("%0" + (length - 1) + "o", value);
+		System.arraycopy(s.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+	}
+
+	/**
+	 * Adds a regular file.
+	 *
+	 * @param name name in the archive, at most {@link #MAX_NAME} bytes
+	 * @param file the file
+	 * @throws IOException if there is an error
+	 */
+	void add(String name, File file) throws IOException {
+		final byte[] header = new byte[BLOCK];
+		final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, MAX_NAME));
+		putOctal(header, 100, 8, 0644);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		final long size = file.length();
+		putOctal(header, 124, 12, size);
+		putOctal(header, 136, 12, file.lastModified() / 1000);
+		header[156] = '0';
+		System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+		// checksum is computed with spaces in its field
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		long checksum = 0;
+		for (final byte b : header) {
+			checksum += b & 0xff;
+		}
+		putOctal(header, 148, 7, checksum);
+		os.write(header);
+		final long copied = Files.copy(file.toPath(), os);
+		if (copied != size) {
+			throw new IOException("File changed while archiving: " + file);
+		}
+		final int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+		os.write(new byte[padding]);
+	}
+
+	/**
+	 * Writes the end of the archive and flushes the stream.
+	 *
+	 * @throws IOException if there is an error
+	 */
+	void finish() throws IOException {
+		os.write(new byte[BLOCK * 2]);
+		os.flush();
+	}
+}
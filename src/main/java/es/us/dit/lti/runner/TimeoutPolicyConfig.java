@@ -0,0 +1,181 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.io.Serializable;
+
+/**
+ * Execution timeout policy of a tool.
+ *
+ * <p>In fixed mode, every execution may last {@link #getSeconds()}. In adaptive
+ * mode, the deadline is the configured percentile of the latest execution
+ * times of the tool multiplied by a factor, between {@link #getMinSeconds()}
+ * and {@link #getSeconds()}. See {@link ExecutionTimeouts}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class TimeoutPolicyConfig implements Serializable {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum seconds of an execution, 0 or less for no limit.
+	 */
+	private int seconds = ExecutionTimeouts.DEFAULT_SECONDS;
+
+	/**
+	 * If the deadline is derived from the latest execution times.
+	 */
+	private boolean adaptive = false;
+
+	/**
+	 * Percentile of the execution times used in adaptive mode.
+	 */
+	private double percentile = 99;
+
+	/**
+	 * Factor applied to the percentile in adaptive mode.
+	 */
+	private double factor = 3;
+
+	/**
+	 * Minimum seconds of the deadline in adaptive mode.
+	 */
+	private int minSeconds = 5;
+
+	/**
+	 * Number of executions needed before using the adaptive deadline.
+	 */
+	private int minSamples = 20;
+
+	/**
+	 * Gets the maximum seconds of an execution.
+	 *
+	 * <p>In adaptive mode, it is the upper limit of the deadline and the
+	 * deadline used until there are enough executions.
+	 *
+	 * @return the seconds, 0 or less for no limit
+	 */
+	public int getSeconds() {
+		return seconds;
+	}
+
+	/**
+	 * Sets the maximum seconds of an execution.
+	 *
+	 * @param seconds new value, 0 or less for no limit
+	 */
+	public void setSeconds(int seconds) {
+		this.seconds = seconds;
+	}
+
+	/**
+	 * Gets if the deadline is derived from the latest execution times.
+	 *
+	 * @return true if adaptive mode is enabled
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Sets if the deadline is derived from the latest execution times.
+	 *
+	 * @param adaptive new value
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Gets the percentile of the execution times used in adaptive mode.
+	 *
+	 * @return the percentile (0-100)
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Sets the percentile of the execution times used in adaptive mode.
+	 *
+	 * @param percentile new value (0-100)
+	 */
+	public void setPercentile(double percentile) {
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Gets the factor applied to the percentile in adaptive mode.
+	 *
+	 * @return the factor
+	 */
+	public double getFactor() {
+		return factor;
+	}
+
+	/**
+	 * Sets the factor applied to the percentile in adaptive mode.
+	 *
+	 * @param factor new value
+	 */
+	public void setFactor(double factor) {
+		this.factor = factor;
+	}
+
+	/**
+	 * Gets the minimum seconds of the deadline in adaptive mode.
+	 *
+	 * @return the minimum seconds
+	 */
+	public int getMinSeconds() {
+		return minSeconds;
+	}
+
+	/**
+	 * Sets the minimum seconds of the deadline in adaptive mode.
+	 *
+	 * @param minSeconds new value
+	 */
+	public void setMinSeconds(int minSeconds) {
+		this.minSeconds = minSeconds;
+	}
+
+	/**
+	 * Gets the number of executions needed before using the adaptive deadline.
+	 *
+	 * @return the number of executions
+	 */
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	/**
+	 * Sets the number of executions needed before using the adaptive deadline.
+	 *
+	 * @param minSamples new value
+	 */
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared scheduler of deadlines of all tool runners.
+ *
+ * <p>A small pool of threads executes timeouts (aborts of requests, kills of
+ * processes) instead of a thread per execution. The end of processes is
+ * detected with {@link Process#onExit()}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public final class TimeoutService {
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TimeoutService.class);
+	/**
+	 * Number of threads of the scheduler. Tasks must be short.
+	 */
+	private static final int THREADS = 2;
+	/**
+	 * Seconds to wait for a process to be reaped after killing it.
+	 */
+	private static final long KILL_WAIT = 60;
+	/**
+	 * Seconds to wait for pending tasks on shutdown.
+	 */
+	private static final int SHUTDOWN_WAIT = 6;
+
+	/**
+	 * Scheduler, created on first use.
+	 */
+	private static ScheduledThreadPoolExecutor scheduler = null;
+
+	/**
+	 * Can not create objects.
+	 */
+	private TimeoutService() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Gets the scheduler, creating it if necessary.
+	 *
+	 * @return the scheduler
+	 */
+	private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+		if (scheduler == null) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			scheduler = new ScheduledThreadPoolExecutor(THREADS, r -> {
+				final Thread t = new Thread(r, "tpm-timeout-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			// Most timeouts are cancelled, do not keep them in the queue
+			scheduler.setRemoveOnCancelPolicy(true);
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Schedules a task.
+	 *
+	 * @param task  the task, it must be short
+	 * @param delay delay before execution
+	 * @param unit  unit of delay
+	 * @return the scheduled task, to cancel it
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return getScheduler().schedule(task, delay, unit);
+	}
+
+	/**
+	 * Schedules a periodic task.
+	 *
+	 * @param task   the task, it must be short
+	 * @param period delay between executions
+	 * @param unit   unit of period
+	 * @return the scheduled task, to cancel it
+	 */
+	public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long period, TimeUnit unit) {
+		return getScheduler().scheduleWithFixedDelay(task, period, period, unit);
+	}
+
+	/**
+	 * Kills a process and its descendants.
+	 *
+	 * @param process the process
+	 */
+	public static void kill(Process process) {
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+	}
+
+	/**
+	 * Watches a process, killing it if it exceeds its time.
+	 *
+	 * <p>If a killed process is not reaped after some time, the result is
+	 * completed with {@link ToolRunner#ERROR_TIMEOUT}.
+	 *
+	 * @param process    the process
+	 * @param maxSeconds maximum seconds, 0 or less to wait forever
+	 * @return future exit value of the process
+	 */
+	public static CompletableFuture<Integer> watch(Process process, long maxSeconds) {
+		final CompletableFuture<Integer> res = process.onExit().thenApply(Process::exitValue);
+		if (maxSeconds > 0) {
+			final ScheduledFuture<?> timeout = schedule(() -> {
+				kill(process);
+				schedule(() -> {
+					if (res.complete(ToolRunner.ERROR_TIMEOUT)) {
+						logger.error("Process not reaped: {}", process.pid());
+					}
+				}, KILL_WAIT, TimeUnit.SECONDS);
+			}, maxSeconds, TimeUnit.SECONDS);
+			res.whenComplete((v, e) -> timeout.cancel(false));
+		}
+		return res;
+	}
+
+	/**
+	 * Waits for a process, killing it if it exceeds its time.
+	 *
+	 * <p>If the current thread is interrupted, the process is killed.
+	 *
+	 * @param process    the process
+	 * @param maxSeconds maximum seconds, 0 or less to wait forever
+	 * @return the exit value of the process, usually
+	 *         {@link ToolRunner#ERROR_TIMEOUT} if killed
+	 * @throws InterruptedException if the current thread is interrupted
+	 */
+	public static int waitFor(Process process, long maxSeconds) throws InterruptedException {
+		int res;
+		try {
+			res = watch(process, maxSeconds).get();
+		} catch (final ExecutionException e) {
+			logger.error("Error waiting for process: {}", e.getMessage());
+			res = ToolRunner.ERROR_CORRECTOR_EXCEPTION;
+		} catch (final InterruptedException e) {
+			kill(process);
+			throw e;
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the seconds until a deadline, rounded up.
+	 *
+	 * @param deadline time limit in milliseconds, or 0 if there is no limit
+	 * @return seconds, 0 if there is no limit or negative if expired
+	 */
+	static long getRemainingSeconds(long deadline) {
+		long maxSeconds = 0;
+		if (deadline > 0) {
+			maxSeconds = (deadline - System.currentTimeMillis() + 999) / 1000;
+			if (maxSeconds <= 0) {
+				maxSeconds = -1;
+			}
+		}
+		return maxSeconds;
+	}
+
+	/**
+	 * Stops the scheduler.
+	 *
+	 * <p>Pending tasks are executed if they are due in a few seconds.
+	 */
+	public static void shutdown() {
+		ScheduledThreadPoolExecutor old;
+		synchronized (TimeoutService.class) {
+			old = scheduler;
+			scheduler = null;
+		}
+		if (old != null) {
+			old.shutdown();
+			try {
+				if (!old.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+					old.shutdownNow();
+				}
+			} catch (final InterruptedException e) {
+				old.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
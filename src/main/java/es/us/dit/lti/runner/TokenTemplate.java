@@ -0,0 +1,194 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Text with <code>${...}</code> tokens, compiled once and rendered without
+ * regular expressions.
+ *
+ * <p>The text is split into literal segments and tokens. A token is a key,
+ * optionally preceded by <code>%</code>, that is looked up in a list of
+ * arguments (numeric keys) or in a map of replacements.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+final class TokenTemplate {
+	/**
+	 * Regular expression to detect elements to replace.
+	 */
+	private static final Pattern pattern = Pattern.compile("\\$\\{(.+?)\\}");
+
+	/**
+	 * Literal segments, one more than tokens.
+	 */
+	private final String[] literals;
+	/**
+	 * Keys of tokens, without <code>%</code>.
+	 */
+	private final String[] keys;
+	/**
+	 * Argument index of tokens, -1 if not a number.
+	 */
+	private final int[] indexes;
+	/**
+	 * Whether the value of each token is URL encoded or decoded.
+	 */
+	private final boolean[] marked;
+	/**
+	 * Sum of the lengths of literal segments.
+	 */
+	private final int literalLength;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param literals literal segments
+	 * @param keys     keys of tokens
+	 * @param marked   whether tokens are preceded by <code>%</code>
+	 */
+	private TokenTemplate(List<String> literals, List<String> keys, List<Boolean> marked) {
+		this.literals = literals.toArray(new String[0]);
+		this.keys = keys.toArray(new String[0]);
+		this.indexes = new int[this.keys.length];
+		this.marked = new boolean[this.keys.length];
+		for (int i = 0; i < this.keys.length; i++) {
+			this.marked[i] = marked.get(i);
+			try {
+				indexes[i] = Integer.parseInt(this.keys[i]);
+			} catch (final NumberFormatException e) {
+				indexes[i] = -1;
+			}
+		}
+		int length = 0;
+		for (final String l : this.literals) {
+			length += l.length();
+		}
+		literalLength = length;
+	}
+
+	/**
+	 * Compiles a text.
+	 *
+	 * @param text text with tokens
+	 * @return compiled template
+	 */
+	static TokenTemplate compile(String text) {
+		final List<String> literals = new ArrayList<>();
+		final List<String> keys = new ArrayList<>();
+		final List<Boolean> marked = new ArrayList<>();
+		final Matcher matcher = pattern.matcher(text);
+		int last = 0;
+		while (matcher.find()) {
+			literals.add(text.substring(last, matcher.start()));
+			final String expression = matcher.group(1).trim();
+			final boolean mark = !expression.isEmpty() && expression.charAt(0) == '%';
+			keys.add(mark ? expression.substring(1) : expression);
+			marked.add(mark);
+			last = matcher.end();
+		}
+		literals.add(text.substring(last));
+		return new TokenTemplate(literals, keys, marked);
+	}
+
+	/**
+	 * Checks whether the text has tokens.
+	 *
+	 * @return true if it has tokens
+	 */
+	boolean hasTokens() {
+		return keys.length > 0;
+	}
+
+	/**
+	 * Adds the keys of tokens to a set.
+	 *
+	 * @param set set of keys
+	 */
+	void addKeys(Set<String> set) {
+		for (final String k : keys) {
+			set.add(k);
+		}
+	}
+
+	/**
+	 * Renders the template with a list of arguments.
+	 *
+	 * <p><code>${n}</code> is replaced by argument n, <code>${%n}</code> by
+	 * argument n URL encoded. Other tokens are removed.
+	 *
+	 * @param args arguments
+	 * @return rendered text
+	 */
+	String render(List<String> args) {
+		if (keys.length == 0) {
+			return literals[0];
+		}
+		final StringBuilder buffer = new StringBuilder(literalLength + 16 * keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			buffer.append(literals[i]);
+			final int index = indexes[i];
+			if (index >= 0 && index < args.size()) {
+				final String value = args.get(index);
+				buffer.append(marked[i] && value != null ? URLEncoder.encode(value, StandardCharsets.UTF_8) : value);
+			}
+		}
+		return buffer.append(literals[keys.length]).toString();
+	}
+
+	/**
+	 * Renders the template with a map of replacements.
+	 *
+	 * <p><code>${key}</code> is replaced by its value, <code>${%key}</code> by
+	 * its value URL decoded. Unknown keys are replaced by an empty string.
+	 *
+	 * @param replacements map of replacements
+	 * @return rendered text
+	 */
+	String render(Map<String, String> replacements) {
+		if (keys.length == 0) {
+			return literals[0];
+		}
+		final StringBuilder buffer = new StringBuilder(literalLength + 16 * keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			buffer.append(literals[i]);
+			final String value = replacements.getOrDefault(keys[i], "");
+			if (marked[i]) {
+				try {
+					buffer.append(URLDecoder.decode(value, StandardCharsets.UTF_8));
+				} catch (final IllegalArgumentException e) {
+					buffer.append("[ERROR: ").append(e.getMessage()).append("]");
+				}
+			} else {
+				buffer.append(value);
+			}
+		}
+		return buffer.append(literals[keys.length]).toString();
+	}
+}
@@ -20,6 +20,9 @@
 package es.us.dit.lti.runner;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import es.us.dit.lti.config.ToolUiConfig;
 
 /**
  * A tool runner is the object that actually performs the assessment of an
@@ -48,6 +51,14 @@ public interface ToolRunner {
 	 * Not assessment due to maximum number of concurrent deliveries exceeded.
 	 */
 	int ERROR_CONCURRENT_EXCEPTION = 113;
+	/**
+	 * Assessment deferred, it will be made in background.
+	 */
+	int ERROR_DEFERRED = 114;
+	/**
+	 * Corrector unavailable, the assessment has not been started.
+	 */
+	int ERROR_UNAVAILABLE = 115;
 	/**
 	 * Maximum assessment time exceeded.
 	 */
@@ -66,6 +77,18 @@ public interface ToolRunner {
 	 */
 	void init(String exeData, String executionRestrictions);
 
+	/**
+	 * Applies the properties of the tool that affect its execution.
+	 *
+	 * <p>It is called after {@link #init(String, String)}. By default, nothing is
+	 * done.
+	 *
+	 * @param tui the tool extra configuration
+	 */
+	default void configure(ToolUiConfig tui) {
+		// Nothing by default
+	}
+
 	/**
 	 * Execute the tool.
 	 *
@@ -82,4 +105,28 @@ public interface ToolRunner {
 	int exec(String filePath, String outputPath, String userId, String originalFilename, int counter,
 			boolean isInstructor, List<String> extraArgs, long maxSecondsWait);
 
+	/**
+	 * Execute the tool without blocking the caller while it waits for the
+	 * corrector.
+	 *
+	 * <p>By default, it calls {@link #exec} in the current thread and returns a
+	 * completed future. Runners that can wait without a thread override it.
+	 *
+	 * @param filePath         uploaded file path
+	 * @param outputPath       path of file to write results/output
+	 * @param userId           tool consumer ID
+	 * @param originalFilename original file name given by user
+	 * @param counter          tool counter
+	 * @param isInstructor     if user is instructor
+	 * @param extraArgs        list of extra arguments
+	 * @param maxSecondsWait   maximum number of seconds it should take to finish
+	 * @return future score/outcome, ok if [0-100], error if &gt; 100
+	 */
+	default CompletableFuture<Integer> execAsync(String filePath, String outputPath, String userId,
+			String originalFilename, int counter, boolean isInstructor, List<String> extraArgs,
+			long maxSecondsWait) {
+		return CompletableFuture.completedFuture(exec(filePath, outputPath, userId, originalFilename, counter,
+				isInstructor, extraArgs, maxSecondsWait));
+	}
+
 }
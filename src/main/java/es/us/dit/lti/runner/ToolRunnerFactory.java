@@ -48,6 +48,9 @@ public final class ToolRunnerFactory {
 		case TR_SSH:
 			tr = new SshToolRunner();
 			break;
+		case TR_SSH_POOLED:
+			tr = new PooledSshToolRunner();
+			break;
 		case TR_HTTP:
 			tr = new HttpToolRunner();
 			break;
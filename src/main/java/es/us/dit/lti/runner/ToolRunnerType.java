@@ -45,7 +45,11 @@ public enum ToolRunnerType {
 	/**
 	 * No execution, only storage.
 	 */
-	TR_STORAGE(4);
+	TR_STORAGE(4),
+	/**
+	 * Remote execution via pooled SSH sessions.
+	 */
+	TR_SSH_POOLED(5);
 
 	/**
 	 * Code associated to type, for saving in db.
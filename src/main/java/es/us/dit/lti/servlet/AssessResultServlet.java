@@ -0,0 +1,123 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package es.us.dit.lti.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.ToolSession;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Servlet that returns the result of an assessment job.
+ *
+ * <p>Responses:
+ * <ul>
+ * <li>202: the job is queued or running. Header {@value #QUEUE_POSITION_HEADER}
+ * has the position in the queue of the tool (0 if running) and header
+ * {@value #ESTIMATED_WAIT_HEADER} the estimated seconds until it starts.</li>
+ * <li>200: the job has finished, the body is the HTML result. The job is
+ * kept until it expires, so a lost response or a reload can request it
+ * again.</li>
+ * <li>404: the job does not exist or does not belong to the user.</li>
+ * </ul>
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+@WebServlet({ "/learner/assessresult" })
+public class AssessResultServlet extends HttpServlet {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(AssessResultServlet.class);
+	/**
+	 * Header with the position of a job in the queue.
+	 */
+	public static final String QUEUE_POSITION_HEADER = "X-Queue-Position";
+	/**
+	 * Header with the estimated seconds until a job starts.
+	 */
+	public static final String ESTIMATED_WAIT_HEADER = "X-Estimated-Wait";
+	/**
+	 * HTTP status of a delivery rejected because the server is overloaded.
+	 */
+	public static final int SC_TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * Processes GET request to poll an assessment job.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		final HttpSession session = request.getSession();
+		final ToolSession ts = (ToolSession) session.getAttribute(ToolSession.class.getName());
+		final AssessmentJob job = AssessmentQueue.get(request.getParameter("job"));
+		response.setContentType("text/html; charset=UTF-8");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader("Cache-Control", "no-store");
+		if (ts == null || ts.getTool() == null || job == null
+				|| !job.isOwnedBy(ts.getSessionUserId(), ts.getTool().getName())) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		} else if (job.getStatus() != AssessmentJob.Status.FINISHED) {
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			setQueueHeaders(response, job);
+		} else {
+			try {
+				response.getWriter().append(job.getResult());
+			} catch (final IOException e) {
+				logger.error("IO Error.", e);
+			}
+		}
+	}
+
+	/**
+	 * Sets the headers with the position of a job in the queue and the
+	 * estimated seconds until it starts (only if it is waiting).
+	 *
+	 * @param response HTTP response
+	 * @param job      the job
+	 */
+	static void setQueueHeaders(HttpServletResponse response, AssessmentJob job) {
+		final int position = AssessmentQueue.getPosition(job);
+		response.setIntHeader(QUEUE_POSITION_HEADER, position);
+		if (position > 0) {
+			response.setIntHeader(ESTIMATED_WAIT_HEADER, AssessmentQueue.getEstimatedWait(position));
+		}
+	}
+
+}
@@ -29,24 +29,27 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.ConcurrentModificationException;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Pattern;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.output.WriterOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import es.us.dit.lti.DeferredAssessmentService;
 import es.us.dit.lti.MessageMap;
+import es.us.dit.lti.OutcomeDeliveryService;
 import es.us.dit.lti.OutcomeService;
 import es.us.dit.lti.SecurityUtil;
 import es.us.dit.lti.ToolSession;
@@ -60,6 +63,11 @@ import es.us.dit.lti.entity.ToolKey;
 import es.us.dit.lti.persistence.MgmtUserDao;
 import es.us.dit.lti.persistence.ToolAttemptDao;
 import es.us.dit.lti.persistence.ToolDao;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.DeferredAssessmentConfig;
+import es.us.dit.lti.runner.ExecutionTimeouts;
+import es.us.dit.lti.runner.ResultCache;
 import es.us.dit.lti.runner.ToolRunner;
 import es.us.dit.lti.runner.ToolRunnerFactory;
 import es.us.dit.lti.runner.ToolRunnerType;
@@ -79,6 +87,14 @@ import jakarta.servlet.jsp.PageContext;
 /**
  * Servlet that processes an assessment or redirect attempt.
  *
+ * <p>The delivery is saved and enqueued in {@link AssessmentQueue}. The response
+ * has status 202 and the job ID, the result is requested to
+ * {@link AssessResultServlet} or streamed by {@link AssessStreamServlet}.
+ *
+ * <p>If the server is overloaded, the status is 429 (503 if the scheduler is
+ * stopped) with header Retry-After, estimated from the queue and the
+ * throughput, so that the client can try again later.
+ *
  * @author Francisco José Fernández Jiménez
  */
 @WebServlet({ "/learner/assess" })
@@ -102,21 +118,11 @@ public class AssessServlet extends HttpServlet {
 	 * Error code if assessment was successful and no outcome must be written.
 	 */
 	private static final int OK_WITHOUT_OUTCOME = 0;
-	/**
-	 * Error code if assessment was successful and outcome was written in consumer.
-	 */
-	private static final int OK_WITH_OUTCOME = 1;
 	/**
 	 * Default grace period to add to delivery deadline.
 	 */
 	private static final int DEFAULT_GRACE_TIME = 5;
 
-	/**
-	 * Number of concurrent users being assessed.
-	 */
-	private final SortedSet<String> concurrentUsers = Collections.synchronizedSortedSet(new TreeSet<String>());
-	
-	
 	/**
 	 * Processes an assessment or redirect attempt.
 	 *
@@ -143,7 +149,8 @@ public class AssessServlet extends HttpServlet {
 		final boolean isInstructor = ts.isInstructor();
 		final MessageMap text = (MessageMap) session.getAttribute("text");
 		boolean isReassessment = false;
-		boolean maxConcurrencyOnlyStoreMode = false;
+		boolean deferredMode = false;
+		boolean admitted = false;
 
 		if (tool != null && userId != null && (ts.isLearner() || isInstructor)) {
 
@@ -179,32 +186,40 @@ public class AssessServlet extends HttpServlet {
 			}
 
 			// Init values and previous checks
-			if (!error) {
-				// Check concurrent users
-				synchronized (concurrentUsers) {
-					try {
-						if (addConcurrentUser(userId, tool)) {
-							request.setAttribute("concurrence", concurrentUsers.size());
-						} else {
-							out.println(formatError(text.get("T_ERROR_CONCURRENCIA_MAXIMA")));
-							logger.error("Max. concurrent users: {}", concurrentUsers.size());
-							if (tui.isKeepFiles()
-									&& tool.getEnabledUntil() != null
-									&& tool.getToolUiConfig().getMaxConcurrentUsers() != 0 
-									&& !tool.isEnabledByDate(Calendar.getInstance(), -DEFAULT_GRACE_TIME * 2)) {
-								// If the remaining time is short and the files must be saved, we activate this
-								// mode (if global limit is not reached)
-								if (addConcurrentUserIgnoringTool(userId, tool.getName())) {
-									maxConcurrencyOnlyStoreMode = true;
-									logger.info("Max Concurrency Only Store Mode ON: {}", userId);
-								}
-							} else {
-								error = true;
-							}
+			final DeferredAssessmentConfig deferredConfig = tui.getDeferred();
+			if (!error && deferredConfig != null && deferredConfig.isAlways() && !isInstructor) {
+				// Always deferred, it does not need a slot
+				deferredMode = true;
+			} else if (!error) {
+				// Admission in the queue of the tool
+				final AssessmentQueue.Admission admission = AssessmentQueue.admit(userId, tool);
+				if (admission == AssessmentQueue.Admission.ACCEPTED) {
+					admitted = true;
+				} else if (admission == AssessmentQueue.Admission.DUPLICATED) {
+					out.println(formatError(text.get("T_ERROR_CORRECCION_SIMULTANEA")));
+					logger.error("Concurrent delivery: {}", userId);
+					error = true;
+				} else if (admission == AssessmentQueue.Admission.STOPPED) {
+					// Scheduler stopped
+					setRetryAfter(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					out.println(formatError(text.get("T_ERROR_CONCURRENCIA_MAXIMA")));
+					error = true;
+				} else {
+					logger.error("Max. queued users: {}", AssessmentQueue.getWaitingJobs());
+					final boolean acceptsDeliveries = tui.getMaxConcurrentUsers() != 0;
+					if (acceptsDeliveries && (deferredConfig != null || tui.isKeepFiles()
+							&& tool.getEnabledUntil() != null
+							&& !tool.isEnabledByDate(Calendar.getInstance(), -DEFAULT_GRACE_TIME * 2))) {
+						// If deferred assessments are enabled, or the remaining time is short and the
+						// files must be saved, the delivery is assessed later
+						deferredMode = true;
+						logger.info("Deferred Mode ON: {}", userId);
+					} else {
+						if (acceptsDeliveries) {
+							// Overloaded, the client may try again later
+							setRetryAfter(response, AssessResultServlet.SC_TOO_MANY_REQUESTS);
 						}
-					} catch (final ConcurrentModificationException e) {
-						out.println(formatError(text.get("T_ERROR_CORRECCION_SIMULTANEA")));
-						logger.error("Concurrent delivery: {}", userId);
+						out.println(formatError(text.get("T_ERROR_CONCURRENCIA_MAXIMA")));
 						error = true;
 					}
 				}
@@ -238,6 +253,9 @@ public class AssessServlet extends HttpServlet {
 
 				String userFilePath = null;
 				String outputPath = null;
+				// Hash of the delivered file if the result cache is used
+				String fileHash = null;
+				final boolean useResultCache = tui.isResultCache() && !tui.isRedirectMode();
 				// Save attempt in db
 				final Attempt attempt = new Attempt();
 				attempt.setInstant(Instant.now());
@@ -295,6 +313,9 @@ public class AssessServlet extends HttpServlet {
 											// be created
 											attempt.setSid(originalAttempt.getSid());
 											isReassessment = true;
+											if (useResultCache) {
+												fileHash = ResultCache.hashFile(userFilePath);
+											}
 										} else {
 											userFilePath = null;
 										}
@@ -320,7 +341,11 @@ public class AssessServlet extends HttpServlet {
 									out.println(
 											formatError(text.get("T_ERROR_TAM_SUBIDA") + ": " + maxUploadSize + "kB"));
 								} else if (checkFilename(tui, filename, isInstructor)) {
-									userFilePath = copyReceivedFile(attempt, item);
+									final MessageDigest md = useResultCache ? ResultCache.createDigest() : null;
+									userFilePath = copyReceivedFile(attempt, item, md);
+									if (md != null) {
+										fileHash = Hex.encodeHexString(md.digest());
+									}
 									attempt.setFileSaved(true);
 									if (userFilePath == null) {
 										session.setAttribute("errorMessage", text.get("T_ERROR_IO"));
@@ -340,256 +365,384 @@ public class AssessServlet extends HttpServlet {
 						forward(request, response, "./error.jsp");
 					}
 				}
+				boolean queued = false;
 				if (!validDeliveryPassword) {
 					out.println(formatError(text.get("T_ERROR_AUTORIZACION")));
 				} else if (userFilePath != null && filename != null) {
-					int scoreInt = 1000;
-					final boolean nocal = !ts.isOutcomeAllowed();
-					final File resultFile = new File(outputPath);
-					if (maxConcurrencyOnlyStoreMode) {
-						scoreInt = ToolRunner.ERROR_CONCURRENT_EXCEPTION;
-						// this modo is only enabled if keep files is enabled.
-						attempt.setOutputSaved(false);
-					} else {
-						final ToolRunner executer = getToolRunner(tool);
-						if (executer != null) {
-							// Assess
-							final int counter = ToolDao.incrementCounter(tool);
-							// Add extra arguments
-							final List<String> extraArgs = generateExtraArguments(request, ts);
-	
-							logger.info("{}:{} > {} > concurrence={}", tool.getName(), counter, userId,
-									concurrentUsers.size());
-							// This can also be done asynchronously. Keep it in mind in the future.
-							scoreInt = executer.exec(userFilePath, outputPath, userId, filename, counter, isInstructor,
-									extraArgs, 60); // 1 minute max correction
-							logger.info("{}:{} > {} > result={}", tool.getName(), counter, userId, scoreInt);
-							
-							// Output of execution
-							if (resultFile.exists() && resultFile.length() > 0) {
-								attempt.setOutputSaved(true);
-							}
-							// Delete unnecessary files
-							try {
-								if (!tui.isKeepFiles() && !tui.isKeepOutput()) {
-									clean(outputPath); // Clean error output
-									if (!new File(userFilePath).delete()) {
-										logger.error("Error deleting files");
-									}
-									attempt.setFileSaved(false);
-									attempt.setOutputSaved(false);
-								} else if (tui.isEnableInstructorCommand() && filename.equals(tui.getCommandFilename())
-										&& isInstructor || scoreInt > 100) {
-									// command or execution error, delete files and output
-									// if isReassessment do not delete original file
-									if (!isReassessment && !new File(userFilePath).delete()) {
-										logger.error("Error deleting delivery file");
-									} else {
-										attempt.setFileSaved(false);
-									}
-									clean(outputPath); // Clean error output
-									attempt.setOutputSaved(false);
-								} else if (!tui.isKeepFiles() || !tui.isKeepOutput()) {
-									// not keep all
-									if (tui.isKeepFiles()) {
-										// keep files, delete error output
-										clean(outputPath); // Clean error output
-										attempt.setOutputSaved(false);
-									} else if (tui.isKeepOutput() && !new File(userFilePath).delete()) {
-										// keep output, delete files
-										logger.error("Error deleting files");
-									} else {
-										attempt.setFileSaved(false);
-									}
-								}
-							} catch (final Exception e) {
-								logger.info("Some file could not be deleted.");
-							}
-						}
-					}
-
-					if (scoreInt == ToolRunner.ERROR_CORRECTOR_EXCEPTION) {
-						// Error in corrector (settings, params, servers...)
-						out.println(formatError(text.get("T_ERROR_CORRECTOR_EXCEPTION")));
-						attempt.setErrorCode(scoreInt);
-					} else if (scoreInt == ToolRunner.ERROR_RUNNER_EXCEPTION) {
-						// Exception in ToolRunner
-						out.println(formatError(text.get("T_ERROR_RUNNER_EXCEPTION")));
-						attempt.setErrorCode(scoreInt);
-					} else if (scoreInt == ToolRunner.ERROR_TIMEOUT) {
-						// Timeout
-						out.println(formatError(text.get("T_ERROR_TIMEOUT")));
-						attempt.setErrorCode(scoreInt);
-					} else if (maxConcurrencyOnlyStoreMode) {
-						out.println(formatError(text.get("T_ERROR_CONCURRENT_EXCEPTION")));
-						out.println(formatError("ID=" + attempt.getId()));
-						attempt.setErrorCode(scoreInt);
-					} else if (scoreInt >= ToolRunner.ERROR_GENERIC) {
-						// Unknown error
-						out.println(formatError(text.get("T_ERROR_GENERIC") + " " + scoreInt));
-						attempt.setErrorCode(scoreInt);
-					} else if (!nocal && ts.getLtiResourceUser() != null) {
-						attempt.setScore(scoreInt);
-						if (isInstructor) {
-							// Instructor is only testing
-							out.println("<p></<p><strong>(TEST) " + text.get("T_NOTA") + ":</strong> " + scoreInt * 0.1
-									+ "</p>");
-							attempt.setErrorCode(OK_WITHOUT_OUTCOME);
-						} else if (OutcomeService.writeOutcome(ts.getLtiResourceUser(), ts.getToolKey(),
-								String.valueOf(scoreInt * 0.01))) {
-							attempt.setErrorCode(OK_WITH_OUTCOME);
-							out.println("<p></<p><p><strong>" + text.get("T_NOTA") + ":</strong> " + scoreInt * 0.1
-									+ "</p>");
-						} else {
-							out.println(formatError(text.get("T_ERROR_WRITE_OUTCOME")));
-							attempt.setErrorCode(ToolRunner.ERROR_WRITE_OUTCOME);
-						}
-					} else {
-						attempt.setScore(scoreInt);
-						attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+					// Extra arguments use the request, so they are generated before enqueuing
+					final List<String> extraArgs = generateExtraArguments(request, ts);
+					final String jobFilePath = userFilePath;
+					final String jobOutputPath = outputPath;
+					final boolean jobReassessment = isReassessment;
+					final boolean jobDeferred = deferredMode;
+					String cacheKey = null;
+					if (fileHash != null && !deferredMode
+							&& !(tui.isEnableInstructorCommand() && filename.equals(tui.getCommandFilename()))) {
+						cacheKey = ResultCache.getKey(fileHash, tool, userId, filename, isInstructor, extraArgs);
 					}
-					// Create attempt if not exist
-					if (!isReassessment) {
-						ToolAttemptDao.create(attempt);
-					} else if (attempt.getResourceUser().getSid() != attempt.getOriginalResourceUser().getSid()) {
-						// Check if exist
-						final Attempt aux = ToolAttemptDao.getById(attempt.getResourceUser().getSid(),
-								attempt.getInstant());
-						if (aux == null) {
-							ToolAttemptDao.create(attempt);
-						}
+					final String jobCacheKey = cacheKey;
+					final AssessmentJob job = AssessmentJob.async(UUID.randomUUID().toString(), userId, tool.getName(),
+							jobOut -> assess(jobOut, ts, text, attempt, jobFilePath, jobOutputPath, jobReassessment,
+									jobDeferred, extraArgs, jobCacheKey));
+					if (tui.isStreamOutput()) {
+						job.setOutputPath(jobOutputPath);
 					}
-					// Send output
-					if (resultFile.exists() && resultFile.length() > 0) {
-						if (!tui.isRedirectMode()) {
-							// Generate iframe
-							String secureId = SecurityUtil.getSecureSid(attempt);
-							out.println("<iframe class='resized' src='attempt/" + URLDecoder
-									.decode(attempt.getResourceUser().getUser().getSourceId(), StandardCharsets.UTF_8)
-									+ "/output/" + secureId + "'></iframe>");
-						} else {
-							// Copy to response
-							try (BufferedInputStream br = new BufferedInputStream(new FileInputStream(resultFile));) {
-								WriterOutputStream wos = WriterOutputStream.builder().setWriter(out)
-										.setCharset(StandardCharsets.UTF_8).get();
-								br.transferTo(wos);
-								wos.flush();
-							} catch (final IOException e) {
-								out.println("<p><b>" + text.get("T_ERROR_IO") + "</b></p>");
-							}
-
-							if (!attempt.isOutputSaved() && !resultFile.delete()) {
-								logger.error("Error deleting file");
-							}
+					if (deferredMode && isReassessment) {
+						// Only deliveries are deferred
+						out.println(formatError(text.get("T_ERROR_CONCURRENCIA_MAXIMA")));
+					} else if (deferredMode) {
+						// Only storage, it does not need a slot
+						job.run();
+						out.print(job.getResult());
+					} else if (AssessmentQueue.submit(job, tool)) {
+						queued = true;
+						// The result must be requested to the polling endpoint
+						response.setStatus(HttpServletResponse.SC_ACCEPTED);
+						response.setHeader("Location", "assessresult?job=" + job.getId());
+						AssessResultServlet.setQueueHeaders(response, job);
+						out.print(job.getId());
+					} else {
+						// Scheduler stopped
+						setRetryAfter(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+						out.println(formatError(text.get("T_ERROR_CONCURRENCIA_MAXIMA")));
+						if (!isReassessment && !new File(userFilePath).delete()) {
+							logger.error("Error deleting delivery file");
 						}
 					}
 				}
 
-				removeConcurrentUser(userId, concurrentUsers, tool);
+				if (admitted && !queued) {
+					AssessmentQueue.release(userId, tool);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Forwards request capturing exceptions.
+	 * Assesses a saved delivery, writes the outcome and saves the attempt.
 	 *
-	 * @param request    HTTP request
-	 * @param response   HTTP response
-	 * @param forwardUrl forward URL
+	 * <p>It is started by a worker of {@link AssessmentQueue}, which is released
+	 * while the tool runner waits for the corrector (see
+	 * {@link ToolRunner#execAsync}).
+	 *
+	 * @param out            writer of the HTML result
+	 * @param ts             the tool session
+	 * @param text           localized messages
+	 * @param attempt        attempt data
+	 * @param userFilePath   path of the delivered file
+	 * @param outputPath     path of the output file
+	 * @param isReassessment if it is a reassessment of a previous attempt
+	 * @param deferred       if the file must be stored and assessed later
+	 * @param extraArgs      extra arguments of the tool
+	 * @param cacheKey       key in the result cache or null if not used
+	 * @return a stage completed when finished
 	 */
-	private void forward(HttpServletRequest request, HttpServletResponse response, String forwardUrl) {
+	private CompletionStage<Void> assess(PrintWriter out, ToolSession ts, MessageMap text, Attempt attempt,
+			String userFilePath, String outputPath, boolean isReassessment, boolean deferred, List<String> extraArgs,
+			String cacheKey) {
+		final String userId = ts.getSessionUserId();
+		final Tool tool = ts.getTool();
+		if (deferred) {
+			// Assessed by DeferredAssessmentService
+			attempt.setOutputSaved(false);
+			complete(out, ts, text, attempt, userFilePath, outputPath, isReassessment, true, extraArgs,
+					ToolRunner.ERROR_DEFERRED, false);
+			return CompletableFuture.completedFuture(null);
+		}
+		final ToolRunner executer = getToolRunner(tool);
+		Integer cachedScore = null;
+		if (cacheKey != null) {
+			cachedScore = ResultCache.get(tool, cacheKey, outputPath);
+		}
+		if (cachedScore != null) {
+			logger.info("{} > {} > cached result={}", tool.getName(), userId, cachedScore);
+		}
+		if (executer == null || cachedScore != null) {
+			complete(out, ts, text, attempt, userFilePath, outputPath, isReassessment, false, extraArgs,
+					cachedScore != null ? cachedScore : 1000, executer != null);
+			return CompletableFuture.completedFuture(null);
+		}
+		// Assess
+		final int counter = ToolDao.incrementCounter(tool);
+		logger.info("{}:{} > {} > concurrence={}", tool.getName(), counter, userId,
+				AssessmentQueue.getRunningJobs());
+		final long start = System.currentTimeMillis();
+		CompletableFuture<Integer> execution;
 		try {
-			request.getRequestDispatcher(forwardUrl).forward(request, response);
-		} catch (ServletException | IOException e) {
-			logger.error("Error al reenviar");
+			execution = executer.execAsync(userFilePath, outputPath, userId, attempt.getFileName(), counter,
+					ts.isInstructor(), extraArgs, ExecutionTimeouts.getSeconds(tool));
+		} catch (final RuntimeException e) {
+			execution = CompletableFuture.failedFuture(e);
 		}
+		// Failures of the runner must also save the attempt and clean the files
+		return execution.handle((result, e) -> {
+					int scoreInt;
+					if (e != null) {
+						logger.error("{}:{} > {} > runner exception", tool.getName(), counter, userId, e);
+						scoreInt = ToolRunner.ERROR_RUNNER_EXCEPTION;
+					} else {
+						scoreInt = result;
+					}
+					ExecutionTimeouts.record(tool, System.currentTimeMillis() - start, scoreInt);
+					logger.info("{}:{} > {} > result={}", tool.getName(), counter, userId, scoreInt);
+					if (cacheKey != null) {
+						ResultCache.put(tool, cacheKey, scoreInt, outputPath);
+					}
+					if (scoreInt == ToolRunner.ERROR_UNAVAILABLE && tool.getToolUiConfig().getDeferred() != null
+							&& !isReassessment && !ts.isInstructor()) {
+						// Corrector unavailable, assessed later by DeferredAssessmentService
+						logger.info("Deferred Mode ON: {}", userId);
+						attempt.setOutputSaved(false);
+						complete(out, ts, text, attempt, userFilePath, outputPath, isReassessment, true, extraArgs,
+								ToolRunner.ERROR_DEFERRED, false);
+					} else {
+						complete(out, ts, text, attempt, userFilePath, outputPath, isReassessment, false, extraArgs,
+								scoreInt, true);
+					}
+					return null;
+				});
 	}
 
 	/**
-	 * Adds user to concurrent users set.
+	 * Finishes an assessment: cleans files, writes the outcome, saves the
+	 * attempt and writes the HTML result.
 	 *
-	 * @param userId          user name
-	 * @param concurrentUsers set of concurrent users
-	 * @param tool            the used tool
-	 * @return true if successful
-	 * @throws ConcurrentModificationException if could not add to the set
+	 * @param out            writer of the HTML result
+	 * @param ts             the tool session
+	 * @param text           localized messages
+	 * @param attempt        attempt data
+	 * @param userFilePath   path of the delivered file
+	 * @param outputPath     path of the output file
+	 * @param isReassessment if it is a reassessment of a previous attempt
+	 * @param deferred       if the file must be stored and assessed later
+	 * @param extraArgs      extra arguments of the tool
+	 * @param scoreInt       score or error code
+	 * @param executed       if there is a tool runner, so files may be cleaned
 	 */
-	private boolean addConcurrentUser(String userId, Tool tool)
-			throws ConcurrentModificationException {
-		final int numAlumnos = concurrentUsers.size();
-		boolean result = false;
-		// Check global limits
-		if (numAlumnos < Settings.getConcurrentUsers()) {
-			// Check tool limits
-			final int max = tool.getToolUiConfig().getMaxConcurrentUsers();
-			if (max < 0 || tool.getConcurrentUsers().size() < max) {
-				// add to set
-				if (!concurrentUsers.add(tool.getName() + ":" + userId)) {
-					throw new ConcurrentModificationException(); // This shouldn't happen
+	private void complete(PrintWriter out, ToolSession ts, MessageMap text, Attempt attempt, String userFilePath,
+			String outputPath, boolean isReassessment, boolean deferred, List<String> extraArgs, int scoreInt,
+			boolean executed) {
+		final ToolUiConfig tui = ts.getTool().getToolUiConfig();
+		final boolean isInstructor = ts.isInstructor();
+		final String filename = attempt.getFileName();
+		final boolean nocal = !ts.isOutcomeAllowed();
+		final File resultFile = new File(outputPath);
+		if (executed) {
+			// Output of execution
+			if (resultFile.exists() && resultFile.length() > 0) {
+				attempt.setOutputSaved(true);
+			}
+			// Delete unnecessary files
+			try {
+				if (!tui.isKeepFiles() && !tui.isKeepOutput()) {
+					clean(outputPath); // Clean error output
+					if (!new File(userFilePath).delete()) {
+						logger.error("Error deleting files");
+					}
+					attempt.setFileSaved(false);
+					attempt.setOutputSaved(false);
+				} else if (tui.isEnableInstructorCommand() && filename.equals(tui.getCommandFilename())
+						&& isInstructor || scoreInt > 100) {
+					// command or execution error, delete files and output
+					// if isReassessment do not delete original file
+					if (!isReassessment && !new File(userFilePath).delete()) {
+						logger.error("Error deleting delivery file");
+					} else {
+						attempt.setFileSaved(false);
+					}
+					clean(outputPath); // Clean error output
+					attempt.setOutputSaved(false);
+				} else if (!tui.isKeepFiles() || !tui.isKeepOutput()) {
+					// not keep all
+					if (tui.isKeepFiles()) {
+						// keep files, delete error output
+						clean(outputPath); // Clean error output
+						attempt.setOutputSaved(false);
+					} else if (tui.isKeepOutput() && !new File(userFilePath).delete()) {
+						// keep output, delete files
+						logger.error("Error deleting files");
+					} else {
+						attempt.setFileSaved(false);
+					}
+				}
+			} catch (final Exception e) {
+				logger.info("Some file could not be deleted.");
+			}
+		}
+
+		if (scoreInt == ToolRunner.ERROR_CORRECTOR_EXCEPTION || scoreInt == ToolRunner.ERROR_UNAVAILABLE) {
+			// Error in corrector (settings, params, servers...)
+			out.println(formatError(text.get("T_ERROR_CORRECTOR_EXCEPTION")));
+			attempt.setErrorCode(scoreInt);
+		} else if (scoreInt == ToolRunner.ERROR_RUNNER_EXCEPTION) {
+			// Exception in ToolRunner
+			out.println(formatError(text.get("T_ERROR_RUNNER_EXCEPTION")));
+			attempt.setErrorCode(scoreInt);
+		} else if (scoreInt == ToolRunner.ERROR_TIMEOUT) {
+			// Timeout
+			out.println(formatError(text.get("T_ERROR_TIMEOUT")));
+			attempt.setErrorCode(scoreInt);
+		} else if (deferred) {
+			out.println(formatError(text.get("T_AVISO_DIFERIDA")));
+			out.println(formatError("ID=" + attempt.getId()));
+			attempt.setErrorCode(scoreInt);
+		} else if (scoreInt >= ToolRunner.ERROR_GENERIC) {
+			// Unknown error
+			out.println(formatError(text.get("T_ERROR_GENERIC") + " " + scoreInt));
+			attempt.setErrorCode(scoreInt);
+		} else if (!nocal && ts.getLtiResourceUser() != null) {
+			attempt.setScore(scoreInt);
+			if (isInstructor) {
+				// Instructor is only testing
+				out.println("<p></<p><strong>(TEST) " + text.get("T_NOTA") + ":</strong> " + scoreInt * 0.1
+						+ "</p>");
+				attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+			} else {
+				// Written in background when the attempt is saved
+				attempt.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+				out.println("<p></<p><p><strong>" + text.get("T_NOTA") + ":</strong> " + scoreInt * 0.1
+						+ "</p>");
+			}
+		} else {
+			attempt.setScore(scoreInt);
+			attempt.setErrorCode(OK_WITHOUT_OUTCOME);
+		}
+		// Create attempt if not exist
+		if (!isReassessment) {
+			// The delivery of the score is saved with the attempt
+			final boolean created = attempt.getErrorCode() == OutcomeDeliveryService.OUTCOME_PENDING
+					? ToolAttemptDao.createWithOutcome(attempt)
+					: ToolAttemptDao.create(attempt);
+			if (created && deferred && !DeferredAssessmentService.defer(attempt, extraArgs,
+					!nocal && ts.getLtiResourceUser() != null && !isInstructor)) {
+				// Saved but it will not be assessed
+				attempt.setErrorCode(ToolRunner.ERROR_CONCURRENT_EXCEPTION);
+				ToolAttemptDao.update(attempt);
+			} else if (attempt.getErrorCode() == OutcomeDeliveryService.OUTCOME_PENDING) {
+				boolean queued;
+				if (created) {
+					queued = OutcomeDeliveryService.enqueue(attempt);
+				} else {
+					// Not saved, write it now
+					queued = OutcomeService.writeOutcome(ts.getLtiResourceUser(), ts.getToolKey(),
+							String.valueOf(scoreInt * 0.01));
+				}
+				if (!queued) {
+					out.println(formatError(text.get("T_ERROR_WRITE_OUTCOME")));
+				}
+			}
+		} else {
+			final boolean pending = attempt.getErrorCode() == OutcomeDeliveryService.OUTCOME_PENDING;
+			boolean saved = true;
+			// Attempt of the resource user
+			int sid = attempt.getSid();
+			if (attempt.getResourceUser().getSid() != attempt.getOriginalResourceUser().getSid()) {
+				// Check if exist
+				final Attempt aux = ToolAttemptDao.getById(attempt.getResourceUser().getSid(),
+						attempt.getInstant());
+				if (aux == null) {
+					saved = pending ? ToolAttemptDao.createWithOutcome(attempt) : ToolAttemptDao.create(attempt);
+					sid = attempt.getSid();
 				} else {
-					tool.getConcurrentUsers().add(userId);
-					result = true;
+					sid = aux.getSid();
+				}
+			}
+			if (pending && !(saved && enqueueReassessment(sid, scoreInt))) {
+				out.println(formatError(text.get("T_ERROR_WRITE_OUTCOME")));
+			}
+		}
+		// Send output
+		if (resultFile.exists() && resultFile.length() > 0) {
+			if (!tui.isRedirectMode()) {
+				// Generate iframe
+				String secureId = SecurityUtil.getSecureSid(attempt);
+				out.println("<iframe class='resized' src='attempt/" + URLDecoder
+						.decode(attempt.getResourceUser().getUser().getSourceId(), StandardCharsets.UTF_8)
+						+ "/output/" + secureId + "'></iframe>");
+			} else {
+				// Copy to response
+				try (BufferedInputStream br = new BufferedInputStream(new FileInputStream(resultFile));) {
+					WriterOutputStream wos = WriterOutputStream.builder().setWriter(out)
+							.setCharset(StandardCharsets.UTF_8).get();
+					br.transferTo(wos);
+					wos.flush();
+				} catch (final IOException e) {
+					out.println("<p><b>" + text.get("T_ERROR_IO") + "</b></p>");
+				}
+
+				if (!attempt.isOutputSaved() && !resultFile.delete()) {
+					logger.error("Error deleting file");
 				}
 			}
 		}
-		return result;
 	}
-	
+
 	/**
-	 * Adds user to concurrent users set (ignoring tool).
+	 * Saves the score of a reassessment in its attempt and queues it to be
+	 * written in the tool consumer, so it never replaces a newer score.
 	 *
-	 * @param userId          user name
-	 * @param concurrentUsers set of concurrent users
-	 * @param toolName        the used tool name
-	 * @return true if successful
-	 * @throws ConcurrentModificationException if could not add to the set
+	 * @param sid   serial ID of the attempt
+	 * @param score the score
+	 * @return true if queued or written
 	 */
-	private boolean addConcurrentUserIgnoringTool(String userId, String toolName)
-			throws ConcurrentModificationException {
-		final int numAlumnos = concurrentUsers.size();
-		boolean result = false;
-		// Check global limits
-		if (numAlumnos < Settings.getConcurrentUsers()) {
-			// Check tool limits
-			// add to set
-			if (!concurrentUsers.add(toolName + ":" + userId)) {
-				throw new ConcurrentModificationException(); // This shouldn't happen
-			} else {
-				result = true;
-			}
+	private static boolean enqueueReassessment(int sid, int score) {
+		boolean res = false;
+		final Attempt current = ToolAttemptDao.getBySid(sid);
+		if (current != null) {
+			current.setScore(score);
+			current.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+			res = ToolAttemptDao.update(current) && OutcomeDeliveryService.enqueue(current);
 		}
-		return result;
+		return res;
 	}
 
 	/**
-	 * Removes user from concurrent user set.
+	 * Forwards request capturing exceptions.
 	 *
-	 * @param userId              user name
-	 * @param alumnosConcurrentes set of concurrent users
-	 * @param tool                the used tool
+	 * @param request    HTTP request
+	 * @param response   HTTP response
+	 * @param forwardUrl forward URL
 	 */
-	private void removeConcurrentUser(String userId, Set<String> alumnosConcurrentes, Tool tool) {
-		alumnosConcurrentes.remove(tool.getName() + ":" + userId);
-		tool.getConcurrentUsers().remove(userId);
+	private void forward(HttpServletRequest request, HttpServletResponse response, String forwardUrl) {
+		try {
+			request.getRequestDispatcher(forwardUrl).forward(request, response);
+		} catch (ServletException | IOException e) {
+			logger.error("Error al reenviar");
+		}
 	}
 
 	/**
 	 * Copies received file to final destination.
 	 *
+	 * <p>If a digest is given, it is updated with the received data while it is
+	 * copied. Otherwise the part is written by the container, which moves its
+	 * temporary file instead of copying it if the upload was saved in disk.
+	 *
 	 * @param attempt attempt data
 	 * @param item    data stream
+	 * @param md      digest to update or null
 	 * @return the saved file path
 	 */
-	private String copyReceivedFile(Attempt attempt, Part item) {
+	private String copyReceivedFile(Attempt attempt, Part item, MessageDigest md) {
 		String userFilePath;
 		userFilePath = attempt.getUserFilePath();
 		final File archivoServer = new File(userFilePath);
-		// Copy
-		try (BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(archivoServer));
-				BufferedInputStream bin = new BufferedInputStream(item.getInputStream());) {
-			bin.transferTo(bout);
-		} catch (final IOException e) {
-			userFilePath = null;
+		if (md == null) {
+			// Absolute paths are used as provided
+			try {
+				item.write(archivoServer.getAbsolutePath());
+			} catch (final IOException e) {
+				userFilePath = null;
+			}
+		} else {
+			// Copy
+			try (BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(archivoServer));
+					BufferedInputStream bin = new BufferedInputStream(new DigestInputStream(item.getInputStream(),
+							md));) {
+				bin.transferTo(bout);
+			} catch (final IOException e) {
+				userFilePath = null;
+			}
 		}
 		return userFilePath;
 	}
@@ -614,6 +767,7 @@ public class AssessServlet extends HttpServlet {
 					if (executer != null) {
 
 						executer.init(tool.getCorrectorPath(), admin.getExecutionRestrictions());
+						executer.configure(tool.getToolUiConfig());
 						tool.setToolRunner(executer);
 					}
 				}
@@ -752,6 +906,23 @@ public class AssessServlet extends HttpServlet {
 		return attempts;
 	}
 
+	/**
+	 * Sets an error status that the client can retry, with the estimated seconds
+	 * to wait.
+	 *
+	 * <p>The header Retry-After is set, the client should add some random time
+	 * to avoid synchronized retries.
+	 *
+	 * @param response HTTP response
+	 * @param status   HTTP status (429 or 503)
+	 */
+	private void setRetryAfter(HttpServletResponse response, int status) {
+		final int retryAfter = AssessmentQueue.getRetryAfter();
+		response.setStatus(status);
+		response.setIntHeader("Retry-After", retryAfter);
+		response.setIntHeader(AssessResultServlet.ESTIMATED_WAIT_HEADER, retryAfter);
+	}
+
 	/**
 	 * Format a error string in HTML.
 	 *
@@ -0,0 +1,335 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.us.dit.lti.ToolSession;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.TimeoutService;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Servlet that streams an assessment job with Server-Sent Events.
+ *
+ * <p>The output file of the corrector is tailed while the job is running and
+ * the final HTML result is sent when it finishes. Events:
+ * <ul>
+ * <li>queue: position in the queue of the tool (0 if running).</li>
+ * <li>output: new text written by the corrector.</li>
+ * <li>result: the HTML result and the stream ends (the job is kept until it
+ * expires, like in {@link AssessResultServlet}).</li>
+ * </ul>
+ *
+ * <p>If the stream is closed without a result, the client can still use
+ * {@link AssessResultServlet}. The request does not hold a thread while
+ * waiting, the file is checked periodically by {@link TimeoutService}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+@WebServlet(urlPatterns = { "/learner/assessstream" }, asyncSupported = true)
+public class AssessStreamServlet extends HttpServlet {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(AssessStreamServlet.class);
+	/**
+	 * Milliseconds between checks of the output file.
+	 */
+	private static final long TICK_MILLIS = 250;
+	/**
+	 * Maximum bytes of output read in each check.
+	 */
+	private static final int MAX_CHUNK = 16 * 1024;
+	/**
+	 * Maximum duration of a stream in milliseconds.
+	 */
+	private static final long STREAM_TIMEOUT = 10 * 60 * 1000L;
+
+	/**
+	 * Processes GET request to stream an assessment job.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		final HttpSession session = request.getSession();
+		final ToolSession ts = (ToolSession) session.getAttribute(ToolSession.class.getName());
+		final AssessmentJob job = AssessmentQueue.get(request.getParameter("job"));
+		response.setHeader("Cache-Control", "no-store");
+		if (ts == null || ts.getTool() == null || job == null
+				|| !job.isOwnedBy(ts.getSessionUserId(), ts.getTool().getName())) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		} else {
+			response.setContentType("text/event-stream; charset=UTF-8");
+			response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+			// Avoid buffering in proxies
+			response.setHeader("X-Accel-Buffering", "no");
+			final AsyncContext ac = request.startAsync();
+			ac.setTimeout(STREAM_TIMEOUT);
+			final Tail tail = new Tail(job, ac, response.getWriter());
+			ac.addListener(tail);
+			tail.start();
+		}
+	}
+
+	/**
+	 * Stream of a job.
+	 */
+	private static class Tail implements AsyncListener {
+		/**
+		 * The job.
+		 */
+		private final AssessmentJob job;
+		/**
+		 * Async context of the request.
+		 */
+		private final AsyncContext ac;
+		/**
+		 * Writer of the response.
+		 */
+		private final PrintWriter out;
+		/**
+		 * Decoder of the output file, it keeps incomplete characters between
+		 * reads.
+		 */
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		/**
+		 * Bytes read and not decoded yet.
+		 */
+		private final ByteBuffer bytes = ByteBuffer.allocate(MAX_CHUNK);
+		/**
+		 * Decoded characters.
+		 */
+		private final CharBuffer chars = CharBuffer.allocate(MAX_CHUNK);
+		/**
+		 * If a check is being done.
+		 */
+		private final AtomicBoolean busy = new AtomicBoolean(false);
+		/**
+		 * If the stream has ended.
+		 */
+		private final AtomicBoolean ended = new AtomicBoolean(false);
+		/**
+		 * Bytes of the output file already sent.
+		 */
+		private long offset = 0;
+		/**
+		 * Last position sent, -1 if none.
+		 */
+		private int lastPosition = -1;
+		/**
+		 * Periodic check.
+		 */
+		private volatile ScheduledFuture<?> ticker = null;
+
+		/**
+		 * Creates the stream.
+		 *
+		 * @param job the job
+		 * @param ac  async context of the request
+		 * @param out writer of the response
+		 */
+		Tail(AssessmentJob job, AsyncContext ac, PrintWriter out) {
+			this.job = job;
+			this.ac = ac;
+			this.out = out;
+		}
+
+		/**
+		 * Starts the periodic checks.
+		 */
+		void start() {
+			ticker = TimeoutService.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Dispatches a check to a container thread, the scheduler must not
+		 * block writing to the client.
+		 */
+		private void tick() {
+			if (!ended.get() && busy.compareAndSet(false, true)) {
+				try {
+					ac.start(this::check);
+				} catch (final IllegalStateException e) {
+					// Request already completed
+					busy.set(false);
+					end(false);
+				}
+			}
+		}
+
+		/**
+		 * Sends the new output, the position or the result.
+		 */
+		private void check() {
+			try {
+				if (!ended.get()) {
+					// Read status before output, so no output is lost after finishing
+					final AssessmentJob.Status status = job.getStatus();
+					if (status == AssessmentJob.Status.QUEUED) {
+						final int position = AssessmentQueue.getPosition(job);
+						if (position != lastPosition) {
+							lastPosition = position;
+							sendEvent("queue", String.valueOf(position));
+						}
+					} else {
+						if (lastPosition != 0) {
+							lastPosition = 0;
+							sendEvent("queue", "0");
+						}
+						sendOutput();
+					}
+					if (status == AssessmentJob.Status.FINISHED) {
+						sendEvent("result", job.getResult());
+						end(true);
+					} else if (out.checkError()) {
+						// Client has gone, the result can still be polled
+						end(true);
+					}
+				}
+			} finally {
+				busy.set(false);
+			}
+		}
+
+		/**
+		 * Sends the output written since the last check.
+		 */
+		private void sendOutput() {
+			final String path = job.getOutputPath();
+			if (path != null) {
+				final File file = new File(path);
+				// The file may be deleted when finished (redirect mode)
+				if (file.length() > offset) {
+					try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+						raf.seek(offset);
+						final int n = raf.read(bytes.array(), bytes.position(), bytes.remaining());
+						if (n > 0) {
+							offset += n;
+							bytes.position(bytes.position() + n);
+							bytes.flip();
+							decoder.decode(bytes, chars, false);
+							bytes.compact();
+							chars.flip();
+							if (chars.hasRemaining()) {
+								sendEvent("output", chars.toString());
+							}
+							chars.clear();
+						}
+					} catch (final IOException e) {
+						logger.warn("Error reading output of job {}: {}", job.getId(), e.getMessage());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Sends an event, each line of the data in a field.
+		 *
+		 * @param event name of the event
+		 * @param data  data of the event
+		 */
+		private void sendEvent(String event, String data) {
+			out.print("event: ");
+			out.print(event);
+			out.print('\n');
+			for (final String line : data.replace("\r\n", "\n").split("[\r\n]", -1)) {
+				out.print("data: ");
+				out.print(line);
+				out.print('\n');
+			}
+			out.print('\n');
+			out.flush();
+		}
+
+		/**
+		 * Ends the stream.
+		 *
+		 * @param complete if the request must be completed
+		 */
+		private void end(boolean complete) {
+			if (ended.compareAndSet(false, true)) {
+				final ScheduledFuture<?> t = ticker;
+				if (t != null) {
+					t.cancel(false);
+				}
+				if (complete) {
+					try {
+						ac.complete();
+					} catch (final IllegalStateException e) {
+						// Already completed
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			end(false);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			end(true);
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			end(true);
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {
+			// Nothing to do
+		}
+	}
+
+}
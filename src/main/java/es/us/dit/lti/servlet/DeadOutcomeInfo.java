@@ -0,0 +1,213 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+/**
+ * Information of a score that could not be written in the tool consumer, to be
+ * displayed to super users.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class DeadOutcomeInfo {
+	/**
+	 * Serial ID of the delivery.
+	 */
+	private int sid;
+
+	/**
+	 * Name of the tool.
+	 */
+	private String tool;
+
+	/**
+	 * Source ID of the user.
+	 */
+	private String user;
+
+	/**
+	 * Timestamp of the attempt in milliseconds.
+	 */
+	private long timestamp;
+
+	/**
+	 * Score of the attempt.
+	 */
+	private int score;
+
+	/**
+	 * Number of failed tries.
+	 */
+	private int tries;
+
+	/**
+	 * Error of the last try.
+	 */
+	private String lastError;
+
+	/**
+	 * Timestamp of the last try in milliseconds.
+	 */
+	private long lastTry;
+
+	/**
+	 * Gets the serial ID of the delivery.
+	 *
+	 * @return the serial ID
+	 */
+	public int getSid() {
+		return sid;
+	}
+
+	/**
+	 * Sets the serial ID of the delivery.
+	 *
+	 * @param sid the serial ID to set
+	 */
+	public void setSid(int sid) {
+		this.sid = sid;
+	}
+
+	/**
+	 * Gets the name of the tool.
+	 *
+	 * @return the name of the tool
+	 */
+	public String getTool() {
+		return tool;
+	}
+
+	/**
+	 * Sets the name of the tool.
+	 *
+	 * @param tool the name of the tool to set
+	 */
+	public void setTool(String tool) {
+		this.tool = tool;
+	}
+
+	/**
+	 * Gets the source ID of the user.
+	 *
+	 * @return the source ID
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Sets the source ID of the user.
+	 *
+	 * @param user the source ID to set
+	 */
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	/**
+	 * Gets the timestamp of the attempt.
+	 *
+	 * @return the timestamp in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Sets the timestamp of the attempt.
+	 *
+	 * @param timestamp the timestamp in milliseconds to set
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Gets the score of the attempt.
+	 *
+	 * @return the score
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Sets the score of the attempt.
+	 *
+	 * @param score the score to set
+	 */
+	public void setScore(int score) {
+		this.score = score;
+	}
+
+	/**
+	 * Gets the number of failed tries.
+	 *
+	 * @return the number of tries
+	 */
+	public int getTries() {
+		return tries;
+	}
+
+	/**
+	 * Sets the number of failed tries.
+	 *
+	 * @param tries the number of tries to set
+	 */
+	public void setTries(int tries) {
+		this.tries = tries;
+	}
+
+	/**
+	 * Gets the error of the last try.
+	 *
+	 * @return the error
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Sets the error of the last try.
+	 *
+	 * @param lastError the error to set
+	 */
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	/**
+	 * Gets the timestamp of the last try.
+	 *
+	 * @return the timestamp in milliseconds
+	 */
+	public long getLastTry() {
+		return lastTry;
+	}
+
+	/**
+	 * Sets the timestamp of the last try.
+	 *
+	 * @param lastTry the timestamp in milliseconds to set
+	 */
+	public void setLastTry(long lastTry) {
+		this.lastTry = lastTry;
+	}
+
+}
@@ -22,12 +22,16 @@ package es.us.dit.lti.servlet;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 
+import es.us.dit.lti.OutcomeDeliveryService;
+import es.us.dit.lti.entity.OutcomeDelivery;
 import es.us.dit.lti.persistence.SettingsDao;
 import es.us.dit.lti.persistence.ToolConsumerDao;
 import es.us.dit.lti.persistence.ToolConsumerUserDao;
@@ -46,7 +50,8 @@ import jakarta.servlet.http.HttpServletResponse;
  * tool key.
  */
 @WebServlet({ "/super/optimize", "/super/getunused", "/super/deleteunusedusers", "/super/deleteunusedresourceusers",
-		"/super/deleteunusedresourcelinks", "/super/deleteunusedcontexts", "/super/deleteunusedconsumers" })
+		"/super/deleteunusedresourcelinks", "/super/deleteunusedcontexts", "/super/deleteunusedconsumers",
+		"/super/getdeadoutcomes", "/super/retryoutcome", "/super/discardoutcome" })
 public class MaintenanceServlet extends HttpServlet {
 	/**
 	 * Serializable requirement.
@@ -82,6 +87,22 @@ public class MaintenanceServlet extends HttpServlet {
 			info.setResourceUsers(ToolResourceUserDao.getUnused().size());
 			info.setUsers(ToolConsumerUserDao.getUnused().size());
 			out.append(new Gson().toJson(info));
+		} else if (request.getServletPath().equals("/super/getdeadoutcomes")) {
+			response.setContentType("application/json");
+			final List<DeadOutcomeInfo> list = new ArrayList<>();
+			for (final OutcomeDelivery od : OutcomeDeliveryService.getDead()) {
+				final DeadOutcomeInfo info = new DeadOutcomeInfo();
+				info.setSid(od.getSid());
+				info.setTool(od.getAttempt().getResourceUser().getResourceLink().getTool().getName());
+				info.setUser(od.getAttempt().getResourceUser().getUser().getSourceId());
+				info.setTimestamp(od.getAttempt().getInstant().toEpochMilli());
+				info.setScore(od.getAttempt().getScore());
+				info.setTries(od.getTries());
+				info.setLastError(od.getLastError());
+				info.setLastTry(od.getUpdated().getTimeInMillis());
+				list.add(info);
+			}
+			out.append(new Gson().toJson(list));
 		} else {
 			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
 			try {
@@ -136,6 +157,12 @@ public class MaintenanceServlet extends HttpServlet {
 			ToolNonceDao.deleteAll(); //Nonce depends on consumer
 			out.print(ToolConsumerDao.deleteUnused());
 			break;
+		case "/super/retryoutcome":
+			out.print(OutcomeDeliveryService.retry(getSid(request)));
+			break;
+		case "/super/discardoutcome":
+			out.print(OutcomeDeliveryService.discard(getSid(request)));
+			break;
 		default:
 			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
 			try {
@@ -146,4 +173,20 @@ public class MaintenanceServlet extends HttpServlet {
 			break;
 		}
 	}
+
+	/**
+	 * Gets the serial ID parameter of a request.
+	 *
+	 * @param request HTTP request
+	 * @return the serial ID, or 0 if not valid
+	 */
+	private int getSid(HttpServletRequest request) {
+		int sid = 0;
+		try {
+			sid = Integer.parseInt(request.getParameter("sid"));
+		} catch (final NumberFormatException e) {
+			// invalid
+		}
+		return sid;
+	}
 }
@@ -59,6 +59,10 @@ public class ReadScoreServlet extends HttpServlet {
 	 * Logger.
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(ReadScoreServlet.class);
+	/**
+	 * Maximum number of attempts in a request.
+	 */
+	private static final int MAX_ATTEMPTS = 1000;
 
 	/**
 	 * Processes GET request to read current user scores/outcomes.
@@ -106,6 +110,9 @@ public class ReadScoreServlet extends HttpServlet {
 	/**
 	 * Processes POST request to read other LTI user scores.
 	 *
+	 * <p>Several <code>attemptId</code> parameters can be sent, their scores are
+	 * read in parallel.
+	 *
 	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse
 	 *      response)
 	 */
@@ -113,40 +120,30 @@ public class ReadScoreServlet extends HttpServlet {
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 		// Only instructors.
-		final String cipheredSid = request.getParameter("attemptId");
+		final String[] cipheredSids = request.getParameterValues("attemptId");
 		final boolean original = request.getParameter("original") != null;
 		final HttpSession session = request.getSession();
 		final ToolSession ts = (ToolSession) session.getAttribute(ToolSession.class.getName());
-		if (ts != null && cipheredSid != null && request.getServletPath().equals("/instructor/readscore")
+		if (ts != null && cipheredSids != null && cipheredSids.length <= MAX_ATTEMPTS
+				&& request.getServletPath().equals("/instructor/readscore")
 				&& ts.getTool().getToolUiConfig().isManageAttempts() && ts.isOutcomeAllowed()) {
-			final Attempt attempt = ToolAttemptDao.getBySecuredSid(cipheredSid, ts.getToolKey());
-			boolean outcomeEnabled = false;
-			ResourceUser resUser = null;
-			if (attempt != null) {
-				if (original) {
-					resUser = attempt.getOriginalResourceUser();
-				} else {
-					resUser = attempt.getResourceUser();
-				}
-				// Complete fields
-				resUser = ToolResourceUserDao.getBySid(resUser.getSid());
-				if (resUser.getResultSourceId() != null && !resUser.getResultSourceId().isEmpty()) {
-					outcomeEnabled = true;
-				}
-			}
 			final List<ScoreInfo> scores = new ArrayList<>();
-			if (outcomeEnabled) {
-				final ResourceLink rl = ToolResourceLinkDao.getBySid(resUser.getResourceLink().getSid());
-				resUser.setResourceLink(rl);
-				if (rl != null && rl.getOutcomeServiceUrl() != null && !rl.getOutcomeServiceUrl().isEmpty()) {
-					// Check tk so avoid attempt sid reuse from different tk
+			final List<ResourceUser> users = new ArrayList<>();
+			for (final String cipheredSid : cipheredSids) {
+				final ResourceUser resUser = getOutcomeUser(cipheredSid, original, ts);
+				if (resUser != null) {
 					final ScoreInfo info = new ScoreInfo();
-					info.setScore(OutcomeService.readOutcome(resUser, ts.getToolKey()));
+					info.setAttemptId(cipheredSid);
 					info.setResourceTitle(resUser.getResourceLink().getTitle());
 					info.setContextTitle("");
 					scores.add(info);
+					users.add(resUser);
 				}
 			}
+			final List<String> values = OutcomeService.readOutcomes(users, ts.getToolKey());
+			for (int i = 0; i < scores.size(); i++) {
+				scores.get(i).setScore(values.get(i));
+			}
 			// Send result in JSON
 			try {
 				response.getWriter().append(new Gson().toJson(scores));
@@ -164,4 +161,38 @@ public class ReadScoreServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Gets the resource user of an attempt whose score can be read.
+	 *
+	 * @param cipheredSid secured ID of the attempt
+	 * @param original    if the original resource user must be used
+	 * @param ts          tool session
+	 * @return the resource user with its resource link, or null if its score can
+	 *         not be read
+	 */
+	private ResourceUser getOutcomeUser(String cipheredSid, boolean original, ToolSession ts) {
+		// Check tk so avoid attempt sid reuse from different tk
+		final Attempt attempt = ToolAttemptDao.getBySecuredSid(cipheredSid, ts.getToolKey());
+		ResourceUser resUser = null;
+		if (attempt != null) {
+			if (original) {
+				resUser = attempt.getOriginalResourceUser();
+			} else {
+				resUser = attempt.getResourceUser();
+			}
+			// Complete fields
+			resUser = ToolResourceUserDao.getBySid(resUser.getSid());
+		}
+		if (resUser != null && resUser.getResultSourceId() != null && !resUser.getResultSourceId().isEmpty()) {
+			final ResourceLink rl = ToolResourceLinkDao.getBySid(resUser.getResourceLink().getSid());
+			resUser.setResourceLink(rl);
+			if (rl == null || rl.getOutcomeServiceUrl() == null || rl.getOutcomeServiceUrl().isEmpty()) {
+				resUser = null;
+			}
+		} else {
+			resUser = null;
+		}
+		return resUser;
+	}
+
 }
@@ -0,0 +1,154 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+import es.us.dit.lti.ReassessmentService;
+import es.us.dit.lti.ToolSession;
+import es.us.dit.lti.entity.Reassessment;
+import es.us.dit.lti.entity.Tool;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Servlet implementation class to start, cancel and follow a bulk
+ * reassessment of the attempts of the current tool key.
+ *
+ * <p>Only available for instructors if attempts management is enabled.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+@WebServlet({ "/instructor/reassess" })
+public class ReassessServlet extends HttpServlet {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ReassessServlet.class);
+
+	/**
+	 * Processes GET request to get the progress of the running or last
+	 * reassessment.
+	 *
+	 * <p>Status 204 if there is no reassessment.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+		final ToolSession ts = getToolSession(request);
+		if (ts == null) {
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+		} else {
+			final Reassessment reassessment = ReassessmentService.getLast(ts.getToolKey());
+			if (reassessment == null) {
+				response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			} else {
+				sendInfo(response, reassessment);
+			}
+		}
+	}
+
+	/**
+	 * Processes POST request to start (<code>action=start</code>) or cancel
+	 * (<code>action=cancel</code>) a reassessment.
+	 *
+	 * <p>Parameters of start: <code>errorsOnly</code> and
+	 * <code>pushOutcome</code>. Status 409 if a reassessment is already running.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+		final ToolSession ts = getToolSession(request);
+		final String action = request.getParameter("action");
+		if (ts == null) {
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+		} else if ("start".equals(action)) {
+			final Tool tool = ts.getTool();
+			final boolean errorsOnly = Boolean.parseBoolean(request.getParameter("errorsOnly"));
+			final boolean pushOutcome = Boolean.parseBoolean(request.getParameter("pushOutcome"));
+			final Reassessment reassessment = ReassessmentService.start(ts.getToolKey(), tool, errorsOnly,
+					pushOutcome);
+			if (reassessment == null) {
+				response.setStatus(HttpServletResponse.SC_CONFLICT);
+			} else {
+				logger.info("Reassessment of {} started by {}", tool.getName(), ts.getSessionUserId());
+				response.setStatus(HttpServletResponse.SC_ACCEPTED);
+				sendInfo(response, reassessment);
+			}
+		} else if ("cancel".equals(action)) {
+			if (ReassessmentService.cancel(ts.getToolKey())) {
+				logger.info("Reassessment of {} cancelled by {}", ts.getTool().getName(), ts.getSessionUserId());
+			} else {
+				response.setStatus(HttpServletResponse.SC_CONFLICT);
+			}
+		} else {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Gets the tool session if reassessments are allowed.
+	 *
+	 * @param request HTTP request
+	 * @return the tool session or null if not allowed
+	 */
+	private ToolSession getToolSession(HttpServletRequest request) {
+		final HttpSession session = request.getSession();
+		ToolSession ts = (ToolSession) session.getAttribute(ToolSession.class.getName());
+		if (ts == null || !ts.isInstructor() || ts.getTool() == null || ts.getToolKey() == null
+				|| !ts.getTool().getToolUiConfig().isManageAttempts()) {
+			ts = null;
+		}
+		return ts;
+	}
+
+	/**
+	 * Sends the information of a reassessment as JSON.
+	 *
+	 * @param response     HTTP response
+	 * @param reassessment reassessment data
+	 */
+	private void sendInfo(HttpServletResponse response, Reassessment reassessment) {
+		response.setContentType("application/json");
+		response.setHeader("Cache-Control", "no-store");
+		try {
+			response.getWriter().append(new Gson().toJson(new ReassessmentInfo(reassessment)));
+		} catch (final IOException e) {
+			logger.error("IO Error.", e);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import es.us.dit.lti.entity.Reassessment;
+
+/**
+ * Progress of a bulk reassessment to be displayed to instructors.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class ReassessmentInfo {
+	/**
+	 * Status name.
+	 */
+	private final String status;
+	/**
+	 * If only attempts with errors are reassessed.
+	 */
+	private final boolean errorsOnly;
+	/**
+	 * If new scores are written in the tool consumer.
+	 */
+	private final boolean pushOutcome;
+	/**
+	 * Number of attempts to reassess.
+	 */
+	private final int total;
+	/**
+	 * Number of reassessed attempts.
+	 */
+	private final int done;
+	/**
+	 * Number of reassessed attempts with errors.
+	 */
+	private final int failed;
+	/**
+	 * Creation time in milliseconds since epoch.
+	 */
+	private final long created;
+	/**
+	 * Last update time in milliseconds since epoch.
+	 */
+	private final long updated;
+
+	/**
+	 * Creates the information of a reassessment.
+	 *
+	 * @param reassessment reassessment data
+	 */
+	public ReassessmentInfo(Reassessment reassessment) {
+		status = reassessment.getStatus().name();
+		errorsOnly = reassessment.isErrorsOnly();
+		pushOutcome = reassessment.isPushOutcome();
+		total = reassessment.getTotal();
+		done = reassessment.getDone();
+		failed = reassessment.getFailed();
+		created = reassessment.getCreated() != null ? reassessment.getCreated().getTimeInMillis() : 0;
+		updated = reassessment.getUpdated() != null ? reassessment.getUpdated().getTimeInMillis() : 0;
+	}
+
+	/**
+	 * Gets the status name.
+	 *
+	 * @return the status name
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets if only attempts with errors are reassessed.
+	 *
+	 * @return true if only attempts with errors are reassessed
+	 */
+	public boolean isErrorsOnly() {
+		return errorsOnly;
+	}
+
+	/**
+	 * Gets if new scores are written in the tool consumer.
+	 *
+	 * @return true if new scores are written
+	 */
+	public boolean isPushOutcome() {
+		return pushOutcome;
+	}
+
+	/**
+	 * Gets the number of attempts to reassess.
+	 *
+	 * @return the number of attempts
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Gets the number of reassessed attempts.
+	 *
+	 * @return the number of reassessed attempts
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	/**
+	 * Gets the number of reassessed attempts with errors.
+	 *
+	 * @return the number of reassessed attempts with errors
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the creation time.
+	 *
+	 * @return the creation time in milliseconds since epoch
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the last update time.
+	 *
+	 * @return the last update time in milliseconds since epoch
+	 */
+	public long getUpdated() {
+		return updated;
+	}
+
+}
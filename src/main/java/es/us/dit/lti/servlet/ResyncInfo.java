@@ -0,0 +1,165 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import es.us.dit.lti.entity.OutcomeResync;
+
+/**
+ * Progress of a resynchronization of scores to be displayed to instructors.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+public class ResyncInfo {
+	/**
+	 * Status name.
+	 */
+	private final String status;
+	/**
+	 * If scores are only written when they differ.
+	 */
+	private final boolean diffOnly;
+	/**
+	 * Number of users to process.
+	 */
+	private final int total;
+	/**
+	 * Number of processed users.
+	 */
+	private final int done;
+	/**
+	 * Number of scores sent.
+	 */
+	private final int sent;
+	/**
+	 * Number of scores that were already in the tool consumer.
+	 */
+	private final int unchanged;
+	/**
+	 * Number of scores that could not be sent.
+	 */
+	private final int failed;
+	/**
+	 * Creation time in milliseconds since epoch.
+	 */
+	private final long created;
+	/**
+	 * Last update time in milliseconds since epoch.
+	 */
+	private final long updated;
+
+	/**
+	 * Creates the information of a resynchronization.
+	 *
+	 * @param resync resynchronization data
+	 */
+	public ResyncInfo(OutcomeResync resync) {
+		status = resync.getStatus().name();
+		diffOnly = resync.isDiffOnly();
+		total = resync.getTotal();
+		done = resync.getDone();
+		sent = resync.getSent();
+		unchanged = resync.getUnchanged();
+		failed = resync.getFailed();
+		created = resync.getCreated() != null ? resync.getCreated().getTimeInMillis() : 0;
+		updated = resync.getUpdated() != null ? resync.getUpdated().getTimeInMillis() : 0;
+	}
+
+	/**
+	 * Gets the status name.
+	 *
+	 * @return the status name
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets if scores are only written when they differ.
+	 *
+	 * @return true if scores are only written when they differ
+	 */
+	public boolean isDiffOnly() {
+		return diffOnly;
+	}
+
+	/**
+	 * Gets the number of users to process.
+	 *
+	 * @return the number of users
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Gets the number of processed users.
+	 *
+	 * @return the number of processed users
+	 */
+	public int getDone() {
+		return done;
+	}
+
+	/**
+	 * Gets the number of scores sent.
+	 *
+	 * @return the number of scores sent
+	 */
+	public int getSent() {
+		return sent;
+	}
+
+	/**
+	 * Gets the number of scores that were already in the tool consumer.
+	 *
+	 * @return the number of unchanged scores
+	 */
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * Gets the number of scores that could not be sent.
+	 *
+	 * @return the number of failed scores
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the creation time.
+	 *
+	 * @return the creation time in milliseconds since epoch
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the last update time.
+	 *
+	 * @return the last update time in milliseconds since epoch
+	 */
+	public long getUpdated() {
+		return updated;
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+import es.us.dit.lti.OutcomeResyncService;
+import es.us.dit.lti.ToolSession;
+import es.us.dit.lti.entity.OutcomeResync;
+import es.us.dit.lti.entity.Tool;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Servlet implementation class to start, cancel and follow a resynchronization
+ * of the scores of the current tool key with the tool consumer.
+ *
+ * <p>Only available for instructors if attempts management and outcomes are
+ * enabled.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+@WebServlet({ "/instructor/resync" })
+public class ResyncServlet extends HttpServlet {
+	/**
+	 * Serializable requirement.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Logger.
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ResyncServlet.class);
+
+	/**
+	 * Processes GET request to get the progress of the running or last
+	 * resynchronization.
+	 *
+	 * <p>Status 204 if there is no resynchronization.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+		final ToolSession ts = getToolSession(request);
+		if (ts == null) {
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+		} else {
+			final OutcomeResync resync = OutcomeResyncService.getLast(ts.getToolKey());
+			if (resync == null) {
+				response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			} else {
+				sendInfo(response, resync);
+			}
+		}
+	}
+
+	/**
+	 * Processes POST request to start (<code>action=start</code>) or cancel
+	 * (<code>action=cancel</code>) a resynchronization.
+	 *
+	 * <p>Parameter of start: <code>diffOnly</code>. Status 409 if a
+	 * resynchronization is already running.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse
+	 *      response)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+		final ToolSession ts = getToolSession(request);
+		final String action = request.getParameter("action");
+		if (ts == null) {
+			response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+		} else if ("start".equals(action)) {
+			final Tool tool = ts.getTool();
+			final boolean diffOnly = Boolean.parseBoolean(request.getParameter("diffOnly"));
+			final OutcomeResync resync = OutcomeResyncService.start(ts.getToolKey(), tool, diffOnly);
+			if (resync == null) {
+				response.setStatus(HttpServletResponse.SC_CONFLICT);
+			} else {
+				logger.info("Resynchronization of {} started by {}", tool.getName(), ts.getSessionUserId());
+				response.setStatus(HttpServletResponse.SC_ACCEPTED);
+				sendInfo(response, resync);
+			}
+		} else if ("cancel".equals(action)) {
+			if (OutcomeResyncService.cancel(ts.getToolKey())) {
+				logger.info("Resynchronization of {} cancelled by {}", ts.getTool().getName(),
+						ts.getSessionUserId());
+			} else {
+				response.setStatus(HttpServletResponse.SC_CONFLICT);
+			}
+		} else {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Gets the tool session if resynchronizations are allowed.
+	 *
+	 * @param request HTTP request
+	 * @return the tool session or null if not allowed
+	 */
+	private ToolSession getToolSession(HttpServletRequest request) {
+		final HttpSession session = request.getSession();
+		ToolSession ts = (ToolSession) session.getAttribute(ToolSession.class.getName());
+		if (ts == null || !ts.isInstructor() || ts.getTool() == null || ts.getToolKey() == null
+				|| !ts.getTool().getToolUiConfig().isManageAttempts() || !ts.getTool().isOutcome()) {
+			ts = null;
+		}
+		return ts;
+	}
+
+	/**
+	 * Sends the information of a resynchronization as JSON.
+	 *
+	 * @param response HTTP response
+	 * @param resync   resynchronization data
+	 */
+	private void sendInfo(HttpServletResponse response, OutcomeResync resync) {
+		response.setContentType("application/json");
+		response.setHeader("Cache-Control", "no-store");
+		try {
+			response.getWriter().append(new Gson().toJson(new ResyncInfo(resync)));
+		} catch (final IOException e) {
+			logger.error("IO Error.", e);
+		}
+	}
+
+}
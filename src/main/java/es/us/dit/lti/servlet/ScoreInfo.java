@@ -25,6 +25,11 @@ package es.us.dit.lti.servlet;
  * @author Francisco José Fernández Jiménez
  */
 public class ScoreInfo {
+	/**
+	 * Secured ID of the attempt of this score, if requested by attempt.
+	 */
+	private String attemptId;
+
 	/**
 	 * Title of context of this score.
 	 */
@@ -93,4 +98,22 @@ public class ScoreInfo {
 	public void setScore(String score) {
 		this.score = score;
 	}
+
+	/**
+	 * Gets the secured ID of the attempt of this score.
+	 *
+	 * @return the attempt ID
+	 */
+	public String getAttemptId() {
+		return attemptId;
+	}
+
+	/**
+	 * Sets the secured ID of the attempt of this score.
+	 *
+	 * @param attemptId the attempt ID to set
+	 */
+	public void setAttemptId(String attemptId) {
+		this.attemptId = attemptId;
+	}
 }
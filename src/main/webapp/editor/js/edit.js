@@ -190,6 +190,7 @@ function changeType() {
 			editLink.dataset.type = "sh";
 			break;
 		case "2":
+		case "5":
 			if (obtener) {
 				editLink.href = "templates/corrector2.json";
 			}
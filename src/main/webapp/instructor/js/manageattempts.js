@@ -22,7 +22,21 @@ mergeTexts({
 		"nameFull": "Nombre completo",
 		"email": "Correo electrónico",
 		"lastScore": "Última nota guardada",
-		"getScore": "(solicitar nota)"
+		"getScore": "(solicitar nota)",
+		"bulkReassess": "Reevaluar todas las entregas guardadas",
+		"bulkErrorsOnly": "solo las erróneas",
+		"bulkPushOutcome": "enviar notas",
+		"bulkCancel": "Cancelar reevaluación",
+		"bulkProgress": "Reevaluación",
+		"bulkFailed": "errores",
+		"bulkRunning": "Ya hay una reevaluación en curso",
+		"resync": "Reenviar las notas de todos los usuarios",
+		"resyncDiffOnly": "solo las distintas",
+		"resyncCancel": "Cancelar reenvío",
+		"resyncProgress": "Reenvío de notas",
+		"resyncSent": "enviadas",
+		"resyncUnchanged": "iguales",
+		"resyncRunning": "Ya hay un reenvío de notas en curso"
 	},
 	"en": {
 		"attemptDeleted": "deleted",
@@ -40,7 +54,21 @@ mergeTexts({
 		"nameFull": "Full name",
 		"email": "Email",
 		"lastScore": "Last saved score",
-		"getScore": "(retrieve score)"
+		"getScore": "(retrieve score)",
+		"bulkReassess": "Reassess all saved attempts",
+		"bulkErrorsOnly": "only with errors",
+		"bulkPushOutcome": "send scores",
+		"bulkCancel": "Cancel reassessment",
+		"bulkProgress": "Reassessment",
+		"bulkFailed": "errors",
+		"bulkRunning": "A reassessment is already running",
+		"resync": "Resend the scores of all users",
+		"resyncDiffOnly": "only different ones",
+		"resyncCancel": "Cancel resending",
+		"resyncProgress": "Resending of scores",
+		"resyncSent": "sent",
+		"resyncUnchanged": "unchanged",
+		"resyncRunning": "A resending of scores is already running"
 	}
 });
 
@@ -591,3 +619,203 @@ function getScore(element, userData) {
 	
 }
 
+
+/* Bulk reassessment */
+const BULK_POLL_INTERVAL = 2000;
+
+function postBulkReassess(body) {
+	return fetch('reassess', { method: 'POST',
+		headers: {
+			'Content-Type': 'application/x-www-form-urlencoded;charset=UTF-8'
+		},
+		body: body + "&launchId=" + encodeURIComponent(document.getElementById("launchId").value) });
+}
+
+function startBulkReassess(event) {
+	event.preventDefault();
+	let body = "action=start&errorsOnly=" + document.getElementById("bulkerrorsonly").checked;
+	let push = document.getElementById("bulkpushoutcome");
+	if (push) {
+		body += "&pushOutcome=" + push.checked;
+	}
+	postBulkReassess(body)
+		.then(response => {
+			if (response.status == 409) {
+				throw new Error(texts.bulkRunning);
+			} else if (!response.ok) {
+				throw new Error(texts.attemptErrorAccess);
+			}
+			return response.json();
+		})
+		.then(result => showBulkReassess(result))
+		.catch(error => {
+			document.getElementById("bulkstatus").textContent = error.message;
+		});
+}
+
+function cancelBulkReassess(event) {
+	event.preventDefault();
+	postBulkReassess("action=cancel")
+		.then(() => pollBulkReassess());
+}
+
+function pollBulkReassess() {
+	fetch('reassess', { method: 'GET' })
+		.then(response => {
+			if (response.status == 204) {
+				return null;
+			} else if (!response.ok) {
+				throw new Error(texts.attemptErrorAccess);
+			}
+			return response.json();
+		})
+		.then(result => showBulkReassess(result))
+		.catch(error => console.log(error));
+}
+
+function showBulkReassess(result) {
+	let running = result && result.status == "RUNNING";
+	document.getElementById("bulkstart").classList.toggle("hidden", running);
+	document.getElementById("bulkcancel").classList.toggle("hidden", !running);
+	if (result) {
+		document.getElementById("bulkstatus").textContent = texts.bulkProgress + " ("
+			+ new Date(result.created).toLocaleString() + "): " + result.done + "/" + result.total
+			+ ", " + texts.bulkFailed + ": " + result.failed + " " + (running ? "" : result.status);
+	}
+	if (running) {
+		setTimeout(pollBulkReassess, BULK_POLL_INTERVAL);
+	}
+}
+
+function createBulkReassess() {
+	let container = document.getElementById("instructor");
+	let p = document.createElement("p");
+	p.id = "bulkreassess";
+	let start = document.createElement("a");
+	start.id = "bulkstart";
+	start.className = "genericButton";
+	start.title = texts.bulkReassess;
+	start.innerHTML = "<span class='material-icons'>replay</span>";
+	start.onclick = startBulkReassess;
+	p.appendChild(start);
+	let cancel = document.createElement("a");
+	cancel.id = "bulkcancel";
+	cancel.className = "genericButton hidden";
+	cancel.title = texts.bulkCancel;
+	cancel.innerHTML = "<span class='material-icons'>cancel</span>";
+	cancel.onclick = cancelBulkReassess;
+	p.appendChild(cancel);
+	let label = document.createElement("label");
+	label.innerHTML = "<input type='checkbox' id='bulkerrorsonly'/> " + texts.bulkErrorsOnly;
+	p.appendChild(label);
+	if (outcomeEnabled) {
+		label = document.createElement("label");
+		label.innerHTML = " <input type='checkbox' id='bulkpushoutcome'/> " + texts.bulkPushOutcome;
+		p.appendChild(label);
+	}
+	let status = document.createElement("span");
+	status.id = "bulkstatus";
+	p.appendChild(document.createElement("br"));
+	p.appendChild(status);
+	container.appendChild(p);
+	pollBulkReassess();
+}
+
+window.addEventListener("load", createBulkReassess);
+
+
+/* Resynchronization of scores */
+function postResync(body) {
+	return fetch('resync', { method: 'POST',
+		headers: {
+			'Content-Type': 'application/x-www-form-urlencoded;charset=UTF-8'
+		},
+		body: body + "&launchId=" + encodeURIComponent(document.getElementById("launchId").value) });
+}
+
+function startResync(event) {
+	event.preventDefault();
+	postResync("action=start&diffOnly=" + document.getElementById("resyncdiffonly").checked)
+		.then(response => {
+			if (response.status == 409) {
+				throw new Error(texts.resyncRunning);
+			} else if (!response.ok) {
+				throw new Error(texts.attemptErrorAccess);
+			}
+			return response.json();
+		})
+		.then(result => showResync(result))
+		.catch(error => {
+			document.getElementById("resyncstatus").textContent = error.message;
+		});
+}
+
+function cancelResync(event) {
+	event.preventDefault();
+	postResync("action=cancel")
+		.then(() => pollResync());
+}
+
+function pollResync() {
+	fetch('resync', { method: 'GET' })
+		.then(response => {
+			if (response.status == 204) {
+				return null;
+			} else if (!response.ok) {
+				throw new Error(texts.attemptErrorAccess);
+			}
+			return response.json();
+		})
+		.then(result => showResync(result))
+		.catch(error => console.log(error));
+}
+
+function showResync(result) {
+	let running = result && result.status == "RUNNING";
+	document.getElementById("resyncstart").classList.toggle("hidden", running);
+	document.getElementById("resynccancel").classList.toggle("hidden", !running);
+	if (result) {
+		document.getElementById("resyncstatus").textContent = texts.resyncProgress + " ("
+			+ new Date(result.created).toLocaleString() + "): " + result.done + "/" + result.total
+			+ ", " + texts.resyncSent + ": " + result.sent + ", " + texts.resyncUnchanged + ": "
+			+ result.unchanged + ", " + texts.bulkFailed + ": " + result.failed + " "
+			+ (running ? "" : result.status);
+	}
+	if (running) {
+		setTimeout(pollResync, BULK_POLL_INTERVAL);
+	}
+}
+
+function createResync() {
+	if (!outcomeEnabled) {
+		return;
+	}
+	let container = document.getElementById("instructor");
+	let p = document.createElement("p");
+	p.id = "resync";
+	let start = document.createElement("a");
+	start.id = "resyncstart";
+	start.className = "genericButton";
+	start.title = texts.resync;
+	start.innerHTML = "<span class='material-icons'>sync</span>";
+	start.onclick = startResync;
+	p.appendChild(start);
+	let cancel = document.createElement("a");
+	cancel.id = "resynccancel";
+	cancel.className = "genericButton hidden";
+	cancel.title = texts.resyncCancel;
+	cancel.innerHTML = "<span class='material-icons'>cancel</span>";
+	cancel.onclick = cancelResync;
+	p.appendChild(cancel);
+	let label = document.createElement("label");
+	label.innerHTML = "<input type='checkbox' id='resyncdiffonly' checked/> " + texts.resyncDiffOnly;
+	p.appendChild(label);
+	let status = document.createElement("span");
+	status.id = "resyncstatus";
+	p.appendChild(document.createElement("br"));
+	p.appendChild(status);
+	container.appendChild(p);
+	pollResync();
+}
+
+window.addEventListener("load", createResync);
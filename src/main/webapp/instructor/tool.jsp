@@ -91,6 +91,7 @@ if (tool != null && tool.getName() != null) {
 	var textFilename="<%=Encode.forJavaScriptBlock(tui.getTextFilename()) %>";
 	var enableInstructorCommand=<%=tui.isEnableInstructorCommand()%>;
 	var commandFilename="<%=Encode.forJavaScriptBlock(tui.getCommandFilename())%>";
+	var streamOutput=<%=tui.isStreamOutput() %>;
 	<%if (tool.getEnabledUntil()!=null && tool.isEnabledByDate()) { 
 		Long timeLeft = tool.getTimeLeft(); //Time left	%>
 	var startDate=new Date();
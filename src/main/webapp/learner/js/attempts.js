@@ -22,11 +22,14 @@ mergeTexts({
 		"errorCode": 'El ejecutable de evaluación ha fallado. Error:',
 		"errorCode-0": 'No guardada',
 		"errorCode-1": 'Guardada',
+		"errorCode-2": 'Pendiente de guardar',
 		"errorCode-102": 'Error guardando nota',
 		"errorCode-137": 'Error: la evaluación ha tardado más de lo permitido',
 		"errorCode-112": 'Error: se ha producido una excepción durante la evaluación',
 		"errorCode-111": 'Error: el ejecutable de evaluación no ha podido ejecutarse',
-		"errorCode-113": 'Error: la evaluación no se ha realizado por excederse el número de evaluaciones simultáneas'
+		"errorCode-113": 'Error: la evaluación no se ha realizado por excederse el número de evaluaciones simultáneas',
+		"errorCode-114": 'Pendiente de evaluación',
+		"errorCode-115": 'Error: el servicio de evaluación no está disponible'
 	},
 	"en": {
 		"noAttempts": "No previous attempts found",
@@ -44,11 +47,14 @@ mergeTexts({
 		"errorCode": 'The validator has failed. Error:',
 		"errorCode-0": 'Not saved',
 		"errorCode-1": 'Saved',
+		"errorCode-2": 'Pending to be saved',
 		"errorCode-102": 'Error saving note',
 		"errorCode-137": 'Error: Assessment took longer than allowed',
 		"errorCode-112": 'Error: An exception occurred during assessment',
 		"errorCode-111": 'Error: The assessment executable could not be executed',
-		"errorCode-113": 'Error: The assessment has not been carried out due to exceeding the number of simultaneous assessments'
+		"errorCode-113": 'Error: The assessment has not been carried out due to exceeding the number of simultaneous assessments',
+		"errorCode-114": 'Pending assessment',
+		"errorCode-115": 'Error: The assessment service is not available'
 	}
 });
 
@@ -1,4 +1,7 @@
-function inmediateUpload() {
+//maximum number of retries of a request rejected by overload
+const MAX_RETRIES = 5;
+
+function inmediateUpload(retries = 0) {
 	let progress = document.getElementById("textoProgreso");
 	let blob = new Blob([""], { type: 'plain/text' });
 	let formData = new FormData();
@@ -7,19 +10,22 @@ function inmediateUpload() {
 	let xmlhttp = new XMLHttpRequest();
 	// Preparamos la función que se ejecutará cuando acabe la petición async
 	xmlhttp.onreadystatechange = function() {
-		if (xmlhttp.readyState == xmlhttp.DONE && xmlhttp.status == 200) {
-			// Actualizamos el resultado
-			if (xmlhttp.responseText === "") {
-				errorRedirect();
-			} else {
-				// Iniciamos la redirección
-				try {
-					initRedirect(JSON.parse(xmlhttp.responseText));
-				} catch (e) {
-					console.log(e);
-					errorRedirect();
-				}
+		if (xmlhttp.readyState == xmlhttp.DONE && xmlhttp.status == 202) {
+			// En cola, se pide el resultado más tarde
+			setTimeout(pollRedirect, 500, xmlhttp.responseText.trim());
+		} else if (xmlhttp.readyState == xmlhttp.DONE && xmlhttp.status == 200) {
+			processRedirectResponse(xmlhttp.responseText);
+		} else if (xmlhttp.readyState == xmlhttp.DONE && retries < MAX_RETRIES
+				&& (xmlhttp.status == 429 || xmlhttp.status == 503)) {
+			// Sobrecarga, se reintenta con espera aleatoria
+			let retryAfter = parseInt(xmlhttp.getResponseHeader("Retry-After"));
+			if (isNaN(retryAfter) || retryAfter < 1) {
+				retryAfter = 1;
 			}
+			let base = Math.max(retryAfter, Math.pow(2, retries)) * 1000;
+			setTimeout(inmediateUpload, Math.round(base / 2 + Math.random() * base), retries + 1);
+		} else if (xmlhttp.readyState == xmlhttp.DONE) {
+			errorRedirect();
 		}
 	};
 	xmlhttp.onerror = function() {
@@ -30,6 +36,39 @@ function inmediateUpload() {
 	xmlhttp.send(formData);
 }
 
+function pollRedirect(jobId) {
+	let xmlhttp = new XMLHttpRequest();
+	xmlhttp.onreadystatechange = function() {
+		if (xmlhttp.readyState == xmlhttp.DONE) {
+			if (xmlhttp.status == 202) {
+				setTimeout(pollRedirect, 500, jobId);
+			} else if (xmlhttp.status == 200) {
+				processRedirectResponse(xmlhttp.responseText);
+			} else {
+				errorRedirect();
+			}
+		}
+	};
+	xmlhttp.onerror = errorRedirect;
+	xmlhttp.open("GET", "../learner/assessresult?job=" + encodeURIComponent(jobId), true);
+	xmlhttp.send();
+}
+
+function processRedirectResponse(responseText) {
+	// Actualizamos el resultado
+	if (responseText === "") {
+		errorRedirect();
+	} else {
+		// Iniciamos la redirección
+		try {
+			initRedirect(JSON.parse(responseText));
+		} catch (e) {
+			console.log(e);
+			errorRedirect();
+		}
+	}
+}
+
 function errorRedirect() {
 	document.getElementById("textoProgreso").innerHTML = "Error cargando la página.";
 }
@@ -112,4 +151,4 @@ function initRedirect(data) {
 	}
 }
 
-window.addEventListener("load", inmediateUpload);
+window.addEventListener("load", () => inmediateUpload());
@@ -12,7 +12,13 @@ let TEXTS = {
 		"errorClosedSession": "La sesión se ha cerrado. Vuelva a iniciar la herramienta.",
 		"errorNoResponse": "El servidor no responde. Reinténtelo más tarde.",
 		"errorRequest": "Error en la petición. Puede que el archivo sea demasiado grande o el servidor no esté operativo.",
-		"closeWindow": "Puede cerrar esta ventana/pestaña ahora."
+		"closeWindow": "Puede cerrar esta ventana/pestaña ahora.",
+		"errorLostResult": "No se ha podido obtener el resultado. Consulte sus intentos anteriores.",
+		"queuePosition": "Su trabajo está en la cola. Posición: ",
+		"running": "Su trabajo se está evaluando.",
+		"estimatedWait": "Tiempo estimado de espera: ",
+		"busy": "El servidor está saturado. Se reintentará el envío en ",
+		"seconds": " s"
 	},
 	"en": {
 		"waitMsg": "Please wait while your work is uploaded and evaluated...",
@@ -26,10 +32,20 @@ let TEXTS = {
 		"errorClosedSession": "The session has been closed. Restart the tool.",
 		"errorNoResponse": "The server does not respond. Try again later.",
 		"errorRequest": "Error in the request. The file may be too large or the server may not be operational.",
-		"closeWindow": "You can close this window/tab now."
+		"closeWindow": "You can close this window/tab now.",
+		"errorLostResult": "The result could not be obtained. Check your previous attempts.",
+		"queuePosition": "Your work is in the queue. Position: ",
+		"running": "Your work is being evaluated.",
+		"estimatedWait": "Estimated wait: ",
+		"busy": "The server is overloaded. The delivery will be retried in ",
+		"seconds": " s"
 	}
 }
 let texts = TEXTS.es;
+//milliseconds between requests of queued results
+const POLL_INTERVAL = 1000;
+//maximum number of retries of a delivery rejected by overload
+const MAX_RETRIES = 5;
 
 function mergeTexts(moreTexts) {
 	for( let lang in TEXTS) {
@@ -81,7 +97,7 @@ function showLoading() {
 
 	let infoLabel = document.getElementById("result");
 	infoLabel.innerHTML = "<p>"+texts.waitMsg
-		+ "</p><br /><p><img src='../img/loading.gif' alt='"+texts.loading+"' />" +
+		+ "</p><p id='queueposition'></p><br /><p><img src='../img/loading.gif' alt='"+texts.loading+"' />" +
 		"</p>";
 	infoLabel.scrollIntoView();
 }
@@ -186,18 +202,36 @@ function validateAndSend() {
 	}
 }
 
-function send(formData) {
+function send(formData, retries = 0) {
   
   let xmlhttp = new XMLHttpRequest();
   // Preparamos la función que se ejecutará cuando acabe la petición async
   xmlhttp.onreadystatechange = function() {
     if (xmlhttp.readyState == 4) {
-	  if (xmlhttp.status == 200) {
+	  if (xmlhttp.status == 202) {
+        // Queued, poll the result
+        showQueuePosition(xmlhttp);
+        if (typeof streamOutput !== 'undefined' && streamOutput && window.EventSource) {
+          stream(xmlhttp.responseText.trim());
+        } else {
+          setTimeout(poll, POLL_INTERVAL, xmlhttp.responseText.trim());
+        }
+      } else if (xmlhttp.status == 200) {
         if (xmlhttp.responseText === "") {
           createResult("<p class='error'>"+texts.errorClosedSession+"</p>");
         } else {
           createResult(xmlhttp.responseText);
         }
+      } else if ((xmlhttp.status == 429 || xmlhttp.status == 503) && retries < MAX_RETRIES) {
+        // Overloaded, try again later
+        let delay = getRetryDelay(xmlhttp, retries);
+        let p = document.getElementById("queueposition");
+        if (p) {
+          p.textContent = texts.busy + Math.ceil(delay / 1000) + texts.seconds;
+        }
+        setTimeout(send, delay, formData, retries + 1);
+      } else if (xmlhttp.status == 429 || xmlhttp.status == 503) {
+        createResult(xmlhttp.responseText);
       } else {
         createResult("<p class='error'>"+texts.errorNoResponse+"</p>");
 	  }
@@ -210,6 +244,87 @@ function send(formData) {
   xmlhttp.send(formData);
 }
 
+// Milliseconds to wait before retrying a delivery: the server estimation
+// (Retry-After) or an exponential backoff, whichever is greater, with random
+// jitter so that clients do not retry at the same time
+function getRetryDelay(xmlhttp, retries) {
+  let retryAfter = parseInt(xmlhttp.getResponseHeader("Retry-After"));
+  if (isNaN(retryAfter) || retryAfter < 1) {
+    retryAfter = 1;
+  }
+  let base = Math.max(retryAfter, Math.pow(2, retries)) * 1000;
+  return Math.round(base / 2 + Math.random() * base);
+}
+
+function showQueuePosition(xmlhttp) {
+  setQueuePosition(xmlhttp.getResponseHeader("X-Queue-Position"));
+  let wait = xmlhttp.getResponseHeader("X-Estimated-Wait");
+  let p = document.getElementById("queueposition");
+  if (p && wait !== null) {
+    p.textContent += ". " + texts.estimatedWait + wait + texts.seconds;
+  }
+}
+
+function setQueuePosition(position) {
+  let p = document.getElementById("queueposition");
+  if (p && position !== null) {
+    if (position > 0) {
+      p.textContent = texts.queuePosition + position;
+    } else {
+      p.textContent = texts.running;
+    }
+  }
+}
+
+function poll(jobId) {
+  let xmlhttp = new XMLHttpRequest();
+  xmlhttp.onreadystatechange = function() {
+    if (xmlhttp.readyState == 4) {
+      if (xmlhttp.status == 202) {
+        showQueuePosition(xmlhttp);
+        setTimeout(poll, POLL_INTERVAL, jobId);
+      } else if (xmlhttp.status == 200) {
+        createResult(xmlhttp.responseText);
+      } else if (xmlhttp.status == 404) {
+        createResult("<p class='error'>"+texts.errorLostResult+"</p>");
+      } else {
+        createResult("<p class='error'>"+texts.errorNoResponse+"</p>");
+      }
+    }
+  };
+  xmlhttp.onerror = function() {
+    createResult("<p class='error'>"+texts.errorRequest+"</p>");
+  };
+  xmlhttp.open("GET", "../learner/assessresult?job=" + encodeURIComponent(jobId), true);
+  xmlhttp.send();
+}
+
+function stream(jobId) {
+  let source = new EventSource("../learner/assessstream?job=" + encodeURIComponent(jobId));
+  source.addEventListener("queue", function(event) {
+    setQueuePosition(event.data);
+  });
+  source.addEventListener("output", function(event) {
+    let pre = document.getElementById("liveoutput");
+    if (!pre) {
+      pre = document.createElement("pre");
+      pre.id = "liveoutput";
+      document.getElementById("result").appendChild(pre);
+    }
+    pre.appendChild(document.createTextNode(event.data));
+    pre.scrollTop = pre.scrollHeight;
+  });
+  source.addEventListener("result", function(event) {
+    source.close();
+    createResult(event.data);
+  });
+  source.onerror = function() {
+    // Stream closed without result, continue polling
+    source.close();
+    setTimeout(poll, POLL_INTERVAL, jobId);
+  };
+}
+
 function createResult(text) {
 	let element = document.getElementById("result");
 	let fs = document.createElement("fieldset");
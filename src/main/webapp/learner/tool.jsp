@@ -89,6 +89,7 @@ if (tool != null && tool.getName() != null) {
 	var inputFileAccept="<%=Encode.forJavaScriptBlock(tui.getInputFileAccept()) %>";
 	var inputFilePattern=<%=((tui.getInputFilePattern()==null) ? "null" : ("'"+Encode.forJavaScriptBlock(tui.getInputFilePattern())+"'")) %>;
 	var textFilename="<%=Encode.forJavaScriptBlock(tui.getTextFilename()) %>";
+	var streamOutput=<%=tui.isStreamOutput() %>;
 	<%if (tool.getEnabledUntil()!=null && tool.isEnabledByDate()) { 
 		Long timeLeft = tool.getTimeLeft(); //Time left	%>
 	var startDate=new Date();
@@ -105,6 +105,102 @@ async function optimize() {
 	}
 }
 
+async function outcomeAction(event) {
+	event.preventDefault();
+	let info = document.getElementById("messages");
+	info.textContent = "Enviando...";
+	//AJAX request
+	let urlParams = new URLSearchParams();
+	urlParams.append("launchId", document.getElementById("launchId").value);
+	urlParams.append("sid", this.dataset.sid);
+	await fetch(this.href, {
+		method: 'POST',
+		headers: {
+			'Content-Type': 'application/x-www-form-urlencoded;charset=UTF-8'
+		},
+		body: urlParams
+	}).then(resp => {
+		if (!resp.ok) {
+			return resp.text().then(text => { throw new Error(text) })
+		}
+		return resp.text();
+	}).then(result => {
+		if (result === "true") {
+			info.textContent = "OK";
+			this.closest("tr").remove();
+		} else {
+			info.textContent = "KO";
+		}
+	}).catch(error => {
+		info.textContent = error;
+	});
+}
+
+function getDeadOutcomes() {
+	let info = document.getElementById("messages");
+	//AJAX request
+	fetch('getdeadoutcomes', {
+		method: 'GET'
+	}).then(resp => {
+		if (!resp.ok) {
+			return resp.text().then(text => { throw new Error(text) })
+		}
+		return resp.json();
+	}).then(result => {
+		renderDeadOutcomes(result);
+	}).catch(error => {
+		if (error instanceof SyntaxError) {
+			info.textContent = "Error: sesión cerrada";
+		} else if (!error.message.includes("DOCTYPE")) {
+			info.textContent = error;
+		} else {
+			console.log("error with html");
+		}
+	});
+}
+
+function createOutcomeAction(outcome, url, icon, title) {
+	let a = document.createElement("a");
+	a.href = url;
+	a.title = title;
+	a.dataset.sid = outcome.sid;
+	a.onclick = outcomeAction;
+	let span = document.createElement("span");
+	span.className = "material-icons";
+	span.appendChild(document.createTextNode(icon));
+	a.appendChild(span);
+	return a;
+}
+
+function renderDeadOutcomes(json) {
+	let table = document.getElementById("deadOutcomes");
+	if (!table) {
+		return;
+	}
+	while (table.rows.length > 1) {
+		table.deleteRow(1);
+	}
+	if (json.length == 0) {
+		let cell = table.insertRow().insertCell();
+		cell.colSpan = 7;
+		cell.appendChild(document.createTextNode("No hay notas sin enviar."));
+	}
+	for (let outcome of json) {
+		let row = table.insertRow();
+		let cell = row.insertCell();
+		cell.appendChild(createOutcomeAction(outcome, "retryoutcome", "send", "Reintentar"));
+		cell.appendChild(createOutcomeAction(outcome, "discardoutcome", "delete", "Descartar"));
+		row.insertCell().appendChild(document.createTextNode(outcome.tool));
+		row.insertCell().appendChild(document.createTextNode(outcome.user));
+		row.insertCell().appendChild(document.createTextNode(new Date(outcome.timestamp).toLocaleString()));
+		row.insertCell().appendChild(document.createTextNode((outcome.score*0.1).toFixed(1)));
+		row.insertCell().appendChild(document.createTextNode(outcome.tries));
+		cell = row.insertCell();
+		cell.title = new Date(outcome.lastTry).toLocaleString();
+		cell.appendChild(document.createTextNode(outcome.lastError));
+	}
+}
+
 window.addEventListener("load", function() {
 	let rbs = document.querySelectorAll(".faction");
 	for (let i of rbs) {
@@ -113,11 +209,15 @@ window.addEventListener("load", function() {
 	}
 	let aux = document.getElementById("add");
 	if (aux) {
-		aux.onclick = getUnused;
+		aux.onclick = function() {
+			getUnused();
+			getDeadOutcomes();
+		};
 	}
 	aux = document.getElementById("optimize");
 	if (aux) {
 		aux.onclick = optimize;
 	}
 	getUnused();
+	getDeadOutcomes();
 });
\ No newline at end of file
@@ -95,6 +95,20 @@
 			<span class="material-icons">delete_forever</span>
 		</button>
 	</div>
+	<h2>Notas no enviadas</h2>
+	<div class="scroll70">
+		<table aria-label="notas no enviadas" id="deadOutcomes">
+			<tr>
+				<th scope="col"></th>
+				<th scope="col">Herramienta</th>
+				<th scope="col">Usuario</th>
+				<th scope="col">Fecha</th>
+				<th scope="col">Nota</th>
+				<th scope="col">Intentos</th>
+				<th scope="col">Último error</th>
+			</tr>
+		</table>
+	</div>
   </div>	
   <script src="../js/move.js"></script>
 </body>
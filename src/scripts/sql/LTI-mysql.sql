@@ -146,6 +146,67 @@ CREATE TABLE `attempt` (
   FOREIGN KEY (`original_ru_sid`) REFERENCES `resource_user` (`sid`)
 );
 
+CREATE TABLE `reassessment` (
+  `sid` integer PRIMARY KEY AUTO_INCREMENT,
+  `tool_key_sid` integer NOT NULL,
+  `status` integer NOT NULL,
+  `errors_only` boolean DEFAULT 0,
+  `push_outcome` boolean DEFAULT 0,
+  `total_count` integer NOT NULL,
+  `done_count` integer NOT NULL,
+  `failed_count` integer NOT NULL,
+  `checkpoint_seconds` integer,
+  `checkpoint_nanos` integer,
+  `checkpoint_sid` integer NOT NULL,
+  `created` datetime NOT NULL,
+  `updated` datetime NOT NULL,
+  FOREIGN KEY (`tool_key_sid`) REFERENCES `tool_key` (`sid`)
+);
+
+CREATE TABLE `outcome_resync` (
+  `sid` integer PRIMARY KEY AUTO_INCREMENT,
+  `tool_key_sid` integer NOT NULL,
+  `status` integer NOT NULL,
+  `diff_only` boolean DEFAULT 0,
+  `total_count` integer NOT NULL,
+  `done_count` integer NOT NULL,
+  `sent_count` integer NOT NULL,
+  `unchanged_count` integer NOT NULL,
+  `failed_count` integer NOT NULL,
+  `checkpoint_sid` integer NOT NULL,
+  `created` datetime NOT NULL,
+  `updated` datetime NOT NULL,
+  FOREIGN KEY (`tool_key_sid`) REFERENCES `tool_key` (`sid`)
+);
+
+CREATE TABLE `deferred_assessment` (
+  `sid` integer PRIMARY KEY AUTO_INCREMENT,
+  `attempt_sid` integer NOT NULL,
+  `extra_args` text,
+  `write_outcome` boolean DEFAULT 0,
+  `tries` integer NOT NULL,
+  `created` datetime NOT NULL,
+  `updated` datetime NOT NULL,
+  UNIQUE(`attempt_sid`),
+  FOREIGN KEY (`attempt_sid`) REFERENCES `attempt` (`sid`)
+);
+
+CREATE TABLE `outcome_outbox` (
+  `sid` integer PRIMARY KEY AUTO_INCREMENT,
+  `resource_user_sid` integer NOT NULL,
+  `attempt_sid` integer NOT NULL,
+  `tries` integer NOT NULL,
+  `next_try` datetime NOT NULL,
+  `last_error` varchar(255) DEFAULT NULL,
+  `dead` boolean DEFAULT 0,
+  `created` datetime NOT NULL,
+  `updated` datetime NOT NULL,
+  UNIQUE(`resource_user_sid`),
+  UNIQUE(`attempt_sid`),
+  FOREIGN KEY (`resource_user_sid`) REFERENCES `resource_user` (`sid`),
+  FOREIGN KEY (`attempt_sid`) REFERENCES `attempt` (`sid`)
+);
+
 CREATE UNIQUE INDEX `context_index_0` ON `context` (`consumer_id`, `context_id`);
 
 CREATE UNIQUE INDEX `resource_link_index_1` ON `resource_link` (`tool_sid`, `context_sid`, `resource_id`);
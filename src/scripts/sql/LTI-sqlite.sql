@@ -166,3 +166,64 @@ CREATE TABLE "attempt" (
   FOREIGN KEY ("original_ru_sid") REFERENCES "resource_user" ("sid")
 );
 
+CREATE TABLE "reassessment" (
+  "sid" integer PRIMARY KEY,
+  "tool_key_sid" integer NOT NULL,
+  "status" integer NOT NULL,
+  "errors_only" boolean DEFAULT FALSE,
+  "push_outcome" boolean DEFAULT FALSE,
+  "total_count" integer NOT NULL,
+  "done_count" integer NOT NULL,
+  "failed_count" integer NOT NULL,
+  "checkpoint_seconds" integer,
+  "checkpoint_nanos" integer,
+  "checkpoint_sid" integer NOT NULL,
+  "created" integer NOT NULL,
+  "updated" integer NOT NULL,
+  FOREIGN KEY ("tool_key_sid") REFERENCES "tool_key" ("sid")
+);
+
+CREATE TABLE "outcome_resync" (
+  "sid" integer PRIMARY KEY,
+  "tool_key_sid" integer NOT NULL,
+  "status" integer NOT NULL,
+  "diff_only" boolean DEFAULT FALSE,
+  "total_count" integer NOT NULL,
+  "done_count" integer NOT NULL,
+  "sent_count" integer NOT NULL,
+  "unchanged_count" integer NOT NULL,
+  "failed_count" integer NOT NULL,
+  "checkpoint_sid" integer NOT NULL,
+  "created" integer NOT NULL,
+  "updated" integer NOT NULL,
+  FOREIGN KEY ("tool_key_sid") REFERENCES "tool_key" ("sid")
+);
+
+CREATE TABLE "deferred_assessment" (
+  "sid" integer PRIMARY KEY,
+  "attempt_sid" integer NOT NULL,
+  "extra_args" text,
+  "write_outcome" boolean DEFAULT FALSE,
+  "tries" integer NOT NULL,
+  "created" integer NOT NULL,
+  "updated" integer NOT NULL,
+  UNIQUE("attempt_sid"),
+  FOREIGN KEY ("attempt_sid") REFERENCES "attempt" ("sid")
+);
+
+CREATE TABLE "outcome_outbox" (
+  "sid" integer PRIMARY KEY,
+  "resource_user_sid" integer NOT NULL,
+  "attempt_sid" integer NOT NULL,
+  "tries" integer NOT NULL,
+  "next_try" integer NOT NULL,
+  "last_error" varchar(255) DEFAULT NULL,
+  "dead" boolean DEFAULT FALSE,
+  "created" integer NOT NULL,
+  "updated" integer NOT NULL,
+  UNIQUE("resource_user_sid"),
+  UNIQUE("attempt_sid"),
+  FOREIGN KEY ("resource_user_sid") REFERENCES "resource_user" ("sid"),
+  FOREIGN KEY ("attempt_sid") REFERENCES "attempt" ("sid")
+);
+
@@ -0,0 +1,305 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.us.dit.lti.entity.Attempt;
+import es.us.dit.lti.entity.OutcomeDelivery;
+import es.us.dit.lti.entity.ResourceUser;
+import es.us.dit.lti.persistence.DbUtilSingleConnection;
+import es.us.dit.lti.persistence.IDbUtil;
+import es.us.dit.lti.persistence.OutcomeDeliveryDao;
+import es.us.dit.lti.persistence.ToolAttemptDao;
+import es.us.dit.lti.persistence.ToolResourceUserDao;
+
+/**
+ * Tests of the order of scores queued in the outbox by
+ * {@link OutcomeDeliveryService#enqueue(Attempt)}, with a SQLite database.
+ *
+ * <p>The service is not started, so no score is written.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class OutcomeDeliveryServiceTest {
+	/**
+	 * Script that creates the tables.
+	 */
+	private static final Path SCHEMA = Path.of("src", "scripts", "sql", "LTI-sqlite.sql");
+	/**
+	 * Error code of a score not written.
+	 */
+	private static final int NOT_WRITTEN = 0;
+
+	/**
+	 * Database file.
+	 */
+	private Path dbFile;
+	/**
+	 * Database of the test.
+	 */
+	private IDbUtil db;
+	/**
+	 * Database of attempts before the test.
+	 */
+	private IDbUtil oldAttemptDb;
+	/**
+	 * Database of deliveries before the test.
+	 */
+	private IDbUtil oldDeliveryDb;
+	/**
+	 * Database of resource users before the test.
+	 */
+	private IDbUtil oldResourceUserDb;
+	/**
+	 * The resource user.
+	 */
+	private ResourceUser ru;
+
+	/**
+	 * Executes SQL statements separated by semicolons.
+	 *
+	 * @param sql the statements
+	 * @throws SQLException if error
+	 */
+	private void execute(String sql) throws SQLException {
+		final Connection c = db.getConnection();
+		try (Statement stmt = c.createStatement()) {
+			for (final String s : sql.split(";")) {
+				if (!s.isBlank()) {
+					stmt.executeUpdate(s);
+				}
+			}
+		} finally {
+			db.closeConnection(c);
+		}
+	}
+
+	/**
+	 * Creates the database with a resource user.
+	 *
+	 * @throws IOException  if error
+	 * @throws SQLException if error
+	 */
+	@BeforeEach
+	void setUp() throws IOException, SQLException {
+		dbFile = Files.createTempFile("tpm-outbox", ".db");
+		db = new DbUtilSingleConnection();
+		db.init("jdbc:sqlite:" + dbFile);
+		execute(Files.readString(SCHEMA));
+		execute("INSERT INTO resource_link (sid, tool_key_sid, title, created, updated) VALUES (1, 1, 'r', 0, 0);"
+				+ "INSERT INTO lti_user (sid, consumer_sid, lti_user_id, created, updated) VALUES (1, 1, 'u', 0, 0);"
+				+ "INSERT INTO resource_user (sid, resource_sid, lti_user_sid, created, updated)"
+				+ " VALUES (1, 1, 1, 0, 0)");
+		oldAttemptDb = ToolAttemptDao.getDbUtil();
+		oldDeliveryDb = OutcomeDeliveryDao.getDbUtil();
+		oldResourceUserDb = ToolResourceUserDao.getDbUtil();
+		ToolAttemptDao.setDbUtil(db);
+		OutcomeDeliveryDao.setDbUtil(db);
+		ToolResourceUserDao.setDbUtil(db);
+		ru = new ResourceUser();
+		ru.setSid(1);
+	}
+
+	/**
+	 * Restores the databases and deletes the test one.
+	 *
+	 * @throws IOException if error
+	 */
+	@AfterEach
+	void tearDown() throws IOException {
+		ToolAttemptDao.setDbUtil(oldAttemptDb);
+		OutcomeDeliveryDao.setDbUtil(oldDeliveryDb);
+		ToolResourceUserDao.setDbUtil(oldResourceUserDb);
+		db.destroy();
+		Files.deleteIfExists(dbFile);
+	}
+
+	/**
+	 * Saves an attempt whose score is waiting to be written.
+	 *
+	 * @param seconds instant of the attempt
+	 * @return the attempt
+	 */
+	private Attempt attempt(long seconds) {
+		final Attempt attempt = new Attempt();
+		attempt.setResourceUser(ru);
+		attempt.setOriginalResourceUser(ru);
+		attempt.setInstant(Instant.ofEpochSecond(seconds));
+		attempt.setFileName("f");
+		attempt.setScore(50);
+		attempt.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+		assertTrue(ToolAttemptDao.create(attempt));
+		return attempt;
+	}
+
+	/**
+	 * Gets the serial ID of the attempt queued for the resource user.
+	 *
+	 * @return the serial ID
+	 */
+	private int queued() {
+		final OutcomeDelivery od = OutcomeDeliveryDao.getByResourceUser(ru);
+		assertNotNull(od, "no delivery queued");
+		return od.getAttempt().getSid();
+	}
+
+	/**
+	 * Gets the saved error code of an attempt.
+	 *
+	 * @param attempt the attempt
+	 * @return the error code
+	 */
+	private static int savedErrorCode(Attempt attempt) {
+		return ToolAttemptDao.getBySid(attempt.getSid()).getErrorCode();
+	}
+
+	/**
+	 * A newer score replaces the waiting one, which is not written.
+	 */
+	@Test
+	void testNewerReplaces() {
+		final Attempt older = attempt(1000);
+		assertTrue(OutcomeDeliveryService.enqueue(older));
+		assertEquals(older.getSid(), queued());
+
+		final Attempt newer = attempt(2000);
+		assertTrue(OutcomeDeliveryService.enqueue(newer));
+		assertEquals(newer.getSid(), queued());
+		assertEquals(NOT_WRITTEN, savedErrorCode(older));
+		assertEquals(OutcomeDeliveryService.OUTCOME_PENDING, savedErrorCode(newer));
+		assertEquals(1, OutcomeDeliveryDao.countPending());
+	}
+
+	/**
+	 * An older score, e.g. a reassessment, does not replace a newer waiting one
+	 * and is not written.
+	 */
+	@Test
+	void testOlderSuperseded() {
+		final Attempt newer = attempt(2000);
+		assertTrue(OutcomeDeliveryService.enqueue(newer));
+
+		final Attempt older = attempt(1000);
+		assertTrue(OutcomeDeliveryService.enqueue(older));
+		assertEquals(newer.getSid(), queued());
+		assertEquals(NOT_WRITTEN, older.getErrorCode());
+		assertEquals(NOT_WRITTEN, savedErrorCode(older));
+		assertEquals(OutcomeDeliveryService.OUTCOME_PENDING, savedErrorCode(newer));
+	}
+
+	/**
+	 * Queuing the same score again keeps a single delivery.
+	 */
+	@Test
+	void testSameAttempt() {
+		final Attempt attempt = attempt(1000);
+		assertTrue(OutcomeDeliveryService.enqueue(attempt));
+		assertTrue(OutcomeDeliveryService.enqueue(attempt));
+		assertEquals(attempt.getSid(), queued());
+		assertEquals(1, OutcomeDeliveryDao.countPending());
+		assertEquals(OutcomeDeliveryService.OUTCOME_PENDING, savedErrorCode(attempt));
+	}
+
+	/**
+	 * Whatever the order they are queued in, the newest of several scores is the
+	 * one waiting.
+	 */
+	@Test
+	void testNewestWins() {
+		final Attempt a = attempt(3000);
+		final Attempt b = attempt(1000);
+		final Attempt c = attempt(2000);
+		assertTrue(OutcomeDeliveryService.enqueue(b));
+		assertTrue(OutcomeDeliveryService.enqueue(a));
+		assertTrue(OutcomeDeliveryService.enqueue(c));
+		assertEquals(a.getSid(), queued());
+		assertEquals(NOT_WRITTEN, savedErrorCode(b));
+		assertEquals(NOT_WRITTEN, savedErrorCode(c));
+		assertEquals(OutcomeDeliveryService.OUTCOME_PENDING, savedErrorCode(a));
+	}
+
+	/**
+	 * An attempt saved with its delivery is queued without calling enqueue. If a
+	 * score is already waiting, only the attempt is saved and enqueue decides
+	 * which score is kept.
+	 */
+	@Test
+	void testCreateWithOutcome() {
+		final Attempt older = new Attempt();
+		older.setResourceUser(ru);
+		older.setOriginalResourceUser(ru);
+		older.setInstant(Instant.ofEpochSecond(1000));
+		older.setFileName("f");
+		older.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+		assertTrue(ToolAttemptDao.createWithOutcome(older));
+		assertEquals(older.getSid(), queued());
+
+		final Attempt newer = new Attempt();
+		newer.setResourceUser(ru);
+		newer.setOriginalResourceUser(ru);
+		newer.setInstant(Instant.ofEpochSecond(2000));
+		newer.setFileName("f");
+		newer.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+		assertTrue(ToolAttemptDao.createWithOutcome(newer));
+		assertNotNull(ToolAttemptDao.getBySid(newer.getSid()));
+		assertEquals(older.getSid(), queued());
+		assertEquals(1, OutcomeDeliveryDao.countPending());
+
+		assertTrue(OutcomeDeliveryService.enqueue(newer));
+		assertEquals(newer.getSid(), queued());
+		assertEquals(NOT_WRITTEN, savedErrorCode(older));
+	}
+
+	/**
+	 * If the attempt can not be saved, no delivery is saved and the shared
+	 * connection is back in auto-commit mode.
+	 */
+	@Test
+	void testCreateWithOutcomeRollback() {
+		final Attempt attempt = attempt(1000);
+		final Attempt duplicate = new Attempt();
+		duplicate.setResourceUser(ru);
+		duplicate.setOriginalResourceUser(ru);
+		duplicate.setInstant(attempt.getInstant());
+		duplicate.setFileName("f");
+		duplicate.setErrorCode(OutcomeDeliveryService.OUTCOME_PENDING);
+		assertFalse(ToolAttemptDao.createWithOutcome(duplicate));
+		assertNull(OutcomeDeliveryDao.getByResourceUser(ru));
+		assertTrue(OutcomeDeliveryService.enqueue(attempt));
+		assertEquals(attempt.getSid(), queued());
+	}
+}
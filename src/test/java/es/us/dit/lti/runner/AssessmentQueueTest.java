@@ -0,0 +1,336 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * Tests of admission and scheduling of {@link AssessmentQueue}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class AssessmentQueueTest {
+	/**
+	 * Global slots before the test.
+	 */
+	private int oldConcurrentUsers;
+
+	/**
+	 * Starts the scheduler with one global slot.
+	 */
+	@BeforeEach
+	void setUp() {
+		oldConcurrentUsers = Settings.getConcurrentUsers();
+		Settings.setConcurrentUsers(1);
+		AssessmentQueue.start();
+	}
+
+	/**
+	 * Stops the scheduler and restores settings.
+	 */
+	@AfterEach
+	void tearDown() {
+		AssessmentQueue.shutdown();
+		Settings.setConcurrentUsers(oldConcurrentUsers);
+	}
+
+	/**
+	 * Creates a tool.
+	 *
+	 * @param name               tool name
+	 * @param maxConcurrentUsers maximum running jobs, negative if unlimited
+	 * @param weight             scheduling weight
+	 * @return the tool
+	 */
+	static Tool newTool(String name, int maxConcurrentUsers, int weight) {
+		final Tool tool = new Tool();
+		tool.setName(name);
+		tool.setJsonConfig(null);
+		tool.getToolUiConfig().setMaxConcurrentUsers(maxConcurrentUsers);
+		tool.getToolUiConfig().setSchedulingWeight(weight);
+		return tool;
+	}
+
+	/**
+	 * Admits and submits a job that finishes when the returned future is
+	 * completed.
+	 *
+	 * @param tool   the tool
+	 * @param owner  user ID
+	 * @param gate   future that finishes the job
+	 * @param starts appended with the owner when the job starts
+	 * @return the job
+	 * @throws InterruptedException if interrupted
+	 */
+	static AssessmentJob submit(Tool tool, String owner, CompletableFuture<Void> gate, StringBuffer starts)
+			throws InterruptedException {
+		// Distinct creation times, ties are broken by age
+		Thread.sleep(2);
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit(owner, tool));
+		final AssessmentJob job = AssessmentJob.async(owner, owner, tool.getName(), out -> {
+			starts.append(owner).append(' ');
+			return gate;
+		});
+		assertTrue(AssessmentQueue.submit(job, tool));
+		return job;
+	}
+
+	/**
+	 * Waits until a job finishes.
+	 *
+	 * @param job the job
+	 * @throws InterruptedException if interrupted
+	 */
+	static void awaitFinished(AssessmentJob job) throws InterruptedException {
+		final long limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (job.getStatus() != AssessmentJob.Status.FINISHED && System.nanoTime() < limit) {
+			Thread.sleep(5);
+		}
+		assertEquals(AssessmentJob.Status.FINISHED, job.getStatus());
+	}
+
+	/**
+	 * A user can not have two deliveries of the same tool in progress.
+	 */
+	@Test
+	void rejectsDuplicatedDelivery() {
+		final Tool tool = newTool("t", -1, 1);
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("u", tool));
+		assertEquals(AssessmentQueue.Admission.DUPLICATED, AssessmentQueue.admit("u", tool));
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("u", newTool("other", -1, 1)));
+		AssessmentQueue.release("u", tool);
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("u", tool));
+	}
+
+	/**
+	 * A tool with a limit of 0 concurrent users does not accept deliveries.
+	 */
+	@Test
+	void rejectsDisabledTool() {
+		assertEquals(AssessmentQueue.Admission.FULL, AssessmentQueue.admit("u", newTool("t", 0, 1)));
+	}
+
+	/**
+	 * The queue is bounded by the global slots plus its capacity.
+	 */
+	@Test
+	void rejectsWhenFull() {
+		final Tool tool = newTool("t", -1, 1);
+		AssessmentQueue.Admission admission = AssessmentQueue.Admission.ACCEPTED;
+		int accepted = 0;
+		while (admission == AssessmentQueue.Admission.ACCEPTED) {
+			admission = AssessmentQueue.admit("u" + accepted, tool);
+			if (admission == AssessmentQueue.Admission.ACCEPTED) {
+				accepted++;
+			}
+		}
+		assertEquals(AssessmentQueue.Admission.FULL, admission);
+		assertEquals(1001, accepted);
+		assertTrue(AssessmentQueue.getRetryAfter() >= 1);
+		AssessmentQueue.release("u0", tool);
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("u0", tool));
+	}
+
+	/**
+	 * Jobs wait for a free slot and run when it is released.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void queuesUntilSlotIsFree() throws InterruptedException {
+		final Tool tool = newTool("t", -1, 1);
+		final CompletableFuture<Void> gate1 = new CompletableFuture<>();
+		final CompletableFuture<Void> gate2 = new CompletableFuture<>();
+		final StringBuffer starts = new StringBuffer();
+		final AssessmentJob job1 = submit(tool, "a", gate1, starts);
+		final AssessmentJob job2 = submit(tool, "b", gate2, starts);
+		assertEquals(1, AssessmentQueue.getRunningJobs());
+		assertEquals(1, AssessmentQueue.getWaitingJobs());
+		assertEquals(1, AssessmentQueue.getPosition(job2));
+		gate1.complete(null);
+		awaitFinished(job1);
+		gate2.complete(null);
+		awaitFinished(job2);
+		assertEquals("a b ", starts.toString());
+		assertEquals(0, AssessmentQueue.getRunningJobs());
+		assertEquals(0, AssessmentQueue.getWaitingJobs());
+		// The user can deliver again
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("a", tool));
+	}
+
+	/**
+	 * Finished jobs are kept, so their result can be requested again.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void keepsFinishedJobs() throws InterruptedException {
+		final AssessmentJob job = submit(newTool("t", -1, 1), "a", CompletableFuture.completedFuture(null),
+				new StringBuffer());
+		awaitFinished(job);
+		assertSame(job, AssessmentQueue.get(job.getId()));
+		assertSame(job, AssessmentQueue.get(job.getId()));
+	}
+
+	/**
+	 * A free slot goes to the tool with fewer running jobs, even if another
+	 * tool has older waiting jobs.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void sharesSlotsAmongTools() throws InterruptedException {
+		Settings.setConcurrentUsers(2);
+		final Tool toolA = newTool("a", -1, 1);
+		final Tool toolB = newTool("b", -1, 1);
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final CompletableFuture<Void> gateA1 = new CompletableFuture<>();
+		final StringBuffer starts = new StringBuffer();
+		final AssessmentJob a1 = submit(toolA, "a1", gateA1, starts);
+		submit(toolA, "a2", gate, starts);
+		final AssessmentJob a3 = submit(toolA, "a3", gate, starts);
+		final AssessmentJob a4 = submit(toolA, "a4", gate, starts);
+		final AssessmentJob b1 = submit(toolB, "b1", gate, starts);
+		assertEquals(2, AssessmentQueue.getRunningJobs());
+		assertEquals(3, AssessmentQueue.getWaitingJobs());
+		assertEquals(1, AssessmentQueue.getPosition(b1));
+		gateA1.complete(null);
+		awaitFinished(a1);
+		// b1 overtakes the older jobs of tool a
+		assertEquals(0, AssessmentQueue.getPosition(b1));
+		assertEquals(1, AssessmentQueue.getPosition(a3));
+		assertEquals(2, AssessmentQueue.getPosition(a4));
+		gate.complete(null);
+	}
+
+	/**
+	 * Slots are shared according to the weights of the tools.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void sharesSlotsByWeight() throws InterruptedException {
+		assertEquals("a1 a2 a3 b1 ", runWeighted(2));
+	}
+
+	/**
+	 * With equal weights, slots alternate between tools.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void sharesSlotsEqually() throws InterruptedException {
+		assertEquals("a1 a2 b1 b2 ", runWeighted(1));
+	}
+
+	/**
+	 * Queues three jobs of tool a and two of tool b while a job of tool c holds
+	 * the only slot, then frees four slots.
+	 *
+	 * @param weightA weight of tool a (tool b has weight 1)
+	 * @return the names of the jobs that got a slot
+	 * @throws InterruptedException if interrupted
+	 */
+	private String runWeighted(int weightA) throws InterruptedException {
+		final Tool toolA = newTool("a", -1, weightA);
+		final Tool toolB = newTool("b", -1, 1);
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final CompletableFuture<Void> gateC = new CompletableFuture<>();
+		final StringBuffer starts = new StringBuffer();
+		final AssessmentJob c1 = submit(newTool("c", -1, 1), "c1", gateC, starts);
+		final AssessmentJob[] others = {
+			submit(toolA, "a1", gate, starts),
+			submit(toolA, "a2", gate, starts),
+			submit(toolA, "a3", gate, starts),
+			submit(toolB, "b1", gate, starts),
+			submit(toolB, "b2", gate, starts)
+		};
+		Settings.setConcurrentUsers(4);
+		gateC.complete(null);
+		awaitFinished(c1);
+		assertEquals(4, AssessmentQueue.getRunningJobs());
+		final StringBuilder res = new StringBuilder();
+		for (final AssessmentJob job : others) {
+			if (AssessmentQueue.getPosition(job) == 0) {
+				res.append(job.getId()).append(' ');
+			}
+		}
+		gate.complete(null);
+		return res.toString();
+	}
+
+	/**
+	 * A tool does not run more jobs than its limit even with free slots.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void respectsToolLimit() throws InterruptedException {
+		Settings.setConcurrentUsers(4);
+		final Tool tool = newTool("t", 1, 1);
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final StringBuffer starts = new StringBuffer();
+		submit(tool, "a", gate, starts);
+		final AssessmentJob job2 = submit(tool, "b", gate, starts);
+		assertEquals(1, AssessmentQueue.getRunningJobs());
+		assertEquals(1, AssessmentQueue.getPosition(job2));
+		gate.complete(null);
+		awaitFinished(job2);
+	}
+
+	/**
+	 * After a shutdown no delivery is admitted nor submitted, and no worker is
+	 * created again.
+	 */
+	@Test
+	void rejectsAfterShutdown() {
+		final Tool tool = newTool("t", -1, 1);
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("a", tool));
+		AssessmentQueue.shutdown();
+		assertTrue(AssessmentQueue.isStopped());
+		assertEquals(AssessmentQueue.Admission.STOPPED, AssessmentQueue.admit("b", tool));
+		final StringBuffer starts = new StringBuffer();
+		final AssessmentJob job = AssessmentJob.async("a", "a", tool.getName(), out -> {
+			starts.append("a");
+			return CompletableFuture.completedFuture(null);
+		});
+		assertFalse(AssessmentQueue.submit(job, tool));
+		assertEquals(0, AssessmentQueue.getRunningJobs());
+		assertEquals(0, AssessmentQueue.getWaitingJobs());
+		assertEquals(null, AssessmentQueue.get(job.getId()));
+		assertEquals("", starts.toString());
+		AssessmentQueue.start();
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit("b", tool));
+	}
+
+}
@@ -0,0 +1,224 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of state transitions of {@link CircuitBreaker}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class CircuitBreakerTest {
+	/**
+	 * Duration of a fast request.
+	 */
+	private static final long FAST = 10;
+	/**
+	 * Milliseconds after which a request is slow.
+	 */
+	private static final long SLOW_MILLIS = 1000;
+
+	/**
+	 * Creates a breaker with a window of 4 requests that opens with half of them
+	 * failed or all of them slow.
+	 *
+	 * @param openSeconds seconds the breaker stays open
+	 * @return the breaker
+	 */
+	private static CircuitBreaker breaker(int openSeconds) {
+		final CircuitBreakerConfig config = new CircuitBreakerConfig();
+		config.setWindow(4);
+		config.setMinRequests(4);
+		config.setFailureRate(0.5);
+		config.setSlowRate(1);
+		config.setSlowMillis(SLOW_MILLIS);
+		config.setOpenSeconds(openSeconds);
+		return new CircuitBreaker(config);
+	}
+
+	/**
+	 * Records an allowed request.
+	 *
+	 * @param cb      the breaker
+	 * @param failure if the request failed
+	 * @param millis  duration of the request
+	 * @return true if the breaker has just opened
+	 */
+	private static boolean request(CircuitBreaker cb, boolean failure, long millis) {
+		final long token = cb.allow();
+		assertTrue(token >= 0, "request not allowed");
+		return cb.record(token, failure, millis);
+	}
+
+	/**
+	 * It does not open before the minimum number of requests, and opens when the
+	 * failure rate is reached.
+	 */
+	@Test
+	void testOpensOnFailures() {
+		final CircuitBreaker cb = breaker(60);
+		assertFalse(request(cb, true, FAST));
+		assertFalse(request(cb, true, FAST));
+		assertFalse(request(cb, false, FAST));
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+		assertTrue(request(cb, false, FAST));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+		assertEquals(-1, cb.allow());
+	}
+
+	/**
+	 * Old requests leave the window.
+	 */
+	@Test
+	void testWindowSlides() {
+		final CircuitBreaker cb = breaker(60);
+		assertFalse(request(cb, true, FAST));
+		for (int i = 0; i < 7; i++) {
+			assertFalse(request(cb, false, FAST));
+		}
+		// the first failure left the window, a new one is 1 of 4
+		assertFalse(request(cb, true, FAST));
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+		assertTrue(request(cb, true, FAST));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+	}
+
+	/**
+	 * Slow requests open it when the slow rate is reached.
+	 */
+	@Test
+	void testOpensOnSlowRequests() {
+		final CircuitBreaker cb = breaker(60);
+		for (int i = 0; i < 3; i++) {
+			assertFalse(request(cb, false, SLOW_MILLIS));
+		}
+		assertFalse(request(cb, false, SLOW_MILLIS - 1));
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+		for (int i = 0; i < 3; i++) {
+			assertFalse(request(cb, false, SLOW_MILLIS));
+		}
+		assertTrue(request(cb, false, SLOW_MILLIS));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+	}
+
+	/**
+	 * When the open time expires, a single probe is allowed and its success closes
+	 * the breaker with an empty window.
+	 */
+	@Test
+	void testProbeCloses() {
+		final CircuitBreaker cb = breaker(0);
+		for (int i = 0; i < 4; i++) {
+			request(cb, true, FAST);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+		final long probe = cb.allow();
+		assertTrue(probe >= 0);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+		assertEquals(-1, cb.allow());
+		assertFalse(cb.record(probe, false, FAST));
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+		// the failures before opening are forgotten
+		for (int i = 0; i < 3; i++) {
+			assertFalse(request(cb, true, FAST));
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+	}
+
+	/**
+	 * A failed or slow probe opens the breaker again.
+	 */
+	@Test
+	void testProbeOpens() {
+		final CircuitBreaker cb = breaker(0);
+		for (int i = 0; i < 4; i++) {
+			request(cb, true, FAST);
+		}
+		assertTrue(cb.record(cb.allow(), true, FAST));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+		assertTrue(cb.record(cb.allow(), false, SLOW_MILLIS));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+	}
+
+	/**
+	 * Outcomes of requests allowed before opening do not change an open breaker.
+	 */
+	@Test
+	void testLateOutcomesIgnored() {
+		final CircuitBreaker cb = breaker(60);
+		final long late = cb.allow();
+		for (int i = 0; i < 4; i++) {
+			request(cb, true, FAST);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+		assertFalse(cb.record(late, false, FAST));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+		assertEquals(-1, cb.allow());
+	}
+
+	/**
+	 * Late outcomes of requests allowed before opening are not taken as the
+	 * outcome of the probe, and do not let a second probe through.
+	 */
+	@Test
+	void testLateOutcomesIgnoredWhenHalfOpen() {
+		final CircuitBreaker cb = breaker(0);
+		final long lateSuccess = cb.allow();
+		final long lateFailure = cb.allow();
+		for (int i = 0; i < 4; i++) {
+			request(cb, true, FAST);
+		}
+		final long probe = cb.allow();
+		assertTrue(probe >= 0);
+		assertFalse(cb.record(lateSuccess, false, FAST));
+		assertFalse(cb.record(lateFailure, true, FAST));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+		assertEquals(-1, cb.allow());
+		assertTrue(cb.record(probe, true, FAST));
+		assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+	}
+
+	/**
+	 * Outcomes of requests allowed in a previous closed period do not count in
+	 * the window after the breaker closes again.
+	 */
+	@Test
+	void testOutcomesOfPreviousPeriodIgnored() {
+		final CircuitBreaker cb = breaker(0);
+		final long[] late = new long[4];
+		for (int i = 0; i < late.length; i++) {
+			late[i] = cb.allow();
+		}
+		for (int i = 0; i < 4; i++) {
+			request(cb, true, FAST);
+		}
+		assertFalse(cb.record(cb.allow(), false, FAST));
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+		for (final long token : late) {
+			assertFalse(cb.record(token, true, FAST));
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of batching of {@link MicroBatcher}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class MicroBatcherTest {
+	/**
+	 * Long window, never reached if the batch is full.
+	 */
+	private static final long LONG_WINDOW = 10000;
+
+	/**
+	 * Starts a leader in another thread and waits until it waits for its window.
+	 *
+	 * @param batcher the batcher
+	 * @param item    item of the leader
+	 * @param batch   batch returned to the leader
+	 * @return the thread of the leader
+	 * @throws InterruptedException if interrupted
+	 */
+	private static Thread startLeader(MicroBatcher<String> batcher, String item,
+			AtomicReference<List<String>> batch) throws InterruptedException {
+		final Thread leader = new Thread(() -> batch.set(batcher.add(item)));
+		leader.start();
+		while (leader.getState() != Thread.State.TIMED_WAITING) {
+			assertTrue(leader.isAlive(), "leader finished before its window");
+			Thread.sleep(1);
+		}
+		return leader;
+	}
+
+	/**
+	 * A lone item is returned to its caller when the window ends.
+	 */
+	@Test
+	void testWindowEnds() {
+		final MicroBatcher<String> batcher = new MicroBatcher<>(50, 10);
+		final long start = System.currentTimeMillis();
+		assertEquals(List.of("a"), batcher.add("a"));
+		assertTrue(System.currentTimeMillis() - start >= 45);
+	}
+
+	/**
+	 * Items of other callers go to the leader, which is released as soon as the
+	 * batch is full.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void testFullBatch() throws InterruptedException {
+		final MicroBatcher<String> batcher = new MicroBatcher<>(LONG_WINDOW, 3);
+		final AtomicReference<List<String>> batch = new AtomicReference<>();
+		final long start = System.currentTimeMillis();
+		final Thread leader = startLeader(batcher, "a", batch);
+		assertNull(batcher.add("b"));
+		assertNull(batcher.add("c"));
+		leader.join(LONG_WINDOW / 2);
+		assertFalse(leader.isAlive(), "leader not released by a full batch");
+		assertTrue(System.currentTimeMillis() - start < LONG_WINDOW / 2);
+		assertEquals(List.of("a", "b", "c"), batch.get());
+	}
+
+	/**
+	 * After a batch is returned, the next caller leads a new batch.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void testNewLeader() throws InterruptedException {
+		final MicroBatcher<String> batcher = new MicroBatcher<>(LONG_WINDOW, 2);
+		final AtomicReference<List<String>> batch = new AtomicReference<>();
+		final Thread leader = startLeader(batcher, "a", batch);
+		assertNull(batcher.add("b"));
+		leader.join();
+		assertEquals(List.of("a", "b"), batch.get());
+
+		final AtomicReference<List<String>> next = new AtomicReference<>();
+		final Thread nextLeader = startLeader(batcher, "c", next);
+		assertNull(batcher.add("d"));
+		nextLeader.join();
+		assertEquals(List.of("c", "d"), next.get());
+	}
+
+	/**
+	 * An interrupted leader gets its batch and keeps the interrupted state.
+	 *
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	void testInterruptedLeader() throws InterruptedException {
+		final MicroBatcher<String> batcher = new MicroBatcher<>(LONG_WINDOW, 10);
+		final AtomicReference<List<String>> batch = new AtomicReference<>();
+		final AtomicReference<Boolean> interrupted = new AtomicReference<>();
+		final Thread leader = new Thread(() -> {
+			batch.set(batcher.add("a"));
+			interrupted.set(Thread.currentThread().isInterrupted());
+		});
+		leader.start();
+		while (leader.getState() != Thread.State.TIMED_WAITING) {
+			Thread.sleep(1);
+		}
+		assertNull(batcher.add("b"));
+		leader.interrupt();
+		leader.join(LONG_WINDOW / 2);
+		assertFalse(leader.isAlive());
+		assertEquals(List.of("a", "b"), batch.get());
+		assertTrue(interrupted.get());
+	}
+}
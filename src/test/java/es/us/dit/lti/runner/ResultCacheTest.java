@@ -0,0 +1,144 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.us.dit.lti.entity.Settings;
+import es.us.dit.lti.entity.Tool;
+
+/**
+ * Tests of {@link ResultCache}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class ResultCacheTest {
+	/**
+	 * Folder of tools.
+	 */
+	private Path folder;
+	/**
+	 * Folder of tools before the test.
+	 */
+	private String oldFolder;
+	/**
+	 * The tool.
+	 */
+	private Tool tool;
+
+	/**
+	 * Creates a tool with a corrector in a temporary folder.
+	 *
+	 * @throws IOException if error
+	 */
+	@BeforeEach
+	void setUp() throws IOException {
+		folder = Files.createTempDirectory("tpm-cache");
+		oldFolder = Settings.getToolsFolder();
+		Settings.setToolsFolder(folder.toString());
+		tool = new Tool();
+		tool.setName("t");
+		new File(tool.getToolPath()).mkdirs();
+		Files.writeString(Path.of(tool.getCorrectorPath()), "#!/bin/sh\necho $1\n");
+	}
+
+	/**
+	 * Deletes the temporary folder.
+	 *
+	 * @throws IOException if error
+	 */
+	@AfterEach
+	void tearDown() throws IOException {
+		Settings.setToolsFolder(oldFolder);
+		FileUtils.deleteDirectory(folder.toFile());
+	}
+
+	/**
+	 * Identical deliveries of different users have different keys.
+	 */
+	@Test
+	void keyDependsOnUser() {
+		final String key1 = ResultCache.getKey("abc", tool, "u1", "f.c", false, List.of("x"));
+		final String key2 = ResultCache.getKey("abc", tool, "u2", "f.c", false, List.of("x"));
+		assertNotNull(key1);
+		assertNotEquals(key1, key2);
+		assertEquals(key1, ResultCache.getKey("abc", tool, "u1", "f.c", false, List.of("x")));
+		assertNotEquals(key1, ResultCache.getKey("abc", tool, "u1", "f.c", true, List.of("x")));
+		assertNotEquals(key1, ResultCache.getKey("abc", tool, "u1", "f.c", false, List.of("y")));
+	}
+
+	/**
+	 * A stored result is only returned for the same user.
+	 *
+	 * @throws IOException if error
+	 */
+	@Test
+	void servesOnlySameUser() throws IOException {
+		final Path output = folder.resolve("out1");
+		Files.writeString(output, "output of u1");
+		final String key1 = ResultCache.getKey("abc", tool, "u1", "f.c", false, null);
+		ResultCache.put(tool, key1, 80, output.toString());
+
+		final Path copy = folder.resolve("out2");
+		assertEquals(80, ResultCache.get(tool, key1, copy.toString()));
+		assertEquals("output of u1", Files.readString(copy));
+		final String key2 = ResultCache.getKey("abc", tool, "u2", "f.c", false, null);
+		assertNull(ResultCache.get(tool, key2, copy.toString()));
+	}
+
+	/**
+	 * Errors are not cached.
+	 */
+	@Test
+	void ignoresErrors() {
+		final String key = ResultCache.getKey("abc", tool, "u1", "f.c", false, null);
+		ResultCache.put(tool, key, ToolRunner.ERROR_TIMEOUT, folder.resolve("none").toString());
+		assertNull(ResultCache.get(tool, key, folder.resolve("out").toString()));
+	}
+
+	/**
+	 * A modified corrector invalidates the results.
+	 *
+	 * @throws IOException if error
+	 */
+	@Test
+	void keyDependsOnCorrector() throws IOException {
+		final String key1 = ResultCache.getKey("abc", tool, "u1", "f.c", false, null);
+		final File corrector = new File(tool.getCorrectorPath());
+		Files.writeString(corrector.toPath(), "#!/bin/sh\necho 100\n");
+		corrector.setLastModified(corrector.lastModified() + 2000);
+		assertNotEquals(key1, ResultCache.getKey("abc", tool, "u1", "f.c", false, null));
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of health tracking and selection of {@link SshServerPool}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class SshServerPoolTest {
+	/**
+	 * Servers of the tests, never contacted.
+	 */
+	private static final List<String> NAMES = List.of("tpm@host1.invalid", "tpm@host2.invalid");
+
+	/**
+	 * Forgets all servers.
+	 */
+	@AfterEach
+	void tearDown() {
+		SshServerPool.shutdown();
+		SshSession.closeAll();
+	}
+
+	/**
+	 * A failed test of a corrector does not mark the server down for other
+	 * correctors, but the load is shared.
+	 */
+	@Test
+	void healthIsPerTestCommand() {
+		final SshServerPool.Server a = SshServerPool.select(NAMES, null, null, "a test", 0, false).get(0);
+		final SshServerPool.Server b = SshServerPool.select(NAMES, null, null, "b test", 0, false).get(0);
+		assertEquals(a.getName(), b.getName());
+		assertNotSame(a, b);
+		assertSame(a, SshServerPool.select(NAMES, null, null, "a test", 0, false).get(0));
+		a.update(true, 10);
+		b.update(false, 0);
+		assertTrue(a.isHealthy());
+		assertFalse(b.isHealthy());
+		a.begin();
+		assertEquals(1, b.getInFlight());
+		a.end();
+		assertEquals(0, b.getInFlight());
+	}
+
+	/**
+	 * Healthy servers go first, then the least loaded.
+	 */
+	@Test
+	void ordersByHealthAndLoad() {
+		List<SshServerPool.Server> list = SshServerPool.select(NAMES, null, null, "c test", 0, false);
+		final SshServerPool.Server first = list.get(0);
+		final SshServerPool.Server second = list.get(1);
+		first.update(false, 0);
+		second.update(true, 10);
+		list = SshServerPool.select(NAMES, null, null, "c test", 0, false);
+		assertSame(second, list.get(0));
+		first.update(true, 10);
+		second.begin();
+		list = SshServerPool.select(NAMES, null, null, "c test", 0, false);
+		assertSame(first, list.get(0));
+		second.end();
+	}
+
+}
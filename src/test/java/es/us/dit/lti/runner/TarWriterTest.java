@@ -0,0 +1,206 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the output of {@link TarWriter}.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class TarWriterTest {
+	/**
+	 * Size of tar blocks.
+	 */
+	private static final int BLOCK = 512;
+
+	/**
+	 * Temporary folder.
+	 */
+	private Path folder;
+
+	/**
+	 * Creates a temporary folder.
+	 *
+	 * @throws IOException if error
+	 */
+	@BeforeEach
+	void setUp() throws IOException {
+		folder = Files.createTempDirectory("tpm-tar");
+	}
+
+	/**
+	 * Deletes the temporary folder.
+	 *
+	 * @throws IOException if error
+	 */
+	@AfterEach
+	void tearDown() throws IOException {
+		FileUtils.deleteDirectory(folder.toFile());
+	}
+
+	/**
+	 * Creates a file.
+	 *
+	 * @param name    file name
+	 * @param content file content
+	 * @return the file
+	 * @throws IOException if error
+	 */
+	private File file(String name, byte[] content) throws IOException {
+		final Path p = folder.resolve(name);
+		Files.write(p, content);
+		return p.toFile();
+	}
+
+	/**
+	 * Reads a string field of a header.
+	 *
+	 * @param tar    the archive
+	 * @param offset field offset
+	 * @param length field length
+	 * @return the field up to its first NUL
+	 */
+	private static String field(byte[] tar, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && tar[end] != 0) {
+			end++;
+		}
+		return new String(tar, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads an octal field of a header.
+	 *
+	 * @param tar    the archive
+	 * @param offset field offset
+	 * @param length field length
+	 * @return the value
+	 */
+	private static long octal(byte[] tar, int offset, int length) {
+		return Long.parseLong(field(tar, offset, length).trim(), 8);
+	}
+
+	/**
+	 * Computes the checksum of a header as tar readers do, with spaces in the
+	 * checksum field.
+	 *
+	 * @param tar    the archive
+	 * @param header header offset
+	 * @return the checksum
+	 */
+	private static long checksum(byte[] tar, int header) {
+		long sum = 0;
+		for (int i = 0; i < BLOCK; i++) {
+			sum += i >= 148 && i < 156 ? ' ' : tar[header + i] & 0xff;
+		}
+		return sum;
+	}
+
+	/**
+	 * Checks the header and content of an entry.
+	 *
+	 * @param tar     the archive
+	 * @param header  header offset
+	 * @param name    expected name
+	 * @param content expected content
+	 * @return offset of the next header
+	 */
+	private static int assertEntry(byte[] tar, int header, String name, byte[] content) {
+		assertEquals(name, field(tar, header, 100));
+		assertEquals(0644, octal(tar, header + 100, 8));
+		assertEquals(content.length, octal(tar, header + 124, 12));
+		assertEquals('0', tar[header + 156]);
+		assertEquals("ustar", field(tar, header + 257, 6));
+		assertEquals("00", new String(tar, header + 263, 2, StandardCharsets.US_ASCII));
+		assertEquals(checksum(tar, header), octal(tar, header + 148, 8));
+		final int data = header + BLOCK;
+		assertArrayEquals(content, Arrays.copyOfRange(tar, data, data + content.length));
+		final int next = data + (content.length + BLOCK - 1) / BLOCK * BLOCK;
+		for (int i = data + content.length; i < next; i++) {
+			assertEquals(0, tar[i], "padding");
+		}
+		return next;
+	}
+
+	/**
+	 * Entries are padded to whole blocks and the archive ends with two empty
+	 * blocks.
+	 *
+	 * @throws IOException if error
+	 */
+	@Test
+	void testEntries() throws IOException {
+		final byte[] small = "hello\n".getBytes(StandardCharsets.US_ASCII);
+		final byte[] exact = new byte[BLOCK];
+		Arrays.fill(exact, (byte) 'x');
+		final byte[] empty = new byte[0];
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final TarWriter tw = new TarWriter(os);
+		tw.add("a.txt", file("a", small));
+		tw.add("b.bin", file("b", exact));
+		tw.add("c", file("c", empty));
+		tw.finish();
+		final byte[] tar = os.toByteArray();
+
+		assertEquals(BLOCK * 7, tar.length);
+		int offset = assertEntry(tar, 0, "a.txt", small);
+		offset = assertEntry(tar, offset, "b.bin", exact);
+		offset = assertEntry(tar, offset, "c", empty);
+		assertEquals(BLOCK * 5, offset);
+		for (int i = offset; i < tar.length; i++) {
+			assertEquals(0, tar[i], "end of archive");
+		}
+	}
+
+	/**
+	 * Long names are truncated so the name field keeps its terminator.
+	 *
+	 * @throws IOException if error
+	 */
+	@Test
+	void testLongName() throws IOException {
+		final char[] longName = new char[150];
+		Arrays.fill(longName, 'n');
+		final byte[] content = "1".getBytes(StandardCharsets.US_ASCII);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final TarWriter tw = new TarWriter(os);
+		tw.add(new String(longName), file("long", content));
+		tw.finish();
+		final byte[] tar = os.toByteArray();
+
+		assertEntry(tar, 0, new String(longName, 0, TarWriter.MAX_NAME), content);
+	}
+}
@@ -0,0 +1,226 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.runner;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark of {@link TokenTemplate} against the replacement with regular
+ * expressions that it replaced in {@link HttpToolRunner}.
+ *
+ * <p>It is not run by the tests. Run it with {@link #main(String[])} from the
+ * test classpath, for example:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     es.us.dit.lti.runner.TokenTemplateBenchmark
+ * </pre>
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenTemplateBenchmark {
+	/**
+	 * Regular expression of the old replacement.
+	 */
+	private static final Pattern pattern = Pattern.compile("\\$\\{(.+?)\\}");
+	/**
+	 * Typical URL of a tool, with request tokens.
+	 */
+	private static final String URL = "https://corrector.example.com/api/${0}/${%1}/check?counter=${2}"
+			+ "&instructor=${3}&extra=${4}";
+	/**
+	 * Typical response template line.
+	 */
+	private static final String RESPONSE = "Score ${j.score}: ${j.message} (${h.Content-Type}, ${%j.link})";
+
+	/**
+	 * Arguments of the request.
+	 */
+	private final List<String> args = List.of("user-42", "Práctica 1 final.zip", "7", "false", "--verbose");
+	/**
+	 * Replacements of the response.
+	 */
+	private final Map<String, String> replacements = Map.of("j.score", "85", "j.message",
+			"Compiled, 17 of 20 tests passed", "h.Content-Type", "application/json",
+			"j.link", "https%3A%2F%2Fcorrector.example.com%2Freport%2F42");
+	/**
+	 * Compiled URL.
+	 */
+	private TokenTemplate url;
+	/**
+	 * Compiled response line.
+	 */
+	private TokenTemplate response;
+
+	/**
+	 * Compiles the templates and checks that both versions render the same.
+	 */
+	@Setup
+	public void setUp() {
+		url = TokenTemplate.compile(URL);
+		response = TokenTemplate.compile(RESPONSE);
+		if (!url.render(args).equals(replaceRequestTokens(URL, args))
+				|| !response.render(replacements).equals(replaceResponseTokens(RESPONSE, replacements))) {
+			throw new IllegalStateException("Different results");
+		}
+	}
+
+	/**
+	 * Renders the URL with the compiled template.
+	 *
+	 * @return rendered text
+	 */
+	@Benchmark
+	public String requestTemplate() {
+		return url.render(args);
+	}
+
+	/**
+	 * Renders the URL with regular expressions.
+	 *
+	 * @return rendered text
+	 */
+	@Benchmark
+	public String requestRegex() {
+		return replaceRequestTokens(URL, args);
+	}
+
+	/**
+	 * Renders the response line with the compiled template.
+	 *
+	 * @return rendered text
+	 */
+	@Benchmark
+	public String responseTemplate() {
+		return response.render(replacements);
+	}
+
+	/**
+	 * Renders the response line with regular expressions.
+	 *
+	 * @return rendered text
+	 */
+	@Benchmark
+	public String responseRegex() {
+		return replaceResponseTokens(RESPONSE, replacements);
+	}
+
+	/**
+	 * Old replacement of request tokens.
+	 *
+	 * @param text         text with tokens
+	 * @param replacements arguments
+	 * @return rendered text
+	 */
+	private static String replaceRequestTokens(String text, List<String> replacements) {
+		final Matcher matcher = pattern.matcher(text);
+		final StringBuilder buffer = new StringBuilder();
+		while (matcher.find()) {
+			matcher.appendReplacement(buffer, "");
+			String expression = matcher.group(1).trim();
+			int index = -1;
+			boolean encode = false;
+			if (expression.charAt(0) == '%') {
+				encode = true;
+				expression = expression.substring(1);
+			}
+			try {
+				index = Integer.parseInt(expression);
+			} catch (final NumberFormatException e1) {
+				index = -1;
+			}
+			if (index >= 0 && index < replacements.size()) {
+				String r = replacements.get(index);
+				if (encode) {
+					r = URLEncoder.encode(replacements.get(index), StandardCharsets.UTF_8);
+				}
+				buffer.append(r);
+			}
+		}
+		matcher.appendTail(buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 * Old replacement of response tokens.
+	 *
+	 * @param text         text with tokens
+	 * @param replacements map of replacements
+	 * @return rendered text
+	 */
+	private static String replaceResponseTokens(String text, Map<String, String> replacements) {
+		final Matcher matcher = pattern.matcher(text);
+		final StringBuilder buffer = new StringBuilder();
+		while (matcher.find()) {
+			matcher.appendReplacement(buffer, "");
+			final String expression = matcher.group(1).trim();
+			if (expression.charAt(0) == '%') {
+				try {
+					buffer.append(URLDecoder.decode(replacements.getOrDefault(expression.substring(1), ""),
+							StandardCharsets.UTF_8));
+				} catch (final IllegalArgumentException e) {
+					buffer.append("[ERROR: ").append(e.getMessage()).append("]");
+				}
+			} else {
+				buffer.append(replacements.getOrDefault(expression, ""));
+			}
+		}
+		matcher.appendTail(buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args not used
+	 * @throws RunnerException if it fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TokenTemplateBenchmark.class.getSimpleName()).build()).run();
+	}
+}
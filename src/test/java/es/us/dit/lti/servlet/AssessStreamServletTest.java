@@ -0,0 +1,254 @@
+/*
+    This file is part of Tool Provider Manager - Manager of LTI Tool Providers
+    for learning platforms.
+    Copyright (C) 2022  Francisco José Fernández Jiménez.
+
+    Tool Provider Manager is free software: you can redistribute it and/or
+    modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at
+    your option) any later version.
+
+    Tool Provider Manager is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+    Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with Tool Provider Manager. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package es.us.dit.lti.servlet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.commons.io.FileUtils;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.us.dit.lti.ToolSession;
+import es.us.dit.lti.entity.Tool;
+import es.us.dit.lti.filter.CsrfFilter;
+import es.us.dit.lti.filter.LearnerFilter;
+import es.us.dit.lti.runner.AssessmentJob;
+import es.us.dit.lti.runner.AssessmentQueue;
+import es.us.dit.lti.runner.TimeoutService;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * End to end test of the stream of an assessment through the filters of the
+ * learner path, in an embedded Tomcat.
+ *
+ * <p>Filters and servlets are registered from their annotations, like the
+ * container does, so a filter of the chain that does not support asynchronous
+ * requests makes the stream fail.
+ *
+ * @author Francisco José Fernández Jiménez
+ */
+class AssessStreamServletTest {
+	/**
+	 * User ID of the learner.
+	 */
+	private static final String USER_ID = "learner";
+	/**
+	 * Name of the tool.
+	 */
+	private static final String TOOL_NAME = "tool";
+
+	/**
+	 * Working folder.
+	 */
+	private Path folder;
+	/**
+	 * The container.
+	 */
+	private Tomcat tomcat;
+
+	/**
+	 * Filter that simulates a launched learner session.
+	 */
+	private static class LaunchFilter extends HttpFilter {
+		/**
+		 * Serializable requirement.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+				throws IOException, ServletException {
+			final Tool tool = new Tool();
+			tool.setName(TOOL_NAME);
+			final ToolSession ts = new ToolSession();
+			ts.setTool(tool);
+			ts.setSessionUserId(USER_ID);
+			ts.setLearner(true);
+			request.getSession().setAttribute(ToolSession.class.getName(), ts);
+			chain.doFilter(request, response);
+		}
+	}
+
+	/**
+	 * Starts the container with the filters of the learner path.
+	 *
+	 * @throws Exception if error
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		folder = Files.createTempDirectory("tpm-stream");
+		AssessmentQueue.start();
+		tomcat = new Tomcat();
+		tomcat.setBaseDir(folder.toString());
+		tomcat.setPort(0);
+		tomcat.getConnector();
+		final Context ctx = tomcat.addContext("", folder.toString());
+		final FilterDef launch = new FilterDef();
+		launch.setFilterName("launch");
+		launch.setFilter(new LaunchFilter());
+		launch.setAsyncSupported("true");
+		ctx.addFilterDef(launch);
+		final FilterMap launchMap = new FilterMap();
+		launchMap.setFilterName("launch");
+		launchMap.addURLPattern("/*");
+		ctx.addFilterMap(launchMap);
+		addFilter(ctx, new CsrfFilter());
+		addFilter(ctx, new LearnerFilter());
+		final WebServlet ws = AssessStreamServlet.class.getAnnotation(WebServlet.class);
+		final Wrapper wrapper = Tomcat.addServlet(ctx, "stream", new AssessStreamServlet());
+		wrapper.setAsyncSupported(ws.asyncSupported());
+		for (final String pattern : ws.urlPatterns()) {
+			ctx.addServletMappingDecoded(pattern, "stream");
+		}
+		tomcat.start();
+	}
+
+	/**
+	 * Stops the container.
+	 *
+	 * @throws Exception if error
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		tomcat.stop();
+		tomcat.destroy();
+		AssessmentQueue.shutdown();
+		TimeoutService.shutdown();
+		FileUtils.deleteDirectory(folder.toFile());
+	}
+
+	/**
+	 * Registers a filter as declared in its annotation.
+	 *
+	 * @param ctx    the context
+	 * @param filter the filter
+	 */
+	private static void addFilter(Context ctx, Filter filter) {
+		final WebFilter wf = filter.getClass().getAnnotation(WebFilter.class);
+		final FilterDef def = new FilterDef();
+		def.setFilterName(filter.getClass().getName());
+		def.setFilter(filter);
+		def.setAsyncSupported(String.valueOf(wf.asyncSupported()));
+		ctx.addFilterDef(def);
+		final FilterMap map = new FilterMap();
+		map.setFilterName(def.getFilterName());
+		for (final String pattern : wf.urlPatterns()) {
+			map.addURLPattern(pattern);
+		}
+		for (final DispatcherType type : wf.dispatcherTypes()) {
+			map.setDispatcher(type.name());
+		}
+		ctx.addFilterMap(map);
+	}
+
+	/**
+	 * The output of a running job and its result are streamed as events.
+	 *
+	 * @throws Exception if error
+	 */
+	@Test
+	void streamsOutputAndResult() throws Exception {
+		final Tool tool = new Tool();
+		tool.setName(TOOL_NAME);
+		tool.setJsonConfig(null);
+		final Path output = folder.resolve("output");
+		Files.writeString(output, "first line\n");
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final AssessmentJob job = AssessmentJob.async(UUID.randomUUID().toString(), USER_ID, TOOL_NAME, out -> {
+			out.print("<p>done</p>");
+			return gate;
+		});
+		job.setOutputPath(output.toString());
+		assertEquals(AssessmentQueue.Admission.ACCEPTED, AssessmentQueue.admit(USER_ID, tool));
+		assertTrue(AssessmentQueue.submit(job, tool));
+
+		final URL url = new URL("http://localhost:" + tomcat.getConnector().getLocalPort()
+				+ "/learner/assessstream?job=" + job.getId());
+		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setReadTimeout(10000);
+		assertEquals(200, con.getResponseCode());
+		assertTrue(con.getContentType().startsWith("text/event-stream"));
+		final List<String> lines = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+			String line = in.readLine();
+			while (line != null) {
+				lines.add(line);
+				if ("data: first line".equals(line)) {
+					// More output and finish while streaming
+					Files.writeString(output, "second line\n", StandardOpenOption.APPEND);
+					Thread.sleep(600);
+					gate.complete(null);
+				}
+				line = in.readLine();
+			}
+		}
+		final int first = lines.indexOf("data: first line");
+		final int second = lines.indexOf("data: second line");
+		final int result = lines.indexOf("event: result");
+		assertTrue(first > 0 && "event: output".equals(lines.get(first - 1)), lines.toString());
+		assertTrue(second > first, lines.toString());
+		assertTrue(result > second, lines.toString());
+		assertEquals("data: <p>done</p>", lines.get(result + 1));
+	}
+
+	/**
+	 * Jobs of other users are not found.
+	 *
+	 * @throws Exception if error
+	 */
+	@Test
+	void rejectsUnknownJob() throws Exception {
+		final URL url = new URL("http://localhost:" + tomcat.getConnector().getLocalPort()
+				+ "/learner/assessstream?job=none");
+		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		assertEquals(404, con.getResponseCode());
+	}
+
+}